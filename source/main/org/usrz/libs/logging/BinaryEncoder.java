@@ -0,0 +1,273 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Formattable;
+
+import org.slf4j.MDC;
+
+/**
+ * An {@link EventEncoder} writing events in a compact binary form, leaving
+ * their rendering as text to whoever reads them (see {@link JournalDecoder}).
+ *
+ * <p>Logger names, thread names and message templates are stored only once
+ * in a {@link JournalDictionary} and referenced by their identifiers, while
+ * arguments of {@link String#format(String, Object...)} templates are stored
+ * with their types (so that <code>%d</code> or <code>%x</code> will render
+ * exactly the same when decoded). Arguments of other types are stored as the
+ * text they would render as in a <code>%s</code> format, so when they meet
+ * any other conversion (think of a {@link Calendar} and <code>%tH</code>, or
+ * <code>%h</code>) the message is formatted straight away, and stored as
+ * plain text.</p>
+ *
+ * <p>The trace identifier of each event is read from the {@link MDC} entry
+ * named by the <code>org.usrz.libs.logging.journal.traceKey</code> system
+ * property (by default <code>traceId</code>) and stored in clear, so that it
+ * can be indexed (see {@link JournalIndex}).</p>
+ *
+ * <p>Each event is encoded as follows:</p>
+ *
+ * <ul>
+ *   <li>a byte ({@value #EVENT}) identifying the record as an event;</li>
+ *   <li>the timestamp of the event as a <code>long</code>;</li>
+ *   <li>the level of the event as a byte;</li>
+ *   <li>the identifiers of the thread and logger names as <code>int</code>s;</li>
+ *   <li>the trace identifier as a string, or an empty string if none;</li>
+ *   <li>a byte with the syntax of the message: either {@value #PLAIN}
+ *       (followed by the message as a string), or {@value #FORMAT}
+ *       or {@value #SLF4J} followed by the identifier of the template, the
+ *       number of arguments (as an unsigned byte) and each argument (as a
+ *       byte with its type, followed by its value);</li>
+ *   <li>the stack trace of the event's throwable as a string, or an empty
+ *       string if there was none.</li>
+ * </ul>
+ *
+ * <p>Strings are encoded as the <code>int</code> length of their
+ * <i>UTF-8</i> representation followed by its bytes.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+final class BinaryEncoder implements EventEncoder {
+
+    /* Record types */
+    static final byte EVENT = 1;
+
+    /* Message syntaxes */
+    static final byte PLAIN = 0;
+    static final byte FORMAT = 1;
+    static final byte SLF4J = 2;
+
+    /* Argument types */
+    static final byte NULL = 0;
+    static final byte STRING = 1;
+    static final byte BOOLEAN = 2;
+    static final byte BYTE = 3;
+    static final byte SHORT = 4;
+    static final byte CHARACTER = 5;
+    static final byte INTEGER = 6;
+    static final byte LONG = 7;
+    static final byte FLOAT = 8;
+    static final byte DOUBLE = 9;
+    static final byte BIG_INTEGER = 10;
+    static final byte BIG_DECIMAL = 11;
+    static final byte DATE = 12;
+
+    /* The maximum number of arguments we can encode */
+    static final int MAX_ARGUMENTS = 255;
+
+    /* The MDC key of our trace identifiers */
+    static final String TRACE_KEY = System.getProperty("org.usrz.libs.logging.journal.traceKey", "traceId");
+
+    private final JournalDictionary dictionary;
+    private ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+    BinaryEncoder(JournalDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /* ====================================================================== */
+
+    @Override
+    public ByteBuffer encode(long timestamp, String threadName, String loggerName,
+                             int level, String message, Object[] arguments,
+                             Throwable throwable) {
+        start(timestamp, threadName, loggerName, level);
+
+        if (arguments == null) {
+            buffer.put(PLAIN);
+            putString(message);
+        } else {
+            final int count = Math.min(arguments.length, MAX_ARGUMENTS);
+            buffer.put(SLF4J).putInt(dictionary.intern(message)).put((byte) count);
+            for (int index = 0; index < count; index ++) {
+                final Object argument = arguments[index];
+                if (argument == null) {
+                    buffer.put(NULL);
+                } else {
+                    buffer.put(STRING);
+                    putString(MessageRenderers.render(argument));
+                }
+                ensure(16);
+            }
+        }
+
+        return finish(throwable);
+    }
+
+    @Override
+    public ByteBuffer encodeTemplate(long timestamp, String threadName, String loggerName,
+                                     int level, String format, Object[] arguments,
+                                     Throwable throwable) {
+        if (!reproducible(format, arguments)) {
+            return encode(timestamp, threadName, loggerName, level, String.format(format, arguments), null, throwable);
+        }
+
+        start(timestamp, threadName, loggerName, level);
+
+        final int count = arguments == null ? 0 : Math.min(arguments.length, MAX_ARGUMENTS);
+        buffer.put(FORMAT).putInt(dictionary.intern(format)).put((byte) count);
+        for (int index = 0; index < count; index ++) {
+            putArgument(arguments[index]);
+            ensure(16);
+        }
+
+        return finish(throwable);
+    }
+
+    /* ====================================================================== */
+
+    private void start(long timestamp, String threadName, String loggerName, int level) {
+        buffer.clear();
+        buffer.put(EVENT)
+              .putLong(timestamp)
+              .put((byte) level)
+              .putInt(dictionary.intern(threadName))
+              .putInt(dictionary.intern(loggerName));
+
+        final String trace = MDC.get(TRACE_KEY);
+        putString(trace == null ? "" : trace);
+    }
+
+    private ByteBuffer finish(Throwable throwable) {
+        final CharSequence stackTrace = TextEncoder.stackTrace(throwable);
+        putString(stackTrace == null ? "" : stackTrace);
+        buffer.flip();
+        return buffer;
+    }
+
+    /*
+     * Check whether decoding will render the template exactly the same:
+     * arguments stored as text only do in templates with "%s" and "%d".
+     */
+    private static boolean reproducible(String format, Object[] arguments) {
+        if (arguments == null) return true;
+        for (Object argument: arguments) {
+            if ((argument == null) || (argument instanceof String) ||
+                (argument instanceof Integer) || (argument instanceof Long) ||
+                (argument instanceof Boolean) || (argument instanceof Double) ||
+                (argument instanceof Float) || (argument instanceof Character) ||
+                (argument instanceof Byte) || (argument instanceof Short) ||
+                (argument instanceof BigInteger) || (argument instanceof BigDecimal) ||
+                (argument instanceof Date)) continue;
+            return CompiledFormat.of(format).getArity() >= 0;
+        }
+        return true;
+    }
+
+    private void putArgument(Object argument) {
+        if (argument == null) {
+            buffer.put(NULL);
+        } else if (argument instanceof String) {
+            buffer.put(STRING);
+            putString((String) argument);
+        } else if (argument instanceof Integer) {
+            buffer.put(INTEGER).putInt((Integer) argument);
+        } else if (argument instanceof Long) {
+            buffer.put(LONG).putLong((Long) argument);
+        } else if (argument instanceof Boolean) {
+            buffer.put(BOOLEAN).put((byte) (((Boolean) argument) ? 1 : 0));
+        } else if (argument instanceof Double) {
+            buffer.put(DOUBLE).putDouble((Double) argument);
+        } else if (argument instanceof Float) {
+            buffer.put(FLOAT).putFloat((Float) argument);
+        } else if (argument instanceof Character) {
+            buffer.put(CHARACTER).putChar((Character) argument);
+        } else if (argument instanceof Byte) {
+            buffer.put(BYTE).put((Byte) argument);
+        } else if (argument instanceof Short) {
+            buffer.put(SHORT).putShort((Short) argument);
+        } else if (argument instanceof BigInteger) {
+            buffer.put(BIG_INTEGER);
+            putString(argument.toString());
+        } else if (argument instanceof BigDecimal) {
+            buffer.put(BIG_DECIMAL);
+            putString(argument.toString());
+        } else if (argument instanceof Date) {
+            buffer.put(DATE).putLong(((Date) argument).getTime());
+        } else if (argument instanceof Formattable) {
+            buffer.put(STRING);
+            putString(String.format("%s", argument));
+        } else {
+            buffer.put(STRING);
+            putString(String.valueOf(argument));
+        }
+    }
+
+    /* ====================================================================== */
+
+    private void ensure(int bytes) {
+        if (buffer.remaining() >= bytes) return;
+        final ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        buffer = grown.put(buffer);
+    }
+
+    private void putString(CharSequence string) {
+        final int length = string.length();
+        ensure(length * 3 + 16);
+
+        /* Write our UTF-8 bytes after the length, then the length */
+        final int start = buffer.position();
+        buffer.position(start + 4);
+        for (int index = 0; index < length; index ++) {
+            final char c = string.charAt(index);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)))
+                      .put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && (index + 1 < length) && Character.isLowSurrogate(string.charAt(index + 1))) {
+                final int codePoint = Character.toCodePoint(c, string.charAt(++ index));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)))
+                      .put((byte) (0x80 | ((codePoint >> 12) & 0x3F)))
+                      .put((byte) (0x80 | ((codePoint >> 6) & 0x3F)))
+                      .put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)))
+                      .put((byte) (0x80 | ((c >> 6) & 0x3F)))
+                      .put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        buffer.putInt(start, buffer.position() - start - 4);
+    }
+}
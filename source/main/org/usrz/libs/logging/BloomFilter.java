@@ -0,0 +1,118 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A trivial <a href="http://en.wikipedia.org/wiki/Bloom_filter">Bloom filter</a>
+ * of {@link String}s, about 1% false positives at its expected capacity.
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+final class BloomFilter {
+
+    /* Bits per expected entry, and number of hashes */
+    private static final int BITS_PER_ENTRY = 10;
+    private static final int HASHES = 7;
+
+    private final long[] words;
+    private final int bits;
+
+    /**
+     * Create a new {@link BloomFilter} sized for the expected number of
+     * entries.
+     */
+    BloomFilter(int expected) {
+        this(new long[Math.max(1, (int) Math.min(Integer.MAX_VALUE / 64, ((long) expected * BITS_PER_ENTRY + 63) / 64))]);
+    }
+
+    private BloomFilter(long[] words) {
+        this.words = words;
+        bits = words.length * 64;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Add a {@link String} to this filter.
+     */
+    void add(String string) {
+        final long hash = hash(string);
+        final int first = (int) hash;
+        final int second = (int) (hash >>> 32);
+        for (int index = 0; index < HASHES; index ++) {
+            final int bit = ((first + index * second) & Integer.MAX_VALUE) % bits;
+            words[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Return <b>false</b> if the specified {@link String} was definitely
+     * never added to this filter, <b>true</b> if it might have been.
+     */
+    boolean mightContain(String string) {
+        final long hash = hash(string);
+        final int first = (int) hash;
+        final int second = (int) (hash >>> 32);
+        for (int index = 0; index < HASHES; index ++) {
+            final int bit = ((first + index * second) & Integer.MAX_VALUE) % bits;
+            if ((words[bit >>> 6] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the number of bytes {@link #write(ByteBuffer)} will write.
+     */
+    int size() {
+        return 4 + words.length * 8;
+    }
+
+    /**
+     * Write this filter to a {@link ByteBuffer}.
+     */
+    void write(ByteBuffer buffer) {
+        buffer.putInt(words.length);
+        for (long word: words) buffer.putLong(word);
+    }
+
+    /**
+     * Read a filter written by {@link #write(ByteBuffer)}.
+     */
+    static BloomFilter read(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if ((length < 1) || (length > buffer.remaining() / 8)) throw new IllegalArgumentException("Invalid filter length " + length);
+        final long[] words = new long[length];
+        for (int index = 0; index < length; index ++) words[index] = buffer.getLong();
+        return new BloomFilter(words);
+    }
+
+    /* ====================================================================== */
+
+    /* 64 bits FNV-1a, hashing all chars of the string */
+    private static long hash(String string) {
+        long hash = 0xCBF29CE484222325L;
+        for (int index = 0; index < string.length(); index ++) {
+            final char c = string.charAt(index);
+            hash = (hash ^ (c & 0xFF)) * 0x100000001B3L;
+            hash = (hash ^ (c >>> 8)) * 0x100000001B3L;
+        }
+        return hash;
+    }
+}
@@ -20,6 +20,12 @@ import static org.slf4j.spi.LocationAwareLogger.ERROR_INT;
 import static org.slf4j.spi.LocationAwareLogger.INFO_INT;
 import static org.slf4j.spi.LocationAwareLogger.TRACE_INT;
 import static org.slf4j.spi.LocationAwareLogger.WARN_INT;
+import static org.usrz.libs.logging.EffectiveLevels.DEBUG_ENABLED;
+import static org.usrz.libs.logging.EffectiveLevels.ERROR_ENABLED;
+import static org.usrz.libs.logging.EffectiveLevels.FILTERED;
+import static org.usrz.libs.logging.EffectiveLevels.INFO_ENABLED;
+import static org.usrz.libs.logging.EffectiveLevels.TRACE_ENABLED;
+import static org.usrz.libs.logging.EffectiveLevels.WARN_ENABLED;
 
 import org.apache.commons.logging.Log;
 import org.slf4j.spi.LocationAwareLogger;
@@ -28,6 +34,12 @@ import org.slf4j.spi.LocationAwareLogger;
  * A logging adapter (or in other words a <i>logger<i> implementation) for
  * <a href="http://commons.apache.org/proper/commons-logging/">Apache Commons Logging</a>.
  *
+ * <p>Enabled levels are cached (see {@link EffectiveLevels}) and refreshed
+ * when the backend's configuration changes, except when <i>Logback</i> has
+ * turbo filters: those decide event by event, so the logger is asked every
+ * time. Turbo filters added programmatically (rather than by configuring
+ * <i>Logback</i>) require a call to {@link Logging#refreshLevels()}.</p>
+ *
  * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
  */
 public final class CommonsLoggingAdapter implements Log {
@@ -35,186 +47,158 @@ public final class CommonsLoggingAdapter implements Log {
     private static final String FQCN = CommonsLoggingAdapter.class.getName();
 
     private final LocationAwareLogger logger;
+    /* The bitmask of enabled levels, see EffectiveLevels */
+    private volatile int levels;
+
+    /* Refresh our levels, strongly referenced by us, weakly by EffectiveLevels */
+    private final EffectiveLevels.Listener listener = new EffectiveLevels.Listener() {
+        @Override
+        public void levelsChanged() {
+            refresh();
+        }
+    };
 
     protected CommonsLoggingAdapter(String className) {
         logger = SLF4JFactory.getLogger(className);
+        /* Register first, so we don't miss changes while computing levels */
+        EffectiveLevels.register(listener);
+        refresh();
+    }
+
+    /*
+     * Compute and write our levels while holding our lock: whoever computes
+     * last (after the last change) writes last, and an older value computed
+     * concurrently never overwrites a newer one.
+     */
+    private synchronized void refresh() {
+        levels = EffectiveLevels.of(logger);
+    }
+
+    /*
+     * Check whether a level is enabled: a field read and a bit test, unless
+     * turbo filters have the last word.
+     */
+    private boolean enabled(int level) {
+        final int levels = this.levels;
+        if ((levels & level) == 0) return false;
+        return ((levels & FILTERED) == 0) || EffectiveLevels.isEnabled(logger, level);
     }
 
     /* ====================================================================== */
 
     @Override
     public boolean isTraceEnabled() {
-        return logger.isTraceEnabled();
+        return enabled(TRACE_ENABLED);
     }
 
     @Override
     public boolean isDebugEnabled() {
-        return logger.isDebugEnabled();
+        return enabled(DEBUG_ENABLED);
     }
 
     @Override
     public boolean isInfoEnabled() {
-        return logger.isInfoEnabled();
+        return enabled(INFO_ENABLED);
     }
 
     @Override
     public boolean isWarnEnabled() {
-        return logger.isWarnEnabled();
+        return enabled(WARN_ENABLED);
     }
 
     @Override
     public boolean isErrorEnabled() {
-        return logger.isErrorEnabled();
+        return enabled(ERROR_ENABLED);
     }
 
     @Override
     public boolean isFatalEnabled() {
-        return logger.isErrorEnabled();
+        return enabled(ERROR_ENABLED);
     }
 
     /* ====================================================================== */
 
     @Override
     public void trace(Object message) {
-        if (logger.isTraceEnabled()) {
-            if (message == null) logger.log(null, FQCN, TRACE_INT, "Null message", null, null);
-            else try {
-                logger.log(null, FQCN, TRACE_INT, (String) message, null, null);
-            } catch (ClassCastException exception) {
-                logger.log(null, FQCN, TRACE_INT, "{}", new Object[] { message }, null);
-            }
+        if (enabled(TRACE_ENABLED)) {
+            LogDispatcher.dispatch(logger, null, FQCN, TRACE_INT, MessageRenderers.render(message), null, null);
         }
     }
 
     @Override
     public void trace(Object message, Throwable throwable) {
-        if (logger.isTraceEnabled()) {
-            if (message == null) logger.log(null, FQCN, TRACE_INT, "Null message", null, throwable);
-            else try {
-                logger.log(null, FQCN, TRACE_INT, (String) message, null, throwable);
-            } catch (ClassCastException exception) {
-                logger.log(null, FQCN, TRACE_INT, "{}", new Object[] { message }, throwable);
-            }
+        if (enabled(TRACE_ENABLED)) {
+            LogDispatcher.dispatch(logger, null, FQCN, TRACE_INT, MessageRenderers.render(message), null, throwable);
         }
     }
 
     @Override
     public void debug(Object message) {
-        if (logger.isDebugEnabled()) {
-            if (message == null) logger.log(null, FQCN, DEBUG_INT, "Null message", null, null);
-            else try {
-                logger.log(null, FQCN, DEBUG_INT, (String) message, null, null);
-            } catch (ClassCastException exception) {
-                logger.log(null, FQCN, DEBUG_INT, "{}", new Object[] { message }, null);
-            }
+        if (enabled(DEBUG_ENABLED)) {
+            LogDispatcher.dispatch(logger, null, FQCN, DEBUG_INT, MessageRenderers.render(message), null, null);
         }
     }
 
     @Override
     public void debug(Object message, Throwable throwable) {
-        if (logger.isDebugEnabled()) {
-            if (message == null) logger.log(null, FQCN, DEBUG_INT, "Null message", null, throwable);
-            else try {
-                logger.log(null, FQCN, DEBUG_INT, (String) message, null, throwable);
-            } catch (ClassCastException exception) {
-                logger.log(null, FQCN, DEBUG_INT, "{}", new Object[] { message }, throwable);
-            }
+        if (enabled(DEBUG_ENABLED)) {
+            LogDispatcher.dispatch(logger, null, FQCN, DEBUG_INT, MessageRenderers.render(message), null, throwable);
         }
     }
 
     @Override
     public void info(Object message) {
-        if (logger.isInfoEnabled()) {
-            if (message == null) logger.log(null, FQCN, INFO_INT, "Null message", null, null);
-            else try {
-                logger.log(null, FQCN, INFO_INT, (String) message, null, null);
-            } catch (ClassCastException exception) {
-                logger.log(null, FQCN, INFO_INT, "{}", new Object[] { message }, null);
-            }
+        if (enabled(INFO_ENABLED)) {
+            LogDispatcher.dispatch(logger, null, FQCN, INFO_INT, MessageRenderers.render(message), null, null);
         }
     }
 
     @Override
     public void info(Object message, Throwable throwable) {
-        if (logger.isInfoEnabled()) {
-            if (message == null) logger.log(null, FQCN, INFO_INT, "Null message", null, throwable);
-            else try {
-                logger.log(null, FQCN, INFO_INT, (String) message, null, throwable);
-            } catch (ClassCastException exception) {
-                logger.log(null, FQCN, INFO_INT, "{}", new Object[] { message }, throwable);
-            }
+        if (enabled(INFO_ENABLED)) {
+            LogDispatcher.dispatch(logger, null, FQCN, INFO_INT, MessageRenderers.render(message), null, throwable);
         }
     }
 
     @Override
     public void warn(Object message) {
-        if (logger.isWarnEnabled()) {
-            if (message == null) logger.log(null, FQCN, WARN_INT, "Null message", null, null);
-            else try {
-                logger.log(null, FQCN, WARN_INT, (String) message, null, null);
-            } catch (ClassCastException exception) {
-                logger.log(null, FQCN, WARN_INT, "{}", new Object[] { message }, null);
-            }
+        if (enabled(WARN_ENABLED)) {
+            LogDispatcher.dispatch(logger, null, FQCN, WARN_INT, MessageRenderers.render(message), null, null);
         }
     }
 
     @Override
     public void warn(Object message, Throwable throwable) {
-        if (logger.isWarnEnabled()) {
-            if (message == null) logger.log(null, FQCN, WARN_INT, "Null message", null, throwable);
-            else try {
-                logger.log(null, FQCN, WARN_INT, (String) message, null, throwable);
-            } catch (ClassCastException exception) {
-                logger.log(null, FQCN, WARN_INT, "{}", new Object[] { message }, throwable);
-            }
+        if (enabled(WARN_ENABLED)) {
+            LogDispatcher.dispatch(logger, null, FQCN, WARN_INT, MessageRenderers.render(message), null, throwable);
         }
     }
 
     @Override
     public void error(Object message) {
-        if (logger.isErrorEnabled()) {
-            if (message == null) logger.log(null, FQCN, ERROR_INT, "Null message", null, null);
-            else try {
-                logger.log(null, FQCN, ERROR_INT, (String) message, null, null);
-            } catch (ClassCastException exception) {
-                logger.log(null, FQCN, ERROR_INT, "{}", new Object[] { message }, null);
-            }
+        if (enabled(ERROR_ENABLED)) {
+            LogDispatcher.dispatch(logger, null, FQCN, ERROR_INT, MessageRenderers.render(message), null, null);
         }
     }
 
     @Override
     public void error(Object message, Throwable throwable) {
-        if (logger.isErrorEnabled()) {
-            if (message == null) logger.log(null, FQCN, ERROR_INT, "Null message", null, throwable);
-            else try {
-                logger.log(null, FQCN, ERROR_INT, (String) message, null, throwable);
-            } catch (ClassCastException exception) {
-                logger.log(null, FQCN, ERROR_INT, "{}", new Object[] { message }, throwable);
-            }
+        if (enabled(ERROR_ENABLED)) {
+            LogDispatcher.dispatch(logger, null, FQCN, ERROR_INT, MessageRenderers.render(message), null, throwable);
         }
     }
 
     @Override
     public void fatal(Object message) {
-        if (logger.isErrorEnabled()) {
-            if (message == null) logger.log(null, FQCN, ERROR_INT, "Null message", null, null);
-            else try {
-                logger.log(null, FQCN, ERROR_INT, (String) message, null, null);
-            } catch (ClassCastException exception) {
-                logger.log(null, FQCN, ERROR_INT, "{}", new Object[] { message }, null);
-            }
+        if (enabled(ERROR_ENABLED)) {
+            LogDispatcher.dispatch(logger, null, FQCN, ERROR_INT, MessageRenderers.render(message), null, null);
         }
     }
 
     @Override
     public void fatal(Object message, Throwable throwable) {
-        if (logger.isErrorEnabled()) {
-            if (message == null) logger.log(null, FQCN, ERROR_INT, "Null message", null, throwable);
-            else try {
-                logger.log(null, FQCN, ERROR_INT, (String) message, null, throwable);
-            } catch (ClassCastException exception) {
-                logger.log(null, FQCN, ERROR_INT, "{}", new Object[] { message }, throwable);
-            }
+        if (enabled(ERROR_ENABLED)) {
+            LogDispatcher.dispatch(logger, null, FQCN, ERROR_INT, MessageRenderers.render(message), null, throwable);
         }
     }
 
@@ -15,6 +15,10 @@
  * ========================================================================== */
 package org.usrz.libs.logging;
 
+import static org.slf4j.Logger.ROOT_LOGGER_NAME;
+
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.apache.commons.logging.LogFactory;
 
 /**
@@ -25,6 +29,11 @@ import org.apache.commons.logging.LogFactory;
  */
 public final class CommonsLoggingBridge extends LogFactory {
 
+    /* Our cache of adapters, by name */
+    private final ConcurrentHashMap<String, CommonsLoggingAdapter> adapters = new ConcurrentHashMap<>();
+    /* Our configuration attributes */
+    private final ConcurrentHashMap<String, Object> attributes = new ConcurrentHashMap<>();
+
     public CommonsLoggingBridge() {
         /* Nothing to do */
     }
@@ -36,36 +45,46 @@ public final class CommonsLoggingBridge extends LogFactory {
 
     @Override
     public CommonsLoggingAdapter getInstance(String name) {
-        return new CommonsLoggingAdapter(name);
+        if (name == null) name = ROOT_LOGGER_NAME;
+
+        final CommonsLoggingAdapter cached = adapters.get(name);
+        if (cached != null) return cached;
+
+        final CommonsLoggingAdapter created = new CommonsLoggingAdapter(name);
+        final CommonsLoggingAdapter previous = adapters.putIfAbsent(name, created);
+
+        return previous == null ? created : previous;
+    }
+
+    @Override
+    public void release() {
+        adapters.clear();
     }
 
     /* ====================================================================== */
-    /* Utterly useless methods                                                */
+    /* Attributes (we don't use them, but some frameworks like to set them)   */
     /* ====================================================================== */
 
     @Override
     public Object getAttribute(String name) {
-        return null;
+        return name == null ? null : attributes.get(name);
     }
 
     @Override
     public String[] getAttributeNames() {
-        return new String[0];
-    }
-
-    @Override
-    public void release() {
-        /* Nothing to do */
+        return attributes.keySet().toArray(new String[0]);
     }
 
     @Override
     public void removeAttribute(String name) {
-        /* Nothing to do */
+        if (name != null) attributes.remove(name);
     }
 
     @Override
     public void setAttribute(String name, Object value) {
-        throw new UnsupportedOperationException("You don't need this");
+        if (name == null) throw new NullPointerException("Null attribute name");
+        if (value == null) attributes.remove(name);
+        else attributes.put(name, value);
     }
 
 }
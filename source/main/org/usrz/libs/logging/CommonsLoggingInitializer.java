@@ -39,10 +39,7 @@ public final class CommonsLoggingInitializer {
 
         synchronized (CommonsLoggingInitializer.class) {
             try {
-                final String property = System.getProperty(SYSTEM_PROPERTY);
-                if ((property != null) && (!CommonsLoggingBridge.class.getName().equals(property)))
-                    throw new IllegalStateException("System property \"" + SYSTEM_PROPERTY + "\" set to \"" + property + "\"");
-                System.setProperty(SYSTEM_PROPERTY, CommonsLoggingBridge.class.getName());
+                setSystemProperty();
 
                 final CommonsLoggingBridge bridge = (CommonsLoggingBridge) LogFactory.getFactory();
                 final CommonsLoggingAdapter adapter = (CommonsLoggingAdapter) LogFactory.getLog(JavaLoggingInitializer.class);
@@ -60,4 +57,23 @@ public final class CommonsLoggingInitializer {
             initialized = true;
         }
     }
+
+    /**
+     * Register our bridge in the <code>org.apache.commons.logging.LogFactory</code>
+     * system property <em>without</em> bootstrapping the Commons Logging
+     * subsystem: it will pick our bridge up by itself the first time it's used.
+     */
+    public static void register() {
+        synchronized (CommonsLoggingInitializer.class) {
+            setSystemProperty();
+        }
+    }
+
+    private static void setSystemProperty() {
+        final String property = System.getProperty(SYSTEM_PROPERTY);
+        if ((property != null) && (!CommonsLoggingBridge.class.getName().equals(property)))
+            throw new IllegalStateException("System property \"" + SYSTEM_PROPERTY + "\" set to \"" + property + "\"");
+        System.setProperty(SYSTEM_PROPERTY, CommonsLoggingBridge.class.getName());
+    }
+
 }
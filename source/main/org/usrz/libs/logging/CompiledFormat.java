@@ -0,0 +1,274 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Formattable;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link String#format(String, Object...)} style template, parsed once.
+ *
+ * <p>Templates using only <code>%s</code>, <code>%d</code>, <code>%%</code>
+ * and <code>%n</code> (by far the most common ones in log messages) are
+ * rendered straight into a {@link StringBuilder}, without going through a
+ * {@link java.util.Formatter} parsing the template over and over again.
+ * Anything else (flags, widths, other conversions, or arguments needing
+ * them, like {@link Formattable}s) is handed over to
+ * {@link String#format(String, Object...)}, so the result is always the
+ * same.</p>
+ *
+ * <p>Simple templates can also be translated into <i>SLF4J</i>'s own
+ * <code>{}</code> syntax, so that the backend can format them whenever (and
+ * on whatever thread) it wants: see {@link #getSLF4JPattern()} and
+ * {@link #snapshot(Object[])}.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+final class CompiledFormat {
+
+    /* Our conversions */
+    private static final char STRING = 's';
+    private static final char DECIMAL = 'd';
+
+    /* How many templates we remember, see "of(...)" */
+    private static final int MAX_CACHED = 4096;
+    private static final ConcurrentHashMap<String, CompiledFormat> CACHE = new ConcurrentHashMap<>();
+
+    private final String pattern;
+    /* Literal text before each conversion, and the text after the last one */
+    private final String[] literals;
+    private final char[] conversions;
+    /* Whether we can render this ourselves */
+    private final boolean simple;
+    /* The same template for SLF4J, or null */
+    private final String slf4j;
+
+    private CompiledFormat(String pattern, String[] literals, char[] conversions, boolean simple) {
+        this.pattern = pattern;
+        this.literals = literals;
+        this.conversions = conversions;
+        this.simple = simple;
+        slf4j = simple && (conversions.length > 0) ? slf4j(literals) : null;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the compiled version of the specified template, remembering
+     * (a limited number of) templates already compiled.
+     */
+    static CompiledFormat of(String pattern) {
+        final CompiledFormat cached = CACHE.get(pattern);
+        if (cached != null) return cached;
+
+        final CompiledFormat compiled = compile(pattern);
+        if (CACHE.size() >= MAX_CACHED) return compiled;
+        final CompiledFormat previous = CACHE.putIfAbsent(pattern, compiled);
+        return previous == null ? compiled : previous;
+    }
+
+    /**
+     * Compile the specified template.
+     */
+    static CompiledFormat compile(String pattern) {
+        if (pattern == null) throw new NullPointerException("Null pattern");
+
+        final List<String> literals = new ArrayList<>();
+        final StringBuilder literal = new StringBuilder();
+        final StringBuilder conversions = new StringBuilder();
+        final String separator = System.lineSeparator();
+
+        for (int index = 0; index < pattern.length(); index ++) {
+            final char current = pattern.charAt(index);
+            if (current != '%') {
+                literal.append(current);
+                continue;
+            }
+
+            final char conversion = index + 1 < pattern.length() ? pattern.charAt(++ index) : 0;
+            if (conversion == '%') {
+                literal.append('%');
+            } else if (conversion == 'n') {
+                literal.append(separator);
+            } else if ((conversion == STRING) || (conversion == DECIMAL)) {
+                literals.add(literal.toString());
+                literal.setLength(0);
+                conversions.append(conversion);
+            } else {
+                /* Something we don't do */
+                return new CompiledFormat(pattern, null, null, false);
+            }
+        }
+
+        /* Localized digits? Let the Formatter deal with them */
+        final boolean zero = conversions.indexOf("d") < 0 ||
+                DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT)).getZeroDigit() == '0';
+
+        literals.add(literal.toString());
+        return new CompiledFormat(pattern,
+                                  literals.toArray(new String[literals.size()]),
+                                  conversions.toString().toCharArray(),
+                                  zero);
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the template this instance was compiled from.
+     */
+    String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Return the number of arguments this template uses, or <code>-1</code>
+     * if we don't know.
+     */
+    int getArity() {
+        return simple ? conversions.length : -1;
+    }
+
+    /**
+     * Return this template in <i>SLF4J</i>'s <code>{}</code> syntax, or
+     * <b>null</b> if it can't be translated (or has no arguments at all).
+     */
+    String getSLF4JPattern() {
+        return slf4j;
+    }
+
+    /**
+     * Return a copy of the specified arguments safe to be formatted later
+     * with our {@linkplain #getSLF4JPattern() SLF4J pattern}, rendering the
+     * same as {@link #format(Object...)} would now, or <b>null</b> if they
+     * can't be.
+     *
+     * <p>Immutable arguments (strings, numbers, ...) are copied as they are,
+     * anything else is rendered as a {@link String} straight away, so that
+     * it can't change (or be rendered differently by SLF4J, like arrays and
+     * throwables) before it's formatted.</p>
+     */
+    Object[] snapshot(Object[] arguments) {
+        if (slf4j == null) return null;
+        if ((arguments == null) || (arguments.length < conversions.length)) return null;
+
+        final Object[] snapshot = new Object[conversions.length];
+        return capture(arguments, snapshot) ? snapshot : null;
+    }
+
+    /**
+     * Copy the arguments used by this template in the specified array, like
+     * {@link #snapshot(Object[])} does, so that they can be
+     * {@linkplain #format(Object...) formatted} later (and possibly on
+     * another thread) returning <b>false</b> if they can't be.
+     */
+    boolean capture(Object[] arguments, Object[] into) {
+        if (!simple) return false;
+        if ((arguments == null) || (arguments.length < conversions.length)) return false;
+        if (into.length < conversions.length) return false;
+
+        for (int index = 0; index < conversions.length; index ++) {
+            final Object argument = arguments[index];
+            if (conversions[index] == DECIMAL) {
+                if ((argument == null) || (argument instanceof Integer) || (argument instanceof Long) ||
+                    (argument instanceof Short) || (argument instanceof Byte) ||
+                    (argument instanceof BigInteger)) into[index] = argument;
+                else return false;
+            } else if (immutable(argument)) {
+                into[index] = argument;
+            } else if (argument instanceof Formattable) {
+                return false;
+            } else try {
+                into[index] = argument.toString();
+            } catch (RuntimeException exception) {
+                /* Let whoever formats straight away deal with it */
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Format the specified arguments, exactly as
+     * {@link String#format(String, Object...)} would.
+     */
+    String format(Object... arguments) {
+        if (!simple) return String.format(pattern, arguments);
+
+        /* Not enough arguments, let String.format(...) complain */
+        final int count = arguments == null ? 0 : arguments.length;
+        if (count < conversions.length) return String.format(pattern, arguments);
+
+        final StringBuilder builder = new StringBuilder(pattern.length() + 16 * conversions.length);
+        for (int index = 0; index < conversions.length; index ++) {
+            builder.append(literals[index]);
+
+            final Object argument = arguments[index];
+            if (conversions[index] == STRING) {
+                if (argument instanceof Formattable) return String.format(pattern, arguments);
+                builder.append(argument);
+            } else if ((argument instanceof Integer) || (argument instanceof Long) ||
+                       (argument instanceof Short) || (argument instanceof Byte)) {
+                builder.append(((Number) argument).longValue());
+            } else if ((argument instanceof BigInteger) || (argument == null)) {
+                builder.append(argument);
+            } else {
+                /* Not an integral type, String.format(...) throws */
+                return String.format(pattern, arguments);
+            }
+        }
+        return builder.append(literals[conversions.length]).toString();
+    }
+
+    /* ====================================================================== */
+
+    private static boolean immutable(Object argument) {
+        if ((argument == null) || (argument instanceof String) ||
+            (argument instanceof Integer) || (argument instanceof Long) ||
+            (argument instanceof Short) || (argument instanceof Byte) ||
+            (argument instanceof Double) || (argument instanceof Float) ||
+            (argument instanceof BigInteger) || (argument instanceof BigDecimal) ||
+            (argument instanceof Boolean) || (argument instanceof Character) ||
+            (argument instanceof Enum) || (argument instanceof UUID)) return true;
+
+        /* Dates, times, durations, ... are all immutable in "java.time" */
+        return argument.getClass().getName().startsWith("java.time.");
+    }
+
+    private static String slf4j(String[] literals) {
+        final StringBuilder builder = new StringBuilder();
+        for (int index = 0; index < literals.length; index ++) {
+            final String literal = literals[index];
+
+            /* Literal "{}"s would need escaping, and escapes get messy */
+            if (literal.contains("{}")) return null;
+            builder.append(literal);
+
+            if (index == literals.length - 1) break;
+
+            /* A backslash before "{}" would escape it: escape the backslash */
+            if (literal.endsWith("\\")) builder.append('\\');
+            builder.append("{}");
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,302 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+import org.slf4j.spi.LocationAwareLogger;
+import org.slf4j.spi.MDCAdapter;
+
+/**
+ * A bounded ring of preallocated event slots, where threads logging simply
+ * copy their templates and arguments, leaving formatting and dispatching to
+ * a single consumer thread.
+ *
+ * <p>Arguments are {@linkplain CompiledFormat#capture(Object[], Object[])
+ * captured} by our {@link CompiledFormat}s: immutable ones are kept as they
+ * are, anything else is rendered with {@link Object#toString()} straight away.
+ * Templates we can't format ourselves (or with too many arguments) are still
+ * formatted by whoever logs, and their messages deferred like any other.</p>
+ *
+ * <p>Events are replayed like our {@link EarlyEvents}: with <i>Logback</i>
+ * they keep their original timestamp, thread name and MDC (but we don't know
+ * where they were logged from), while other backends will see them as new
+ * events logged by our consumer thread.</p>
+ *
+ * <p>When the consumer can't keep up, threads logging will wait whenever all
+ * slots are taken.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+final class DeferredDispatcher {
+
+    /* The default number of slots in our ring */
+    static final int DEFAULT_CAPACITY = Math.max(1, Integer.getInteger("org.usrz.libs.logging.deferred.capacity", 8192));
+    /* The maximum number of arguments we capture */
+    private static final int MAX_ARGUMENTS = 8;
+    /* How long to park waiting for events */
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    /* How long producers park waiting for slots to be freed */
+    private static final long BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /* Whether we can read Logback's (copy-on-write) MDC map without copying */
+    private static final boolean LOGBACK_MDC = LogbackMDC.available();
+
+    /* Our slots, indexed by sequence number */
+    private final Slot[] slots;
+    private final int mask;
+
+    /* The next sequence to claim, and the next one to consume */
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+
+    /* Our consumer thread, and whether it's parked or not */
+    private final Thread consumer;
+    private volatile boolean parked = false;
+    private volatile boolean closed = false;
+
+    /* ====================================================================== */
+
+    /**
+     * Create a new {@link DeferredDispatcher} with at least the specified
+     * number of slots (rounded up to a power of two).
+     */
+    DeferredDispatcher(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Invalid capacity " + capacity);
+        if (capacity > (1 << 30)) throw new IllegalArgumentException("Capacity " + capacity + " too big");
+
+        final int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        slots = new Slot[size];
+        for (int index = 0; index < size; index ++) slots[index] = new Slot(index - size);
+        mask = size - 1;
+
+        consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "DeferredDispatcher");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Defer formatting and dispatching an event with a template, returning
+     * <b>false</b> if it should be formatted by the caller.
+     */
+    boolean defer(LocationAwareLogger logger, String fqcn, int level, CompiledFormat format, Object[] arguments, Throwable throwable) {
+        final int arity = format.getArity();
+        if ((arity < 0) || (arity > MAX_ARGUMENTS)) return false;
+
+        final Slot slot = claim();
+        if (slot == null) return false;
+
+        /* A claimed slot must be published, even if empty */
+        boolean captured = false;
+        try {
+            captured = format.capture(arguments, slot.arguments);
+            if (captured) slot.set(logger, null, fqcn, level, format, null, throwable);
+        } finally {
+            publish(slot);
+        }
+        return captured && !abandoned(slot);
+    }
+
+    /**
+     * Defer dispatching an already rendered message, returning <b>false</b>
+     * if it should be dispatched by the caller.
+     */
+    boolean defer(LocationAwareLogger logger, Marker marker, String fqcn, int level, String message, Throwable throwable) {
+        final Slot slot = claim();
+        if (slot == null) return false;
+
+        slot.set(logger, marker, fqcn, level, null, message, throwable);
+        publish(slot);
+        return !abandoned(slot);
+    }
+
+    /**
+     * Wait until all events deferred so far have been dispatched.
+     */
+    void flush() {
+        final long target = claimed.get();
+        while ((consumed.get() < target) && consumer.isAlive()) {
+            LockSupport.unpark(consumer);
+            LockSupport.parkNanos(this, BACKOFF_NANOS);
+        }
+    }
+
+    /**
+     * Dispatch all pending events and stop our consumer thread.
+     */
+    void close() {
+        closed = true;
+        LockSupport.unpark(consumer);
+
+        boolean interrupted = false;
+        while (consumer.isAlive()) try {
+            consumer.join();
+        } catch (InterruptedException exception) {
+            interrupted = true;
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /* ====================================================================== */
+
+    private Slot claim() {
+        if (closed) return null;
+
+        /* Wait for the consumer if we're too far ahead */
+        final long sequence = claimed.getAndIncrement();
+        while (sequence - consumed.get() >= slots.length) {
+            if (!consumer.isAlive()) return null;
+            LockSupport.unpark(consumer);
+            LockSupport.parkNanos(this, BACKOFF_NANOS);
+        }
+
+        final Slot slot = slots[(int) sequence & mask];
+        slot.pending = sequence;
+        slot.timestamp = System.currentTimeMillis();
+        slot.threadName = Thread.currentThread().getName();
+        slot.mdc = mdc();
+        return slot;
+    }
+
+    private void publish(Slot slot) {
+        slot.sequence = slot.pending;
+        if (parked) LockSupport.unpark(consumer);
+    }
+
+    /*
+     * Check (after publishing) whether our consumer stopped without seeing
+     * the event in the slot: when closing, it might have quit between our
+     * check on "closed" and our claim. If so, take the event back.
+     */
+    private boolean abandoned(Slot slot) {
+        if (!closed) return false;
+
+        boolean interrupted = false;
+        while (consumer.isAlive()) try {
+            consumer.join();
+        } catch (InterruptedException exception) {
+            interrupted = true;
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+
+        if (consumed.get() > slot.pending) return false;
+        slot.clear();
+        return true;
+    }
+
+    private void consume() {
+        final EarlyEvents.Replayer replayer = EarlyEvents.Replayer.create();
+        long next = 0;
+
+        while (true) {
+            final Slot slot = slots[(int) next & mask];
+
+            /* Nothing published: quit if closed, or wait for events */
+            if (slot.sequence != next) {
+                if (closed && (claimed.get() == next)) break;
+                parked = true;
+                if ((slot.sequence != next) && !closed) LockSupport.parkNanos(this, PARK_NANOS);
+                parked = false;
+                continue;
+            }
+
+            try {
+                if (slot.logger != null) replayer.replay(slot.event());
+            } catch (RuntimeException exception) {
+                System.err.println("Exception dispatching deferred event");
+                exception.printStackTrace(System.err);
+            } finally {
+                slot.clear();
+                consumed.lazySet(++ next);
+            }
+        }
+    }
+
+    /* ====================================================================== */
+
+    private static Map<?, ?> mdc() {
+        if (LOGBACK_MDC) return LogbackMDC.getPropertyMap();
+        final MDCAdapter adapter = MDC.getMDCAdapter();
+        return adapter == null ? null : adapter.getCopyOfContextMap();
+    }
+
+    /* ====================================================================== */
+
+    /* A preallocated event, reused over and over again */
+    private static final class Slot {
+
+        /* The sequence last published in this slot */
+        private volatile long sequence;
+        /* The sequence claimed, only touched by the producer */
+        private long pending;
+
+        private final Object[] arguments = new Object[MAX_ARGUMENTS];
+        private LocationAwareLogger logger;
+        private Marker marker;
+        private String fqcn;
+        private int level;
+        private CompiledFormat format;
+        private String message;
+        private Throwable throwable;
+
+        private long timestamp;
+        private String threadName;
+        private Map<?, ?> mdc;
+
+        private Slot(long sequence) {
+            this.sequence = sequence;
+        }
+
+        private void set(LocationAwareLogger logger, Marker marker, String fqcn, int level, CompiledFormat format, String message, Throwable throwable) {
+            this.logger = logger;
+            this.marker = marker;
+            this.fqcn = fqcn;
+            this.level = level;
+            this.format = format;
+            this.message = message;
+            this.throwable = throwable;
+        }
+
+        private EarlyEvents.Event event() {
+            final String rendered = format == null ? message : format.format(arguments);
+            return new EarlyEvents.Event(logger, marker, fqcn, level, rendered, null, throwable,
+                                         timestamp, threadName, mdc, null);
+        }
+
+        private void clear() {
+            for (int index = 0; index < arguments.length; index ++) arguments[index] = null;
+            logger = null;
+            marker = null;
+            format = null;
+            message = null;
+            throwable = null;
+            threadName = null;
+            mdc = null;
+        }
+    }
+}
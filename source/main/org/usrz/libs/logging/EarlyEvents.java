@@ -0,0 +1,201 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+import org.slf4j.spi.LocationAwareLogger;
+
+/**
+ * A bounded, lock-free buffer for events logged while {@link Logging} is
+ * being initialized.
+ *
+ * <p>While the buffer is open, events are simply captured (together with
+ * their timestamp, thread name, MDC and caller stack) and once it's closed
+ * they are replayed, in order, to their loggers. With <i>Logback</i> as a
+ * backend, replayed events will keep their original timestamps, thread names,
+ * MDC and caller data; other backends will just see them as new events.</p>
+ *
+ * <p>The buffer can hold <code>org.usrz.libs.logging.early.capacity</code>
+ * events (by default 1024): once full, events are dispatched straight away.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+final class EarlyEvents {
+
+    private static final int CAPACITY = Math.max(0, Integer.getInteger("org.usrz.libs.logging.early.capacity", 1024));
+
+    /* The index to claim in our array, negative when closed */
+    private static final AtomicInteger NEXT = new AtomicInteger(-1);
+    /* Our events, published after their index is claimed */
+    private static final AtomicReferenceArray<Event> EVENTS = new AtomicReferenceArray<>(CAPACITY);
+    /* A quick check on whether we're capturing or not */
+    private static volatile boolean capturing = false;
+    /* Published in a claimed slot when capturing its event failed */
+    private static final Event FAILED = new Event(null, null, null, 0, null, null, null, 0, null, null, null);
+
+    private EarlyEvents() {
+        throw new IllegalStateException("Do not construct");
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Start capturing events.
+     */
+    static void open() {
+        if (CAPACITY == 0) return;
+        if (NEXT.compareAndSet(-1, 0)) capturing = true;
+    }
+
+    /**
+     * Stop capturing events, and replay all the ones we captured.
+     */
+    static void close() {
+        capturing = false;
+
+        final int claimed = NEXT.getAndSet(-1);
+        final int count = Math.min(claimed, CAPACITY);
+        if (count <= 0) return;
+
+        final Replayer replayer = Replayer.create();
+        for (int index = 0; index < count; index ++) {
+
+            /* The slot was claimed, but the event might not be there yet */
+            Event event;
+            while ((event = EVENTS.getAndSet(index, null)) == null) Thread.yield();
+
+            if (event != FAILED) replayer.replay(event);
+        }
+    }
+
+    /**
+     * Return <b>true</b> if we are (most likely) capturing events.
+     */
+    static boolean isCapturing() {
+        return capturing;
+    }
+
+    /**
+     * Capture an event, returning <b>true</b> if it was captured or
+     * <b>false</b> if it should be dispatched as usual.
+     */
+    static boolean capture(LocationAwareLogger logger, Marker marker, String fqcn, int level, String message, Object[] arguments, Throwable throwable) {
+        if (!capturing) return false;
+
+        int index;
+        do {
+            index = NEXT.get();
+            if ((index < 0) || (index >= CAPACITY)) return false;
+        } while (!NEXT.compareAndSet(index, index + 1));
+
+        /* Always fill the slot we claimed, or close() would wait forever */
+        Event event = FAILED;
+        try {
+            event = new Event(logger, marker, fqcn, level, message, arguments, throwable);
+        } finally {
+            EVENTS.set(index, event);
+        }
+        return true;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * An event we captured, with everything we need to replay it.
+     */
+    static final class Event {
+
+        final LocationAwareLogger logger;
+        final Marker marker;
+        final String fqcn;
+        final int level;
+        final String message;
+        final Object[] arguments;
+        final Throwable throwable;
+
+        final long timestamp;
+        final String threadName;
+        final Map<?, ?> mdc;
+        final Throwable caller;
+
+        private Event(LocationAwareLogger logger, Marker marker, String fqcn, int level, String message, Object[] arguments, Throwable throwable) {
+            this.logger = logger;
+            this.marker = marker;
+            this.fqcn = fqcn;
+            this.level = level;
+            this.message = message;
+            this.arguments = arguments;
+            this.throwable = throwable;
+
+            timestamp = System.currentTimeMillis();
+            threadName = Thread.currentThread().getName();
+            mdc = MDC.getCopyOfContextMap();
+            caller = new Throwable();
+        }
+
+        /**
+         * Create an event captured elsewhere, with a <b>null</b> caller
+         * if we don't know where it was logged from.
+         */
+        Event(LocationAwareLogger logger, Marker marker, String fqcn, int level, String message, Object[] arguments, Throwable throwable,
+              long timestamp, String threadName, Map<?, ?> mdc, Throwable caller) {
+            this.logger = logger;
+            this.marker = marker;
+            this.fqcn = fqcn;
+            this.level = level;
+            this.message = message;
+            this.arguments = arguments;
+            this.throwable = throwable;
+            this.timestamp = timestamp;
+            this.threadName = threadName;
+            this.mdc = mdc;
+            this.caller = caller;
+        }
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Replay captured events to their loggers.
+     */
+    static class Replayer {
+
+        static Replayer create() {
+            try {
+                return new LogbackReplayer();
+            } catch (NoClassDefFoundError error) {
+                return new Replayer();
+            }
+        }
+
+        void replay(Event event) {
+            final LogSink sink = LogDispatcher.getSink();
+            if (sink != null) {
+                sink.append(event.timestamp, event.threadName, event.logger.getName(),
+                            event.level, event.message, event.arguments, event.throwable);
+                return;
+            }
+
+            event.logger.log(event.marker, event.fqcn, event.level, event.message, event.arguments, event.throwable);
+        }
+
+    }
+}
@@ -0,0 +1,166 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static org.slf4j.spi.LocationAwareLogger.DEBUG_INT;
+import static org.slf4j.spi.LocationAwareLogger.ERROR_INT;
+import static org.slf4j.spi.LocationAwareLogger.INFO_INT;
+import static org.slf4j.spi.LocationAwareLogger.TRACE_INT;
+import static org.slf4j.spi.LocationAwareLogger.WARN_INT;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.slf4j.spi.LocationAwareLogger;
+
+/**
+ * A helper class computing (and keeping up to date) the levels enabled for
+ * a {@link LocationAwareLogger} as a simple <code>int</code> bitmask.
+ *
+ * <p>Adapters can keep the bitmask in a <code>volatile</code> field, register
+ * a {@link Listener} here, and checking whether a level is enabled becomes a
+ * field read and a bit test, rather than whatever the backend needs to do
+ * to figure out its effective level.</p>
+ *
+ * <p>When the backend is <i>Logback</i>, its configuration changes will be
+ * automatically notified to all listeners, otherwise someone will have to
+ * call {@link Logging#refreshLevels()} by hand.</p>
+ *
+ * <p>When <i>Logback</i> has turbo filters, deciding event by event (maybe
+ * on the MDC or the thread), levels can't be cached: the bitmask will only
+ * exclude the levels dropped by our {@link LoadShedder}, and will have the
+ * {@link #FILTERED} bit set, meaning the logger itself must be asked.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+final class EffectiveLevels {
+
+    static final int TRACE_ENABLED = 0x01;
+    static final int DEBUG_ENABLED = 0x02;
+    static final int INFO_ENABLED  = 0x04;
+    static final int WARN_ENABLED  = 0x08;
+    static final int ERROR_ENABLED = 0x10;
+    /* The logger must be asked, see isEnabled(...) */
+    static final int FILTERED      = 0x20;
+
+    /* Whether Logback is around, and we can look for turbo filters */
+    private static final boolean LOGBACK = logback();
+
+    /* All our listeners, weakly referenced */
+    private static final Set<Listener> LISTENERS = Collections.newSetFromMap(new WeakHashMap<Listener, Boolean>());
+    /* Whether we tried to install our backend listener or not */
+    private static boolean installed = false;
+
+    private EffectiveLevels() {
+        throw new IllegalStateException("Do not construct");
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Compute the enabled levels bitmask for the specified logger, without
+     * the levels dropped by our {@link LoadShedder}, if shedding load.
+     */
+    static int of(LocationAwareLogger logger) {
+        final int minimum = LogDispatcher.getMinimumLevel();
+        if (LOGBACK && LogbackLevelsListener.isFiltered(logger)) {
+            return FILTERED
+                 | (minimum <= TRACE_INT ? TRACE_ENABLED : 0)
+                 | (minimum <= DEBUG_INT ? DEBUG_ENABLED : 0)
+                 | (minimum <= INFO_INT  ? INFO_ENABLED  : 0)
+                 | (minimum <= WARN_INT  ? WARN_ENABLED  : 0)
+                 | (minimum <= ERROR_INT ? ERROR_ENABLED : 0);
+        }
+        return (minimum <= TRACE_INT && logger.isTraceEnabled() ? TRACE_ENABLED : 0)
+             | (minimum <= DEBUG_INT && logger.isDebugEnabled() ? DEBUG_ENABLED : 0)
+             | (minimum <= INFO_INT  && logger.isInfoEnabled()  ? INFO_ENABLED  : 0)
+             | (minimum <= WARN_INT  && logger.isWarnEnabled()  ? WARN_ENABLED  : 0)
+             | (minimum <= ERROR_INT && logger.isErrorEnabled() ? ERROR_ENABLED : 0);
+    }
+
+    /**
+     * Ask a logger whether a level (one of the <code>*_ENABLED</code> bits)
+     * is enabled, for bitmasks with the {@link #FILTERED} bit set.
+     */
+    static boolean isEnabled(LocationAwareLogger logger, int level) {
+        switch (level) {
+            case TRACE_ENABLED: return logger.isTraceEnabled();
+            case DEBUG_ENABLED: return logger.isDebugEnabled();
+            case INFO_ENABLED:  return logger.isInfoEnabled();
+            case WARN_ENABLED:  return logger.isWarnEnabled();
+            case ERROR_ENABLED: return logger.isErrorEnabled();
+            default: throw new IllegalArgumentException("Invalid level " + level);
+        }
+    }
+
+    /**
+     * Register a {@link Listener} to be notified when levels change.
+     *
+     * <p>The listener is <em>weakly</em> referenced: whoever registers it
+     * must keep a strong reference to it for as long as it's needed.</p>
+     */
+    static void register(Listener listener) {
+        synchronized (LISTENERS) {
+            LISTENERS.add(listener);
+            if (installed) return;
+            installed = true;
+        }
+
+        try {
+            LogbackLevelsListener.install();
+        } catch (NoClassDefFoundError error) {
+            /* No Logback, someone will call Logging.refreshLevels() */
+        }
+    }
+
+    /**
+     * Notify all registered {@link Listener}s that levels (might) have changed.
+     */
+    static void refresh() {
+        final List<Listener> listeners;
+        synchronized (LISTENERS) {
+            listeners = new ArrayList<>(LISTENERS);
+        }
+        for (Listener listener: listeners) listener.levelsChanged();
+    }
+
+    /* ====================================================================== */
+
+    private static boolean logback() {
+        try {
+            return LogbackLevelsListener.available();
+        } catch (NoClassDefFoundError error) {
+            return false;
+        }
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * A listener notified when the backend's levels (might) have changed.
+     */
+    interface Listener {
+
+        /**
+         * Notify this instance that levels (might) have changed.
+         */
+        public void levelsChanged();
+
+    }
+}
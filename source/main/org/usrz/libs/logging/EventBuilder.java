@@ -0,0 +1,293 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import org.slf4j.MDC;
+import org.slf4j.spi.LocationAwareLogger;
+
+/**
+ * A builder for structured events, with a message, typed key/value fields
+ * and a {@link Throwable}, obtained from one of {@link Log}'s
+ * <code>at<i>Level</i>()</code> methods.
+ *
+ * <pre>
+ * log.atInfo().message("Request served")
+ *             .field("path", path)
+ *             .field("status", 200)
+ *             .field("millis", elapsed)
+ *             .log();
+ * </pre>
+ *
+ * <p>Fields are <b>not</b> rendered into the message: when the event is
+ * {@linkplain #log() logged} they are put in the {@link MDC} (and removed,
+ * or restored to whatever they were, straight after) so that the backend
+ * (or a {@link LogSink}) can emit them as it sees fit.</p>
+ *
+ * <p>Builders are kept one per thread and reused, storing fields in arrays
+ * which only grow, so that building an event does not allocate per field.
+ * When the level is disabled a shared builder doing nothing is returned.
+ * For this reason builders must <b>not</b> be kept around or shared: always
+ * call {@link #log()} once done. A builder abandoned without logging (for
+ * example because evaluating an argument threw) is simply replaced in the
+ * pool by the next one requested on the same thread.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+public final class EventBuilder {
+
+    /* The fully qualified class name of this class */
+    private static final String FQCN = EventBuilder.class.getName();
+
+    /* The types of our fields */
+    private static final byte STRING = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte BOOLEAN = 3;
+    private static final byte CHARACTER = 4;
+    private static final byte OBJECT = 5;
+
+    /* The shared builder returned for disabled levels */
+    static final EventBuilder DISABLED = new EventBuilder(false);
+
+    /* Our builders, one per thread */
+    private static final ThreadLocal<EventBuilder> BUILDERS = new ThreadLocal<EventBuilder>() {
+        @Override
+        protected EventBuilder initialValue() {
+            return new EventBuilder(true);
+        }
+    };
+
+    private final boolean enabled;
+    private boolean inUse;
+
+    /* The event we're building */
+    private LocationAwareLogger logger;
+    private int level;
+    private String message;
+    private Object[] arguments;
+    private Throwable throwable;
+
+    /* Our fields, and what was in the MDC before we put them there */
+    private int size;
+    private String[] keys = new String[8];
+    private byte[] types = new byte[8];
+    private long[] longs = new long[8];
+    private double[] doubles = new double[8];
+    private Object[] objects = new Object[8];
+    private String[] previous = new String[8];
+
+    private EventBuilder(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return a builder for an event at the specified (enabled) level.
+     */
+    static EventBuilder acquire(LocationAwareLogger logger, int level) {
+        EventBuilder builder = BUILDERS.get();
+
+        /*
+         * Someone is building an event while building this one, or a builder
+         * was abandoned without calling log() (an argument threw, maybe). We
+         * can't tell the two apart, so take a new builder and pool it in its
+         * place: a nested builder still holds on to the old one and works as
+         * before, while an abandoned one (and whatever it referenced) is left
+         * for the garbage collector instead of disabling the pool for good.
+         */
+        if (builder.inUse) BUILDERS.set(builder = new EventBuilder(true));
+
+        builder.inUse = true;
+        builder.logger = logger;
+        builder.level = level;
+        return builder;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Set the message of this event.
+     */
+    public EventBuilder message(String message) {
+        if (!enabled) return this;
+        this.message = message;
+        this.arguments = null;
+        return this;
+    }
+
+    /**
+     * Set the message of this event, formatted when logged.
+     *
+     * @see String#format(String, Object...)
+     */
+    public EventBuilder message(String format, Object... arguments) {
+        if (!enabled) return this;
+        this.message = format;
+        this.arguments = arguments;
+        return this;
+    }
+
+    /**
+     * Set the {@link Throwable} associated with this event.
+     */
+    public EventBuilder throwable(Throwable throwable) {
+        if (!enabled) return this;
+        this.throwable = throwable;
+        return this;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Add a {@link String} field to this event.
+     */
+    public EventBuilder field(String key, String value) {
+        if (enabled) add(key, STRING).objects[size - 1] = value;
+        return this;
+    }
+
+    /**
+     * Add an integral field to this event.
+     */
+    public EventBuilder field(String key, long value) {
+        if (enabled) add(key, LONG).longs[size - 1] = value;
+        return this;
+    }
+
+    /**
+     * Add a floating point field to this event.
+     */
+    public EventBuilder field(String key, double value) {
+        if (enabled) add(key, DOUBLE).doubles[size - 1] = value;
+        return this;
+    }
+
+    /**
+     * Add a <code>boolean</code> field to this event.
+     */
+    public EventBuilder field(String key, boolean value) {
+        if (enabled) add(key, BOOLEAN).longs[size - 1] = value ? 1 : 0;
+        return this;
+    }
+
+    /**
+     * Add a <code>char</code> field to this event.
+     */
+    public EventBuilder field(String key, char value) {
+        if (enabled) add(key, CHARACTER).longs[size - 1] = value;
+        return this;
+    }
+
+    /**
+     * Add a field to this event, rendered by {@link MessageRenderers} only
+     * when the event is logged.
+     */
+    public EventBuilder field(String key, Object value) {
+        if (enabled) add(key, OBJECT).objects[size - 1] = value;
+        return this;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Log this event, and make this builder available for the next one.
+     */
+    public void log() {
+        if (!enabled) return;
+
+        try {
+            /* Put our fields in the MDC, remembering what was there */
+            for (int index = 0; index < size; index ++) {
+                previous[index] = MDC.get(keys[index]);
+                MDC.put(keys[index], render(index));
+            }
+
+            try {
+                if (arguments == null) {
+                    LogDispatcher.dispatch(logger, null, FQCN, level, message, null, throwable);
+                } else {
+                    LogDispatcher.dispatchFormat(logger, FQCN, level, message, arguments, throwable);
+                }
+            } finally {
+                /* Backwards, in case the same key was specified twice */
+                for (int index = size - 1; index >= 0; index --) {
+                    if (previous[index] == null) MDC.remove(keys[index]);
+                    else MDC.put(keys[index], previous[index]);
+                }
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /* ====================================================================== */
+
+    private EventBuilder add(String key, byte type) {
+        if (key == null) throw new NullPointerException("Null key");
+        if (size == keys.length) grow();
+        keys[size] = key;
+        types[size] = type;
+        size ++;
+        return this;
+    }
+
+    private String render(int index) {
+        switch (types[index]) {
+            case STRING:    return (String) objects[index];
+            case LONG:      return Long.toString(longs[index]);
+            case DOUBLE:    return Double.toString(doubles[index]);
+            case BOOLEAN:   return longs[index] != 0 ? "true" : "false";
+            case CHARACTER: return String.valueOf((char) longs[index]);
+            default:        return objects[index] == null ? null : MessageRenderers.render(objects[index]);
+        }
+    }
+
+    private void grow() {
+        final int length = keys.length * 2;
+        final String[] keys = new String[length];
+        final byte[] types = new byte[length];
+        final long[] longs = new long[length];
+        final double[] doubles = new double[length];
+        final Object[] objects = new Object[length];
+        System.arraycopy(this.keys, 0, keys, 0, size);
+        System.arraycopy(this.types, 0, types, 0, size);
+        System.arraycopy(this.longs, 0, longs, 0, size);
+        System.arraycopy(this.doubles, 0, doubles, 0, size);
+        System.arraycopy(this.objects, 0, objects, 0, size);
+        this.keys = keys;
+        this.types = types;
+        this.longs = longs;
+        this.doubles = doubles;
+        this.objects = objects;
+        this.previous = new String[length];
+    }
+
+    private void release() {
+        /* Forget what we referenced, so it can be collected */
+        for (int index = 0; index < size; index ++) {
+            keys[index] = null;
+            objects[index] = null;
+            previous[index] = null;
+        }
+        size = 0;
+        logger = null;
+        message = null;
+        arguments = null;
+        throwable = null;
+        inUse = false;
+    }
+}
@@ -0,0 +1,51 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An encoder turning events into bytes for our sinks.
+ *
+ * <p>Instances are <b>not</b> thread safe (they normally reuse their buffers
+ * across events), keep one per thread.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+interface EventEncoder {
+
+    /**
+     * Encode an event, returning a {@link ByteBuffer} ready to be read and
+     * valid only until the next call to this encoder.
+     *
+     * @see LogSink#append(long, String, String, int, String, Object[], Throwable)
+     */
+    public ByteBuffer encode(long timestamp, String threadName, String loggerName,
+                             int level, String message, Object[] arguments,
+                             Throwable throwable);
+
+    /**
+     * Encode an event with a {@link String#format(String, Object...)} style
+     * template, returning a {@link ByteBuffer} ready to be read and valid only
+     * until the next call to this encoder.
+     *
+     * @see TemplateLogSink#appendTemplate(long, String, String, int, String, Object[], Throwable)
+     */
+    public ByteBuffer encodeTemplate(long timestamp, String threadName, String loggerName,
+                                     int level, String format, Object[] arguments,
+                                     Throwable throwable);
+
+}
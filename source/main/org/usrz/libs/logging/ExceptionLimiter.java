@@ -0,0 +1,257 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.spi.LocationAwareLogger;
+
+/**
+ * A rate limiter for events with a {@link Throwable}, keeping a token bucket
+ * for each exception class (or for each exception class and throw site).
+ *
+ * <p>Buckets are refilled lazily, without locks: each one simply remembers
+ * (in a single {@link AtomicLong}) the time at which it will be full again,
+ * like the <i>generic cell rate algorithm</i> does. At most a fixed number of
+ * buckets are kept: exceptions seen after that all share the same bucket.</p>
+ *
+ * <p>Events suppressed are counted, and periodically reported (per bucket)
+ * by a summary line.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+final class ExceptionLimiter {
+
+    /* The fully qualified class name of this class */
+    private static final String FQCN = ExceptionLimiter.class.getName();
+    /* How many buckets we keep at most */
+    private static final int MAX_BUCKETS = 1024;
+    /* The longest interval (in nanoseconds) between two tokens */
+    private static final double MAX_INTERVAL = 1E15;
+    /* How often we report suppressed events, in milliseconds */
+    private static final long REPORT_INTERVAL = Long.getLong("org.usrz.libs.logging.throttle.interval", 10000);
+
+    private final boolean bySite;
+    /* Nanoseconds between tokens, and how far ahead buckets can go */
+    private final long interval;
+    private final long tolerance;
+
+    /* Our buckets, by key, and the one shared when we have too many */
+    private final ConcurrentHashMap<Object, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Bucket overflow = new Bucket("other exceptions");
+    /* Reporting suppressed events, if we have to */
+    private final ScheduledExecutorService reporter;
+
+    /* ====================================================================== */
+
+    /**
+     * Create a new {@link ExceptionLimiter}.
+     *
+     * @param rate The number of events per second each bucket is refilled with.
+     * @param burst The maximum number of events each bucket can hold.
+     * @param bySite Whether buckets are kept by exception class and throw
+     *               site (the topmost stack frame) or only by class.
+     */
+    ExceptionLimiter(double rate, int burst, boolean bySite) {
+        if (!(rate > 0) || Double.isInfinite(rate)) throw new IllegalArgumentException("Invalid rate " + rate);
+        if (burst < 1) throw new IllegalArgumentException("Invalid burst " + burst);
+
+        this.bySite = bySite;
+        /* Clamped (to some 11 days between tokens) so that nothing overflows */
+        interval = (long) Math.max(1, Math.min(TimeUnit.SECONDS.toNanos(1) / rate, MAX_INTERVAL));
+        tolerance = (long) Math.min((double) interval * (burst - 1), MAX_INTERVAL * 100);
+
+        if (REPORT_INTERVAL <= 0) {
+            reporter = null;
+        } else {
+            reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "ExceptionLimiter");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            reporter.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    report();
+                }
+            }, REPORT_INTERVAL, REPORT_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return <b>true</b> if an event with the specified {@link Throwable} can
+     * be logged, or <b>false</b> (counting it) if it should be suppressed.
+     */
+    boolean acquire(LocationAwareLogger logger, int level, Throwable throwable) {
+        final Bucket bucket = bucket(throwable);
+        final long now = System.nanoTime();
+
+        while (true) {
+            final long full = bucket.full.get();
+            final long start = full - now < 0 ? now : full;
+            if (start - now > tolerance) break;
+            if (bucket.full.compareAndSet(full, start + interval)) return true;
+        }
+
+        /* Suppressed, remember where for our report */
+        bucket.logger = logger;
+        bucket.level = level;
+        bucket.suppressed.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Log a summary line for each bucket which suppressed events since the
+     * last report.
+     */
+    void report() {
+        for (Bucket bucket: buckets.values()) report(bucket);
+        report(overflow);
+    }
+
+    /**
+     * Report all pending suppressed events, and stop reporting them
+     * periodically.
+     */
+    void close() {
+        if (reporter != null) reporter.shutdown();
+        report();
+    }
+
+    /* ====================================================================== */
+
+    private Bucket bucket(Throwable throwable) {
+        final Object key;
+        if (bySite) {
+            final StackTraceElement[] frames = throwable.getStackTrace();
+            key = new Site(throwable.getClass(), frames.length == 0 ? null : frames[0]);
+        } else {
+            key = throwable.getClass();
+        }
+
+        final Bucket bucket = buckets.get(key);
+        if (bucket != null) return bucket;
+        if (buckets.size() >= MAX_BUCKETS) return overflow;
+
+        final Bucket created = new Bucket(key instanceof Class ? ((Class<?>) key).getName() : key.toString());
+        final Bucket previous = buckets.putIfAbsent(key, created);
+        return previous == null ? created : previous;
+    }
+
+    private void report(Bucket bucket) {
+        final long suppressed = bucket.drain();
+        if (suppressed == 0) return;
+
+        try {
+            LogDispatcher.deliver(bucket.logger, null, FQCN, bucket.level,
+                                  "Suppressed " + suppressed + " events with " + bucket.name, null, null);
+        } catch (RuntimeException exception) {
+            System.err.println("Exception reporting suppressed events with " + bucket.name);
+            exception.printStackTrace(System.err);
+        }
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Create an {@link ExceptionLimiter} from the
+     * <code>org.usrz.libs.logging.exceptions.*</code> system properties, or
+     * return <b>null</b> if no rate was specified or if any of them is
+     * malformed (after reporting it, we don't want to fail initialization).
+     */
+    static ExceptionLimiter fromProperties() {
+        try {
+            final double rate = Double.parseDouble(System.getProperty(Logging.EXCEPTION_RATE_PROPERTY, "0"));
+            if (!(rate > 0)) return null;
+
+            final int burst = Integer.parseInt(System.getProperty(Logging.EXCEPTION_BURST_PROPERTY, "1"));
+            return new ExceptionLimiter(rate, burst, Boolean.getBoolean(Logging.EXCEPTION_BY_SITE_PROPERTY));
+        } catch (IllegalArgumentException exception) {
+            /* This includes NumberFormatException */
+            System.err.println("WARNING: Exceptions limiter not installed: " + exception.getMessage());
+            return null;
+        }
+    }
+
+    /* ====================================================================== */
+
+    /* A token bucket */
+    private static final class Bucket {
+
+        private final String name;
+        /* The time (from System.nanoTime()) at which we're full again */
+        private final AtomicLong full = new AtomicLong(System.nanoTime());
+        /* How many events we suppressed, and how many were reported */
+        private final AtomicLong suppressed = new AtomicLong();
+        private long reported = 0;
+
+        /* Where the last suppressed event was logged */
+        private volatile LocationAwareLogger logger;
+        private volatile int level;
+
+        private Bucket(String name) {
+            this.name = name;
+        }
+
+        private synchronized long drain() {
+            final long total = suppressed.get();
+            final long count = total - reported;
+            reported = total;
+            return count;
+        }
+    }
+
+    /* An exception class, and where it was thrown */
+    private static final class Site {
+
+        private final Class<?> type;
+        private final StackTraceElement frame;
+
+        private Site(Class<?> type, StackTraceElement frame) {
+            this.type = type;
+            this.frame = frame;
+        }
+
+        @Override
+        public int hashCode() {
+            return type.hashCode() * 31 + (frame == null ? 0 : frame.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (object == this) return true;
+            if (!(object instanceof Site)) return false;
+            final Site site = (Site) object;
+            return type.equals(site.type) && (frame == null ? site.frame == null : frame.equals(site.frame));
+        }
+
+        @Override
+        public String toString() {
+            return frame == null ? type.getName() : type.getName() + " at " + frame;
+        }
+    }
+}
@@ -0,0 +1,395 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.usrz.libs.logging.JournalSink.Encoding;
+
+/**
+ * A {@link LogSink} writing text lines to a file, without going through any
+ * of the backend's appenders.
+ *
+ * <p>Each thread renders its events in its own (reused) encoding buffers, and
+ * simply queues the encoded bytes in a lock-free queue. A single writer thread
+ * drains the queue, writing as many events as it can in one gathering
+ * {@link FileChannel#write(ByteBuffer[], int, int) write} call, and hands the
+ * written buffers back to be recycled for the next events.</p>
+ *
+ * <p>Events are written one per line like
+ * <code>2014-01-01 12:34:56.789 [thread] LEVEL logger - message</code>
+ * (followed by the stack trace of the throwable, if any) in <i>UTF-8</i>,
+ * or as <i>JSON</i> objects with the {@link Encoding#JSON} encoding.</p>
+ *
+ * <p>The file can be rolled over when it grows bigger than a specified size or
+ * when a specified number of milliseconds passed since its first event was
+ * written: rolled files get renamed
+ * appending their roll time (as in <code>.yyyyMMdd-HHmmss.SSS</code>) to their
+ * name (and a counter, should two files be rolled in the same millisecond).
+ * Rolled files can then be handed over to a {@link SegmentCompressor}.</p>
+ *
+ * <p>When writing can't keep up, threads logging will wait whenever more
+ * than <code>capacity</code> events are queued.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+public final class FileSink implements TemplateLogSink {
+
+    /* The default number of events we can queue */
+    static final int DEFAULT_CAPACITY = 65536;
+    /* The maximum number of buffers we write in one go */
+    private static final int MAX_BATCH = 256;
+    /* How long to park waiting for events (or for the queue to drain) */
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    /* How long producers park waiting for the queue to drain */
+    private static final long BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    /* The smallest buffer we queue, and how many we keep for recycling */
+    private static final int MIN_BUFFER = 256;
+    private static final int MAX_RECYCLED = MAX_BATCH * 4;
+
+    private final File file;
+    private final long maxSize;
+    private final long maxAge;
+    private final int capacity;
+    private final SegmentCompressor compressor;
+    private final Encoding encoding;
+
+    /* Our queue of encoded events, and how many we have in there */
+    private final ConcurrentLinkedQueue<ByteBuffer> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    /* Buffers already written, and how many of them */
+    private final ConcurrentLinkedQueue<ByteBuffer> recycled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger available = new AtomicInteger();
+
+    /* Each thread encodes in its own buffers */
+    private final ThreadLocal<EventEncoder> encoders = new ThreadLocal<EventEncoder>() {
+        @Override
+        protected EventEncoder initialValue() {
+            return encoding == Encoding.JSON ? new JsonEncoder() : new TextEncoder();
+        }
+    };
+
+    /* Our writer thread, and whether it's parked or not */
+    private final Thread writer;
+    private volatile boolean parked = false;
+    private volatile boolean closed = false;
+
+    /* Only touched by the writer thread once started */
+    private FileChannel channel;
+    private long size;
+    /* When the first event was written in the file */
+    private long started;
+
+    /* ====================================================================== */
+
+    /**
+     * Create a new {@link FileSink} writing to the specified {@link File}
+     * and never rolling it over.
+     */
+    public FileSink(File file)
+    throws IOException {
+        this(file, 0, 0);
+    }
+
+    /**
+     * Create a new {@link FileSink} writing to the specified {@link File}.
+     *
+     * @param file The {@link File} to append events to.
+     * @param maxSize The size (in bytes) after which the file will be rolled
+     *                over, or <code>0</code> to never roll it by size.
+     * @param maxAge The age (in milliseconds) after which the file will be
+     *               rolled over, or <code>0</code> to never roll it by time.
+     */
+    public FileSink(File file, long maxSize, long maxAge)
+    throws IOException {
+        this(file, maxSize, maxAge, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a new {@link FileSink} writing to the specified {@link File}.
+     *
+     * @param file The {@link File} to append events to.
+     * @param maxSize The size (in bytes) after which the file will be rolled
+     *                over, or <code>0</code> to never roll it by size.
+     * @param maxAge The age (in milliseconds) after which the file will be
+     *               rolled over, or <code>0</code> to never roll it by time.
+     * @param capacity The number of events that can be queued before threads
+     *                 logging will wait for them to be written.
+     */
+    public FileSink(File file, long maxSize, long maxAge, int capacity)
+    throws IOException {
+        this(file, maxSize, maxAge, capacity, null);
+    }
+
+    /**
+     * Create a new {@link FileSink} writing to the specified {@link File}.
+     *
+     * @param file The {@link File} to append events to.
+     * @param maxSize The size (in bytes) after which the file will be rolled
+     *                over, or <code>0</code> to never roll it by size.
+     * @param maxAge The age (in milliseconds) after which the file will be
+     *               rolled over, or <code>0</code> to never roll it by time.
+     * @param capacity The number of events that can be queued before threads
+     *                 logging will wait for them to be written.
+     * @param compressor The {@link SegmentCompressor} rolled files will be
+     *                   handed over to (and which won't be closed by this
+     *                   instance) or <b>null</b>.
+     */
+    public FileSink(File file, long maxSize, long maxAge, int capacity, SegmentCompressor compressor)
+    throws IOException {
+        this(file, maxSize, maxAge, capacity, compressor, Encoding.TEXT);
+    }
+
+    /**
+     * Create a new {@link FileSink} writing to the specified {@link File}.
+     *
+     * @param file The {@link File} to append events to.
+     * @param maxSize The size (in bytes) after which the file will be rolled
+     *                over, or <code>0</code> to never roll it by size.
+     * @param maxAge The age (in milliseconds) after which the file will be
+     *               rolled over, or <code>0</code> to never roll it by time.
+     * @param capacity The number of events that can be queued before threads
+     *                 logging will wait for them to be written.
+     * @param compressor The {@link SegmentCompressor} rolled files will be
+     *                   handed over to (and which won't be closed by this
+     *                   instance) or <b>null</b>.
+     * @param encoding How events will be written, either as
+     *                 {@linkplain Encoding#TEXT text} or as
+     *                 {@linkplain Encoding#JSON JSON}.
+     */
+    public FileSink(File file, long maxSize, long maxAge, int capacity, SegmentCompressor compressor, Encoding encoding)
+    throws IOException {
+        if (file == null) throw new NullPointerException("Null file");
+        if (maxSize < 0) throw new IllegalArgumentException("Negative maximum size " + maxSize);
+        if (maxAge < 0) throw new IllegalArgumentException("Negative maximum age " + maxAge);
+        if (capacity < 1) throw new IllegalArgumentException("Invalid capacity " + capacity);
+        if (encoding == null) throw new NullPointerException("Null encoding");
+        if (encoding == Encoding.BINARY) throw new IllegalArgumentException("Binary encoding not supported");
+
+        this.file = file.getAbsoluteFile();
+        this.maxSize = maxSize;
+        this.maxAge = maxAge;
+        this.capacity = capacity;
+        this.compressor = compressor;
+        this.encoding = encoding;
+
+        open();
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "FileSink[" + file.getName() + "]");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the {@link File} this {@link FileSink} is writing to.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public void append(long timestamp, String threadName, String loggerName,
+                       int level, String message, Object[] arguments,
+                       Throwable throwable) {
+        if (closed) return;
+        queue(encoders.get().encode(timestamp, threadName, loggerName,
+                                    level, message, arguments, throwable));
+    }
+
+    @Override
+    public void appendTemplate(long timestamp, String threadName, String loggerName,
+                               int level, String format, Object[] arguments,
+                               Throwable throwable) {
+        if (closed) return;
+        queue(encoders.get().encodeTemplate(timestamp, threadName, loggerName,
+                                            level, format, arguments, throwable));
+    }
+
+    private void queue(ByteBuffer encoded) {
+
+        /* Encoded in our thread's buffer, queue a copy of it */
+        final ByteBuffer buffer = buffer(encoded.remaining());
+        buffer.put(encoded).flip();
+
+        /* Wait for the writer if we're too far ahead */
+        while (pending.get() >= capacity) {
+            if (closed || !writer.isAlive()) return;
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(this, BACKOFF_NANOS);
+        }
+
+        pending.incrementAndGet();
+        queue.offer(buffer);
+        if (parked) LockSupport.unpark(writer);
+    }
+
+    private ByteBuffer buffer(int size) {
+
+        /* Recycle a buffer already written, if big enough */
+        final ByteBuffer buffer = recycled.poll();
+        if (buffer != null) {
+            available.decrementAndGet();
+            if (buffer.capacity() >= size) return buffer;
+        }
+
+        /* Round up, so that buffers fit most of the events to come */
+        return ByteBuffer.allocate(size <= MIN_BUFFER ? MIN_BUFFER : Integer.highestOneBit(size - 1) << 1);
+    }
+
+    private void recycle(ByteBuffer buffer) {
+        if (available.get() >= MAX_RECYCLED) return;
+        available.incrementAndGet();
+        buffer.clear();
+        recycled.offer(buffer);
+    }
+
+    /**
+     * Wait until all events appended so far have been written to the file.
+     */
+    @Override
+    public void flush() {
+        while ((pending.get() > 0) && writer.isAlive()) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(this, BACKOFF_NANOS);
+        }
+    }
+
+    /**
+     * Write all pending events and close the file.
+     */
+    @Override
+    public void close()
+    throws IOException {
+        closed = true;
+        LockSupport.unpark(writer);
+
+        boolean interrupted = false;
+        while (writer.isAlive()) try {
+            writer.join();
+        } catch (InterruptedException exception) {
+            interrupted = true;
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /* ====================================================================== */
+
+    private void write() {
+        final ByteBuffer[] batch = new ByteBuffer[MAX_BATCH];
+        try {
+            while (true) {
+                ByteBuffer buffer = queue.poll();
+
+                /* Nothing to write: quit if closed, or wait for events */
+                if (buffer == null) {
+                    if (closed && queue.isEmpty()) break;
+                    parked = true;
+                    if (queue.isEmpty() && !closed) LockSupport.parkNanos(this, PARK_NANOS);
+                    parked = false;
+                    if ((maxAge > 0) && (size > 0) && (System.currentTimeMillis() - started >= maxAge)) roll();
+                    continue;
+                }
+
+                /* Gather as much as we can */
+                int count = 0;
+                long bytes = 0;
+                do {
+                    batch[count ++] = buffer;
+                    bytes += buffer.remaining();
+                } while ((count < MAX_BATCH) && ((buffer = queue.poll()) != null));
+
+                /* Roll before writing if we have to */
+                if (size > 0) {
+                    if ((maxSize > 0) && (size + bytes > maxSize)) roll();
+                    else if ((maxAge > 0) && (System.currentTimeMillis() - started >= maxAge)) roll();
+                }
+                if (size == 0) started = System.currentTimeMillis();
+
+                /* Write everything out */
+                try {
+                    for (int offset = 0; offset < count; ) {
+                        channel.write(batch, offset, count - offset);
+                        while ((offset < count) && (! batch[offset].hasRemaining())) offset ++;
+                    }
+                    size += bytes;
+                } catch (IOException exception) {
+                    System.err.println("Exception writing to " + file);
+                    exception.printStackTrace(System.err);
+                }
+
+                for (int index = 0; index < count; index ++) {
+                    recycle(batch[index]);
+                    batch[index] = null;
+                }
+                pending.addAndGet(-count);
+            }
+        } finally {
+            pending.set(0);
+            try {
+                channel.force(false);
+                channel.close();
+            } catch (IOException exception) {
+                System.err.println("Exception closing " + file);
+                exception.printStackTrace(System.err);
+            }
+        }
+    }
+
+    private void open()
+    throws IOException {
+        channel = FileChannel.open(file.toPath(), CREATE, WRITE, APPEND);
+        size = channel.size();
+        started = System.currentTimeMillis();
+    }
+
+    private void roll() {
+        try {
+            channel.close();
+
+            /* Never overwrite files rolled in the same millisecond */
+            final String name = file.getName() + new SimpleDateFormat(".yyyyMMdd-HHmmss.SSS").format(new Date());
+            File rolled = new File(file.getParentFile(), name);
+            for (int count = 1; rolled.exists(); count ++) rolled = new File(file.getParentFile(), name + "." + count);
+            if (!file.renameTo(rolled)) System.err.println("Unable to roll " + file + " to " + rolled);
+            else if (compressor != null) compressor.compress(rolled);
+
+            open();
+        } catch (IOException exception) {
+            System.err.println("Exception rolling " + file);
+            exception.printStackTrace(System.err);
+        }
+    }
+}
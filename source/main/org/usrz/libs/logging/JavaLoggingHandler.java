@@ -58,7 +58,7 @@ public class JavaLoggingHandler extends Handler {
         if (slf4jLevel != MIN_VALUE) {
             final String message = formatter.formatMessage(record);
             final Throwable throwable = record.getThrown();
-            logger.log(null, FQCN, slf4jLevel, message, null, throwable);
+            LogDispatcher.dispatch(logger, null, FQCN, slf4jLevel, message, null, throwable);
         }
     }
 
@@ -39,10 +39,7 @@ public final class JavaLoggingInitializer {
         if (initialized) return;
 
         synchronized (JavaLoggingInitializer.class) {
-            final String property = System.getProperty(SYSTEM_PROPERTY);
-            if ((property != null) && (!JavaLoggingBridge.class.getName().equals(property)))
-                throw new IllegalStateException("System property \"" + SYSTEM_PROPERTY + "\" set to \"" + property + "\"");
-            System.setProperty(SYSTEM_PROPERTY, JavaLoggingBridge.class.getName());
+            setSystemProperty();
 
             final LogManager manager = LogManager.getLogManager();
 
@@ -75,4 +72,25 @@ public final class JavaLoggingInitializer {
         }
     }
 
+    /**
+     * Register our bridge in the <code>java.util.logging.manager</code>
+     * system property <em>without</em> bootstrapping the Java Logging
+     * subsystem: it will pick our bridge up by itself the first time it's used.
+     *
+     * <p>Note that if someone bootstrapped Java Logging <em>before</em> us,
+     * this will have no effect, so in doubt call {@link #init()}.</p>
+     */
+    public static void register() {
+        synchronized (JavaLoggingInitializer.class) {
+            setSystemProperty();
+        }
+    }
+
+    private static void setSystemProperty() {
+        final String property = System.getProperty(SYSTEM_PROPERTY);
+        if ((property != null) && (!JavaLoggingBridge.class.getName().equals(property)))
+            throw new IllegalStateException("System property \"" + SYSTEM_PROPERTY + "\" set to \"" + property + "\"");
+        System.setProperty(SYSTEM_PROPERTY, JavaLoggingBridge.class.getName());
+    }
+
 }
@@ -0,0 +1,237 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.usrz.libs.logging.BinaryEncoder.BIG_DECIMAL;
+import static org.usrz.libs.logging.BinaryEncoder.BIG_INTEGER;
+import static org.usrz.libs.logging.BinaryEncoder.BOOLEAN;
+import static org.usrz.libs.logging.BinaryEncoder.BYTE;
+import static org.usrz.libs.logging.BinaryEncoder.CHARACTER;
+import static org.usrz.libs.logging.BinaryEncoder.DATE;
+import static org.usrz.libs.logging.BinaryEncoder.DOUBLE;
+import static org.usrz.libs.logging.BinaryEncoder.EVENT;
+import static org.usrz.libs.logging.BinaryEncoder.FLOAT;
+import static org.usrz.libs.logging.BinaryEncoder.FORMAT;
+import static org.usrz.libs.logging.BinaryEncoder.INTEGER;
+import static org.usrz.libs.logging.BinaryEncoder.LONG;
+import static org.usrz.libs.logging.BinaryEncoder.NULL;
+import static org.usrz.libs.logging.BinaryEncoder.PLAIN;
+import static org.usrz.libs.logging.BinaryEncoder.SHORT;
+import static org.usrz.libs.logging.BinaryEncoder.SLF4J;
+import static org.usrz.libs.logging.BinaryEncoder.STRING;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.IllegalFormatException;
+
+import org.slf4j.helpers.MessageFormatter;
+import org.usrz.libs.logging.JournalSink.Encoding;
+
+/**
+ * A decoder rendering the events in segments written by a {@link JournalSink}
+ * as text, exactly like a {@link FileSink} would have written them.
+ *
+ * <p>Messages from binary segments are formatted only now: templates and
+ * arguments logged through our {@link Log} are rendered by
+ * {@link String#format(String, Object...)} (should that fail, the template
+ * will be rendered as-is, prefixed by the failure).</p>
+ *
+ * <p>This class can also be used from the command line, simply specifying
+ * the segment files to decode on the command line: decoded events will be
+ * written to {@linkplain System#out standard output}.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+public final class JournalDecoder {
+
+    private final JournalDictionary dictionary;
+    private final TextEncoder renderer = new TextEncoder();
+
+    /**
+     * Create a new {@link JournalDecoder} for the journal with the specified
+     * name in a directory.
+     */
+    public JournalDecoder(File directory, String name)
+    throws IOException {
+        this(dictionary(directory, name));
+    }
+
+    /**
+     * Create a new {@link JournalDecoder} using the specified dictionary.
+     */
+    JournalDecoder(JournalDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Read the dictionary of the journal with the specified name in a
+     * directory, or return <b>null</b> if there is none.
+     */
+    static JournalDictionary dictionary(File directory, String name)
+    throws IOException {
+        final File file = JournalDictionary.file(directory, name);
+        return file.exists() ? JournalDictionary.read(file) : null;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Decode all the events in a segment, appending them to the specified
+     * {@link Appendable}, and returning the number of events decoded.
+     */
+    public int decode(File segment, Appendable output)
+    throws IOException {
+        return decode(new JournalReader(segment), output);
+    }
+
+    /**
+     * Decode all the remaining events from a {@link JournalReader},
+     * appending them to the specified {@link Appendable}, and returning the
+     * number of events decoded.
+     */
+    public int decode(JournalReader reader, Appendable output)
+    throws IOException {
+        final Encoding encoding = reader.getEncoding();
+
+        int count = 0;
+        ByteBuffer payload;
+        while ((payload = reader.next()) != null) {
+            output.append(encoding == Encoding.BINARY ? decode(payload) : UTF_8.decode(payload));
+            count ++;
+        }
+        return count;
+    }
+
+    /**
+     * Decode a single binary event, returning its text valid only until the
+     * next call to this instance.
+     */
+    CharSequence decode(ByteBuffer payload) {
+        if (payload.get() != EVENT) throw new IllegalArgumentException("Not an event record");
+
+        final long timestamp = payload.getLong();
+        final int level = payload.get();
+        final String threadName = lookup(payload.getInt());
+        final String loggerName = lookup(payload.getInt());
+        skipString(payload); // trace identifier
+
+        final String message;
+        final byte syntax = payload.get();
+        if (syntax == PLAIN) {
+            message = getString(payload);
+        } else {
+            final String template = lookup(payload.getInt());
+            final Object[] arguments = new Object[payload.get() & 0xFF];
+            for (int index = 0; index < arguments.length; index ++) {
+                arguments[index] = getArgument(payload);
+            }
+
+            if (syntax == SLF4J) {
+                message = MessageFormatter.arrayFormat(template, arguments).getMessage();
+            } else if (syntax == FORMAT) {
+                message = format(template, arguments);
+            } else {
+                throw new IllegalArgumentException("Unknown message syntax " + syntax);
+            }
+        }
+
+        final String stackTrace = getString(payload);
+        return renderer.render(timestamp, threadName, loggerName, level, message,
+                               stackTrace.isEmpty() ? null : stackTrace);
+    }
+
+    /* ====================================================================== */
+
+    private static String format(String template, Object[] arguments) {
+        try {
+            return String.format(template, arguments);
+        } catch (IllegalFormatException exception) {
+            return "[" + exception + "] " + template;
+        }
+    }
+
+    String lookup(int identifier) {
+        final String string = dictionary == null ? null : dictionary.lookup(identifier);
+        return string == null ? "<unknown #" + identifier + ">" : string;
+    }
+
+    private static String getString(ByteBuffer payload) {
+        final int length = payload.getInt();
+        final ByteBuffer bytes = payload.slice();
+        bytes.limit(length);
+        payload.position(payload.position() + length);
+        return UTF_8.decode(bytes).toString();
+    }
+
+    private static void skipString(ByteBuffer payload) {
+        payload.position(payload.position() + 4 + payload.getInt(payload.position()));
+    }
+
+    private static Object getArgument(ByteBuffer payload) {
+        final byte type = payload.get();
+        switch (type) {
+            case NULL:        return null;
+            case STRING:      return getString(payload);
+            case BOOLEAN:     return payload.get() != 0;
+            case BYTE:        return payload.get();
+            case SHORT:       return payload.getShort();
+            case CHARACTER:   return payload.getChar();
+            case INTEGER:     return payload.getInt();
+            case LONG:        return payload.getLong();
+            case FLOAT:       return payload.getFloat();
+            case DOUBLE:      return payload.getDouble();
+            case BIG_INTEGER: return new BigInteger(getString(payload));
+            case BIG_DECIMAL: return new BigDecimal(getString(payload));
+            case DATE:        return new Date(payload.getLong());
+            default: throw new IllegalArgumentException("Unknown argument type " + type);
+        }
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Decode the segment files specified on the command line to
+     * {@linkplain System#out standard output}.
+     */
+    public static void main(String... args)
+    throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: " + JournalDecoder.class.getName() + " <segment file> [...]");
+            System.exit(1);
+        }
+
+        final Writer output = new BufferedWriter(new OutputStreamWriter(System.out, UTF_8));
+        try {
+            for (String arg: args) {
+                final File segment = new File(arg).getAbsoluteFile();
+                final JournalDecoder decoder = new JournalDecoder(segment.getParentFile(), JournalSink.name(segment));
+                final JournalReader reader = new JournalReader(segment);
+                decoder.decode(reader, output);
+                if (reader.isCorrupted()) System.err.println("Segment " + segment + " is damaged after offset " + reader.getPosition());
+            }
+        } finally {
+            output.flush();
+        }
+    }
+}
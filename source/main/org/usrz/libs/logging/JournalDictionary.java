@@ -0,0 +1,180 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent dictionary of strings (logger names, thread names and message
+ * formats) interned by a {@link JournalSink} writing binary segments.
+ *
+ * <p>Each string is assigned an <code>int</code> identifier once, and written
+ * (before its identifier is ever used) to a file next to the segments as its
+ * identifier, the length of its <i>UTF-8</i> representation, its bytes and
+ * their <i>CRC32</i>. Should the file be truncated by a crash, we'll simply
+ * forget about whatever entry was damaged.</p>
+ *
+ * <p>Looking up identifiers of strings already defined takes no locks.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+final class JournalDictionary implements Closeable {
+
+    /* The extension of our dictionary files */
+    private static final String EXTENSION = ".dictionary";
+
+    private final File file;
+    private final FileChannel channel;
+    private final ConcurrentHashMap<String, Integer> identifiers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, String> strings = new ConcurrentHashMap<>();
+    private final CRC32 checksum = new CRC32();
+    private int last = 0;
+
+    private JournalDictionary(File file, boolean writable)
+    throws IOException {
+        this.file = file;
+
+        /* Read whatever we have, stopping at the first damaged entry */
+        final ByteBuffer buffer = file.exists() ? ByteBuffer.wrap(Files.readAllBytes(file.toPath())) : ByteBuffer.allocate(0);
+        while (buffer.remaining() >= 8) {
+            final int position = buffer.position();
+            final int identifier = buffer.getInt();
+            final int length = buffer.getInt();
+            if ((length < 0) || (length + 4 > buffer.remaining())) {
+                buffer.position(position);
+                break;
+            }
+
+            checksum.reset();
+            checksum.update(buffer.array(), buffer.position(), length);
+            if ((int) checksum.getValue() != buffer.getInt(buffer.position() + length)) {
+                buffer.position(position);
+                break;
+            }
+
+            final String string = new String(buffer.array(), buffer.position(), length, UTF_8);
+            buffer.position(buffer.position() + length + 4);
+            identifiers.put(string, identifier);
+            strings.put(identifier, string);
+            last = Math.max(last, identifier);
+        }
+
+        /* Cut away any damaged entry, and append after what we've read */
+        if (writable) {
+            channel = FileChannel.open(file.toPath(), CREATE, WRITE);
+            channel.truncate(buffer.position());
+            channel.position(buffer.position());
+        } else {
+            channel = null;
+        }
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the dictionary {@link File} for journal segments with the
+     * specified name in a directory.
+     */
+    static File file(File directory, String name) {
+        return new File(directory, name + EXTENSION);
+    }
+
+    /**
+     * Open a {@link JournalDictionary} for writing, creating it if needed.
+     */
+    static JournalDictionary open(File file)
+    throws IOException {
+        return new JournalDictionary(file, true);
+    }
+
+    /**
+     * Read a {@link JournalDictionary} without ever writing to it.
+     */
+    static JournalDictionary read(File file)
+    throws IOException {
+        return new JournalDictionary(file, false);
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the identifier of a string, defining it if we have to.
+     */
+    int intern(String string) {
+        final Integer identifier = identifiers.get(string);
+        return identifier != null ? identifier : define(string);
+    }
+
+    /**
+     * Return the string with the specified identifier, or <b>null</b>.
+     */
+    String lookup(int identifier) {
+        return strings.get(identifier);
+    }
+
+    /**
+     * Force all the entries we wrote to disk.
+     */
+    void force()
+    throws IOException {
+        if (channel != null) channel.force(false);
+    }
+
+    @Override
+    public void close()
+    throws IOException {
+        if (channel != null) channel.close();
+    }
+
+    /* ====================================================================== */
+
+    private synchronized int define(String string) {
+        final Integer existing = identifiers.get(string);
+        if (existing != null) return existing;
+        if (channel == null) throw new IllegalStateException("Dictionary " + file + " is read only");
+
+        final int identifier = last + 1;
+        final byte[] bytes = string.getBytes(UTF_8);
+        checksum.reset();
+        checksum.update(bytes, 0, bytes.length);
+
+        final ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 12);
+        buffer.putInt(identifier).putInt(bytes.length).put(bytes).putInt((int) checksum.getValue()).flip();
+
+        /* Write the entry before anyone sees (and uses) its identifier */
+        try {
+            while (buffer.hasRemaining()) channel.write(buffer);
+        } catch (IOException exception) {
+            throw new IllegalStateException("Exception writing to dictionary " + file, exception);
+        }
+
+        last = identifier;
+        strings.put(identifier, string);
+        identifiers.put(string, identifier);
+        return identifier;
+    }
+}
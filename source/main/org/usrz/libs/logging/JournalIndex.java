@@ -0,0 +1,331 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.usrz.libs.logging.JournalSink.END_OF_SEGMENT;
+import static org.usrz.libs.logging.JournalSink.HEADER_SIZE;
+import static org.usrz.libs.logging.JournalSink.RECORD_HEADER_SIZE;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * A sparse index over a binary segment written by a {@link JournalSink}.
+ *
+ * <p>Each index records the time span, the levels and (in {@link BloomFilter}s)
+ * the logger names (and all their parents) and trace identifiers of the
+ * events in its segment, so that whole segments can be skipped when
+ * querying. Segments are also split in blocks of about {@value #BLOCK_SIZE}
+ * bytes, and the offset and time span of each block is recorded, so that we
+ * can seek directly to the events in a time range.</p>
+ *
+ * <p>Indexes are written by the {@link JournalSink} when it's done with a
+ * segment, next to it with the same name and a <code>.index</code>
+ * extension.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+final class JournalIndex {
+
+    /* The magic number and version of our index files */
+    private static final int MAGIC = 0x554A4958; // "UJIX"
+    private static final short VERSION = 1;
+
+    /* Our extension, replacing the segment's one */
+    private static final String EXTENSION = ".index";
+    private static final String SEGMENT_EXTENSION = ".journal";
+
+    /** The (approximate) size of each block, in bytes. */
+    static final int BLOCK_SIZE = 65536;
+
+    /* How long do we wait for records claimed, but not yet written */
+    private static final long WAIT_NANOS = 1000000000L;
+
+    final long minimum;
+    final long maximum;
+    final int levels;
+    final int end;
+    final boolean complete;
+    final int[] offsets;
+    final long[] minimums;
+    final long[] maximums;
+    final BloomFilter loggers;
+    final BloomFilter traces;
+
+    private JournalIndex(long minimum, long maximum, int levels, int end, boolean complete,
+                         int[] offsets, long[] minimums, long[] maximums,
+                         BloomFilter loggers, BloomFilter traces) {
+        this.minimum = minimum;
+        this.maximum = maximum;
+        this.levels = levels;
+        this.end = end;
+        this.complete = complete;
+        this.offsets = offsets;
+        this.minimums = minimums;
+        this.maximums = maximums;
+        this.loggers = loggers;
+        this.traces = traces;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the index {@link File} of a segment.
+     */
+    static File file(File segment) {
+        final String name = segment.getName();
+        if (!name.endsWith(SEGMENT_EXTENSION)) throw new IllegalArgumentException("Not a journal segment: " + segment);
+        return new File(segment.getParentFile(), name.substring(0, name.length() - SEGMENT_EXTENSION.length()) + EXTENSION);
+    }
+
+    /**
+     * Return <b>false</b> if no event in the indexed segment can match the
+     * specified criteria, <b>true</b> if some might.
+     *
+     * @param logger A logger name (matching itself and its children) or
+     *               <b>null</b> to match any logger.
+     * @param trace A trace identifier or <b>null</b> to match any.
+     */
+    boolean mightMatch(long from, long to, int level, String logger, String trace) {
+        if (!complete) return true;
+        if (offsets.length == 0) return false;
+        if ((maximum < from) || (minimum > to)) return false;
+        if ((levels >>> bit(level)) == 0) return false;
+        if ((logger != null) && !loggers.mightContain(logger)) return false;
+        if ((trace != null) && !traces.mightContain(trace)) return false;
+        return true;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Build an index scanning a segment up to the specified offset.
+     *
+     * <p>Records claimed (but not yet written) by other threads will be
+     * waited for, for a little while.</p>
+     */
+    static JournalIndex build(ByteBuffer segment, int end, JournalDictionary dictionary) {
+        final Map<Integer, String> names = new HashMap<>();
+        final Set<String> loggers = new HashSet<>();
+        final Set<String> traces = new HashSet<>();
+
+        final int capacity = Math.max(1, end / BLOCK_SIZE + 1);
+        int[] offsets = new int[capacity];
+        long[] minimums = new long[capacity];
+        long[] maximums = new long[capacity];
+        int blocks = 0;
+
+        long minimum = Long.MAX_VALUE;
+        long maximum = Long.MIN_VALUE;
+        int levels = 0;
+        boolean complete = false;
+
+        int position = HEADER_SIZE;
+        while (true) {
+            if (position + RECORD_HEADER_SIZE > end) {
+                complete = true;
+                break;
+            }
+
+            /* Wait a bit for records claimed, but not written yet */
+            int length = segment.getInt(position);
+            if (length == 0) {
+                final long started = System.nanoTime();
+                while (((length = segment.getInt(position)) == 0) && (System.nanoTime() - started < WAIT_NANOS)) Thread.yield();
+            }
+
+            if (length == END_OF_SEGMENT) {
+                complete = true;
+                break;
+            } else if ((length <= 0) || (position + RECORD_HEADER_SIZE + length > segment.limit())) {
+                break;
+            }
+
+            /* Index the record */
+            final int payload = position + RECORD_HEADER_SIZE;
+            final long timestamp = timestamp(segment, payload);
+            if ((blocks == 0) || (position - offsets[blocks - 1] >= BLOCK_SIZE)) {
+                if (blocks == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, blocks * 2);
+                    minimums = Arrays.copyOf(minimums, blocks * 2);
+                    maximums = Arrays.copyOf(maximums, blocks * 2);
+                }
+                offsets[blocks] = position;
+                minimums[blocks] = Long.MAX_VALUE;
+                maximums[blocks] = Long.MIN_VALUE;
+                blocks ++;
+            }
+            minimums[blocks - 1] = Math.min(minimums[blocks - 1], timestamp);
+            maximums[blocks - 1] = Math.max(maximums[blocks - 1], timestamp);
+            minimum = Math.min(minimum, timestamp);
+            maximum = Math.max(maximum, timestamp);
+            levels |= 1 << bit(level(segment, payload));
+
+            final int identifier = logger(segment, payload);
+            if (!names.containsKey(identifier)) {
+                final String name = dictionary.lookup(identifier);
+                names.put(identifier, name);
+                if (name != null) {
+                    for (int dot = name.indexOf('.'); dot >= 0; dot = name.indexOf('.', dot + 1)) {
+                        loggers.add(name.substring(0, dot));
+                    }
+                    loggers.add(name);
+                }
+            }
+
+            final String trace = trace(segment, payload);
+            if (!trace.isEmpty()) traces.add(trace);
+
+            position = payload + length;
+        }
+
+        final BloomFilter loggersFilter = new BloomFilter(loggers.size());
+        for (String logger: loggers) loggersFilter.add(logger);
+        final BloomFilter tracesFilter = new BloomFilter(traces.size());
+        for (String trace: traces) tracesFilter.add(trace);
+
+        return new JournalIndex(minimum, maximum, levels, position, complete,
+                                Arrays.copyOf(offsets, blocks),
+                                Arrays.copyOf(minimums, blocks),
+                                Arrays.copyOf(maximums, blocks),
+                                loggersFilter, tracesFilter);
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Write this index, atomically replacing any existing file.
+     */
+    void write(File file)
+    throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(4 + 2 + 1 + 8 + 8 + 4 + 4 + 4
+                                                      + offsets.length * 20
+                                                      + loggers.size() + traces.size() + 4);
+        buffer.putInt(MAGIC).putShort(VERSION).put((byte) (complete ? 1 : 0))
+              .putLong(minimum).putLong(maximum).putInt(levels).putInt(end)
+              .putInt(offsets.length);
+        for (int index = 0; index < offsets.length; index ++) {
+            buffer.putInt(offsets[index]).putLong(minimums[index]).putLong(maximums[index]);
+        }
+        loggers.write(buffer);
+        traces.write(buffer);
+
+        final CRC32 checksum = new CRC32();
+        checksum.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) checksum.getValue());
+
+        final File temporary = new File(file.getParentFile(), file.getName() + ".tmp");
+        Files.write(temporary.toPath(), buffer.array());
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read an index, returning <b>null</b> if missing or damaged.
+     */
+    static JournalIndex read(File file) {
+        if (!file.isFile()) return null;
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            if (buffer.remaining() < 4) return null;
+
+            final CRC32 checksum = new CRC32();
+            checksum.update(buffer.array(), 0, buffer.limit() - 4);
+            if ((int) checksum.getValue() != buffer.getInt(buffer.limit() - 4)) return null;
+            buffer.limit(buffer.limit() - 4);
+
+            if ((buffer.getInt() != MAGIC) || (buffer.getShort() != VERSION)) return null;
+            final boolean complete = buffer.get() != 0;
+            final long minimum = buffer.getLong();
+            final long maximum = buffer.getLong();
+            final int levels = buffer.getInt();
+            final int end = buffer.getInt();
+
+            final int blocks = buffer.getInt();
+            if ((blocks < 0) || (blocks > buffer.remaining() / 20)) return null;
+            final int[] offsets = new int[blocks];
+            final long[] minimums = new long[blocks];
+            final long[] maximums = new long[blocks];
+            for (int index = 0; index < blocks; index ++) {
+                offsets[index] = buffer.getInt();
+                minimums[index] = buffer.getLong();
+                maximums[index] = buffer.getLong();
+            }
+
+            final BloomFilter loggers = BloomFilter.read(buffer);
+            final BloomFilter traces = BloomFilter.read(buffer);
+            return new JournalIndex(minimum, maximum, levels, end, complete,
+                                    offsets, minimums, maximums, loggers, traces);
+
+        } catch (IOException | RuntimeException exception) {
+            return null;
+        }
+    }
+
+    /* ====================================================================== */
+
+    /* Where the level would be in our bitmask */
+    private static int bit(int level) {
+        return Math.max(0, Math.min(31, level / 10));
+    }
+
+    /**
+     * Return the timestamp of a binary event whose payload starts at the
+     * specified offset.
+     */
+    static long timestamp(ByteBuffer buffer, int payload) {
+        return buffer.getLong(payload + 1);
+    }
+
+    /**
+     * Return the level of a binary event whose payload starts at the
+     * specified offset.
+     */
+    static int level(ByteBuffer buffer, int payload) {
+        return buffer.get(payload + 9);
+    }
+
+    /**
+     * Return the logger identifier of a binary event whose payload starts at
+     * the specified offset.
+     */
+    static int logger(ByteBuffer buffer, int payload) {
+        return buffer.getInt(payload + 14);
+    }
+
+    /**
+     * Return the trace identifier (or an empty string) of a binary event
+     * whose payload starts at the specified offset.
+     */
+    static String trace(ByteBuffer buffer, int payload) {
+        final int length = buffer.getInt(payload + 18);
+        if (length == 0) return "";
+        final byte[] bytes = new byte[length];
+        final ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(payload + 22);
+        duplicate.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
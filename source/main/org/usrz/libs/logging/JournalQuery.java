@@ -0,0 +1,313 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.slf4j.spi.LocationAwareLogger.DEBUG_INT;
+import static org.slf4j.spi.LocationAwareLogger.ERROR_INT;
+import static org.slf4j.spi.LocationAwareLogger.INFO_INT;
+import static org.slf4j.spi.LocationAwareLogger.TRACE_INT;
+import static org.slf4j.spi.LocationAwareLogger.WARN_INT;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.usrz.libs.logging.JournalSink.Encoding;
+
+/**
+ * A query over the binary segments written by a {@link JournalSink}, using
+ * their {@link JournalIndex indexes} to skip whatever can't match.
+ *
+ * <p>Events can be selected by time range, minimum level, logger (matching
+ * the logger itself and all its children, like <code>org.usrz</code> matches
+ * both <code>org.usrz</code> and <code>org.usrz.libs</code>) and trace
+ * identifier. Whole segments are skipped when their index says nothing in
+ * there can match, and only the blocks overlapping the time range are read
+ * from the others. Segments without an index (for example the one being
+ * written to) are simply scanned.</p>
+ *
+ * <p>This class can also be used from the command line, as in:</p>
+ *
+ * <pre>
+ * JournalQuery [--from time] [--to time] [--level level] [--logger name]
+ *              [--trace id] directory name
+ * </pre>
+ *
+ * <p>Times can be specified either in milliseconds from the epoch, or as
+ * <code>yyyy-MM-dd'T'HH:mm:ss.SSS</code> (with or without milliseconds or
+ * time) in the local time zone. Matching events will be decoded (like a
+ * {@link JournalDecoder} would) to {@linkplain System#out standard output}.
+ * </p>
+ *
+ * <p>Instances are <b>not</b> thread safe.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+public final class JournalQuery {
+
+    private long from = Long.MIN_VALUE;
+    private long to = Long.MAX_VALUE;
+    private int level = TRACE_INT;
+    private String logger = null;
+    private String trace = null;
+
+    /* Some statistics on what we did */
+    private int segmentsSkipped;
+    private int blocksSkipped;
+    private long eventsScanned;
+    private long eventsMatched;
+
+    /**
+     * Create a new {@link JournalQuery} matching all events.
+     */
+    public JournalQuery() {
+        /* Nothing to do */
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Match only events logged at or after the specified time.
+     */
+    public JournalQuery from(long from) {
+        this.from = from;
+        return this;
+    }
+
+    /**
+     * Match only events logged at or before the specified time.
+     */
+    public JournalQuery to(long to) {
+        this.to = to;
+        return this;
+    }
+
+    /**
+     * Match only events logged at the specified level or above, as in
+     * {@link LogSink#append(long, String, String, int, String, Object[], Throwable)}.
+     */
+    public JournalQuery level(int level) {
+        this.level = level;
+        return this;
+    }
+
+    /**
+     * Match only events logged to the specified logger or its children.
+     */
+    public JournalQuery logger(String logger) {
+        this.logger = logger;
+        return this;
+    }
+
+    /**
+     * Match only events with the specified trace identifier.
+     */
+    public JournalQuery trace(String trace) {
+        this.trace = trace;
+        return this;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the number of segments skipped by the last run.
+     */
+    public int getSegmentsSkipped() {
+        return segmentsSkipped;
+    }
+
+    /**
+     * Return the number of blocks skipped by the last run in the segments
+     * that were not skipped altogether.
+     */
+    public int getBlocksSkipped() {
+        return blocksSkipped;
+    }
+
+    /**
+     * Return the number of events read (and checked) by the last run.
+     */
+    public long getEventsScanned() {
+        return eventsScanned;
+    }
+
+    /**
+     * Return the number of events matched by the last run.
+     */
+    public long getEventsMatched() {
+        return eventsMatched;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Run this query over the journal with the specified name in a directory,
+     * appending the matched events (as text) to an {@link Appendable}, and
+     * returning the number of events matched.
+     */
+    public long run(File directory, String name, Appendable output)
+    throws IOException {
+        segmentsSkipped = 0;
+        blocksSkipped = 0;
+        eventsScanned = 0;
+        eventsMatched = 0;
+
+        final JournalDictionary dictionary = JournalDecoder.dictionary(directory, name);
+        if (dictionary == null) throw new IOException("No dictionary for journal " + name + " in " + directory);
+
+        final JournalDecoder decoder = new JournalDecoder(dictionary);
+        final Map<Integer, Boolean> loggers = new HashMap<>();
+
+        for (File segment: JournalSink.segments(directory, name)) {
+            final JournalIndex index = JournalIndex.read(JournalIndex.file(segment));
+            if ((index != null) && !index.mightMatch(from, to, level, logger, trace)) {
+                segmentsSkipped ++;
+                continue;
+            }
+
+            final JournalReader reader = new JournalReader(segment);
+            if (reader.getEncoding() != Encoding.BINARY) throw new IOException("Segment " + segment + " is not binary");
+
+            if (index == null) {
+                scan(reader, Integer.MAX_VALUE, dictionary, loggers, decoder, output);
+                continue;
+            }
+
+            /* Only read the blocks within our time range */
+            for (int block = 0; block < index.offsets.length; block ++) {
+                if ((index.maximums[block] < from) || (index.minimums[block] > to)) {
+                    blocksSkipped ++;
+                    continue;
+                }
+                reader.seek(index.offsets[block]);
+                final int end = block + 1 < index.offsets.length ? index.offsets[block + 1] : index.end;
+                scan(reader, end, dictionary, loggers, decoder, output);
+            }
+
+            /* Whatever was written after the index was built */
+            if (!index.complete) {
+                reader.seek(index.end);
+                scan(reader, Integer.MAX_VALUE, dictionary, loggers, decoder, output);
+            }
+        }
+
+        return eventsMatched;
+    }
+
+    private void scan(JournalReader reader, int end, JournalDictionary dictionary,
+                      Map<Integer, Boolean> loggers, JournalDecoder decoder, Appendable output)
+    throws IOException {
+        ByteBuffer payload;
+        while ((reader.getPosition() < end) && ((payload = reader.next()) != null)) {
+            eventsScanned ++;
+
+            final long timestamp = JournalIndex.timestamp(payload, 0);
+            if ((timestamp < from) || (timestamp > to)) continue;
+            if (JournalIndex.level(payload, 0) < level) continue;
+
+            if (logger != null) {
+                final int identifier = JournalIndex.logger(payload, 0);
+                Boolean matches = loggers.get(identifier);
+                if (matches == null) {
+                    final String name = dictionary.lookup(identifier);
+                    matches = (name != null) && (name.equals(logger) || name.startsWith(logger + "."));
+                    loggers.put(identifier, matches);
+                }
+                if (!matches) continue;
+            }
+
+            if ((trace != null) && !trace.equals(JournalIndex.trace(payload, 0))) continue;
+
+            eventsMatched ++;
+            output.append(decoder.decode(payload));
+        }
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Run a query from the command line.
+     */
+    public static void main(String... args)
+    throws IOException {
+        final JournalQuery query = new JournalQuery();
+        int index = 0;
+        try {
+            for (; (index < args.length) && args[index].startsWith("--"); index += 2) {
+                if (index + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + args[index]);
+                final String value = args[index + 1];
+                switch (args[index]) {
+                    case "--from":   query.from(parseTime(value)); break;
+                    case "--to":     query.to(parseTime(value)); break;
+                    case "--level":  query.level(parseLevel(value)); break;
+                    case "--logger": query.logger(value); break;
+                    case "--trace":  query.trace(value); break;
+                    default: throw new IllegalArgumentException("Unknown option " + args[index]);
+                }
+            }
+            if (args.length - index != 2) throw new IllegalArgumentException("Specify a directory and a journal name");
+        } catch (IllegalArgumentException exception) {
+            System.err.println(exception.getMessage());
+            System.err.println("Usage: " + JournalQuery.class.getName()
+                             + " [--from time] [--to time] [--level level] [--logger name] [--trace id] directory name");
+            System.exit(1);
+            return;
+        }
+
+        final Writer output = new BufferedWriter(new OutputStreamWriter(System.out, UTF_8));
+        try {
+            query.run(new File(args[index]), args[index + 1], output);
+        } finally {
+            output.flush();
+        }
+    }
+
+    private static long parseTime(String time) {
+        try {
+            return Long.parseLong(time);
+        } catch (NumberFormatException exception) {
+            /* Not a number, try dates */
+        }
+
+        for (String format: new String[] { "yyyy-MM-dd'T'HH:mm:ss.SSS", "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd" }) try {
+            final SimpleDateFormat parser = new SimpleDateFormat(format);
+            parser.setLenient(false);
+            return parser.parse(time).getTime();
+        } catch (ParseException exception) {
+            /* Try the next one */
+        }
+        throw new IllegalArgumentException("Invalid time " + time);
+    }
+
+    private static int parseLevel(String level) {
+        switch (level.toUpperCase()) {
+            case "TRACE": return TRACE_INT;
+            case "DEBUG": return DEBUG_INT;
+            case "INFO":  return INFO_INT;
+            case "WARN":  return WARN_INT;
+            case "ERROR": return ERROR_INT;
+            default: throw new IllegalArgumentException("Invalid level " + level);
+        }
+    }
+}
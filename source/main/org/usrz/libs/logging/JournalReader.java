@@ -0,0 +1,172 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static org.usrz.libs.logging.JournalSink.END_OF_SEGMENT;
+import static org.usrz.libs.logging.JournalSink.HEADER_SIZE;
+import static org.usrz.libs.logging.JournalSink.MAGIC;
+import static org.usrz.libs.logging.JournalSink.RECORD_HEADER_SIZE;
+import static org.usrz.libs.logging.JournalSink.VERSION;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import org.usrz.libs.logging.JournalSink.Encoding;
+
+/**
+ * A reader for segments written by a {@link JournalSink}.
+ *
+ * <p>Records are returned in the order they were claimed in the segment,
+ * until the end of the segment or the first record that was not (or not
+ * completely) written, for example because of a crash. Truncated segments
+ * are perfectly fine: we simply stop at the last complete record.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+public final class JournalReader {
+
+    private final File file;
+    private final ByteBuffer buffer;
+    private final long sequence;
+    private final Encoding encoding;
+    private final CRC32 checksum = new CRC32();
+    private final byte[] bytes = new byte[8192];
+
+    private boolean corrupted = false;
+    private boolean finished = false;
+
+    /**
+     * Create a new {@link JournalReader} for the specified segment file.
+     *
+     * @throws IOException If the file could not be read or is not a segment.
+     */
+    public JournalReader(File file)
+    throws IOException {
+        if (file == null) throw new NullPointerException("Null file");
+        this.file = file;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < HEADER_SIZE) throw new IOException("File " + file + " too short for a journal segment");
+            if (size > Integer.MAX_VALUE) throw new IOException("File " + file + " too big for a journal segment");
+            buffer = channel.map(MapMode.READ_ONLY, 0, size);
+        }
+
+        if (buffer.getInt(0) != MAGIC) throw new IOException("File " + file + " is not a journal segment");
+        if (buffer.getShort(4) != VERSION) throw new IOException("Unsupported version " + buffer.getShort(4) + " in " + file);
+
+        final Encoding[] encodings = Encoding.values();
+        final int encoding = buffer.getShort(6);
+        if ((encoding < 0) || (encoding >= encodings.length)) throw new IOException("Unsupported encoding " + encoding + " in " + file);
+        this.encoding = encodings[encoding];
+
+        sequence = buffer.getLong(8);
+        buffer.position(HEADER_SIZE);
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the segment {@link File} we're reading.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Return the sequence number of the segment we're reading.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Return the {@link Encoding} of the records in the segment.
+     */
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Return the offset in the segment of the next record to be read.
+     */
+    public int getPosition() {
+        return buffer.position();
+    }
+
+    /**
+     * Move to the specified offset in the segment, which <b>must</b> be the
+     * beginning of a record (as returned by {@link #getPosition()}).
+     */
+    public void seek(int position) {
+        if ((position < HEADER_SIZE) || (position > buffer.limit()))
+            throw new IllegalArgumentException("Invalid position " + position);
+        buffer.position(position);
+        corrupted = false;
+        finished = false;
+    }
+
+    /**
+     * Return <b>true</b> if we stopped reading at an incomplete or damaged
+     * record, rather than at the end of what was written.
+     */
+    public boolean isCorrupted() {
+        return corrupted;
+    }
+
+    /**
+     * Return the (read-only) payload of the next record, or <b>null</b> if
+     * there are no more (complete) records to read.
+     */
+    public ByteBuffer next() {
+        if (finished) return null;
+
+        /* No space for another header, or nothing written: the end */
+        if (buffer.remaining() < RECORD_HEADER_SIZE) return finish(buffer.remaining() >= 4 && buffer.getInt(buffer.position()) > 0);
+
+        final int position = buffer.position();
+        final int length = buffer.getInt(position);
+        if ((length == 0) || (length == END_OF_SEGMENT)) return finish(false);
+        if ((length < 0) || (length > buffer.remaining() - RECORD_HEADER_SIZE)) return finish(true);
+
+        final ByteBuffer payload = buffer.duplicate();
+        payload.position(position + RECORD_HEADER_SIZE).limit(position + RECORD_HEADER_SIZE + length);
+
+        /* Verify the checksum of the payload */
+        checksum.reset();
+        final ByteBuffer verify = payload.duplicate();
+        while (verify.hasRemaining()) {
+            final int chunk = Math.min(bytes.length, verify.remaining());
+            verify.get(bytes, 0, chunk);
+            checksum.update(bytes, 0, chunk);
+        }
+        if ((int) checksum.getValue() != buffer.getInt(position + 4)) return finish(true);
+
+        buffer.position(position + RECORD_HEADER_SIZE + length);
+        return payload.slice().asReadOnlyBuffer();
+    }
+
+    private ByteBuffer finish(boolean corrupted) {
+        this.corrupted = corrupted;
+        finished = true;
+        return null;
+    }
+}
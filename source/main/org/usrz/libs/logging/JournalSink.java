@@ -0,0 +1,540 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link LogSink} appending events to memory-mapped, preallocated segment
+ * files, without locks and (mostly) without system calls.
+ *
+ * <p>Each thread encodes its events in its own buffers, then atomically
+ * claims a region of the current segment and copies the event in there. The
+ * thread whose claim overflows the segment marks its end and rolls over to
+ * the next segment, which is preallocated in the background.</p>
+ *
+ * <p>Segments are named <code>name.000000001.journal</code> (with increasing
+ * sequence numbers) and start with a {@value #HEADER_SIZE} bytes header: a
+ * magic number, a version and an {@link Encoding} (both as <code>short</code>s)
+ * and the segment's sequence number. Records follow, each one being the
+ * length of its payload, its <i>CRC32</i> and the payload itself (either a
+ * text line or a binary event). The length is written last, so that a
+ * zero length always means "nothing further was written", and the checksum
+ * guards against records torn by a crash. Use a {@link JournalReader} to
+ * read them back.</p>
+ *
+ * <p>Dirty pages are written to disk by the operating system whenever it
+ * sees fit, unless a <i>force interval</i> is specified, in which case the
+ * current segment will be {@linkplain MappedByteBuffer#force() forced} on
+ * schedule (segments are always forced when rolled over and closed).</p>
+ *
+ * <p>With the {@link Encoding#BINARY} encoding, logger names, thread names
+ * and message templates are written only once in a dictionary file next to
+ * the segments (<code>name.dictionary</code>), messages logged through our
+ * {@link Log} are not formatted at all, and the text is only rendered by
+ * the {@link JournalDecoder} when (and if) someone reads it. Once done with,
+ * binary segments are also indexed, so that a {@link JournalQuery} can skip
+ * whatever it doesn't need to read.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+public final class JournalSink implements TemplateLogSink {
+
+    /** The magic number at the beginning of each segment. */
+    public static final int MAGIC = 0x554A524E; // "UJRN"
+    /** The version of our segments' format. */
+    public static final short VERSION = 1;
+    /** The size of the header at the beginning of each segment. */
+    public static final int HEADER_SIZE = 16;
+    /** The size of the header before each record's payload. */
+    public static final int RECORD_HEADER_SIZE = 8;
+    /** The length marking the end of a segment. */
+    public static final int END_OF_SEGMENT = -1;
+
+    /* The extension of our segment files */
+    private static final String EXTENSION = ".journal";
+    /* The smallest segment we support */
+    private static final int MIN_SEGMENT_SIZE = 4096;
+
+    private final File directory;
+    private final String name;
+    private final int segmentSize;
+    private final Encoding encoding;
+    private final JournalDictionary dictionary;
+    private final ScheduledExecutorService executor;
+    private final AtomicLong sequence;
+
+    /* Events too big for a segment, or we couldn't roll over for */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /* Our current segment, and the next one being prepared */
+    private volatile Segment current;
+    private volatile Future<Segment> next;
+    private volatile boolean closed = false;
+
+    /* Each thread has its own encoder, checksum and view of the segment */
+    private final ThreadLocal<Appender> appenders = new ThreadLocal<Appender>() {
+        @Override
+        protected Appender initialValue() {
+            return new Appender(encoding == Encoding.BINARY ? new BinaryEncoder(dictionary) :
+                                encoding == Encoding.JSON ? new JsonEncoder() :
+                                new TextEncoder());
+        }
+    };
+
+    /* ====================================================================== */
+
+    /**
+     * Create a new {@link JournalSink} writing text and never forcing its
+     * segments to disk.
+     *
+     * @see #JournalSink(File, String, int, long, Encoding)
+     */
+    public JournalSink(File directory, String name, int segmentSize)
+    throws IOException {
+        this(directory, name, segmentSize, 0, Encoding.TEXT);
+    }
+
+    /**
+     * Create a new {@link JournalSink} writing text.
+     *
+     * @see #JournalSink(File, String, int, long, Encoding)
+     */
+    public JournalSink(File directory, String name, int segmentSize, long forceInterval)
+    throws IOException {
+        this(directory, name, segmentSize, forceInterval, Encoding.TEXT);
+    }
+
+    /**
+     * Create a new {@link JournalSink}.
+     *
+     * <p>Segments are never appended to: if segments with the same name
+     * exist in the directory, we'll start from the next sequence number.</p>
+     *
+     * @param directory The directory where segments will be created.
+     * @param name The name (prefix) of all segment files.
+     * @param segmentSize The size (in bytes) of each segment.
+     * @param forceInterval The interval (in milliseconds) at which the current
+     *                      segment will be forced to disk, or <code>0</code>.
+     * @param encoding How events will be encoded in our segments.
+     */
+    public JournalSink(File directory, String name, int segmentSize, long forceInterval, Encoding encoding)
+    throws IOException {
+        if (directory == null) throw new NullPointerException("Null directory");
+        if (name == null) throw new NullPointerException("Null name");
+        if (segmentSize < MIN_SEGMENT_SIZE) throw new IllegalArgumentException("Segment size " + segmentSize + " less than " + MIN_SEGMENT_SIZE);
+        if (forceInterval < 0) throw new IllegalArgumentException("Negative force interval " + forceInterval);
+        if (encoding == null) throw new NullPointerException("Null encoding");
+        if (!directory.isDirectory()) throw new IOException("Not a directory: " + directory);
+
+        this.directory = directory.getAbsoluteFile();
+        this.name = name;
+        this.segmentSize = segmentSize;
+        this.encoding = encoding;
+        dictionary = encoding == Encoding.BINARY ? JournalDictionary.open(JournalDictionary.file(directory, name)) : null;
+
+        /* Start after whatever segment we find */
+        final File[] segments = segments(directory, name);
+        sequence = new AtomicLong(segments.length == 0 ? 0 : sequence(segments[segments.length - 1], name));
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "JournalSink[" + name + "]");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        current = prepare();
+        next = executor.submit(preparation());
+
+        if (forceInterval > 0) executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                if (!closed) force(current);
+            }
+        }, forceInterval, forceInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return all the segment files with the specified name in a directory,
+     * sorted by their sequence number.
+     */
+    public static File[] segments(File directory, final String name) {
+        final File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File directory, String file) {
+                if (!file.startsWith(name + ".") || !file.endsWith(EXTENSION)) return false;
+                final String sequence = file.substring(name.length() + 1, file.length() - EXTENSION.length());
+                return sequence.matches("\\d{9}");
+            }
+        });
+        if (files == null) return new File[0];
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static long sequence(File segment, String name) {
+        final String file = segment.getName();
+        return Long.parseLong(file.substring(name.length() + 1, file.length() - EXTENSION.length()));
+    }
+
+    /**
+     * Return the name of the journal a segment file belongs to.
+     */
+    static String name(File segment) {
+        final String file = segment.getName();
+        if (!file.matches(".+\\.\\d{9}\\" + EXTENSION)) throw new IllegalArgumentException("Not a journal segment: " + segment);
+        return file.substring(0, file.length() - EXTENSION.length() - 10);
+    }
+
+    /**
+     * Return the number of events which were not written as they were too
+     * big to fit in one segment, or as we failed to roll over to a new one.
+     */
+    public long getDroppedEvents() {
+        return dropped.get();
+    }
+
+    /* ====================================================================== */
+
+    @Override
+    public void append(long timestamp, String threadName, String loggerName,
+                       int level, String message, Object[] arguments,
+                       Throwable throwable) {
+        if (closed) return;
+
+        final Appender appender = appenders.get();
+        write(appender, appender.encoder.encode(timestamp, threadName, loggerName,
+                                                level, message, arguments, throwable));
+    }
+
+    @Override
+    public void appendTemplate(long timestamp, String threadName, String loggerName,
+                               int level, String format, Object[] arguments,
+                               Throwable throwable) {
+        if (closed) return;
+
+        final Appender appender = appenders.get();
+        write(appender, appender.encoder.encodeTemplate(timestamp, threadName, loggerName,
+                                                        level, format, arguments, throwable));
+    }
+
+    /**
+     * Force the current segment (and our dictionary) to disk.
+     */
+    @Override
+    public void flush() {
+        if (!closed) force(current);
+    }
+
+    /**
+     * Force the current segment (and our dictionary) to disk, and stop
+     * writing.
+     *
+     * <p>The current segment is sealed without waiting for events being
+     * appended concurrently by other threads: those might be lost, or only
+     * partially written (and then skipped by {@link JournalReader}s, as
+     * their checksum won't match).</p>
+     */
+    @Override
+    public void close()
+    throws IOException {
+        if (closed) return;
+        closed = true;
+
+        /* Let the next segment be prepared (and the last one sealed) */
+        executor.shutdown();
+        boolean interrupted = false;
+        while (!executor.isTerminated()) try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            interrupted = true;
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+
+        seal(current, Math.min(current.position.get(), segmentSize));
+        if (dictionary != null) dictionary.close();
+
+        /* Remove the segment we prepared, but never used */
+        try {
+            final Segment unused = next.get();
+            if ((unused != current) && !unused.file.delete()) throw new IOException("Unable to delete " + unused.file);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException exception) {
+            /* Never prepared, nothing to delete */
+        }
+    }
+
+    /* ====================================================================== */
+
+    private void write(Appender appender, ByteBuffer payload) {
+        final int length = payload.remaining();
+        final int size = RECORD_HEADER_SIZE + length;
+        if (size > segmentSize - HEADER_SIZE - 4) {
+            dropped.incrementAndGet();
+            return;
+        }
+
+        appender.checksum.reset();
+        appender.checksum.update(payload.array(), payload.arrayOffset() + payload.position(), length);
+        final int checksum = (int) appender.checksum.getValue();
+
+        while (true) {
+            final Segment segment = current;
+            final int position = segment.position.getAndAdd(size);
+
+            /* Our claim fits: write the payload, then the header */
+            if (position + size <= segmentSize) {
+                final ByteBuffer view = appender.view(segment);
+                view.position(position + RECORD_HEADER_SIZE);
+                view.put(payload);
+                view.putInt(position + 4, checksum);
+                view.putInt(position, length);
+                return;
+            }
+
+            /* The first claim overflowing marks the end and rolls over */
+            if (position <= segmentSize) {
+                if (position <= segmentSize - 4) segment.buffer.putInt(position, END_OF_SEGMENT);
+                segment.end = position;
+            }
+
+            /* Roll over (or wait for whoever is), dropping the event if we can't */
+            while ((current == segment) && !closed) {
+                if (segment.end < 0) {
+                    Thread.yield();
+                } else if (!roll(segment)) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+            }
+
+            if (closed) return;
+        }
+    }
+
+    /* ====================================================================== */
+
+    /*
+     * Roll over the specified segment, unless someone else already did,
+     * returning false if we couldn't: whoever comes next will try again.
+     */
+    private boolean roll(final Segment segment) {
+        synchronized (segment) {
+            if (current != segment) return true;
+
+            try {
+                /* Get the segment prepared in the background, or make one now */
+                Segment rolled;
+                try {
+                    rolled = prepared();
+                } catch (ExecutionException exception) {
+                    rolled = prepare();
+                }
+
+                /* Prepare the next one before anyone else can roll over */
+                try {
+                    next = executor.submit(preparation());
+                } catch (RejectedExecutionException exception) {
+                    /* Closed while we were rolling, fine */
+                }
+
+                current = rolled;
+
+            } catch (IOException exception) {
+                if (!segment.failed) {
+                    segment.failed = true;
+                    System.err.println("Exception rolling journal " + name + ", dropping events");
+                    exception.printStackTrace(System.err);
+                }
+                return false;
+            }
+        }
+
+        /* Seal the old segment in the background */
+        final int end = segment.end;
+        try {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    seal(segment, end);
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            seal(segment, end);
+        }
+        return true;
+    }
+
+    /* Wait for the next segment, even if interrupted: preparing always ends */
+    private Segment prepared()
+    throws ExecutionException {
+        boolean interrupted = false;
+        try {
+            while (true) try {
+                return next.get();
+            } catch (InterruptedException exception) {
+                interrupted = true;
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    private void seal(Segment segment, int end) {
+        try {
+            force(segment);
+        } catch (RuntimeException exception) {
+            System.err.println("Exception forcing " + segment.file);
+            exception.printStackTrace(System.err);
+        }
+        if (encoding != Encoding.BINARY) return;
+
+        try {
+            JournalIndex.build(segment.buffer.duplicate(), end, dictionary).write(JournalIndex.file(segment.file));
+        } catch (IOException exception) {
+            System.err.println("Exception indexing " + segment.file);
+            exception.printStackTrace(System.err);
+        }
+    }
+
+    private void force(Segment segment) {
+        segment.buffer.force();
+        if (dictionary != null) try {
+            dictionary.force();
+        } catch (IOException exception) {
+            throw new IllegalStateException("Exception forcing dictionary of journal " + name, exception);
+        }
+    }
+
+    private Callable<Segment> preparation() {
+        return new Callable<Segment>() {
+            @Override
+            public Segment call()
+            throws IOException {
+                return prepare();
+            }
+        };
+    }
+
+    private Segment prepare()
+    throws IOException {
+        final long number = sequence.incrementAndGet();
+        final File file = new File(directory, String.format("%s.%09d%s", name, number, EXTENSION));
+
+        try (RandomAccessFile random = new RandomAccessFile(file, "rw")) {
+            random.setLength(segmentSize);
+            final MappedByteBuffer buffer = random.getChannel().map(MapMode.READ_WRITE, 0, segmentSize);
+
+            /* Touch every page, so that it's there when we need it */
+            for (int page = 0; page < segmentSize; page += 4096) buffer.put(page, (byte) 0);
+
+            buffer.putInt(0, MAGIC);
+            buffer.putShort(4, VERSION);
+            buffer.putShort(6, (short) encoding.ordinal());
+            buffer.putLong(8, number);
+            return new Segment(file, buffer);
+        }
+    }
+
+    /* ====================================================================== */
+
+    private static final class Segment {
+
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private final AtomicInteger position = new AtomicInteger(HEADER_SIZE);
+        /* Where the first claim overflowed, and whether rolling failed */
+        private volatile int end = -1;
+        private boolean failed = false;
+
+        private Segment(File file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class Appender {
+
+        private final EventEncoder encoder;
+        private final CRC32 checksum = new CRC32();
+
+        /* Our own view of the last segment we wrote to */
+        private Segment segment;
+        private ByteBuffer view;
+
+        private Appender(EventEncoder encoder) {
+            this.encoder = encoder;
+        }
+
+        private ByteBuffer view(Segment segment) {
+            if (this.segment != segment) {
+                this.segment = segment;
+                view = segment.buffer.duplicate();
+            }
+            return view;
+        }
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * How events are encoded in the segments of a {@link JournalSink}.
+     */
+    public enum Encoding {
+
+        /**
+         * Events are encoded as text lines, like a {@link FileSink} would.
+         */
+        TEXT,
+
+        /**
+         * Events are encoded in a compact binary form, and must be decoded
+         * by a {@link JournalDecoder}.
+         */
+        BINARY,
+
+        /**
+         * Events are encoded as <i>JSON</i> objects, one per line, with
+         * their timestamp, level, logger, thread, message, MDC and throwable.
+         */
+        JSON;
+
+    }
+}
@@ -0,0 +1,441 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static org.slf4j.spi.LocationAwareLogger.DEBUG_INT;
+import static org.slf4j.spi.LocationAwareLogger.INFO_INT;
+import static org.slf4j.spi.LocationAwareLogger.TRACE_INT;
+import static org.slf4j.spi.LocationAwareLogger.WARN_INT;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.slf4j.MDC;
+import org.slf4j.spi.MDCAdapter;
+
+/**
+ * An encoder rendering events as <i>JSON</i> objects (one per line) for our
+ * sinks, escaping everything straight into a reused byte array.
+ *
+ * <p>Events are rendered like:</p>
+ *
+ * <pre>
+ * {"timestamp":"2014-01-01T12:34:56.789Z","level":"INFO","logger":"name",
+ *  "thread":"main","message":"Hello, world!","mdc":{"key":"value"},
+ *  "throwable":"java.lang.Exception: ..."}
+ * </pre>
+ *
+ * <p>The <code>mdc</code> and <code>throwable</code> fields are only present
+ * when there is something to write.</p>
+ *
+ * <p>Once its buffer has grown big enough, this encoder does not allocate:
+ * timestamps and numbers are written digit by digit, <code>{}</code> style
+ * messages (and <code>%s</code> or <code>%d</code> templates) are formatted
+ * in place, and the MDC of <i>Logback</i> is read without being copied. What
+ * still allocates is rendering arguments other than strings, numbers,
+ * booleans and characters, anything but the simplest templates (delegated to
+ * {@link String#format(String, Object...)}), and throwables.</p>
+ *
+ * <p>Instances are <b>not</b> thread safe, keep one per thread.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+final class JsonEncoder implements EventEncoder {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private static final byte[] TIMESTAMP = "{\"timestamp\":\"".getBytes();
+    private static final byte[] LEVEL = "\",\"level\":\"".getBytes();
+    private static final byte[] LOGGER = "\",\"logger\":\"".getBytes();
+    private static final byte[] THREAD = "\",\"thread\":\"".getBytes();
+    private static final byte[] MESSAGE = "\",\"message\":\"".getBytes();
+    private static final byte[] MDC_START = "\",\"mdc\":{".getBytes();
+    private static final byte[] THROWABLE = ",\"throwable\":\"".getBytes();
+
+    private static final byte[] TRACE = "TRACE".getBytes();
+    private static final byte[] DEBUG = "DEBUG".getBytes();
+    private static final byte[] INFO = "INFO".getBytes();
+    private static final byte[] WARN = "WARN".getBytes();
+    private static final byte[] ERROR = "ERROR".getBytes();
+
+    /* Whether we can read Logback's (copy-on-write) MDC map without copying */
+    private static final boolean LOGBACK_MDC = LogbackMDC.available();
+
+    private byte[] bytes = new byte[1024];
+    private ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    private int length;
+
+    /* The last MDC map we've seen, flattened */
+    private Map<String, String> mdc = null;
+    private String[] mdcEntries = new String[0];
+    private int mdcSize = 0;
+
+    JsonEncoder() {
+        /* Nothing to do */
+    }
+
+    /* ====================================================================== */
+
+    @Override
+    public ByteBuffer encode(long timestamp, String threadName, String loggerName,
+                             int level, String message, Object[] arguments,
+                             Throwable throwable) {
+        start(timestamp, threadName, loggerName, level);
+        if (arguments == null) escape(message);
+        else formatSLF4J(message, arguments);
+        return finish(throwable);
+    }
+
+    @Override
+    public ByteBuffer encodeTemplate(long timestamp, String threadName, String loggerName,
+                                     int level, String format, Object[] arguments,
+                                     Throwable throwable) {
+        start(timestamp, threadName, loggerName, level);
+        final int mark = length;
+        if (!formatSimple(format, arguments)) {
+            length = mark;
+            escape(String.format(format, arguments));
+        }
+        return finish(throwable);
+    }
+
+    /* ====================================================================== */
+
+    private void start(long timestamp, String threadName, String loggerName, int level) {
+        length = 0;
+        write(TIMESTAMP);
+        writeTimestamp(timestamp);
+        write(LEVEL);
+        write(level <= TRACE_INT ? TRACE :
+              level <= DEBUG_INT ? DEBUG :
+              level <= INFO_INT  ? INFO  :
+              level <= WARN_INT  ? WARN  :
+                                   ERROR);
+        write(LOGGER);
+        escape(loggerName);
+        write(THREAD);
+        escape(threadName);
+        write(MESSAGE);
+    }
+
+    private ByteBuffer finish(Throwable throwable) {
+
+        /* The MDC, if we have anything in there */
+        final int entries = mdc();
+        if (entries > 0) {
+            write(MDC_START);
+            for (int index = 0; index < entries; index += 2) {
+                if (index > 0) write(',');
+                write('"');
+                escape(mdcEntries[index]);
+                write('"');
+                write(':');
+                if (mdcEntries[index + 1] == null) {
+                    write('n'); write('u'); write('l'); write('l');
+                } else {
+                    write('"');
+                    escape(mdcEntries[index + 1]);
+                    write('"');
+                }
+            }
+            write('}');
+        } else {
+            write('"');
+        }
+
+        /* The stack trace, if we have one */
+        if (throwable != null) {
+            write(THROWABLE);
+            escape(TextEncoder.stackTrace(throwable));
+            write('"');
+        }
+
+        write('}');
+        write('\n');
+
+        buffer.clear().limit(length);
+        return buffer;
+    }
+
+    /* ====================================================================== */
+
+    private void writeTimestamp(long timestamp) {
+        final long days = Math.floorDiv(timestamp, 86400000L);
+        final int millis = (int) Math.floorMod(timestamp, 86400000L);
+
+        /* Civil date from days since the epoch (proleptic Gregorian) */
+        final long shifted = days + 719468;
+        final long era = Math.floorDiv(shifted, 146097);
+        final int dayOfEra = (int) (shifted - era * 146097);
+        final int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        final int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final int monthIndex = (5 * dayOfYear + 2) / 153;
+        final int day = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+        final int month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+        final long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        if ((year >= 0) && (year <= 9999)) writeDigits((int) year, 4);
+        else writeLong(year);
+        write('-');
+        writeDigits(month, 2);
+        write('-');
+        writeDigits(day, 2);
+        write('T');
+        writeDigits(millis / 3600000, 2);
+        write(':');
+        writeDigits(millis / 60000 % 60, 2);
+        write(':');
+        writeDigits(millis / 1000 % 60, 2);
+        write('.');
+        writeDigits(millis % 1000, 3);
+        write('Z');
+    }
+
+    private void writeDigits(int value, int digits) {
+        ensure(digits);
+        for (int index = length + digits - 1; index >= length; index --) {
+            bytes[index] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    private void writeLong(long value) {
+        ensure(20);
+        if (value == Long.MIN_VALUE) {
+            for (int index = 0; index < 20; index ++) bytes[length ++] = (byte) "-9223372036854775808".charAt(index);
+            return;
+        }
+        if (value < 0) {
+            bytes[length ++] = '-';
+            value = -value;
+        }
+
+        /* Write backwards, then reverse */
+        final int start = length;
+        do {
+            bytes[length ++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        for (int left = start, right = length - 1; left < right; left ++, right --) {
+            final byte swap = bytes[left];
+            bytes[left] = bytes[right];
+            bytes[right] = swap;
+        }
+    }
+
+    /* ====================================================================== */
+
+    private void formatSLF4J(String message, Object[] arguments) {
+        if (message == null) {
+            escape("null");
+            return;
+        }
+
+        /* Same rules as SLF4J's MessageFormatter, escapes and all */
+        int argument = 0;
+        int start = 0;
+        final int size = message.length();
+        for (int index = 0; index < size - 1; index ++) {
+            if ((message.charAt(index) != '{') || (message.charAt(index + 1) != '}')) continue;
+            if (argument >= arguments.length) break;
+
+            final boolean escaped = (index > 0) && (message.charAt(index - 1) == '\\');
+            final boolean doubleEscaped = escaped && (index > 1) && (message.charAt(index - 2) == '\\');
+
+            if (escaped && !doubleEscaped) {
+                /* "\{}" is a literal "{}" */
+                escape(message, start, index - 1);
+                start = index;
+                index ++;
+                continue;
+            }
+
+            escape(message, start, doubleEscaped ? index - 1 : index);
+            writeArgument(arguments[argument ++]);
+            start = index + 2;
+            index ++;
+        }
+        escape(message, start, size);
+    }
+
+    private boolean formatSimple(String format, Object[] arguments) {
+        /* Only "%s", "%d", "%%" and "%n", everything else goes to String.format */
+        int argument = 0;
+        int start = 0;
+        final int size = format.length();
+        for (int index = 0; index < size; index ++) {
+            if (format.charAt(index) != '%') continue;
+            if (index + 1 >= size) return false;
+
+            escape(format, start, index);
+            final char conversion = format.charAt(++ index);
+            start = index + 1;
+
+            if (conversion == '%') {
+                write('%');
+            } else if (conversion == 'n') {
+                write('\\'); write('n');
+            } else if ((conversion != 's') && (conversion != 'd')) {
+                return false;
+            } else {
+                if ((arguments == null) || (argument >= arguments.length)) return false;
+                final Object object = arguments[argument ++];
+                if (conversion == 'd') {
+                    if (!((object instanceof Integer) || (object instanceof Long) ||
+                          (object instanceof Short) || (object instanceof Byte))) return false;
+                    writeLong(((Number) object).longValue());
+                } else if (object == null) {
+                    escape("null");
+                } else if ((object instanceof String) || (object instanceof Boolean) ||
+                           (object instanceof Character) || (object instanceof Integer) ||
+                           (object instanceof Long) || (object instanceof Short) ||
+                           (object instanceof Byte)) {
+                    writeArgument(object);
+                } else {
+                    return false;
+                }
+            }
+        }
+        escape(format, start, size);
+        return true;
+    }
+
+    private void writeArgument(Object object) {
+        if (object instanceof String) {
+            escape((String) object);
+        } else if ((object instanceof Integer) || (object instanceof Long) ||
+                   (object instanceof Short) || (object instanceof Byte)) {
+            writeLong(((Number) object).longValue());
+        } else if (object instanceof Boolean) {
+            escape(((Boolean) object).booleanValue() ? "true" : "false");
+        } else if (object instanceof Character) {
+            escape((Character) object);
+        } else if (object == null) {
+            escape("null");
+        } else {
+            escape(MessageRenderers.render(object));
+        }
+    }
+
+    /* ====================================================================== */
+
+    private int mdc() {
+        /* Logback's map is copy-on-write: only flatten it when it changes */
+        final Map<String, String> map = LOGBACK_MDC ? LogbackMDC.getPropertyMap() : copy(MDC.getMDCAdapter());
+
+        if (map != mdc) {
+            mdc = map;
+            mdcSize = 0;
+            if (map != null) {
+                if (mdcEntries.length < map.size() * 2) mdcEntries = new String[map.size() * 2];
+                for (Map.Entry<String, String> entry: map.entrySet()) {
+                    mdcEntries[mdcSize ++] = entry.getKey();
+                    mdcEntries[mdcSize ++] = entry.getValue();
+                }
+            }
+        }
+        return mdcSize;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> copy(MDCAdapter adapter) {
+        return adapter == null ? null : adapter.getCopyOfContextMap();
+    }
+
+    /* ====================================================================== */
+
+    private void escape(CharSequence string) {
+        escape(string, 0, string.length());
+    }
+
+    private void escape(CharSequence string, int start, int end) {
+        ensure((end - start) * 3);
+        for (int index = start; index < end; index ++) {
+            final char c = string.charAt(index);
+
+            if ((c >= 0x20) && (c < 0x80)) {
+                if ((c == '"') || (c == '\\')) {
+                    ensure(2 + (end - index) * 3);
+                    bytes[length ++] = '\\';
+                }
+                bytes[length ++] = (byte) c;
+
+            } else if (c < 0x20) {
+                ensure(6 + (end - index) * 3);
+                bytes[length ++] = '\\';
+                switch (c) {
+                    case '\n': bytes[length ++] = 'n'; break;
+                    case '\r': bytes[length ++] = 'r'; break;
+                    case '\t': bytes[length ++] = 't'; break;
+                    case '\b': bytes[length ++] = 'b'; break;
+                    case '\f': bytes[length ++] = 'f'; break;
+                    default:
+                        bytes[length ++] = 'u';
+                        bytes[length ++] = '0';
+                        bytes[length ++] = '0';
+                        bytes[length ++] = HEX[c >> 4];
+                        bytes[length ++] = HEX[c & 0x0F];
+                }
+
+            } else if (c < 0x800) {
+                bytes[length ++] = (byte) (0xC0 | (c >> 6));
+                bytes[length ++] = (byte) (0x80 | (c & 0x3F));
+
+            } else if (Character.isHighSurrogate(c) && (index + 1 < end) && Character.isLowSurrogate(string.charAt(index + 1))) {
+                final int codePoint = Character.toCodePoint(c, string.charAt(++ index));
+                bytes[length ++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[length ++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[length ++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[length ++] = (byte) (0x80 | (codePoint & 0x3F));
+
+            } else if (Character.isSurrogate(c)) {
+                /* Unpaired surrogate, same as a CharsetEncoder replacing it */
+                bytes[length ++] = '?';
+
+            } else {
+                bytes[length ++] = (byte) (0xE0 | (c >> 12));
+                bytes[length ++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[length ++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void escape(char c) {
+        ensure(6);
+        if ((c >= 0x20) && (c < 0x80) && (c != '"') && (c != '\\')) bytes[length ++] = (byte) c;
+        else escape(String.valueOf(c));
+    }
+
+    private void write(byte[] data) {
+        ensure(data.length);
+        System.arraycopy(data, 0, bytes, length, data.length);
+        length += data.length;
+    }
+
+    private void write(char c) {
+        ensure(1);
+        bytes[length ++] = (byte) c;
+    }
+
+    private void ensure(int needed) {
+        if (length + needed <= bytes.length) return;
+        final byte[] grown = new byte[Math.max(length + needed, bytes.length * 2)];
+        System.arraycopy(bytes, 0, grown, 0, length);
+        bytes = grown;
+        buffer = ByteBuffer.wrap(bytes);
+    }
+}
@@ -0,0 +1,330 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static org.slf4j.spi.LocationAwareLogger.DEBUG_INT;
+import static org.slf4j.spi.LocationAwareLogger.ERROR_INT;
+import static org.slf4j.spi.LocationAwareLogger.INFO_INT;
+import static org.slf4j.spi.LocationAwareLogger.TRACE_INT;
+import static org.slf4j.spi.LocationAwareLogger.WARN_INT;
+
+import java.io.Closeable;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.spi.LocationAwareLogger;
+
+/**
+ * A self-protecting stage, dropping less important events when handing
+ * them over to the backend (or to our {@link LogSink}) becomes too slow.
+ *
+ * <p>One in every few events (by default 64) is timed, and the times are
+ * averaged (exponentially weighted, so that recent ones matter more). When
+ * the average exceeds our latency <i>budget</i>, a global minimum level is
+ * raised and all events below it are dropped. Once the minimum level was
+ * raised for at least the specified recovery time, and the average went
+ * back below <em>half</em> of the budget, the minimum level is lowered
+ * again.</p>
+ *
+ * <p>Each transition is logged as a <b>WARN</b> event, and counted: see
+ * {@link #getShedCount()} and {@link #getRecoverCount()}.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+public final class LoadShedder implements Closeable {
+
+    /* The fully qualified class name of this class */
+    private static final String FQCN = LoadShedder.class.getName();
+    /* By default we time one event in this many */
+    private static final int DEFAULT_SAMPLING = 64;
+
+    private final long budget;
+    private final int level;
+    private final long recovery;
+    private final int sampling;
+
+    /* Where we report our transitions */
+    private final LocationAwareLogger logger = SLF4JFactory.getLogger(LoadShedder.class);
+    /* Checking whether we can recover, and refreshing levels */
+    private final ScheduledExecutorService evaluator;
+
+    /* Our average latency, in nanoseconds, and our metrics */
+    private final AtomicLong latency = new AtomicLong();
+    private final AtomicLong samples = new AtomicLong();
+    private final AtomicLong eventsShed = new AtomicLong();
+    private final AtomicLong shedCount = new AtomicLong();
+    private final AtomicLong recoverCount = new AtomicLong();
+
+    /* Whether we're shedding, and since when */
+    private volatile boolean shedding = false;
+    private long since;
+    /* The number of samples the last time we evaluated, only for our evaluator */
+    private long evaluated = 0;
+
+    /* ====================================================================== */
+
+    /**
+     * Create a new {@link LoadShedder}.
+     *
+     * @param budget The average time (in microseconds) handing over an event
+     *               to the backend can take.
+     * @param level The minimum level (as in {@link LocationAwareLogger},
+     *              from <code>DEBUG_INT</code> to <code>ERROR_INT</code>) of
+     *              the events logged when the budget is exceeded.
+     * @param recovery The minimum time (in milliseconds) events are dropped
+     *                 for, before the minimum level is lowered again.
+     */
+    public LoadShedder(long budget, int level, long recovery) {
+        this(budget, level, recovery, DEFAULT_SAMPLING);
+    }
+
+    /**
+     * Create a new {@link LoadShedder} timing one event in every
+     * <code>sampling</code>.
+     */
+    LoadShedder(long budget, int level, long recovery, int sampling) {
+        if (budget < 1) throw new IllegalArgumentException("Invalid budget " + budget);
+        if ((level != DEBUG_INT) && (level != INFO_INT) && (level != WARN_INT) && (level != ERROR_INT))
+            throw new IllegalArgumentException("Invalid level " + level);
+        if (recovery < 0) throw new IllegalArgumentException("Negative recovery time " + recovery);
+        if (sampling < 1) throw new IllegalArgumentException("Invalid sampling " + sampling);
+
+        this.budget = TimeUnit.MICROSECONDS.toNanos(budget);
+        this.level = level;
+        this.recovery = TimeUnit.MILLISECONDS.toNanos(recovery);
+        this.sampling = sampling;
+
+        evaluator = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "LoadShedder");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        final long interval = Math.max(10, recovery / 4);
+        evaluator.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evaluate();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Check whether we are currently dropping events.
+     */
+    public boolean isShedding() {
+        return shedding;
+    }
+
+    /**
+     * Return the minimum level of events logged while shedding load, as in
+     * {@link LocationAwareLogger}.
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Return the average time (in nanoseconds) handing over an event to the
+     * backend took recently.
+     */
+    public long getLatency() {
+        return latency.get();
+    }
+
+    /**
+     * Return the number of events we timed.
+     */
+    public long getSamples() {
+        return samples.get();
+    }
+
+    /**
+     * Return the number of events we dropped.
+     */
+    public long getEventsShed() {
+        return eventsShed.get();
+    }
+
+    /**
+     * Return the number of times we started dropping events.
+     */
+    public long getShedCount() {
+        return shedCount.get();
+    }
+
+    /**
+     * Return the number of times we stopped dropping events.
+     */
+    public long getRecoverCount() {
+        return recoverCount.get();
+    }
+
+    /**
+     * Stop evaluating latencies, and stop dropping events.
+     */
+    @Override
+    public void close() {
+        evaluator.shutdown();
+        recover();
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Check whether the next event should be timed.
+     */
+    boolean sample() {
+        return (sampling == 1) || (ThreadLocalRandom.current().nextInt(sampling) == 0);
+    }
+
+    /**
+     * Record the time (in nanoseconds) it took to hand over an event.
+     */
+    void record(long nanos) {
+        samples.incrementAndGet();
+
+        long current, updated;
+        do {
+            current = latency.get();
+            updated = current + ((nanos - current) >> 3);
+        } while (!latency.compareAndSet(current, updated));
+
+        if ((updated > budget) && !shedding) shed();
+    }
+
+    /**
+     * Count an event dropped because of the minimum level we imposed.
+     */
+    void dropped() {
+        eventsShed.incrementAndGet();
+    }
+
+    /* ====================================================================== */
+
+    private synchronized void shed() {
+        if (shedding || evaluator.isShutdown()) return;
+
+        shedding = true;
+        since = System.nanoTime();
+        shedCount.incrementAndGet();
+        LogDispatcher.setMinimumLevel(this, level);
+        refresh();
+
+        LogDispatcher.deliver(logger, null, FQCN, WARN_INT,
+                              "Logging latency of " + micros(latency.get()) + " exceeds the budget of "
+                              + micros(budget) + ": dropping events below " + TextEncoder.levelName(level).trim(),
+                              null, null);
+    }
+
+    private synchronized void recover() {
+        if (!shedding) return;
+
+        shedding = false;
+        recoverCount.incrementAndGet();
+        LogDispatcher.setMinimumLevel(this, TRACE_INT);
+        refresh();
+
+        LogDispatcher.deliver(logger, null, FQCN, WARN_INT,
+                              "Logging latency of " + micros(latency.get()) + " back within the budget of "
+                              + micros(budget) + ": no longer dropping events below " + TextEncoder.levelName(level).trim(),
+                              null, null);
+    }
+
+    private void evaluate() {
+        /* Nothing timed since last time? Nothing is logged, we're idle */
+        final long count = samples.get();
+        if (count == evaluated) {
+            long current;
+            do current = latency.get();
+            while (!latency.compareAndSet(current, current >> 1));
+        }
+        evaluated = count;
+
+        final long since;
+        synchronized (this) {
+            if (!shedding) return;
+            since = this.since;
+        }
+        if ((System.nanoTime() - since >= recovery) && (latency.get() < budget / 2)) recover();
+    }
+
+    /* Adapters cache their levels, tell them (not from whoever is logging) */
+    private void refresh() {
+        try {
+            evaluator.execute(new Runnable() {
+                @Override
+                public void run() {
+                    EffectiveLevels.refresh();
+                }
+            });
+        } catch (RuntimeException exception) {
+            /* Shut down, refresh here */
+            EffectiveLevels.refresh();
+        }
+    }
+
+    private static String micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos) + " us";
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Create a {@link LoadShedder} from the
+     * <code>org.usrz.libs.logging.shedding.*</code> system properties, or
+     * return <b>null</b> if no budget was specified or if any of them is
+     * malformed (after reporting it, we don't want to fail initialization).
+     */
+    static LoadShedder fromProperties() {
+        try {
+            final long budget = Long.parseLong(System.getProperty(Logging.SHEDDING_BUDGET_PROPERTY, "0"));
+            if (budget <= 0) return null;
+
+            final int level = parseLevel(System.getProperty(Logging.SHEDDING_LEVEL_PROPERTY, "warn"));
+            final long recovery = Long.parseLong(System.getProperty(Logging.SHEDDING_RECOVERY_PROPERTY, "10000"));
+            return new LoadShedder(budget, level, recovery);
+        } catch (IllegalArgumentException exception) {
+            /* This includes NumberFormatException */
+            System.err.println("WARNING: Load shedder not installed: " + exception.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Parse the name of a level that can be imposed as a minimum, from
+     * <code>debug</code> to <code>error</code>.
+     */
+    static int parseLevel(String level) {
+        switch (level.trim().toUpperCase(Locale.ROOT)) {
+            case "DEBUG": return DEBUG_INT;
+            case "INFO":  return INFO_INT;
+            case "WARN":  return WARN_INT;
+            case "ERROR": return ERROR_INT;
+            default: throw new IllegalArgumentException("Invalid level " + level);
+        }
+    }
+}
@@ -0,0 +1,420 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import org.slf4j.Logger;
+import org.slf4j.Marker;
+import org.slf4j.spi.LocationAwareLogger;
+
+/**
+ * A {@link LocationAwareLogger} wrapping a plain SLF4J {@link Logger}.
+ *
+ * <p>Location information will be lost (nothing we can do about it), but
+ * at least each call to {@link #log(Marker, String, int, String, Object[], Throwable)}
+ * will be translated into <b>exactly one</b> call to the wrapped instance,
+ * looking up the methods to call in a table indexed by level.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+final class LocationAwareLoggerAdapter implements LocationAwareLogger {
+
+    /* Our dispatchers, indexed by (normalized) level, see "index(int)" */
+    private static final Dispatcher[] DISPATCHERS = new Dispatcher[] {
+        new Dispatcher() { /* TRACE */
+            @Override void log(Logger l, Marker m, String s)              { l.trace(m, s); }
+            @Override void log(Logger l, Marker m, String s, Object[] a)  { l.trace(m, s, a); }
+            @Override void log(Logger l, Marker m, String s, Throwable t) { l.trace(m, s, t); }
+        },
+        new Dispatcher() { /* DEBUG */
+            @Override void log(Logger l, Marker m, String s)              { l.debug(m, s); }
+            @Override void log(Logger l, Marker m, String s, Object[] a)  { l.debug(m, s, a); }
+            @Override void log(Logger l, Marker m, String s, Throwable t) { l.debug(m, s, t); }
+        },
+        new Dispatcher() { /* INFO */
+            @Override void log(Logger l, Marker m, String s)              { l.info(m, s); }
+            @Override void log(Logger l, Marker m, String s, Object[] a)  { l.info(m, s, a); }
+            @Override void log(Logger l, Marker m, String s, Throwable t) { l.info(m, s, t); }
+        },
+        new Dispatcher() { /* WARN */
+            @Override void log(Logger l, Marker m, String s)              { l.warn(m, s); }
+            @Override void log(Logger l, Marker m, String s, Object[] a)  { l.warn(m, s, a); }
+            @Override void log(Logger l, Marker m, String s, Throwable t) { l.warn(m, s, t); }
+        },
+        new Dispatcher() { /* ERROR */
+            @Override void log(Logger l, Marker m, String s)              { l.error(m, s); }
+            @Override void log(Logger l, Marker m, String s, Object[] a)  { l.error(m, s, a); }
+            @Override void log(Logger l, Marker m, String s, Throwable t) { l.error(m, s, t); }
+        }
+    };
+
+    /* ====================================================================== */
+
+    private final Logger logger;
+
+    LocationAwareLoggerAdapter(Logger logger) {
+        if (logger == null) throw new NullPointerException("Null logger");
+        this.logger = logger;
+    }
+
+    /* ====================================================================== */
+
+    private static int index(int level) {
+        return level <= TRACE_INT ? 0 :
+               level >= ERROR_INT ? 4 :
+               (level + 9) / 10;
+    }
+
+    @Override
+    public void log(Marker marker, String fqcn, int level, String message, Object[] argArray, Throwable t) {
+        final Dispatcher dispatcher = DISPATCHERS[index(level)];
+
+        if (t == null) {
+            if (argArray == null) dispatcher.log(logger, marker, message);
+            else dispatcher.log(logger, marker, message, argArray);
+        } else {
+            if (argArray == null) dispatcher.log(logger, marker, message, t);
+            else {
+                /* SLF4J treats a trailing throwable in the arguments as such */
+                final Object[] arguments = new Object[argArray.length + 1];
+                System.arraycopy(argArray, 0, arguments, 0, argArray.length);
+                arguments[argArray.length] = t;
+                dispatcher.log(logger, marker, message, arguments);
+            }
+        }
+    }
+
+    /* ====================================================================== */
+    /* From here onwards, it's just delegation calls                          */
+    /* ====================================================================== */
+
+    @Override
+    public String getName() {
+        return logger.getName();
+    }
+
+    @Override
+    public boolean isTraceEnabled() {
+        return logger.isTraceEnabled();
+    }
+
+    @Override
+    public void trace(String msg) {
+        logger.trace(msg);
+    }
+
+    @Override
+    public void trace(String format, Object arg) {
+        logger.trace(format, arg);
+    }
+
+    @Override
+    public void trace(String format, Object arg1, Object arg2) {
+        logger.trace(format, arg1, arg2);
+    }
+
+    @Override
+    public void trace(String format, Object... arguments) {
+        logger.trace(format, arguments);
+    }
+
+    @Override
+    public void trace(String msg, Throwable t) {
+        logger.trace(msg, t);
+    }
+
+    @Override
+    public boolean isTraceEnabled(Marker marker) {
+        return logger.isTraceEnabled(marker);
+    }
+
+    @Override
+    public void trace(Marker marker, String msg) {
+        logger.trace(marker, msg);
+    }
+
+    @Override
+    public void trace(Marker marker, String format, Object arg) {
+        logger.trace(marker, format, arg);
+    }
+
+    @Override
+    public void trace(Marker marker, String format, Object arg1,
+            Object arg2) {
+        logger.trace(marker, format, arg1, arg2);
+    }
+
+    @Override
+    public void trace(Marker marker, String format, Object... argArray) {
+        logger.trace(marker, format, argArray);
+    }
+
+    @Override
+    public void trace(Marker marker, String msg, Throwable t) {
+        logger.trace(marker, msg, t);
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+        return logger.isDebugEnabled();
+    }
+
+    @Override
+    public void debug(String msg) {
+        logger.debug(msg);
+    }
+
+    @Override
+    public void debug(String format, Object arg) {
+        logger.debug(format, arg);
+    }
+
+    @Override
+    public void debug(String format, Object arg1, Object arg2) {
+        logger.debug(format, arg1, arg2);
+    }
+
+    @Override
+    public void debug(String format, Object... arguments) {
+        logger.debug(format, arguments);
+    }
+
+    @Override
+    public void debug(String msg, Throwable t) {
+        logger.debug(msg, t);
+    }
+
+    @Override
+    public boolean isDebugEnabled(Marker marker) {
+        return logger.isDebugEnabled(marker);
+    }
+
+    @Override
+    public void debug(Marker marker, String msg) {
+        logger.debug(marker, msg);
+    }
+
+    @Override
+    public void debug(Marker marker, String format, Object arg) {
+        logger.debug(marker, format, arg);
+    }
+
+    @Override
+    public void debug(Marker marker, String format, Object arg1, Object arg2) {
+        logger.debug(marker, format, arg1, arg2);
+    }
+
+    @Override
+    public void debug(Marker marker, String format, Object... arguments) {
+        logger.debug(marker, format, arguments);
+    }
+
+    @Override
+    public void debug(Marker marker, String msg, Throwable t) {
+        logger.debug(marker, msg, t);
+    }
+
+    @Override
+    public boolean isInfoEnabled() {
+        return logger.isInfoEnabled();
+    }
+
+    @Override
+    public void info(String msg) {
+        logger.info(msg);
+    }
+
+    @Override
+    public void info(String format, Object arg) {
+        logger.info(format, arg);
+    }
+
+    @Override
+    public void info(String format, Object arg1, Object arg2) {
+        logger.info(format, arg1, arg2);
+    }
+
+    @Override
+    public void info(String format, Object... arguments) {
+        logger.info(format, arguments);
+    }
+
+    @Override
+    public void info(String msg, Throwable t) {
+        logger.info(msg, t);
+    }
+
+    @Override
+    public boolean isInfoEnabled(Marker marker) {
+        return logger.isInfoEnabled(marker);
+    }
+
+    @Override
+    public void info(Marker marker, String msg) {
+        logger.info(marker, msg);
+    }
+
+    @Override
+    public void info(Marker marker, String format, Object arg) {
+        logger.info(marker, format, arg);
+    }
+
+    @Override
+    public void info(Marker marker, String format, Object arg1, Object arg2) {
+        logger.info(marker, format, arg1, arg2);
+    }
+
+    @Override
+    public void info(Marker marker, String format, Object... arguments) {
+        logger.info(marker, format, arguments);
+    }
+
+    @Override
+    public void info(Marker marker, String msg, Throwable t) {
+        logger.info(marker, msg, t);
+    }
+
+    @Override
+    public boolean isWarnEnabled() {
+        return logger.isWarnEnabled();
+    }
+
+    @Override
+    public void warn(String msg) {
+        logger.warn(msg);
+    }
+
+    @Override
+    public void warn(String format, Object arg) {
+        logger.warn(format, arg);
+    }
+
+    @Override
+    public void warn(String format, Object... arguments) {
+        logger.warn(format, arguments);
+    }
+
+    @Override
+    public void warn(String format, Object arg1, Object arg2) {
+        logger.warn(format, arg1, arg2);
+    }
+
+    @Override
+    public void warn(String msg, Throwable t) {
+        logger.warn(msg, t);
+    }
+
+    @Override
+    public boolean isWarnEnabled(Marker marker) {
+        return logger.isWarnEnabled(marker);
+    }
+
+    @Override
+    public void warn(Marker marker, String msg) {
+        logger.warn(marker, msg);
+    }
+
+    @Override
+    public void warn(Marker marker, String format, Object arg) {
+        logger.warn(marker, format, arg);
+    }
+
+    @Override
+    public void warn(Marker marker, String format, Object arg1, Object arg2) {
+        logger.warn(marker, format, arg1, arg2);
+    }
+
+    @Override
+    public void warn(Marker marker, String format, Object... arguments) {
+        logger.warn(marker, format, arguments);
+    }
+
+    @Override
+    public void warn(Marker marker, String msg, Throwable t) {
+        logger.warn(marker, msg, t);
+    }
+
+    @Override
+    public boolean isErrorEnabled() {
+        return logger.isErrorEnabled();
+    }
+
+    @Override
+    public void error(String msg) {
+        logger.error(msg);
+    }
+
+    @Override
+    public void error(String format, Object arg) {
+        logger.error(format, arg);
+    }
+
+    @Override
+    public void error(String format, Object arg1, Object arg2) {
+        logger.error(format, arg1, arg2);
+    }
+
+    @Override
+    public void error(String format, Object... arguments) {
+        logger.error(format, arguments);
+    }
+
+    @Override
+    public void error(String msg, Throwable t) {
+        logger.error(msg, t);
+    }
+
+    @Override
+    public boolean isErrorEnabled(Marker marker) {
+        return logger.isErrorEnabled(marker);
+    }
+
+    @Override
+    public void error(Marker marker, String msg) {
+        logger.error(marker, msg);
+    }
+
+    @Override
+    public void error(Marker marker, String format, Object arg) {
+        logger.error(marker, format, arg);
+    }
+
+    @Override
+    public void error(Marker marker, String format, Object arg1, Object arg2) {
+        logger.error(marker, format, arg1, arg2);
+    }
+
+    @Override
+    public void error(Marker marker, String format, Object... arguments) {
+        logger.error(marker, format, arguments);
+    }
+
+    @Override
+    public void error(Marker marker, String msg, Throwable t) {
+        logger.error(marker, msg, t);
+    }
+
+    /* ====================================================================== */
+
+    private static abstract class Dispatcher {
+
+        abstract void log(Logger logger, Marker marker, String message);
+
+        abstract void log(Logger logger, Marker marker, String format, Object[] arguments);
+
+        abstract void log(Logger logger, Marker marker, String message, Throwable throwable);
+
+    }
+}
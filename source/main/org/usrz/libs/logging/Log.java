@@ -21,8 +21,9 @@ import static org.slf4j.spi.LocationAwareLogger.INFO_INT;
 import static org.slf4j.spi.LocationAwareLogger.TRACE_INT;
 import static org.slf4j.spi.LocationAwareLogger.WARN_INT;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.slf4j.spi.LocationAwareLogger;
 
 /**
@@ -32,6 +33,13 @@ import org.slf4j.spi.LocationAwareLogger;
  * <p>To use simply slap <code>private static final Log log = new Log()</code>
  * at the top of your class file and stop worring about it.</p>
  *
+ * <p>Constructing a {@link Log} is cheap: we only remember its name, and
+ * the underlying SLF4J logger will be resolved the first time it's used.</p>
+ *
+ * <p>If you create instances over and over again (rather than keeping them
+ * in a <code>static</code> field) use {@link #getLog(Class)} or
+ * {@link #getLog(String)} instead, and you'll always get the same one.</p>
+ *
  * <p>As with all other packages, our log levels are the standard ones:</p>
  *
  * <ul>
@@ -86,23 +94,28 @@ public final  class Log {
 
     static { Logging.init(); }
 
+    /* All our canonical instances, by name, see "getLog(...)" */
+    private static final ConcurrentHashMap<String, Log> LOGS = new ConcurrentHashMap<>();
+
     /**
      * The <i>ROOT</i> logger (or the logger with no name, the "unnamed").
      *
      * @see <a href="http://bit.ly/1e7NM1t">The Unnamed</a>
      */
-    public final static Log ROOT_LOG = new Log(Logger.ROOT_LOGGER_NAME);
+    public final static Log ROOT_LOG = getLog(Logger.ROOT_LOGGER_NAME);
 
     /* The fully qualified class name of this class */
     private static final String FQCN = Log.class.getName();
-    /* Our "location aware" logger */
-    private final LocationAwareLogger logger;
+    /* Our name, the only thing we need to construct */
+    private final String name;
+    /* Our "location aware" logger, resolved on first use, see "logger()" */
+    private volatile LocationAwareLogger logger;
 
     /**
      * Create a new {@link Log} using the caller class name as the name.
      */
     public Log() {
-        this(LoggerFactory.getLogger(new Throwable().getStackTrace()[1].getClassName()));
+        name = new Throwable().getStackTrace()[1].getClassName();
     }
 
     /**
@@ -110,8 +123,8 @@ public final  class Log {
      * <b>null</b> the caller class name will be used as a name.</p>
      */
     public Log(Class<?> clazz) {
-        this(LoggerFactory.getLogger(clazz != null ? clazz.getName() :
-                                     new Throwable().getStackTrace()[1].getClassName()));
+        name = clazz != null ? clazz.getName() :
+               new Throwable().getStackTrace()[1].getClassName();
     }
 
     /**
@@ -119,14 +132,57 @@ public final  class Log {
      * <b>null</b> the caller class name will be used as a name.</p>
      */
     public Log(String name) {
-        this(LoggerFactory.getLogger(name != null ? name :
-                                     new Throwable().getStackTrace()[1].getClassName()));
+        this.name = name != null ? name :
+                    new Throwable().getStackTrace()[1].getClassName();
+    }
+
+    /**
+     * Return the canonical {@link Log} for the specified {@link Class}; if
+     * this is <b>null</b> the caller class name will be used as a name.
+     *
+     * <p>Differently from constructors, this will return the <em>same</em>
+     * instance for the same name, and will only allocate the first time.</p>
+     */
+    public static Log getLog(Class<?> clazz) {
+        return intern(clazz != null ? clazz.getName() :
+                      new Throwable().getStackTrace()[1].getClassName());
+    }
+
+    /**
+     * Return the canonical {@link Log} with the specified name; if this is
+     * <b>null</b> the caller class name will be used as a name.
+     *
+     * <p>Differently from constructors, this will return the <em>same</em>
+     * instance for the same name, and will only allocate the first time.</p>
+     */
+    public static Log getLog(String name) {
+        return intern(name != null ? name :
+                      new Throwable().getStackTrace()[1].getClassName());
     }
 
     /* ====================================================================== */
 
-    private Log(Logger logger) {
-        this.logger = SLF4JFactory.asLocationAwareLogger(logger);
+    private static Log intern(String name) {
+        final Log cached = LOGS.get(name);
+        if (cached != null) return cached;
+
+        final Log created = new Log(name);
+        final Log previous = LOGS.putIfAbsent(name, created);
+
+        return previous == null ? created : previous;
+    }
+
+    /*
+     * Return our logger, resolving it the first time we're used. We don't
+     * care if a couple of threads resolve it concurrently, as SLF4JFactory
+     * will give them all the same (thread safe) instance, but threads only
+     * reading our field never touch SLF4JFactory's map: the field must be
+     * volatile for them to see a fully constructed logger. Once resolved,
+     * that's still a plain load on most hardware (x86 included).
+     */
+    LocationAwareLogger logger() {
+        final LocationAwareLogger logger = this.logger;
+        return logger != null ? logger : (this.logger = SLF4JFactory.getLogger(name));
     }
 
     /* ====================================================================== */
@@ -135,7 +191,7 @@ public final  class Log {
      * Return the name of this {@link Log}.
      */
     public final String getName() {
-        return logger.getName();
+        return name;
     }
 
     /**
@@ -146,6 +202,110 @@ public final  class Log {
         return this.getClass().getName() + "[" + getName() + "]@" + hashCode();
     }
 
+    /* ====================================================================== */
+
+    /**
+     * Start building a structured event at <b>TRACE</b> level.
+     *
+     * @see EventBuilder
+     */
+    public final EventBuilder atTrace() {
+        final LocationAwareLogger logger = logger();
+        return logger.isTraceEnabled() ? EventBuilder.acquire(logger, TRACE_INT) : EventBuilder.DISABLED;
+    }
+
+    /**
+     * Start building a structured event at <b>DEBUG</b> level.
+     *
+     * @see EventBuilder
+     */
+    public final EventBuilder atDebug() {
+        final LocationAwareLogger logger = logger();
+        return logger.isDebugEnabled() ? EventBuilder.acquire(logger, DEBUG_INT) : EventBuilder.DISABLED;
+    }
+
+    /**
+     * Start building a structured event at <b>INFO</b> level.
+     *
+     * @see EventBuilder
+     */
+    public final EventBuilder atInfo() {
+        final LocationAwareLogger logger = logger();
+        return logger.isInfoEnabled() ? EventBuilder.acquire(logger, INFO_INT) : EventBuilder.DISABLED;
+    }
+
+    /**
+     * Start building a structured event at <b>WARN</b> level.
+     *
+     * @see EventBuilder
+     */
+    public final EventBuilder atWarn() {
+        final LocationAwareLogger logger = logger();
+        return logger.isWarnEnabled() ? EventBuilder.acquire(logger, WARN_INT) : EventBuilder.DISABLED;
+    }
+
+    /**
+     * Start building a structured event at <b>ERROR</b> level.
+     *
+     * @see EventBuilder
+     */
+    public final EventBuilder atError() {
+        final LocationAwareLogger logger = logger();
+        return logger.isErrorEnabled() ? EventBuilder.acquire(logger, ERROR_INT) : EventBuilder.DISABLED;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Create a {@link LogPoint} logging the specified template at
+     * <b>TRACE</b> level.
+     *
+     * @see String#format(String, Object...)
+     */
+    public final LogPoint tracePoint(String format) {
+        return new LogPoint(this, TRACE_INT, format);
+    }
+
+    /**
+     * Create a {@link LogPoint} logging the specified template at
+     * <b>DEBUG</b> level.
+     *
+     * @see String#format(String, Object...)
+     */
+    public final LogPoint debugPoint(String format) {
+        return new LogPoint(this, DEBUG_INT, format);
+    }
+
+    /**
+     * Create a {@link LogPoint} logging the specified template at
+     * <b>INFO</b> level.
+     *
+     * @see String#format(String, Object...)
+     */
+    public final LogPoint infoPoint(String format) {
+        return new LogPoint(this, INFO_INT, format);
+    }
+
+    /**
+     * Create a {@link LogPoint} logging the specified template at
+     * <b>WARN</b> level.
+     *
+     * @see String#format(String, Object...)
+     */
+    public final LogPoint warnPoint(String format) {
+        return new LogPoint(this, WARN_INT, format);
+    }
+
+    /**
+     * Create a {@link LogPoint} logging the specified template at
+     * <b>ERROR</b> level.
+     *
+     * @see String#format(String, Object...)
+     */
+    public final LogPoint errorPoint(String format) {
+        return new LogPoint(this, ERROR_INT, format);
+    }
+
     /*========================================================================*
      *  Here follows a list of the most boring, repetitive code I ever wrote  *
      *========================================================================*/
@@ -159,7 +319,7 @@ public final  class Log {
      */
     @Deprecated
     public final boolean isTraceEnabled() {
-        return logger.isTraceEnabled();
+        return logger().isTraceEnabled();
     }
 
     /* -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  - */
@@ -168,8 +328,9 @@ public final  class Log {
      * Log a simple message at <b>TRACE</b> level.
      */
     public final Log trace(String message) {
+        final LocationAwareLogger logger = logger();
         if (logger.isTraceEnabled()) {
-            logger.log(null, FQCN, TRACE_INT, message, null, null);
+            LogDispatcher.dispatch(logger, null, FQCN, TRACE_INT, message, null, null);
         }
         return this;
     }
@@ -183,9 +344,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log trace(String format, Object parameter1) {
+        final LocationAwareLogger logger = logger();
         if (logger.isTraceEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1);
-            logger.log(null, FQCN, TRACE_INT, message, null, null);
+            LogDispatcher.dispatchFormat(logger, FQCN, TRACE_INT, format, new Object[] { parameter1 }, null);
         }
         return this;
     }
@@ -199,9 +360,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log trace(String format, Object parameter1, Object parameter2) {
+        final LocationAwareLogger logger = logger();
         if (logger.isTraceEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1, parameter2);
-            logger.log(null, FQCN, TRACE_INT, message, null, null);
+            LogDispatcher.dispatchFormat(logger, FQCN, TRACE_INT, format, new Object[] { parameter1, parameter2 }, null);
         }
         return this;
     }
@@ -215,9 +376,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log trace(String format, Object parameter1, Object parameter2, Object parameter3) {
+        final LocationAwareLogger logger = logger();
         if (logger.isTraceEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1, parameter2, parameter3);
-            logger.log(null, FQCN, TRACE_INT, message, null, null);
+            LogDispatcher.dispatchFormat(logger, FQCN, TRACE_INT, format, new Object[] { parameter1, parameter2, parameter3 }, null);
         }
         return this;
     }
@@ -228,9 +389,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log trace(String format, Object... parameters) {
+        final LocationAwareLogger logger = logger();
         if (logger.isTraceEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameters);
-            logger.log(null, FQCN, TRACE_INT, message, null, null);
+            LogDispatcher.dispatchFormat(logger, FQCN, TRACE_INT, format, parameters, null);
         }
         return this;
     }
@@ -244,8 +405,9 @@ public final  class Log {
      * but is included with the parameters reversed because of "habit".</p>
      */
     public final Log trace(String message, Throwable throwable) {
+        final LocationAwareLogger logger = logger();
         if (logger.isTraceEnabled()) {
-            logger.log(null, FQCN, TRACE_INT, message, null, throwable);
+            LogDispatcher.dispatch(logger, null, FQCN, TRACE_INT, message, null, throwable);
         }
         return this;
     }
@@ -259,8 +421,9 @@ public final  class Log {
      * but is included with the parameters reversed because of "habit".</p>
      */
     public final Log trace(Throwable throwable, String message) {
+        final LocationAwareLogger logger = logger();
         if (logger.isTraceEnabled()) {
-            logger.log(null, FQCN, TRACE_INT, message, null, throwable);
+            LogDispatcher.dispatch(logger, null, FQCN, TRACE_INT, message, null, throwable);
         }
         return this;
     }
@@ -274,9 +437,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log trace(Throwable throwable, String format, Object parameter1) {
+        final LocationAwareLogger logger = logger();
         if (logger.isTraceEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1);
-            logger.log(null, FQCN, TRACE_INT, message, null, throwable);
+            LogDispatcher.dispatchFormat(logger, FQCN, TRACE_INT, format, new Object[] { parameter1 }, throwable);
         }
         return this;
     }
@@ -290,9 +453,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log trace(Throwable throwable, String format, Object parameter1, Object parameter2) {
+        final LocationAwareLogger logger = logger();
         if (logger.isTraceEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1, parameter2);
-            logger.log(null, FQCN, TRACE_INT, message, null, throwable);
+            LogDispatcher.dispatchFormat(logger, FQCN, TRACE_INT, format, new Object[] { parameter1, parameter2 }, throwable);
         }
         return this;
     }
@@ -306,9 +469,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log trace(Throwable throwable, String format, Object parameter1, Object parameter2, Object parameter3) {
+        final LocationAwareLogger logger = logger();
         if (logger.isTraceEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1, parameter2, parameter3);
-            logger.log(null, FQCN, TRACE_INT, message, null, throwable);
+            LogDispatcher.dispatchFormat(logger, FQCN, TRACE_INT, format, new Object[] { parameter1, parameter2, parameter3 }, throwable);
         }
         return this;
     }
@@ -319,9 +482,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log trace(Throwable throwable, String format, Object... parameters) {
+        final LocationAwareLogger logger = logger();
         if (logger.isTraceEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameters);
-            logger.log(null, FQCN, TRACE_INT, message, null, throwable);
+            LogDispatcher.dispatchFormat(logger, FQCN, TRACE_INT, format, parameters, throwable);
         }
         return this;
     }
@@ -337,7 +500,7 @@ public final  class Log {
      */
     @Deprecated
     public final boolean isDebugEnabled() {
-        return logger.isDebugEnabled();
+        return logger().isDebugEnabled();
     }
 
     /* -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  - */
@@ -346,8 +509,9 @@ public final  class Log {
      * Log a simple message at <b>DEBUG</b> level.
      */
     public final Log debug(String message) {
+        final LocationAwareLogger logger = logger();
         if (logger.isDebugEnabled()) {
-            logger.log(null, FQCN, DEBUG_INT, message, null, null);
+            LogDispatcher.dispatch(logger, null, FQCN, DEBUG_INT, message, null, null);
         }
         return this;
     }
@@ -361,9 +525,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log debug(String format, Object parameter1) {
+        final LocationAwareLogger logger = logger();
         if (logger.isDebugEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1);
-            logger.log(null, FQCN, DEBUG_INT, message, null, null);
+            LogDispatcher.dispatchFormat(logger, FQCN, DEBUG_INT, format, new Object[] { parameter1 }, null);
         }
         return this;
     }
@@ -377,9 +541,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log debug(String format, Object parameter1, Object parameter2) {
+        final LocationAwareLogger logger = logger();
         if (logger.isDebugEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1, parameter2);
-            logger.log(null, FQCN, DEBUG_INT, message, null, null);
+            LogDispatcher.dispatchFormat(logger, FQCN, DEBUG_INT, format, new Object[] { parameter1, parameter2 }, null);
         }
         return this;
     }
@@ -393,9 +557,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log debug(String format, Object parameter1, Object parameter2, Object parameter3) {
+        final LocationAwareLogger logger = logger();
         if (logger.isDebugEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1, parameter2, parameter3);
-            logger.log(null, FQCN, DEBUG_INT, message, null, null);
+            LogDispatcher.dispatchFormat(logger, FQCN, DEBUG_INT, format, new Object[] { parameter1, parameter2, parameter3 }, null);
         }
         return this;
     }
@@ -406,9 +570,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log debug(String format, Object... parameters) {
+        final LocationAwareLogger logger = logger();
         if (logger.isDebugEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameters);
-            logger.log(null, FQCN, DEBUG_INT, message, null, null);
+            LogDispatcher.dispatchFormat(logger, FQCN, DEBUG_INT, format, parameters, null);
         }
         return this;
     }
@@ -422,8 +586,9 @@ public final  class Log {
      * but is included with the parameters reversed because of "habit".</p>
      */
     public final Log debug(String message, Throwable throwable) {
+        final LocationAwareLogger logger = logger();
         if (logger.isDebugEnabled()) {
-            logger.log(null, FQCN, DEBUG_INT, message, null, throwable);
+            LogDispatcher.dispatch(logger, null, FQCN, DEBUG_INT, message, null, throwable);
         }
         return this;
     }
@@ -437,8 +602,9 @@ public final  class Log {
      * but is included with the parameters reversed because of "habit".</p>
      */
     public final Log debug(Throwable throwable, String message) {
+        final LocationAwareLogger logger = logger();
         if (logger.isDebugEnabled()) {
-            logger.log(null, FQCN, DEBUG_INT, message, null, throwable);
+            LogDispatcher.dispatch(logger, null, FQCN, DEBUG_INT, message, null, throwable);
         }
         return this;
     }
@@ -452,9 +618,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log debug(Throwable throwable, String format, Object parameter1) {
+        final LocationAwareLogger logger = logger();
         if (logger.isDebugEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1);
-            logger.log(null, FQCN, DEBUG_INT, message, null, throwable);
+            LogDispatcher.dispatchFormat(logger, FQCN, DEBUG_INT, format, new Object[] { parameter1 }, throwable);
         }
         return this;
     }
@@ -468,9 +634,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log debug(Throwable throwable, String format, Object parameter1, Object parameter2) {
+        final LocationAwareLogger logger = logger();
         if (logger.isDebugEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1, parameter2);
-            logger.log(null, FQCN, DEBUG_INT, message, null, throwable);
+            LogDispatcher.dispatchFormat(logger, FQCN, DEBUG_INT, format, new Object[] { parameter1, parameter2 }, throwable);
         }
         return this;
     }
@@ -484,9 +650,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log debug(Throwable throwable, String format, Object parameter1, Object parameter2, Object parameter3) {
+        final LocationAwareLogger logger = logger();
         if (logger.isDebugEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1, parameter2, parameter3);
-            logger.log(null, FQCN, DEBUG_INT, message, null, throwable);
+            LogDispatcher.dispatchFormat(logger, FQCN, DEBUG_INT, format, new Object[] { parameter1, parameter2, parameter3 }, throwable);
         }
         return this;
     }
@@ -497,9 +663,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log debug(Throwable throwable, String format, Object... parameters) {
+        final LocationAwareLogger logger = logger();
         if (logger.isDebugEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameters);
-            logger.log(null, FQCN, DEBUG_INT, message, null, throwable);
+            LogDispatcher.dispatchFormat(logger, FQCN, DEBUG_INT, format, parameters, throwable);
         }
         return this;
     }
@@ -515,7 +681,7 @@ public final  class Log {
      */
     @Deprecated
     public final boolean isInfoEnabled() {
-        return logger.isInfoEnabled();
+        return logger().isInfoEnabled();
     }
 
     /* -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  - */
@@ -524,8 +690,9 @@ public final  class Log {
      * Log a simple message at <b>INFO</b> level.
      */
     public final Log info(String message) {
+        final LocationAwareLogger logger = logger();
         if (logger.isInfoEnabled()) {
-            logger.log(null, FQCN, INFO_INT, message, null, null);
+            LogDispatcher.dispatch(logger, null, FQCN, INFO_INT, message, null, null);
         }
         return this;
     }
@@ -539,9 +706,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log info(String format, Object parameter1) {
+        final LocationAwareLogger logger = logger();
         if (logger.isInfoEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1);
-            logger.log(null, FQCN, INFO_INT, message, null, null);
+            LogDispatcher.dispatchFormat(logger, FQCN, INFO_INT, format, new Object[] { parameter1 }, null);
         }
         return this;
     }
@@ -555,9 +722,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log info(String format, Object parameter1, Object parameter2) {
+        final LocationAwareLogger logger = logger();
         if (logger.isInfoEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1, parameter2);
-            logger.log(null, FQCN, INFO_INT, message, null, null);
+            LogDispatcher.dispatchFormat(logger, FQCN, INFO_INT, format, new Object[] { parameter1, parameter2 }, null);
         }
         return this;
     }
@@ -571,9 +738,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log info(String format, Object parameter1, Object parameter2, Object parameter3) {
+        final LocationAwareLogger logger = logger();
         if (logger.isInfoEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1, parameter2, parameter3);
-            logger.log(null, FQCN, INFO_INT, message, null, null);
+            LogDispatcher.dispatchFormat(logger, FQCN, INFO_INT, format, new Object[] { parameter1, parameter2, parameter3 }, null);
         }
         return this;
     }
@@ -584,9 +751,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log info(String format, Object... parameters) {
+        final LocationAwareLogger logger = logger();
         if (logger.isInfoEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameters);
-            logger.log(null, FQCN, INFO_INT, message, null, null);
+            LogDispatcher.dispatchFormat(logger, FQCN, INFO_INT, format, parameters, null);
         }
         return this;
     }
@@ -600,8 +767,9 @@ public final  class Log {
      * but is included with the parameters reversed because of "habit".</p>
      */
     public final Log info(String message, Throwable throwable) {
+        final LocationAwareLogger logger = logger();
         if (logger.isInfoEnabled()) {
-            logger.log(null, FQCN, INFO_INT, message, null, throwable);
+            LogDispatcher.dispatch(logger, null, FQCN, INFO_INT, message, null, throwable);
         }
         return this;
     }
@@ -615,8 +783,9 @@ public final  class Log {
      * but is included with the parameters reversed because of "habit".</p>
      */
     public final Log info(Throwable throwable, String message) {
+        final LocationAwareLogger logger = logger();
         if (logger.isInfoEnabled()) {
-            logger.log(null, FQCN, INFO_INT, message, null, throwable);
+            LogDispatcher.dispatch(logger, null, FQCN, INFO_INT, message, null, throwable);
         }
         return this;
     }
@@ -630,9 +799,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log info(Throwable throwable, String format, Object parameter1) {
+        final LocationAwareLogger logger = logger();
         if (logger.isInfoEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1);
-            logger.log(null, FQCN, INFO_INT, message, null, throwable);
+            LogDispatcher.dispatchFormat(logger, FQCN, INFO_INT, format, new Object[] { parameter1 }, throwable);
         }
         return this;
     }
@@ -646,9 +815,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log info(Throwable throwable, String format, Object parameter1, Object parameter2) {
+        final LocationAwareLogger logger = logger();
         if (logger.isInfoEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1, parameter2);
-            logger.log(null, FQCN, INFO_INT, message, null, throwable);
+            LogDispatcher.dispatchFormat(logger, FQCN, INFO_INT, format, new Object[] { parameter1, parameter2 }, throwable);
         }
         return this;
     }
@@ -662,9 +831,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log info(Throwable throwable, String format, Object parameter1, Object parameter2, Object parameter3) {
+        final LocationAwareLogger logger = logger();
         if (logger.isInfoEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1, parameter2, parameter3);
-            logger.log(null, FQCN, INFO_INT, message, null, throwable);
+            LogDispatcher.dispatchFormat(logger, FQCN, INFO_INT, format, new Object[] { parameter1, parameter2, parameter3 }, throwable);
         }
         return this;
     }
@@ -675,9 +844,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log info(Throwable throwable, String format, Object... parameters) {
+        final LocationAwareLogger logger = logger();
         if (logger.isInfoEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameters);
-            logger.log(null, FQCN, INFO_INT, message, null, throwable);
+            LogDispatcher.dispatchFormat(logger, FQCN, INFO_INT, format, parameters, throwable);
         }
         return this;
     }
@@ -693,7 +862,7 @@ public final  class Log {
      */
     @Deprecated
     public final boolean isWarnEnabled() {
-        return logger.isWarnEnabled();
+        return logger().isWarnEnabled();
     }
 
     /* -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  - */
@@ -702,8 +871,9 @@ public final  class Log {
      * Log a simple message at <b>WARN</b> level.
      */
     public final Log warn(String message) {
+        final LocationAwareLogger logger = logger();
         if (logger.isWarnEnabled()) {
-            logger.log(null, FQCN, WARN_INT, message, null, null);
+            LogDispatcher.dispatch(logger, null, FQCN, WARN_INT, message, null, null);
         }
         return this;
     }
@@ -717,9 +887,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log warn(String format, Object parameter1) {
+        final LocationAwareLogger logger = logger();
         if (logger.isWarnEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1);
-            logger.log(null, FQCN, WARN_INT, message, null, null);
+            LogDispatcher.dispatchFormat(logger, FQCN, WARN_INT, format, new Object[] { parameter1 }, null);
         }
         return this;
     }
@@ -733,9 +903,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log warn(String format, Object parameter1, Object parameter2) {
+        final LocationAwareLogger logger = logger();
         if (logger.isWarnEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1, parameter2);
-            logger.log(null, FQCN, WARN_INT, message, null, null);
+            LogDispatcher.dispatchFormat(logger, FQCN, WARN_INT, format, new Object[] { parameter1, parameter2 }, null);
         }
         return this;
     }
@@ -749,9 +919,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log warn(String format, Object parameter1, Object parameter2, Object parameter3) {
+        final LocationAwareLogger logger = logger();
         if (logger.isWarnEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1, parameter2, parameter3);
-            logger.log(null, FQCN, WARN_INT, message, null, null);
+            LogDispatcher.dispatchFormat(logger, FQCN, WARN_INT, format, new Object[] { parameter1, parameter2, parameter3 }, null);
         }
         return this;
     }
@@ -762,9 +932,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log warn(String format, Object... parameters) {
+        final LocationAwareLogger logger = logger();
         if (logger.isWarnEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameters);
-            logger.log(null, FQCN, WARN_INT, message, null, null);
+            LogDispatcher.dispatchFormat(logger, FQCN, WARN_INT, format, parameters, null);
         }
         return this;
     }
@@ -778,8 +948,9 @@ public final  class Log {
      * but is included with the parameters reversed because of "habit".</p>
      */
     public final Log warn(String message, Throwable throwable) {
+        final LocationAwareLogger logger = logger();
         if (logger.isWarnEnabled()) {
-            logger.log(null, FQCN, WARN_INT, message, null, throwable);
+            LogDispatcher.dispatch(logger, null, FQCN, WARN_INT, message, null, throwable);
         }
         return this;
     }
@@ -793,8 +964,9 @@ public final  class Log {
      * but is included with the parameters reversed because of "habit".</p>
      */
     public final Log warn(Throwable throwable, String message) {
+        final LocationAwareLogger logger = logger();
         if (logger.isWarnEnabled()) {
-            logger.log(null, FQCN, WARN_INT, message, null, throwable);
+            LogDispatcher.dispatch(logger, null, FQCN, WARN_INT, message, null, throwable);
         }
         return this;
     }
@@ -808,9 +980,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log warn(Throwable throwable, String format, Object parameter1) {
+        final LocationAwareLogger logger = logger();
         if (logger.isWarnEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1);
-            logger.log(null, FQCN, WARN_INT, message, null, throwable);
+            LogDispatcher.dispatchFormat(logger, FQCN, WARN_INT, format, new Object[] { parameter1 }, throwable);
         }
         return this;
     }
@@ -824,9 +996,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log warn(Throwable throwable, String format, Object parameter1, Object parameter2) {
+        final LocationAwareLogger logger = logger();
         if (logger.isWarnEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1, parameter2);
-            logger.log(null, FQCN, WARN_INT, message, null, throwable);
+            LogDispatcher.dispatchFormat(logger, FQCN, WARN_INT, format, new Object[] { parameter1, parameter2 }, throwable);
         }
         return this;
     }
@@ -840,9 +1012,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log warn(Throwable throwable, String format, Object parameter1, Object parameter2, Object parameter3) {
+        final LocationAwareLogger logger = logger();
         if (logger.isWarnEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1, parameter2, parameter3);
-            logger.log(null, FQCN, WARN_INT, message, null, throwable);
+            LogDispatcher.dispatchFormat(logger, FQCN, WARN_INT, format, new Object[] { parameter1, parameter2, parameter3 }, throwable);
         }
         return this;
     }
@@ -853,9 +1025,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log warn(Throwable throwable, String format, Object... parameters) {
+        final LocationAwareLogger logger = logger();
         if (logger.isWarnEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameters);
-            logger.log(null, FQCN, WARN_INT, message, null, throwable);
+            LogDispatcher.dispatchFormat(logger, FQCN, WARN_INT, format, parameters, throwable);
         }
         return this;
     }
@@ -871,7 +1043,7 @@ public final  class Log {
      */
     @Deprecated
     public final boolean isErrorEnabled() {
-        return logger.isErrorEnabled();
+        return logger().isErrorEnabled();
     }
 
     /* -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  - */
@@ -880,8 +1052,9 @@ public final  class Log {
      * Log a simple message at <b>ERROR</b> level.
      */
     public final Log error(String message) {
+        final LocationAwareLogger logger = logger();
         if (logger.isErrorEnabled()) {
-            logger.log(null, FQCN, ERROR_INT, message, null, null);
+            LogDispatcher.dispatch(logger, null, FQCN, ERROR_INT, message, null, null);
         }
         return this;
     }
@@ -895,9 +1068,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log error(String format, Object parameter1) {
+        final LocationAwareLogger logger = logger();
         if (logger.isErrorEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1);
-            logger.log(null, FQCN, ERROR_INT, message, null, null);
+            LogDispatcher.dispatchFormat(logger, FQCN, ERROR_INT, format, new Object[] { parameter1 }, null);
         }
         return this;
     }
@@ -911,9 +1084,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log error(String format, Object parameter1, Object parameter2) {
+        final LocationAwareLogger logger = logger();
         if (logger.isErrorEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1, parameter2);
-            logger.log(null, FQCN, ERROR_INT, message, null, null);
+            LogDispatcher.dispatchFormat(logger, FQCN, ERROR_INT, format, new Object[] { parameter1, parameter2 }, null);
         }
         return this;
     }
@@ -927,9 +1100,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log error(String format, Object parameter1, Object parameter2, Object parameter3) {
+        final LocationAwareLogger logger = logger();
         if (logger.isErrorEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1, parameter2, parameter3);
-            logger.log(null, FQCN, ERROR_INT, message, null, null);
+            LogDispatcher.dispatchFormat(logger, FQCN, ERROR_INT, format, new Object[] { parameter1, parameter2, parameter3 }, null);
         }
         return this;
     }
@@ -940,9 +1113,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log error(String format, Object... parameters) {
+        final LocationAwareLogger logger = logger();
         if (logger.isErrorEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameters);
-            logger.log(null, FQCN, ERROR_INT, message, null, null);
+            LogDispatcher.dispatchFormat(logger, FQCN, ERROR_INT, format, parameters, null);
         }
         return this;
     }
@@ -956,8 +1129,9 @@ public final  class Log {
      * but is included with the parameters reversed because of "habit".</p>
      */
     public final Log error(String message, Throwable throwable) {
+        final LocationAwareLogger logger = logger();
         if (logger.isErrorEnabled()) {
-            logger.log(null, FQCN, ERROR_INT, message, null, throwable);
+            LogDispatcher.dispatch(logger, null, FQCN, ERROR_INT, message, null, throwable);
         }
         return this;
     }
@@ -971,8 +1145,9 @@ public final  class Log {
      * but is included with the parameters reversed because of "habit".</p>
      */
     public final Log error(Throwable throwable, String message) {
+        final LocationAwareLogger logger = logger();
         if (logger.isErrorEnabled()) {
-            logger.log(null, FQCN, ERROR_INT, message, null, throwable);
+            LogDispatcher.dispatch(logger, null, FQCN, ERROR_INT, message, null, throwable);
         }
         return this;
     }
@@ -986,9 +1161,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log error(Throwable throwable, String format, Object parameter1) {
+        final LocationAwareLogger logger = logger();
         if (logger.isErrorEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1);
-            logger.log(null, FQCN, ERROR_INT, message, null, throwable);
+            LogDispatcher.dispatchFormat(logger, FQCN, ERROR_INT, format, new Object[] { parameter1 }, throwable);
         }
         return this;
     }
@@ -1002,9 +1177,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log error(Throwable throwable, String format, Object parameter1, Object parameter2) {
+        final LocationAwareLogger logger = logger();
         if (logger.isErrorEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1, parameter2);
-            logger.log(null, FQCN, ERROR_INT, message, null, throwable);
+            LogDispatcher.dispatchFormat(logger, FQCN, ERROR_INT, format, new Object[] { parameter1, parameter2 }, throwable);
         }
         return this;
     }
@@ -1018,9 +1193,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log error(Throwable throwable, String format, Object parameter1, Object parameter2, Object parameter3) {
+        final LocationAwareLogger logger = logger();
         if (logger.isErrorEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameter1, parameter2, parameter3);
-            logger.log(null, FQCN, ERROR_INT, message, null, throwable);
+            LogDispatcher.dispatchFormat(logger, FQCN, ERROR_INT, format, new Object[] { parameter1, parameter2, parameter3 }, throwable);
         }
         return this;
     }
@@ -1031,9 +1206,9 @@ public final  class Log {
      * @see String#format(String, Object...)
      */
     public final Log error(Throwable throwable, String format, Object... parameters) {
+        final LocationAwareLogger logger = logger();
         if (logger.isErrorEnabled()) {
-            final String message = String.format(format == null ? "Null format" : format, parameters);
-            logger.log(null, FQCN, ERROR_INT, message, null, throwable);
+            LogDispatcher.dispatchFormat(logger, FQCN, ERROR_INT, format, parameters, throwable);
         }
         return this;
     }
@@ -91,7 +91,7 @@ public final class Log4j1Adapter extends Logger {
         final ThrowableInformation throwableInformation = event.getThrowableInformation();
         final Throwable throwable = throwableInformation == null ? null : throwableInformation.getThrowable();
 
-        logger.log(null, FQCN, slf4jLevel, message, null, throwable);
+        LogDispatcher.dispatch(logger, null, FQCN, slf4jLevel, message, null, throwable);
 
     }
 
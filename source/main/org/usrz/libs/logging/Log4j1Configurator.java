@@ -0,0 +1,50 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import java.io.InputStream;
+import java.net.URL;
+
+import org.apache.log4j.spi.Configurator;
+import org.apache.log4j.spi.LoggerRepository;
+
+/**
+ * A <a href="http://logging.apache.org/log4j/1.2/">Apache Log4j 1.2</a>
+ * {@link Configurator} used to <em>lazily</em> initialize its subsystem.
+ *
+ * <p>Log4j invokes this (once) while bootstrapping its own
+ * <code>LogManager</code>, at which point we simply install our bridge.</p>
+ *
+ * @see Log4j1Initializer#register()
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+public final class Log4j1Configurator implements Configurator {
+
+    public Log4j1Configurator() {
+        /* Nothing to do */
+    }
+
+    @Override
+    public void doConfigure(URL url, LoggerRepository repository) {
+        Log4j1Initializer.init();
+    }
+
+    @Override
+    public void doConfigure(InputStream inputStream, LoggerRepository repository) {
+        Log4j1Initializer.init();
+    }
+
+}
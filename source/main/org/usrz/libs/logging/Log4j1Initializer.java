@@ -15,6 +15,8 @@
  * ========================================================================== */
 package org.usrz.libs.logging;
 
+import java.net.URL;
+
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
@@ -27,6 +29,9 @@ import org.apache.log4j.Logger;
  */
 public final class Log4j1Initializer {
 
+    private static final String CONFIGURATOR_PROPERTY = "log4j.configuratorClass";
+    private static final String CONFIGURATION_PROPERTY = "log4j.configuration";
+    private static final String OVERRIDE_PROPERTY = "log4j.defaultInitOverride";
     private static boolean initialized = false;
 
     private Log4j1Initializer() {
@@ -37,7 +42,10 @@ public final class Log4j1Initializer {
         if (initialized) return;
 
         synchronized (Log4j1Initializer.class) {
+            if (initialized) return;
+
             try {
+                clearSystemProperties();
                 LogManager.setRepositorySelector(new Log4j1Bridge(), new Object());
 
                 final Log4j1Bridge bridge = (Log4j1Bridge) LogManager.getLoggerRepository();
@@ -57,4 +65,38 @@ public final class Log4j1Initializer {
         }
     }
 
+    /**
+     * Register our {@link Log4j1Configurator} in the
+     * <code>log4j.configuratorClass</code> and <code>log4j.configuration</code>
+     * system properties <em>without</em> bootstrapping the Log4j v1 subsystem:
+     * Log4j will invoke it (and we'll install our bridge) the first time it's
+     * used.
+     *
+     * <p>If any of those properties (or <code>log4j.defaultInitOverride</code>)
+     * was already set, Log4j would not call us, so we simply {@link #init()}.</p>
+     */
+    public static void register() {
+        synchronized (Log4j1Initializer.class) {
+            if (initialized) return;
+
+            if ((System.getProperty(CONFIGURATOR_PROPERTY) != null) ||
+                (System.getProperty(CONFIGURATION_PROPERTY) != null) ||
+                (System.getProperty(OVERRIDE_PROPERTY) != null)) {
+                init();
+                return;
+            }
+
+            final URL url = Log4j1Configurator.class.getResource(Log4j1Configurator.class.getSimpleName() + ".class");
+            System.setProperty(CONFIGURATOR_PROPERTY, Log4j1Configurator.class.getName());
+            System.setProperty(CONFIGURATION_PROPERTY, url.toString());
+        }
+    }
+
+    private static void clearSystemProperties() {
+        if (Log4j1Configurator.class.getName().equals(System.getProperty(CONFIGURATOR_PROPERTY))) {
+            System.clearProperty(CONFIGURATOR_PROPERTY);
+            System.clearProperty(CONFIGURATION_PROPERTY);
+        }
+    }
+
 }
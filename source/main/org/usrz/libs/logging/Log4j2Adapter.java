@@ -73,7 +73,7 @@ public final class Log4j2Adapter extends AbstractLogger {
         if (slf4jLevel == MIN_VALUE) return;
 
         final String message = data.getFormattedMessage();
-        logger.log(convert(marker), fqcn, slf4jLevel, message, null, throwable);
+        LogDispatcher.dispatch(logger, slf4jMarker, fqcn, slf4jLevel, message, null, throwable);
     }
 
     @Override
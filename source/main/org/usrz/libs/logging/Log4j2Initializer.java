@@ -38,10 +38,7 @@ public final class Log4j2Initializer {
 
         synchronized (Log4j2Initializer.class) {
             try {
-                final String property = System.getProperty(SYSTEM_PROPERTY);
-                if ((property != null) && (!Log4j2Bridge.class.getName().equals(property)))
-                    throw new IllegalStateException("System property \"" + SYSTEM_PROPERTY + "\" set to \"" + property + "\"");
-                System.setProperty(SYSTEM_PROPERTY, Log4j2Bridge.class.getName());
+                setSystemProperty();
 
                 final Log4j2Bridge bridge = (Log4j2Bridge) LogManager.getContext();
                 final Log4j2Adapter adapter = (Log4j2Adapter) LogManager.getLogger(Log4j2Initializer.class);
@@ -60,4 +57,22 @@ public final class Log4j2Initializer {
         }
     }
 
+    /**
+     * Register our bridge in the <code>log4j2.loggerContextFactory</code>
+     * system property <em>without</em> bootstrapping the Log4j v2 subsystem:
+     * it will pick our bridge up by itself the first time it's used.
+     */
+    public static void register() {
+        synchronized (Log4j2Initializer.class) {
+            setSystemProperty();
+        }
+    }
+
+    private static void setSystemProperty() {
+        final String property = System.getProperty(SYSTEM_PROPERTY);
+        if ((property != null) && (!Log4j2Bridge.class.getName().equals(property)))
+            throw new IllegalStateException("System property \"" + SYSTEM_PROPERTY + "\" set to \"" + property + "\"");
+        System.setProperty(SYSTEM_PROPERTY, Log4j2Bridge.class.getName());
+    }
+
 }
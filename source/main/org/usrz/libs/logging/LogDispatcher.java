@@ -0,0 +1,471 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static org.slf4j.spi.LocationAwareLogger.ERROR_INT;
+import static org.slf4j.spi.LocationAwareLogger.TRACE_INT;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.slf4j.Marker;
+import org.slf4j.spi.LocationAwareLogger;
+
+/**
+ * The one place where events from our {@link Log} and from all our bridge
+ * adapters are handed over to SLF4J's {@link LocationAwareLogger}s.
+ *
+ * <p>Callers are expected to have checked that the level is enabled
+ * <em>before</em> rendering their message and calling us.</p>
+ *
+ * <p>When a {@link LogSink} is installed, events are handed over to it rather
+ * than to the {@link LocationAwareLogger}s.</p>
+ *
+ * <p>In <i>passthrough</i> mode, simple {@link String#format(String, Object...)}
+ * templates are translated into SLF4J's <code>{}</code> syntax and handed
+ * over to the backend along with a snapshot of their arguments, so that the
+ * backend (for example an asynchronous appender) can format them later.</p>
+ *
+ * <p>In <i>deferred</i> mode, events are copied in the slots of a
+ * {@link DeferredDispatcher}, and formatted and dispatched by its own thread
+ * rather than by whoever logs.</p>
+ *
+ * <p>When <i>collapsing</i>, identical consecutive events rendered by their
+ * callers are held back by a {@link RepeatCollapser}, and summarized.</p>
+ *
+ * <p>Events with a {@link Throwable} can be rate limited by an
+ * {@link ExceptionLimiter}, before anything else happens to them.</p>
+ *
+ * <p>A {@link LoadShedder} or a {@link MemoryPressureGuard} can impose a
+ * minimum level, dropping events below it. Under memory pressure we are also
+ * <i>degraded</i>: stack traces are not printed below <b>ERROR</b>, and
+ * templates are handed over to the backend as in <i>passthrough</i> mode.</p>
+ *
+ * <p>When <i>deduplicating</i> stack traces, throwables in events rendered by
+ * their callers go through a {@link StackTraceDeduplicator}.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+final class LogDispatcher {
+
+    /* What we format when we get a null format */
+    private static final String NULL_FORMAT = "Null format";
+
+    /* The sink bypassing our loggers, if any */
+    private static volatile LogSink sink = null;
+    /* Whether templates are passed through to SLF4J, formatted by the backend */
+    private static volatile boolean passthrough = Boolean.getBoolean(Logging.PASSTHROUGH_PROPERTY);
+    /* Where events are deferred to, if anywhere */
+    private static volatile DeferredDispatcher deferred = Boolean.getBoolean(Logging.DEFERRED_PROPERTY) ?
+            new DeferredDispatcher(DeferredDispatcher.DEFAULT_CAPACITY) :
+            null;
+    /* Where events with throwables are rate limited, if anywhere */
+    private static volatile ExceptionLimiter limiter = ExceptionLimiter.fromProperties();
+    /* Where stack traces are deduplicated, if anywhere */
+    private static volatile StackTraceDeduplicator deduplicator = Long.getLong(Logging.DEDUPLICATE_PROPERTY, 0) > 0 ?
+            new StackTraceDeduplicator(Long.getLong(Logging.DEDUPLICATE_PROPERTY, 0)) :
+            null;
+    /* Where repeated events are collapsed, if anywhere */
+    private static volatile RepeatCollapser collapser = Long.getLong(Logging.COLLAPSE_PROPERTY, 0) > 0 ?
+            new RepeatCollapser(Long.getLong(Logging.COLLAPSE_PROPERTY, 0)) :
+            null;
+    /* Where delivery latencies are measured, and load shed, if anywhere */
+    private static volatile LoadShedder shedder = LoadShedder.fromProperties();
+    /* Where memory pressure is watched, if anywhere */
+    private static volatile MemoryPressureGuard guard = MemoryPressureGuard.fromProperties();
+    /* The minimum level of events not dropped, and whoever imposed it */
+    private static volatile int minimum = TRACE_INT;
+    private static final Map<Object, Integer> MINIMUMS = new IdentityHashMap<>();
+    /* Whether we are degraded (no stack traces below ERROR, no formatting) */
+    private static volatile boolean degraded = false;
+
+    private LogDispatcher() {
+        throw new IllegalStateException("Do not construct");
+    }
+
+    /**
+     * Dispatch an event to the specified {@link LocationAwareLogger}.
+     *
+     * @see LocationAwareLogger#log(Marker, String, int, String, Object[], Throwable)
+     */
+    static void dispatch(LocationAwareLogger logger, Marker marker, String fqcn, int level, String message, Object[] arguments, Throwable throwable) {
+        if (level < minimum) {
+            dropped();
+            return;
+        }
+        if ((throwable != null) && limited(logger, level, throwable)) return;
+        process(logger, marker, fqcn, level, message, arguments, throwable);
+    }
+
+    /*
+     * Process an event already past our exception limiter.
+     */
+    private static void process(LocationAwareLogger logger, Marker marker, String fqcn, int level, String message, Object[] arguments, Throwable throwable) {
+        /* When degraded, stack traces are only printed for errors */
+        if ((throwable != null) && (level < ERROR_INT) && degraded) {
+            message = message + " [" + throwable + "]";
+            throwable = null;
+        }
+
+        if (EarlyEvents.capture(logger, marker, fqcn, level, message, arguments, throwable)) return;
+
+        /* Only rendered messages without markers are collapsed */
+        final RepeatCollapser collapser = LogDispatcher.collapser;
+        if ((collapser != null) && (arguments == null) && (marker == null) && (message != null) &&
+            collapser.collapse(logger, level, message, throwable)) return;
+
+        final StackTraceDeduplicator deduplicator = LogDispatcher.deduplicator;
+        if ((deduplicator != null) && (throwable != null) && (arguments == null) && (message != null)) {
+            deduplicator.deliver(logger, marker, fqcn, level, message, throwable);
+            return;
+        }
+
+        deliver(logger, marker, fqcn, level, message, arguments, throwable);
+    }
+
+    /**
+     * Deliver an event to our {@link DeferredDispatcher}, {@link LogSink} or
+     * {@link LocationAwareLogger}, without limiting exceptions, collapsing
+     * repeats or deduplicating stack traces.
+     */
+    static void deliver(LocationAwareLogger logger, Marker marker, String fqcn, int level, String message, Object[] arguments, Throwable throwable) {
+        /* Only rendered messages, arguments might change in the meantime */
+        final DeferredDispatcher deferred = LogDispatcher.deferred;
+        if ((deferred != null) && (arguments == null) &&
+            deferred.defer(logger, marker, fqcn, level, message, throwable)) return;
+
+        /* Time (some of) our deliveries if we're shedding load */
+        final LoadShedder shedder = LogDispatcher.shedder;
+        if ((shedder != null) && shedder.sample()) {
+            final long started = System.nanoTime();
+            try {
+                append(logger, marker, fqcn, level, message, arguments, throwable);
+            } finally {
+                shedder.record(System.nanoTime() - started);
+            }
+        } else {
+            append(logger, marker, fqcn, level, message, arguments, throwable);
+        }
+    }
+
+    /*
+     * Append an event to our sink, or log it to the logger.
+     */
+    private static void append(LocationAwareLogger logger, Marker marker, String fqcn, int level, String message, Object[] arguments, Throwable throwable) {
+        final LogSink sink = LogDispatcher.sink;
+        if (sink == null) {
+            logger.log(marker, fqcn, level, message, arguments, throwable);
+        } else {
+            sink.append(System.currentTimeMillis(), Thread.currentThread().getName(),
+                        logger.getName(), level, message, arguments, throwable);
+        }
+    }
+
+    /**
+     * Dispatch an event with a {@link String#format(String, Object...)} style
+     * template: unless the installed {@link LogSink} is a
+     * {@link TemplateLogSink}, or we are in <i>deferred</i> or
+     * <i>passthrough</i> mode, the message will be formatted straight away.
+     */
+    static void dispatchFormat(LocationAwareLogger logger, String fqcn, int level, String format, Object[] arguments, Throwable throwable) {
+        if (level < minimum) {
+            dropped();
+            return;
+        }
+        if ((throwable != null) && limited(logger, level, throwable)) return;
+        final String template = format == null ? NULL_FORMAT : format;
+
+        final LogSink sink = LogDispatcher.sink;
+        if ((sink instanceof TemplateLogSink) && !EarlyEvents.isCapturing()) {
+            ((TemplateLogSink) sink).appendTemplate(System.currentTimeMillis(), Thread.currentThread().getName(),
+                                                    logger.getName(), level, template, arguments, throwable);
+        } else if ((deferred != null) && !EarlyEvents.isCapturing()) {
+            defer(logger, fqcn, level, CompiledFormat.of(template), arguments, throwable);
+        } else if (passthrough || degraded) {
+            passthrough(logger, fqcn, level, CompiledFormat.of(template), arguments, throwable);
+        } else {
+            process(logger, null, fqcn, level, String.format(template, arguments), null, throwable);
+        }
+    }
+
+    /**
+     * Dispatch an event with a {@linkplain CompiledFormat compiled} template,
+     * like {@link #dispatchFormat(LocationAwareLogger, String, int, String, Object[], Throwable)}.
+     */
+    static void dispatchFormat(LocationAwareLogger logger, String fqcn, int level, CompiledFormat format, Object[] arguments, Throwable throwable) {
+        if (level < minimum) {
+            dropped();
+            return;
+        }
+        if ((throwable != null) && limited(logger, level, throwable)) return;
+
+        final LogSink sink = LogDispatcher.sink;
+        if ((sink instanceof TemplateLogSink) && !EarlyEvents.isCapturing()) {
+            ((TemplateLogSink) sink).appendTemplate(System.currentTimeMillis(), Thread.currentThread().getName(),
+                                                    logger.getName(), level, format.getPattern(), arguments, throwable);
+        } else if ((deferred != null) && !EarlyEvents.isCapturing()) {
+            defer(logger, fqcn, level, format, arguments, throwable);
+        } else if (passthrough || degraded) {
+            passthrough(logger, fqcn, level, format, arguments, throwable);
+        } else {
+            process(logger, null, fqcn, level, format.format(arguments), null, throwable);
+        }
+    }
+
+    /*
+     * Count an event dropped because of our minimum level.
+     */
+    private static void dropped() {
+        final LoadShedder shedder = LogDispatcher.shedder;
+        if ((shedder != null) && shedder.isShedding()) shedder.dropped();
+        final MemoryPressureGuard guard = LogDispatcher.guard;
+        if ((guard != null) && guard.isUnderPressure()) guard.dropped();
+    }
+
+    /*
+     * Check whether an event with a throwable should be suppressed.
+     */
+    private static boolean limited(LocationAwareLogger logger, int level, Throwable throwable) {
+        final ExceptionLimiter limiter = LogDispatcher.limiter;
+        return (limiter != null) && !limiter.acquire(logger, level, throwable);
+    }
+
+    /*
+     * Copy the template and its arguments in our deferred dispatcher, or
+     * format straight away (deferring the message) if we can't.
+     */
+    private static void defer(LocationAwareLogger logger, String fqcn, int level, CompiledFormat format, Object[] arguments, Throwable throwable) {
+        final DeferredDispatcher deferred = LogDispatcher.deferred;
+        if ((deferred == null) || !deferred.defer(logger, fqcn, level, format, arguments, throwable)) {
+            process(logger, null, fqcn, level, format.format(arguments), null, throwable);
+        }
+    }
+
+    /*
+     * Hand over the SLF4J version of the template and a snapshot of the
+     * arguments, or format straight away if we can't.
+     */
+    private static void passthrough(LocationAwareLogger logger, String fqcn, int level, CompiledFormat format, Object[] arguments, Throwable throwable) {
+        final Object[] snapshot = format.snapshot(arguments);
+        if (snapshot != null) {
+            process(logger, null, fqcn, level, format.getSLF4JPattern(), snapshot, throwable);
+        } else {
+            process(logger, null, fqcn, level, format.format(arguments), null, throwable);
+        }
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Install a new {@link LoadShedder} (or <b>null</b>), closing the old
+     * one, if any, and returning it.
+     */
+    static synchronized LoadShedder setLoadShedder(LoadShedder shedder) {
+        final LoadShedder previous = LogDispatcher.shedder;
+        LogDispatcher.shedder = shedder;
+        if (previous != null) previous.close();
+        return previous;
+    }
+
+    /**
+     * Return the currently installed {@link LoadShedder} or <b>null</b>.
+     */
+    static LoadShedder getLoadShedder() {
+        return shedder;
+    }
+
+    /**
+     * Install a new {@link MemoryPressureGuard} (or <b>null</b>), closing the
+     * old one, if any, and returning it.
+     */
+    static synchronized MemoryPressureGuard setMemoryGuard(MemoryPressureGuard guard) {
+        final MemoryPressureGuard previous = LogDispatcher.guard;
+        LogDispatcher.guard = guard;
+        if (previous != null) previous.close();
+        return previous;
+    }
+
+    /**
+     * Return the currently installed {@link MemoryPressureGuard} or <b>null</b>.
+     */
+    static MemoryPressureGuard getMemoryGuard() {
+        return guard;
+    }
+
+    /**
+     * Return the minimum level (as in {@link LocationAwareLogger}) of the
+     * events not dropped by our {@link LoadShedder} or
+     * {@link MemoryPressureGuard}.
+     */
+    static int getMinimumLevel() {
+        return minimum;
+    }
+
+    /**
+     * Set the minimum level of the events not dropped on behalf of its owner
+     * (our {@link LoadShedder} or {@link MemoryPressureGuard}), or remove it
+     * if <code>TRACE_INT</code>: the highest one wins.
+     */
+    static void setMinimumLevel(Object owner, int level) {
+        /* Not on our class, closing the owner while holding it might deadlock */
+        synchronized (MINIMUMS) {
+            if (level > TRACE_INT) MINIMUMS.put(owner, level);
+            else MINIMUMS.remove(owner);
+
+            int highest = TRACE_INT;
+            for (int current: MINIMUMS.values()) highest = Math.max(highest, current);
+            minimum = highest;
+        }
+    }
+
+    /**
+     * Check whether we are degraded: no stack traces printed below
+     * <b>ERROR</b>, and templates handed over to the backend unformatted.
+     */
+    static boolean isDegraded() {
+        return degraded;
+    }
+
+    /**
+     * Set whether we are degraded, called by our {@link MemoryPressureGuard}.
+     */
+    static void setDegraded(boolean degraded) {
+        LogDispatcher.degraded = degraded;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Install a new {@link ExceptionLimiter} (or <b>null</b>), closing the
+     * old one, if any, and returning it.
+     */
+    static synchronized ExceptionLimiter setExceptionLimiter(ExceptionLimiter limiter) {
+        final ExceptionLimiter previous = LogDispatcher.limiter;
+        LogDispatcher.limiter = limiter;
+        if (previous != null) previous.close();
+        return previous;
+    }
+
+    /**
+     * Return the currently installed {@link ExceptionLimiter} or <b>null</b>.
+     */
+    static ExceptionLimiter getExceptionLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Return the time window (in milliseconds) stack traces are deduplicated
+     * in, or <code>0</code> if they are not.
+     */
+    static long getDeduplicateWindow() {
+        final StackTraceDeduplicator deduplicator = LogDispatcher.deduplicator;
+        return deduplicator == null ? 0 : deduplicator.getWindow();
+    }
+
+    /**
+     * Deduplicate stack traces within the specified time window (or not, if
+     * <code>0</code>), returning the old window.
+     */
+    static synchronized long setDeduplicateWindow(long window) {
+        if (window < 0) throw new IllegalArgumentException("Negative window " + window);
+        final StackTraceDeduplicator previous = LogDispatcher.deduplicator;
+        LogDispatcher.deduplicator = window == 0 ? null : new StackTraceDeduplicator(window);
+        return previous == null ? 0 : previous.getWindow();
+    }
+
+    /**
+     * Return the time window (in milliseconds) repeated events are collapsed
+     * in, or <code>0</code> if they are not.
+     */
+    static long getCollapseWindow() {
+        final RepeatCollapser collapser = LogDispatcher.collapser;
+        return collapser == null ? 0 : collapser.getWindow();
+    }
+
+    /**
+     * Collapse repeated events within the specified time window (or not, if
+     * <code>0</code>), returning the old window: all pending summaries of
+     * the previous window are dispatched before returning.
+     */
+    static synchronized long setCollapseWindow(long window) {
+        if (window < 0) throw new IllegalArgumentException("Negative window " + window);
+        final RepeatCollapser previous = LogDispatcher.collapser;
+        LogDispatcher.collapser = window == 0 ? null : new RepeatCollapser(window);
+        if (previous == null) return 0;
+        previous.close();
+        return previous.getWindow();
+    }
+
+    /**
+     * Check whether events are deferred or not.
+     */
+    static boolean isDeferred() {
+        return deferred != null;
+    }
+
+    /**
+     * Defer events (or not), returning the old setting: when deferring
+     * stops, all pending events are dispatched before returning.
+     */
+    static synchronized boolean setDeferred(boolean deferred) {
+        if (deferred == (LogDispatcher.deferred != null)) return deferred;
+        return setDeferred(deferred ? new DeferredDispatcher(DeferredDispatcher.DEFAULT_CAPACITY) : null) != null;
+    }
+
+    /**
+     * Install a new {@link DeferredDispatcher} (or <b>null</b>), closing the
+     * old one, if any, and returning it.
+     */
+    static synchronized DeferredDispatcher setDeferred(DeferredDispatcher deferred) {
+        final DeferredDispatcher previous = LogDispatcher.deferred;
+        LogDispatcher.deferred = deferred;
+        if (previous != null) previous.close();
+        return previous;
+    }
+
+    /**
+     * Check whether templates are passed through to SLF4J or not.
+     */
+    static boolean isPassthrough() {
+        return passthrough;
+    }
+
+    /**
+     * Pass templates through to SLF4J (or not), returning the old setting.
+     */
+    static synchronized boolean setPassthrough(boolean passthrough) {
+        final boolean previous = LogDispatcher.passthrough;
+        LogDispatcher.passthrough = passthrough;
+        return previous;
+    }
+
+    /**
+     * Return the currently installed {@link LogSink} or <b>null</b>.
+     */
+    static LogSink getSink() {
+        return sink;
+    }
+
+    /**
+     * Install a new {@link LogSink} (or <b>null</b>), returning the old one.
+     */
+    static synchronized LogSink setSink(LogSink sink) {
+        final LogSink previous = LogDispatcher.sink;
+        LogDispatcher.sink = sink;
+        return previous;
+    }
+
+}
@@ -0,0 +1,390 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static org.slf4j.spi.LocationAwareLogger.DEBUG_INT;
+import static org.slf4j.spi.LocationAwareLogger.INFO_INT;
+import static org.slf4j.spi.LocationAwareLogger.TRACE_INT;
+import static org.slf4j.spi.LocationAwareLogger.WARN_INT;
+import static org.usrz.libs.logging.EffectiveLevels.DEBUG_ENABLED;
+import static org.usrz.libs.logging.EffectiveLevels.ERROR_ENABLED;
+import static org.usrz.libs.logging.EffectiveLevels.FILTERED;
+import static org.usrz.libs.logging.EffectiveLevels.INFO_ENABLED;
+import static org.usrz.libs.logging.EffectiveLevels.TRACE_ENABLED;
+import static org.usrz.libs.logging.EffectiveLevels.WARN_ENABLED;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.spi.LocationAwareLogger;
+
+/**
+ * A <i>log point</i>, binding a {@link Log}, a level and a precompiled
+ * {@link String#format(String, Object...)} style template, meant to be
+ * created once and kept in a <code>static final</code> field:
+ *
+ * <pre>
+ * private static final Log log = new Log();
+ * private static final LogPoint PROCESSED = log.infoPoint("Processed %d items in %d ms");
+ *
+ * PROCESSED.log(count, elapsed);
+ * </pre>
+ *
+ * <p>Whether the level is enabled is remembered (and refreshed whenever the
+ * backend's levels change, see {@link Logging#refreshLevels()}), so that when
+ * it's not, logging costs a field read and a bit test. When it is, the
+ * template is either handed over as-is to a {@link TemplateLogSink}, or
+ * formatted without being parsed again.</p>
+ *
+ * <p>Each instance also counts the events it logged.</p>
+ *
+ * <p>Log points in hot loops can be {@linkplain #limit(int) rate limited}
+ * or {@linkplain #sample(int) sampled}: events they suppress are counted,
+ * and periodically (every <code>org.usrz.libs.logging.throttle.interval</code>
+ * milliseconds, by default 10 seconds) a summary line reports how many
+ * were suppressed.</p>
+ *
+ * <pre>
+ * private static final LogPoint RETRYING = log.warnPoint("Retrying %s").limit(10);
+ * </pre>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+public final class LogPoint {
+
+    /* The fully qualified class name of this class */
+    private static final String FQCN = LogPoint.class.getName();
+    /* Our levels were never computed: all bits set, so it looks enabled */
+    private static final int UNRESOLVED = -1;
+
+    /* How often we report suppressed events, in milliseconds */
+    private static final long SUMMARY_INTERVAL = Long.getLong("org.usrz.libs.logging.throttle.interval", 10000);
+    /* All throttled log points, weakly referenced */
+    private static final Set<LogPoint> THROTTLED = Collections.newSetFromMap(new WeakHashMap<LogPoint, Boolean>());
+    /* Our summaries, scheduled when the first throttled point is created */
+    private static ScheduledExecutorService summaries = null;
+
+    private final Log log;
+    private final int level;
+    private final int enabled;
+    private final CompiledFormat format;
+    private final Throttle throttle;
+    private final AtomicLong count = new AtomicLong();
+
+    /* Our logger, and the bitmask of its enabled levels, see EffectiveLevels */
+    private LocationAwareLogger logger;
+    private volatile int levels = UNRESOLVED;
+
+    /* Refresh our levels, strongly referenced by us, weakly by EffectiveLevels */
+    private final EffectiveLevels.Listener listener = new EffectiveLevels.Listener() {
+        @Override
+        public void levelsChanged() {
+            refresh();
+        }
+    };
+
+    LogPoint(Log log, int level, String format) {
+        this(log, level, compile(format), null);
+    }
+
+    private LogPoint(Log log, int level, CompiledFormat format, Throttle throttle) {
+        this.log = log;
+        this.level = level;
+        this.format = format;
+        this.throttle = throttle;
+        enabled = level <= TRACE_INT ? TRACE_ENABLED :
+                  level <= DEBUG_INT ? DEBUG_ENABLED :
+                  level <= INFO_INT  ? INFO_ENABLED  :
+                  level <= WARN_INT  ? WARN_ENABLED  :
+                                       ERROR_ENABLED;
+        if (throttle != null) register(this);
+    }
+
+    private static CompiledFormat compile(String format) {
+        if (format == null) throw new NullPointerException("Null format");
+        return CompiledFormat.compile(format);
+    }
+
+    /* ====================================================================== */
+
+    /*
+     * Resolve our logger and levels on first use (like Log does), so that
+     * creating log points in static fields costs next to nothing.
+     */
+    private synchronized int resolve() {
+        if (levels == UNRESOLVED) {
+            logger = log.logger();
+            EffectiveLevels.register(listener);
+            levels = EffectiveLevels.of(logger);
+        }
+        return levels;
+    }
+
+    /* Under our lock, so that an older value never overwrites a newer one */
+    private synchronized void refresh() {
+        levels = EffectiveLevels.of(logger);
+    }
+
+    /*
+     * Check whether our level is enabled, and our throttle (if any) lets
+     * the event through: when disabled, a field read and a bit test.
+     */
+    private boolean loggable() {
+        final int levels = this.levels;
+        if ((levels & enabled) == 0) return false;
+        if (levels == UNRESOLVED) return loggableUnresolved();
+        if (((levels & FILTERED) != 0) && !EffectiveLevels.isEnabled(logger, enabled)) return false;
+        return (throttle == null) || throttle.acquire();
+    }
+
+    /*
+     * Same as loggable(), on first use: out of the way, so that the hot
+     * path stays small enough to be inlined.
+     */
+    private boolean loggableUnresolved() {
+        resolve();
+        return loggable();
+    }
+
+    private void dispatch(Object[] arguments, Throwable throwable) {
+        count.incrementAndGet();
+        LogDispatcher.dispatchFormat(logger, FQCN, level, format, arguments, throwable);
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the {@link Log} this {@link LogPoint} logs to.
+     */
+    public Log getLog() {
+        return log;
+    }
+
+    /**
+     * Return the template of this {@link LogPoint}.
+     */
+    public String getFormat() {
+        return format.getPattern();
+    }
+
+    /**
+     * Check whether the level of this {@link LogPoint} is enabled.
+     */
+    public boolean isEnabled() {
+        final int levels = this.levels;
+        if ((levels & enabled) == 0) return false;
+        if (levels == UNRESOLVED) {
+            resolve();
+            return isEnabled();
+        }
+        return ((levels & FILTERED) == 0) || EffectiveLevels.isEnabled(logger, enabled);
+    }
+
+    /**
+     * Return the number of events logged by this {@link LogPoint}.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Return the number of events suppressed by this {@link LogPoint}.
+     *
+     * @see #limit(int)
+     * @see #sample(int)
+     */
+    public long getSuppressed() {
+        return throttle == null ? 0 : throttle.getSuppressed();
+    }
+
+    /**
+     * Return a new {@link LogPoint}, like this one, logging at most the
+     * specified number of events per second.
+     */
+    public LogPoint limit(int eventsPerSecond) {
+        return new LogPoint(log, level, format, Throttle.limit(eventsPerSecond));
+    }
+
+    /**
+     * Return a new {@link LogPoint}, like this one, logging only one event
+     * in every <code>n</code> (starting from the first one).
+     */
+    public LogPoint sample(int n) {
+        return new LogPoint(log, level, format, Throttle.sample(n));
+    }
+
+    /**
+     * Return a new {@link LogPoint}, like this one, with the specified
+     * {@link Throttle}.
+     */
+    LogPoint throttle(Throttle throttle) {
+        return new LogPoint(log, level, format, throttle);
+    }
+
+    /**
+     * Usual {@link String} representation FTW.
+     */
+    @Override
+    public String toString() {
+        return this.getClass().getName() + "[" + log.getName() + ":" + TextEncoder.levelName(level).trim()
+                                         + ":" + format.getPattern()
+                                         + (throttle == null ? "" : ":" + throttle)
+                                         + "]@" + hashCode();
+    }
+
+    /**
+     * Log a summary line if this {@link LogPoint} suppressed events since
+     * the last summary.
+     */
+    void summarize() {
+        final long suppressed = throttle == null ? 0 : throttle.drain();
+        if ((suppressed > 0) && isEnabled()) {
+            LogDispatcher.dispatch(logger, null, FQCN, level,
+                                   "Suppressed " + suppressed + " events (" + throttle + "): "
+                                   + format.getPattern(), null, null);
+        }
+    }
+
+    /* ====================================================================== */
+
+    /*
+     * Remember a throttled log point, and start summarizing if we have to.
+     */
+    private static void register(LogPoint point) {
+        synchronized (THROTTLED) {
+            THROTTLED.add(point);
+            if ((summaries != null) || (SUMMARY_INTERVAL <= 0)) return;
+
+            summaries = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "LogPoint summaries");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            summaries.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    summarizeAll();
+                }
+            }, SUMMARY_INTERVAL, SUMMARY_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /*
+     * Summarize all throttled log points, called periodically.
+     */
+    private static void summarizeAll() {
+        final List<LogPoint> points;
+        synchronized (THROTTLED) {
+            points = new ArrayList<>(THROTTLED);
+        }
+
+        for (LogPoint point: points) try {
+            point.summarize();
+        } catch (RuntimeException exception) {
+            System.err.println("Exception summarizing " + point);
+            exception.printStackTrace(System.err);
+        }
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Log the template of this {@link LogPoint} with no arguments.
+     */
+    public void log() {
+        if (loggable()) dispatch(null, null);
+    }
+
+    /**
+     * Log the template of this {@link LogPoint} with one argument.
+     */
+    public void log(Object argument1) {
+        if (loggable()) dispatch(new Object[] { argument1 }, null);
+    }
+
+    /**
+     * Log the template of this {@link LogPoint} with two arguments.
+     */
+    public void log(Object argument1, Object argument2) {
+        if (loggable()) dispatch(new Object[] { argument1, argument2 }, null);
+    }
+
+    /**
+     * Log the template of this {@link LogPoint} with three arguments.
+     */
+    public void log(Object argument1, Object argument2, Object argument3) {
+        if (loggable()) dispatch(new Object[] { argument1, argument2, argument3 }, null);
+    }
+
+    /**
+     * Log the template of this {@link LogPoint} with any number of arguments.
+     */
+    public void log(Object... arguments) {
+        if (loggable()) dispatch(arguments, null);
+    }
+
+    /* -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  - */
+
+    /**
+     * Log the template of this {@link LogPoint} and a {@link Throwable}.
+     */
+    public void log(Throwable throwable) {
+        if (loggable()) dispatch(null, throwable);
+    }
+
+    /**
+     * Log the template of this {@link LogPoint} with one argument and a
+     * {@link Throwable}.
+     */
+    public void log(Throwable throwable, Object argument1) {
+        if (loggable()) dispatch(new Object[] { argument1 }, throwable);
+    }
+
+    /**
+     * Log the template of this {@link LogPoint} with two arguments and a
+     * {@link Throwable}.
+     */
+    public void log(Throwable throwable, Object argument1, Object argument2) {
+        if (loggable()) dispatch(new Object[] { argument1, argument2 }, throwable);
+    }
+
+    /**
+     * Log the template of this {@link LogPoint} with three arguments and a
+     * {@link Throwable}.
+     */
+    public void log(Throwable throwable, Object argument1, Object argument2, Object argument3) {
+        if (loggable()) dispatch(new Object[] { argument1, argument2, argument3 }, throwable);
+    }
+
+    /**
+     * Log the template of this {@link LogPoint} with any number of arguments
+     * and a {@link Throwable}.
+     */
+    public void log(Throwable throwable, Object... arguments) {
+        if (loggable()) dispatch(arguments, throwable);
+    }
+}
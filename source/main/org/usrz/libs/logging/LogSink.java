@@ -0,0 +1,53 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import java.io.Closeable;
+import java.io.Flushable;
+
+import org.slf4j.spi.LocationAwareLogger;
+
+/**
+ * A first-party destination for log events, bypassing SLF4J's backend.
+ *
+ * <p>When a {@link LogSink} is {@linkplain Logging#setSink(LogSink) installed}
+ * events from our {@link Log} and from all our bridge adapters will be handed
+ * over to it rather than to the SLF4J {@link LocationAwareLogger}s (which will
+ * still be used to figure out which levels are enabled).</p>
+ *
+ * <p>Implementations <b>must</b> be thread safe.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+public interface LogSink extends Flushable, Closeable {
+
+    /**
+     * Append an event to this {@link LogSink}.
+     *
+     * @param timestamp The time (in milliseconds) the event was logged.
+     * @param threadName The name of the thread that logged the event.
+     * @param loggerName The name of the logger the event was logged to.
+     * @param level The level of the event, as in {@link LocationAwareLogger}.
+     * @param message The message of the event.
+     * @param arguments The SLF4J-style (<code>{}</code>) arguments of the
+     *                  message, or <b>null</b> if the message is complete.
+     * @param throwable The {@link Throwable} of the event, or <b>null</b>.
+     */
+    public void append(long timestamp, String threadName, String loggerName,
+                       int level, String message, Object[] arguments,
+                       Throwable throwable);
+
+}
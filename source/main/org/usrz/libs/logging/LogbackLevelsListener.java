@@ -0,0 +1,92 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import org.slf4j.ILoggerFactory;
+import org.slf4j.LoggerFactory;
+import org.slf4j.spi.LocationAwareLogger;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggerContextListener;
+
+/**
+ * A <a href="http://logback.qos.ch/">Logback</a> {@link LoggerContextListener}
+ * refreshing our {@link EffectiveLevels} whenever its configuration changes.
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+final class LogbackLevelsListener implements LoggerContextListener {
+
+    private LogbackLevelsListener() {
+        /* Nothing to do */
+    }
+
+    /**
+     * Install our listener if the SLF4J backend is <i>Logback</i>.
+     */
+    static void install() {
+        final ILoggerFactory factory = LoggerFactory.getILoggerFactory();
+        if (factory instanceof LoggerContext) {
+            ((LoggerContext) factory).addListener(new LogbackLevelsListener());
+        }
+    }
+
+    /**
+     * Return <b>true</b>, or fail with a {@link NoClassDefFoundError} if
+     * <i>Logback</i> is not around.
+     */
+    static boolean available() {
+        return true;
+    }
+
+    /**
+     * Check whether the <i>Logback</i> context of a logger has turbo filters,
+     * deciding whether its events are enabled one by one.
+     */
+    static boolean isFiltered(LocationAwareLogger logger) {
+        return (logger instanceof Logger) && !((Logger) logger).getLoggerContext().getTurboFilterList().isEmpty();
+    }
+
+    /* ====================================================================== */
+
+    @Override
+    public boolean isResetResistant() {
+        return true;
+    }
+
+    @Override
+    public void onStart(LoggerContext context) {
+        EffectiveLevels.refresh();
+    }
+
+    @Override
+    public void onReset(LoggerContext context) {
+        EffectiveLevels.refresh();
+    }
+
+    @Override
+    public void onStop(LoggerContext context) {
+        EffectiveLevels.refresh();
+    }
+
+    @Override
+    public void onLevelChange(Logger logger, Level level) {
+        EffectiveLevels.refresh();
+    }
+
+}
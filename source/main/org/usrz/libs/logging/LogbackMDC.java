@@ -0,0 +1,59 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import java.util.Map;
+
+import org.slf4j.MDC;
+
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+
+/**
+ * Access to the MDC of <a href="http://logback.qos.ch/">Logback</a>, whose
+ * maps are copy-on-write and can be read without being copied.
+ *
+ * <p>Logback might not be there at all: this class must only be used after
+ * {@link #available()} returned <b>true</b>.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+final class LogbackMDC {
+
+    private LogbackMDC() {
+        throw new IllegalStateException("Do not construct");
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Check whether the SLF4J MDC is backed by <i>Logback</i>.
+     */
+    static boolean available() {
+        try {
+            return MDC.getMDCAdapter() instanceof LogbackMDCAdapter;
+        } catch (NoClassDefFoundError error) {
+            return false;
+        }
+    }
+
+    /**
+     * Return the current (never modified) MDC map of <i>Logback</i>, or
+     * <b>null</b> if empty.
+     */
+    static Map<String, String> getPropertyMap() {
+        return ((LogbackMDCAdapter) MDC.getMDCAdapter()).getPropertyMap();
+    }
+}
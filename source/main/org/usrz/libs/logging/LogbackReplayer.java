@@ -0,0 +1,67 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import java.util.Collections;
+import java.util.Map;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.CallerData;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * A {@link EarlyEvents.Replayer} for <a href="http://logback.qos.ch/">Logback</a>
+ * replaying events with their original timestamp, thread name, MDC and caller
+ * (when we know it).
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+final class LogbackReplayer extends EarlyEvents.Replayer {
+
+    LogbackReplayer() {
+        /* Fail early if Logback is not there */
+        Logger.class.getName();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    void replay(EarlyEvents.Event event) {
+        if ((LogDispatcher.getSink() != null) || !(event.logger instanceof Logger)) {
+            super.replay(event);
+            return;
+        }
+
+        final Logger logger = (Logger) event.logger;
+        final Level level = Level.fromLocationAwareLoggerInteger(event.level);
+        if (!logger.isEnabledFor(level)) return;
+
+        final LoggerContext context = logger.getLoggerContext();
+        final LoggingEvent replayed = new LoggingEvent(event.fqcn, logger, level, event.message, event.throwable, event.arguments);
+        replayed.setTimeStamp(event.timestamp);
+        replayed.setThreadName(event.threadName);
+        replayed.setMarker(event.marker);
+        replayed.setMDCPropertyMap(event.mdc == null ? Collections.<String, String>emptyMap() : (Map<String, String>) event.mdc);
+        replayed.setCallerData(event.caller == null ? CallerData.EMPTY_CALLER_DATA_ARRAY :
+                               CallerData.extract(event.caller, event.fqcn,
+                                                  context.getMaxCallerDataDepth(),
+                                                  context.getFrameworkPackages()));
+
+        logger.callAppenders(replayed);
+    }
+
+}
@@ -15,6 +15,26 @@
  * ========================================================================== */
 package org.usrz.libs.logging;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.LoggerFactory;
+import org.usrz.libs.logging.JournalSink.Encoding;
 
 /**
  * A class initializing the logging environment.
@@ -27,7 +47,163 @@ package org.usrz.libs.logging;
  */
 public final class Logging {
 
+    /**
+     * The system property used to select the default {@link Mode} of
+     * initialization (<code>eager</code>, <code>lazy</code> or
+     * <code>parallel</code>).
+     */
+    public static final String MODE_PROPERTY = "org.usrz.libs.logging.mode";
+
+    /**
+     * The system property specifying the name of a file where a
+     * {@link FileSink} should write all events, bypassing the backend.
+     *
+     * <p>The <code>org.usrz.libs.logging.sink.maxSize</code> (in bytes) and
+     * <code>org.usrz.libs.logging.sink.maxAge</code> (in milliseconds)
+     * properties control when the file will be rolled over.</p>
+     *
+     * <p>Rolled files will be compressed in the background if the
+     * <code>org.usrz.libs.logging.sink.compression</code> property specifies
+     * a compression level (from <code>0</code> to <code>9</code>), optionally
+     * with the preset dictionary read from the file specified by the
+     * <code>org.usrz.libs.logging.sink.dictionary</code> property.</p>
+     *
+     * <p>Events are written as text, unless the
+     * <code>org.usrz.libs.logging.sink.encoding</code> property is set to
+     * <code>json</code>.</p>
+     *
+     * <p>Invalid values are reported on {@link System#err}, and no file is
+     * written.</p>
+     */
+    public static final String SINK_FILE_PROPERTY = "org.usrz.libs.logging.sink.file";
+
+    /**
+     * The name of the system property (<code>true</code> or <code>false</code>)
+     * enabling <i>passthrough</i> mode from startup.
+     *
+     * @see #setPassthrough(boolean)
+     */
+    public static final String PASSTHROUGH_PROPERTY = "org.usrz.libs.logging.passthrough";
+
+    /**
+     * The name of the system property (<code>true</code> or <code>false</code>)
+     * enabling <i>deferred</i> mode from startup.
+     *
+     * <p>The <code>org.usrz.libs.logging.deferred.capacity</code> property
+     * controls how many events can be pending (by default 8192).</p>
+     *
+     * @see #setDeferred(boolean)
+     */
+    public static final String DEFERRED_PROPERTY = "org.usrz.libs.logging.deferred";
+
+    /**
+     * The name of the system property specifying the time window (in
+     * milliseconds) in which identical consecutive events are collapsed.
+     *
+     * @see #setCollapseWindow(long)
+     */
+    public static final String COLLAPSE_PROPERTY = "org.usrz.libs.logging.collapse";
+
+    /**
+     * The name of the system property specifying the time window (in
+     * milliseconds) in which each distinct stack trace is logged only once.
+     *
+     * @see #setDeduplicateWindow(long)
+     */
+    public static final String DEDUPLICATE_PROPERTY = "org.usrz.libs.logging.deduplicate";
+
+    /**
+     * The name of the system property specifying how many events with the
+     * same exception class (per second) can be logged.
+     *
+     * <p>Malformed values are reported on {@link System#err}, and no limit
+     * is imposed.</p>
+     *
+     * @see #EXCEPTION_BURST_PROPERTY
+     * @see #EXCEPTION_BY_SITE_PROPERTY
+     * @see #setExceptionLimit(double, int, boolean)
+     */
+    public static final String EXCEPTION_RATE_PROPERTY = "org.usrz.libs.logging.exceptions.rate";
+
+    /**
+     * The name of the system property specifying how many events with the
+     * same exception class can be logged at once (by default 1).
+     *
+     * @see #EXCEPTION_RATE_PROPERTY
+     */
+    public static final String EXCEPTION_BURST_PROPERTY = "org.usrz.libs.logging.exceptions.burst";
+
+    /**
+     * The name of the system property specifying whether the exceptions limit
+     * applies to each class <i>and throw site</i> (by default <b>false</b>).
+     *
+     * @see #EXCEPTION_RATE_PROPERTY
+     */
+    public static final String EXCEPTION_BY_SITE_PROPERTY = "org.usrz.libs.logging.exceptions.bySite";
+
+    /**
+     * The name of the system property specifying the latency budget (in
+     * microseconds) of handing over an event to the backend, above which a
+     * {@link LoadShedder} starts dropping events.
+     *
+     * <p>Malformed values are reported on {@link System#err}, and no load
+     * is shed.</p>
+     *
+     * @see #SHEDDING_LEVEL_PROPERTY
+     * @see #SHEDDING_RECOVERY_PROPERTY
+     * @see #setLoadShedder(LoadShedder)
+     */
+    public static final String SHEDDING_BUDGET_PROPERTY = "org.usrz.libs.logging.shedding.budget";
+
+    /**
+     * The name of the system property specifying the minimum level of events
+     * logged when shedding load (by default <code>warn</code>).
+     *
+     * @see #SHEDDING_BUDGET_PROPERTY
+     */
+    public static final String SHEDDING_LEVEL_PROPERTY = "org.usrz.libs.logging.shedding.level";
+
+    /**
+     * The name of the system property specifying the minimum time (by default
+     * 10000 milliseconds) events are dropped for when shedding load.
+     *
+     * @see #SHEDDING_BUDGET_PROPERTY
+     */
+    public static final String SHEDDING_RECOVERY_PROPERTY = "org.usrz.libs.logging.shedding.recovery";
+
+    /**
+     * The name of the system property specifying the fraction (from 0 to 1)
+     * of a heap pool used after a collection above which a
+     * {@link MemoryPressureGuard} degrades logging.
+     *
+     * <p>Malformed values are reported on {@link System#err}, and no guard
+     * is installed.</p>
+     *
+     * @see #PRESSURE_RECOVERY_PROPERTY
+     * @see #PRESSURE_LEVEL_PROPERTY
+     * @see #setMemoryGuard(MemoryPressureGuard)
+     */
+    public static final String PRESSURE_THRESHOLD_PROPERTY = "org.usrz.libs.logging.pressure.threshold";
+
+    /**
+     * The name of the system property specifying the fraction of a heap pool
+     * used below which logging goes back to normal (by default 80% of the
+     * threshold).
+     *
+     * @see #PRESSURE_THRESHOLD_PROPERTY
+     */
+    public static final String PRESSURE_RECOVERY_PROPERTY = "org.usrz.libs.logging.pressure.recovery";
+
+    /**
+     * The name of the system property specifying the minimum level of events
+     * logged under memory pressure (by default <code>warn</code>).
+     *
+     * @see #PRESSURE_THRESHOLD_PROPERTY
+     */
+    public static final String PRESSURE_LEVEL_PROPERTY = "org.usrz.libs.logging.pressure.level";
+
     private static boolean initialized = false;
+    private static volatile List<Report> reports = Collections.emptyList();
 
     private Logging() {
         throw new IllegalStateException("Do not construct");
@@ -54,50 +230,544 @@ public final class Logging {
      * not be conquered. Call this <b>first</b> before you do <i>anything</i>
      * else.</p>
      *
+     * <p>The {@link Mode} of initialization will be read from the
+     * <code>{@value #MODE_PROPERTY}</code> system property, defaulting to
+     * {@link Mode#EAGER} (also when the property is invalid).</p>
+     *
      * @param verbose If <b>true</b> debug output will be written to
      *                {@linkplain System#err standard error}.
      */
     public static void init(boolean verbose) {
+        init(verbose, parseMode(System.getProperty(MODE_PROPERTY)));
+    }
+
+    /**
+     * Conquer all logging subsystems, and rule their world with an iron fist!
+     *
+     * <p>This method, ironically enough, will fail badly if the world can
+     * not be conquered. Call this <b>first</b> before you do <i>anything</i>
+     * else.</p>
+     *
+     * @param verbose If <b>true</b> debug output will be written to
+     *                {@linkplain System#err standard error}.
+     * @param mode How the various logging subsystems should be initialized.
+     */
+    public static void init(boolean verbose, Mode mode) {
+        if (mode == null) throw new NullPointerException("Null mode");
         if (initialized) return;
 
         synchronized (Logging.class) {
+            if (initialized) return;
 
-            /* Java Logging initialization */
+            /* Capture whatever gets logged while we initialize */
+            EarlyEvents.open();
+
+            /* Initialize (or register) all our subsystems */
+            final List<Report> reports;
             try {
-                JavaLoggingInitializer.init();
-                if (verbose) System.err.println("Java Logging initialized");
-            } catch (NoClassDefFoundError error) {
-                if (verbose) System.err.println("Java Logging not found");
+                reports = mode == Mode.PARALLEL ?
+                          initParallel(verbose) :
+                          initSequential(verbose, mode);
+                initSink();
+            } finally {
+                EarlyEvents.close();
             }
 
-            /* Log4j 1 Logging initialization */
-            try {
-                Log4j1Initializer.init();
-                if (verbose) System.err.println("Log4j v1 Logging initialized");
-            } catch (NoClassDefFoundError error) {
-                if (verbose) System.err.println("Log4j v1 Logging not found");
+            /* Remember what happened, and say something if we have to */
+            Logging.reports = Collections.unmodifiableList(reports);
+            if (verbose) for (Report report: reports) System.err.println(report);
+
+            /* We are initialized */
+            initialized = true;
+
+        }
+    }
+
+    /**
+     * Return a {@link List} of {@link Report}s detailing what happened to
+     * each logging subsystem when {@link Logging} was initialized.
+     *
+     * <p>If this class was not yet initialized, the list will be empty.</p>
+     */
+    public static List<Report> getReports() {
+        return reports;
+    }
+
+    /**
+     * Install a {@link LogSink} where all events from our {@link Log} and
+     * bridge adapters will be written, bypassing the backend's appenders.
+     *
+     * <p>The backend will still be used to figure out which levels are
+     * enabled. Use <b>null</b> to go back to the backend's appenders.</p>
+     *
+     * @return The previously installed {@link LogSink}, which is <b>not</b>
+     *         closed by this method, or <b>null</b>.
+     */
+    public static LogSink setSink(LogSink sink) {
+        return LogDispatcher.setSink(sink);
+    }
+
+    /**
+     * Enable (or disable) <i>passthrough</i> mode.
+     *
+     * <p>Normally {@link String#format(String, Object...)} templates from our
+     * {@link Log} are formatted straight away by whoever logs. In passthrough
+     * mode simple templates (using only <code>%s</code> and <code>%d</code>)
+     * are translated into SLF4J's <code>{}</code> syntax, and handed over to
+     * the backend with their arguments, letting it decide when (and on what
+     * thread) to format them. Mutable arguments are rendered as strings
+     * beforehand, so they can't change in the meantime.</p>
+     *
+     * @return Whether passthrough mode was previously enabled.
+     */
+    public static boolean setPassthrough(boolean passthrough) {
+        return LogDispatcher.setPassthrough(passthrough);
+    }
+
+    /**
+     * Check whether <i>passthrough</i> mode is enabled.
+     *
+     * @see #setPassthrough(boolean)
+     */
+    public static boolean isPassthrough() {
+        return LogDispatcher.isPassthrough();
+    }
+
+    /**
+     * Enable (or disable) <i>deferred</i> mode.
+     *
+     * <p>In deferred mode threads logging with our {@link Log} simply copy
+     * their templates and arguments in a preallocated slot, while formatting
+     * and dispatching to the backend happen on a background thread. Mutable
+     * arguments are rendered as strings beforehand, so they can't change in
+     * the meantime.</p>
+     *
+     * <p>With <i>Logback</i> events keep their original timestamp, thread
+     * name and MDC, but their caller data will not be available.</p>
+     *
+     * @return Whether deferred mode was previously enabled. When disabling
+     *         it, all pending events will have been dispatched.
+     */
+    public static boolean setDeferred(boolean deferred) {
+        return LogDispatcher.setDeferred(deferred);
+    }
+
+    /**
+     * Check whether <i>deferred</i> mode is enabled.
+     *
+     * @see #setDeferred(boolean)
+     */
+    public static boolean isDeferred() {
+        return LogDispatcher.isDeferred();
+    }
+
+    /**
+     * Collapse identical consecutive events within the specified time window.
+     *
+     * <p>When collapsing, events from the same logger with the same level,
+     * message and throwable type as the previous one are held back and
+     * counted, and a single <code>Last message repeated N times</code> event
+     * is logged when a different event comes along, or when the window
+     * (measured from the first event) expires.</p>
+     *
+     * <p>Only messages rendered by whoever logs are collapsed: templates
+     * handed over to a {@link TemplateLogSink}, or in <i>deferred</i> or
+     * <i>passthrough</i> mode, are not.</p>
+     *
+     * @param window The time window in milliseconds, or <code>0</code> to
+     *               stop collapsing events.
+     * @return The previous time window, or <code>0</code> if events were
+     *         not collapsed. All summaries pending for the previous window
+     *         will have been logged.
+     */
+    public static long setCollapseWindow(long window) {
+        return LogDispatcher.setCollapseWindow(window);
+    }
+
+    /**
+     * Return the time window (in milliseconds) identical consecutive events
+     * are collapsed in, or <code>0</code> if they are not.
+     *
+     * @see #setCollapseWindow(long)
+     */
+    public static long getCollapseWindow() {
+        return LogDispatcher.getCollapseWindow();
+    }
+
+    /**
+     * Log each distinct stack trace only once within the specified time window.
+     *
+     * <p>Throwables are fingerprinted by their class, stack frames and causes.
+     * The first event with a stack trace is logged as usual, with a reference
+     * like <code>[stack trace #1a2b3c4d]</code> appended to its message. Later
+     * events with the same stack trace (until the window expires) are logged
+     * without their throwable: their message will mention its class and
+     * message, the same reference and how many times it was seen.</p>
+     *
+     * <p>Only messages rendered by whoever logs are deduplicated: templates
+     * handed over to a {@link TemplateLogSink}, or in <i>deferred</i> or
+     * <i>passthrough</i> mode, are not.</p>
+     *
+     * @param window The time window in milliseconds, or <code>0</code> to
+     *               always log full stack traces.
+     * @return The previous time window, or <code>0</code> if stack traces
+     *         were not deduplicated.
+     */
+    public static long setDeduplicateWindow(long window) {
+        return LogDispatcher.setDeduplicateWindow(window);
+    }
+
+    /**
+     * Return the time window (in milliseconds) stack traces are deduplicated
+     * in, or <code>0</code> if they are not.
+     *
+     * @see #setDeduplicateWindow(long)
+     */
+    public static long getDeduplicateWindow() {
+        return LogDispatcher.getDeduplicateWindow();
+    }
+
+    /**
+     * Limit how often events with a {@link Throwable} can be logged.
+     *
+     * <p>A token bucket is kept for each exception class (or for each class
+     * and throw site, the topmost frame of its stack trace) refilled with
+     * the specified number of events per second, and holding at most the
+     * specified burst. Events finding their bucket empty are suppressed
+     * before they're even formatted, and periodically (every
+     * <code>org.usrz.libs.logging.throttle.interval</code> milliseconds, by
+     * default 10 seconds) a summary line reports how many were.</p>
+     *
+     * @param eventsPerSecond How many events per second can be logged.
+     * @param burst How many events can be logged at once.
+     * @param bySite Whether limits apply to each exception class and throw
+     *               site, or to each exception class.
+     * @return Whether exceptions were previously limited.
+     */
+    public static boolean setExceptionLimit(double eventsPerSecond, int burst, boolean bySite) {
+        return LogDispatcher.setExceptionLimiter(new ExceptionLimiter(eventsPerSecond, burst, bySite)) != null;
+    }
+
+    /**
+     * Stop limiting how often events with a {@link Throwable} can be logged,
+     * reporting all pending suppressed events.
+     *
+     * @return Whether exceptions were previously limited.
+     * @see #setExceptionLimit(double, int, boolean)
+     */
+    public static boolean removeExceptionLimit() {
+        return LogDispatcher.setExceptionLimiter(null) != null;
+    }
+
+    /**
+     * Install a {@link LoadShedder} (or <b>null</b>) timing how long handing
+     * over events to the backend takes, and dropping less important events
+     * when it takes too long.
+     *
+     * @return The previously installed {@link LoadShedder}, already closed,
+     *         or <b>null</b>.
+     */
+    public static LoadShedder setLoadShedder(LoadShedder shedder) {
+        return LogDispatcher.setLoadShedder(shedder);
+    }
+
+    /**
+     * Return the currently installed {@link LoadShedder} or <b>null</b>.
+     */
+    public static LoadShedder getLoadShedder() {
+        return LogDispatcher.getLoadShedder();
+    }
+
+    /**
+     * Install a {@link MemoryPressureGuard} (or <b>null</b>) degrading
+     * logging while the heap is under pressure.
+     *
+     * @return The previously installed {@link MemoryPressureGuard}, already
+     *         closed, or <b>null</b>.
+     */
+    public static MemoryPressureGuard setMemoryGuard(MemoryPressureGuard guard) {
+        return LogDispatcher.setMemoryGuard(guard);
+    }
+
+    /**
+     * Return the currently installed {@link MemoryPressureGuard} or <b>null</b>.
+     */
+    public static MemoryPressureGuard getMemoryGuard() {
+        return LogDispatcher.getMemoryGuard();
+    }
+
+    /**
+     * Return the currently installed {@link LogSink} or <b>null</b>.
+     */
+    public static LogSink getSink() {
+        return LogDispatcher.getSink();
+    }
+
+    /* ====================================================================== */
+
+    static Mode parseMode(String mode) {
+        if (mode == null) return Mode.EAGER;
+        try {
+            return Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException exception) {
+            System.err.println("WARNING: Invalid initialization mode \"" + mode + "\", initializing eagerly");
+            return Mode.EAGER;
+        }
+    }
+
+    private static void initSink() {
+        final String file = System.getProperty(SINK_FILE_PROPERTY);
+        if (file == null) return;
+
+        final long maxSize = Long.getLong("org.usrz.libs.logging.sink.maxSize", 0);
+        final long maxAge = Long.getLong("org.usrz.libs.logging.sink.maxAge", 0);
+        final Integer compression = Integer.getInteger("org.usrz.libs.logging.sink.compression");
+        final String dictionary = System.getProperty("org.usrz.libs.logging.sink.dictionary");
+        final String encoding = System.getProperty("org.usrz.libs.logging.sink.encoding", "text");
+        try {
+            final SegmentCompressor compressor = compression == null ? null :
+                new SegmentCompressor(compression, dictionary == null ? null : Files.readAllBytes(Paths.get(dictionary)));
+            setSink(new FileSink(new File(file), maxSize, maxAge, FileSink.DEFAULT_CAPACITY, compressor,
+                                 Encoding.valueOf(encoding.trim().toUpperCase(Locale.ROOT))));
+        } catch (IllegalArgumentException exception) {
+            /* Bad encoding, compression level, sizes... don't fail initialization */
+            System.err.println("WARNING: Log file " + file + " not written: " + exception.getMessage());
+        } catch (IOException exception) {
+            throw new IllegalStateException("Exception opening log file " + file, exception);
+        }
+    }
+
+    private static List<Report> initSequential(boolean verbose, Mode mode) {
+        final List<Report> reports = new ArrayList<>();
+        for (Subsystem subsystem: Subsystem.values()) {
+            reports.add(subsystem.run(mode, verbose));
+        }
+        return reports;
+    }
+
+    private static List<Report> initParallel(final boolean verbose) {
+        final Subsystem[] subsystems = Subsystem.values();
+
+        /*
+         * Bootstrap SLF4J (and its backend) right here: if two threads
+         * hit it at the same time while it initializes, one of them would
+         * get a "substitute" (and not location aware) logger.
+         */
+        LoggerFactory.getILoggerFactory();
+
+        final int threads = Math.min(subsystems.length, Runtime.getRuntime().availableProcessors());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "LoggingInit-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
             }
 
-            /* Log4j 2 Logging initialization */
-            try {
-                Log4j2Initializer.init();
-                if (verbose) System.err.println("Log4j v2 Logging initialized");
-            } catch (NoClassDefFoundError error) {
-                if (verbose) System.err.println("Log4j v2 Logging not found");
+        });
+
+        try {
+            final List<Future<Report>> futures = new ArrayList<>();
+            for (final Subsystem subsystem: subsystems) {
+                futures.add(executor.submit(new Callable<Report>() {
+                    @Override
+                    public Report call() {
+                        return subsystem.run(Mode.PARALLEL, verbose);
+                    }
+                }));
+            }
+
+            /* Wait for everyone, then fail like we would have sequentially */
+            final List<Report> reports = new ArrayList<>();
+            Throwable failure = null;
+            for (Future<Report> future: futures) try {
+                reports.add(future.get());
+            } catch (ExecutionException exception) {
+                if (failure == null) failure = exception.getCause();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted initializing logging", exception);
             }
 
-            /* Commons Logging initialization */
+            if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+            if (failure instanceof Error) throw (Error) failure;
+            if (failure != null) throw new IllegalStateException("Exception initializing logging", failure);
+            return reports;
+
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Re-read the levels enabled for all our adapters from the backend.
+     *
+     * <p>When the backend is <i>Logback</i> this is done automatically
+     * whenever its configuration changes, and there is no need to call this
+     * method. Other backends don't tell us, so just call this after they
+     * are reconfigured.</p>
+     */
+    public static void refreshLevels() {
+        EffectiveLevels.refresh();
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * The different modes in which {@link Logging} can be initialized.
+     */
+    public enum Mode {
+
+        /**
+         * Fully initialize all logging subsystems straight away.
+         */
+        EAGER,
+
+        /**
+         * Simply register our bridges with all logging subsystems (normally
+         * through system properties) and let them bootstrap only when (and
+         * if) they are used for the first time.
+         *
+         * <p>This saves loading (and initializing) a pile of classes for
+         * logging APIs that might never be used, but if any subsystem was
+         * already bootstrapped before we were called, it won't notice.</p>
+         */
+        LAZY,
+
+        /**
+         * Fully initialize all logging subsystems straight away, but
+         * concurrently, each one in its own thread.
+         *
+         * <p>The initialization will still fail (with the same exception)
+         * if any of the subsystems fails, but only once all of them are
+         * done initializing.</p>
+         */
+        PARALLEL;
+
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * A simple report on what happened initializing a logging subsystem.
+     */
+    public static final class Report {
+
+        private final String subsystem;
+        private final String outcome;
+        private final long nanos;
+        private final long classes;
+
+        private Report(String subsystem, String outcome, long nanos, long classes) {
+            this.subsystem = subsystem;
+            this.outcome = outcome;
+            this.nanos = nanos;
+            this.classes = classes;
+        }
+
+        /**
+         * The name of the logging subsystem.
+         */
+        public String getSubsystem() {
+            return subsystem;
+        }
+
+        /**
+         * What happened to it: <i>initialized</i>, <i>registered</i>
+         * or <i>not found</i>.
+         */
+        public String getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * The number of nanoseconds spent initializing the subsystem.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * The number of classes loaded initializing the subsystem, or
+         * <code>-1</code> if {@link Logging} was not initialized verbosely.
+         *
+         * <p>When initializing in {@link Mode#PARALLEL} this number will
+         * include classes loaded concurrently by other subsystems.</p>
+         */
+        public long getLoadedClasses() {
+            return classes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s in %.3f ms", subsystem, outcome, nanos / 1000000.0)
+                 + (classes < 0 ? "" : " (" + classes + " classes loaded)");
+        }
+    }
+
+    /* ====================================================================== */
+
+    private enum Subsystem {
+
+        JAVA("Java Logging") {
+            @Override void init()     { JavaLoggingInitializer.init(); }
+            @Override void register() { JavaLoggingInitializer.register(); }
+        },
+
+        LOG4J1("Log4j v1 Logging") {
+            @Override void init()     { Log4j1Initializer.init(); }
+            @Override void register() { Log4j1Initializer.register(); }
+        },
+
+        LOG4J2("Log4j v2 Logging") {
+            @Override void init()     { Log4j2Initializer.init(); }
+            @Override void register() { Log4j2Initializer.register(); }
+        },
+
+        COMMONS("Commons Logging") {
+            @Override void init()     { CommonsLoggingInitializer.init(); }
+            @Override void register() { CommonsLoggingInitializer.register(); }
+        };
+
+        private final String description;
+
+        private Subsystem(String description) {
+            this.description = description;
+        }
+
+        abstract void init();
+
+        abstract void register();
+
+        private Report run(Mode mode, boolean countClasses) {
+            final ClassLoadingMXBean classLoading = countClasses ? ManagementFactory.getClassLoadingMXBean() : null;
+            final long classes = countClasses ? classLoading.getTotalLoadedClassCount() : 0;
+            final long started = System.nanoTime();
+
+            String outcome;
             try {
-                CommonsLoggingInitializer.init();
-                if (verbose) System.err.println("Commons Logging initialized");
+                if (mode == Mode.LAZY) {
+                    register();
+                    outcome = "registered";
+                } else {
+                    init();
+                    outcome = "initialized";
+                }
             } catch (NoClassDefFoundError error) {
-                if (verbose) System.err.println("Commons Logging not found");
+                outcome = "not found";
             }
 
-            /* We are initialized */
-            initialized = true;
+            final long nanos = System.nanoTime() - started;
+            return new Report(description, outcome, nanos, countClasses ?
+                              classLoading.getTotalLoadedClassCount() - classes : -1);
+        }
 
+        @Override
+        public String toString() {
+            return description;
         }
     }
-
 }
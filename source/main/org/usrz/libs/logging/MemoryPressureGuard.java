@@ -0,0 +1,324 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static org.slf4j.spi.LocationAwareLogger.DEBUG_INT;
+import static org.slf4j.spi.LocationAwareLogger.ERROR_INT;
+import static org.slf4j.spi.LocationAwareLogger.INFO_INT;
+import static org.slf4j.spi.LocationAwareLogger.TRACE_INT;
+import static org.slf4j.spi.LocationAwareLogger.WARN_INT;
+
+import java.io.Closeable;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import org.slf4j.spi.LocationAwareLogger;
+
+/**
+ * A guard degrading logging while the heap is under pressure, when verbose
+ * logging would only add more garbage to collect.
+ *
+ * <p>The guard sets a <i>collection usage threshold</i> on all heap memory
+ * pools (unless someone else already did) and listens to the notifications
+ * sent when it's exceeded, and after each garbage collection.</p>
+ *
+ * <p>Under pressure all events below the specified minimum level are dropped,
+ * stack traces are not printed below <b>ERROR</b>, and templates are handed
+ * over to the backend unformatted (as in <i>passthrough</i> mode). Once every
+ * heap pool is below the recovery threshold after a collection, logging goes
+ * back to normal.</p>
+ *
+ * <p>Each transition is logged as a <b>WARN</b> event, and counted: see
+ * {@link #getPressureCount()} and {@link #getRecoverCount()}.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+public final class MemoryPressureGuard implements NotificationListener, Closeable {
+
+    /* The type of garbage collection notifications, without com.sun.management */
+    static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+    /* The fully qualified class name of this class */
+    private static final String FQCN = MemoryPressureGuard.class.getName();
+
+    private final double threshold;
+    private final double recovery;
+    private final int level;
+
+    /* The heap pools we watch, and who notifies us */
+    private final List<MemoryPoolMXBean> pools;
+    private final List<NotificationEmitter> emitters;
+    /* The pools we set a collection usage threshold on */
+    private final List<MemoryPoolMXBean> thresholds = new ArrayList<>();
+
+    /* Where we report our transitions */
+    private final LocationAwareLogger logger = SLF4JFactory.getLogger(MemoryPressureGuard.class);
+
+    /* Our metrics */
+    private final AtomicLong eventsDropped = new AtomicLong();
+    private final AtomicLong pressureCount = new AtomicLong();
+    private final AtomicLong recoverCount = new AtomicLong();
+
+    /* Whether we're under pressure, or closed */
+    private volatile boolean pressure = false;
+    private boolean closed = false;
+
+    /* ====================================================================== */
+
+    /**
+     * Create a new {@link MemoryPressureGuard} watching the heap memory pools
+     * of this JVM.
+     *
+     * @param threshold The fraction (from 0 to 1) of the maximum size of a
+     *                  heap pool used after a collection, above which the
+     *                  heap is considered under pressure.
+     * @param recovery The fraction (from 0 to the threshold) of the maximum
+     *                 size of all heap pools used after a collection, below
+     *                 which the heap is not under pressure anymore.
+     * @param level The minimum level (as in {@link LocationAwareLogger},
+     *              from <code>DEBUG_INT</code> to <code>ERROR_INT</code>) of
+     *              the events logged under pressure.
+     */
+    public MemoryPressureGuard(double threshold, double recovery, int level) {
+        this(threshold, recovery, level, heapPools(), emitters());
+
+        for (MemoryPoolMXBean pool: pools) {
+            if (!pool.isCollectionUsageThresholdSupported()) continue;
+            if (pool.getCollectionUsageThreshold() != 0) continue;
+
+            final long max = pool.getUsage().getMax();
+            if (max <= 0) continue;
+
+            pool.setCollectionUsageThreshold((long) (max * threshold));
+            thresholds.add(pool);
+        }
+
+        for (NotificationEmitter emitter: emitters) {
+            emitter.addNotificationListener(this, null, null);
+        }
+    }
+
+    /**
+     * Create a new {@link MemoryPressureGuard} watching the specified pools,
+     * without setting thresholds or listening to anything.
+     */
+    MemoryPressureGuard(double threshold, double recovery, int level,
+                        List<MemoryPoolMXBean> pools, List<NotificationEmitter> emitters) {
+        if ((threshold <= 0) || (threshold > 1)) throw new IllegalArgumentException("Invalid threshold " + threshold);
+        if ((recovery <= 0) || (recovery > threshold)) throw new IllegalArgumentException("Invalid recovery " + recovery);
+        if ((level != DEBUG_INT) && (level != INFO_INT) && (level != WARN_INT) && (level != ERROR_INT))
+            throw new IllegalArgumentException("Invalid level " + level);
+
+        this.threshold = threshold;
+        this.recovery = recovery;
+        this.level = level;
+        this.pools = pools;
+        this.emitters = emitters;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Check whether the heap is under pressure, and logging is degraded.
+     */
+    public boolean isUnderPressure() {
+        return pressure;
+    }
+
+    /**
+     * Return the minimum level of events logged under pressure, as in
+     * {@link LocationAwareLogger}.
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Return the number of events we dropped.
+     */
+    public long getEventsDropped() {
+        return eventsDropped.get();
+    }
+
+    /**
+     * Return the number of times logging was degraded.
+     */
+    public long getPressureCount() {
+        return pressureCount.get();
+    }
+
+    /**
+     * Return the number of times logging went back to normal.
+     */
+    public long getRecoverCount() {
+        return recoverCount.get();
+    }
+
+    /**
+     * Stop listening to notifications, clear the thresholds we set, and
+     * go back to normal.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+
+        for (NotificationEmitter emitter: emitters) try {
+            emitter.removeNotificationListener(this);
+        } catch (ListenerNotFoundException exception) {
+            /* Never added, ignore */
+        }
+
+        for (MemoryPoolMXBean pool: thresholds) pool.setCollectionUsageThreshold(0);
+        recover();
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Handle a memory threshold or garbage collection notification.
+     */
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        switch (notification.getType()) {
+            case MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED:
+            case MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED:
+                final Object data = notification.getUserData();
+                degrade(data instanceof CompositeData ?
+                            MemoryNotificationInfo.from((CompositeData) data).getPoolName() :
+                            "heap");
+                break;
+            case GC_NOTIFICATION:
+                evaluate();
+                break;
+            default:
+                /* Not interested */
+        }
+    }
+
+    /**
+     * Count an event dropped because of the minimum level we imposed.
+     */
+    void dropped() {
+        eventsDropped.incrementAndGet();
+    }
+
+    /* ====================================================================== */
+
+    /* After a collection, check where our pools are at */
+    private void evaluate() {
+        String exceeded = null;
+        boolean relieved = true;
+
+        for (MemoryPoolMXBean pool: pools) {
+            final MemoryUsage usage = pool.getCollectionUsage();
+            if ((usage == null) || (usage.getMax() <= 0)) continue;
+
+            final double used = (double) usage.getUsed() / usage.getMax();
+            if (used >= threshold) exceeded = pool.getName();
+            if (used >= recovery) relieved = false;
+        }
+
+        if (exceeded != null) degrade(exceeded);
+        else if (relieved) recover();
+    }
+
+    private synchronized void degrade(String pool) {
+        if (pressure || closed) return;
+
+        pressure = true;
+        pressureCount.incrementAndGet();
+        LogDispatcher.setMinimumLevel(this, level);
+        LogDispatcher.setDegraded(true);
+        EffectiveLevels.refresh();
+
+        LogDispatcher.deliver(logger, null, FQCN, WARN_INT,
+                              "Memory pressure in " + pool + ": dropping events below "
+                              + TextEncoder.levelName(level).trim() + " and stack traces below ERROR",
+                              null, null);
+    }
+
+    private synchronized void recover() {
+        if (!pressure) return;
+
+        pressure = false;
+        recoverCount.incrementAndGet();
+        LogDispatcher.setMinimumLevel(this, TRACE_INT);
+        LogDispatcher.setDegraded(false);
+        EffectiveLevels.refresh();
+
+        LogDispatcher.deliver(logger, null, FQCN, WARN_INT,
+                              "Memory pressure relieved: no longer dropping events below "
+                              + TextEncoder.levelName(level).trim() + " and stack traces below ERROR",
+                              null, null);
+    }
+
+    /* ====================================================================== */
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        final List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pools.add(pool);
+        }
+        return pools;
+    }
+
+    private static List<NotificationEmitter> emitters() {
+        final List<NotificationEmitter> emitters = new ArrayList<>();
+        final Object memory = ManagementFactory.getMemoryMXBean();
+        if (memory instanceof NotificationEmitter) emitters.add((NotificationEmitter) memory);
+        for (GarbageCollectorMXBean collector: ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter) emitters.add((NotificationEmitter) collector);
+        }
+        return emitters;
+    }
+
+    /**
+     * Create a {@link MemoryPressureGuard} from the
+     * <code>org.usrz.libs.logging.pressure.*</code> system properties, or
+     * return <b>null</b> if no threshold was specified or if any of them is
+     * malformed (after reporting it, we don't want to fail initialization).
+     */
+    static MemoryPressureGuard fromProperties() {
+        try {
+            final double threshold = Double.parseDouble(System.getProperty(Logging.PRESSURE_THRESHOLD_PROPERTY, "0"));
+            if (threshold <= 0) return null;
+
+            final double recovery = Double.parseDouble(System.getProperty(Logging.PRESSURE_RECOVERY_PROPERTY,
+                                                                          Double.toString(threshold * 0.8)));
+            final int level = LoadShedder.parseLevel(System.getProperty(Logging.PRESSURE_LEVEL_PROPERTY, "warn"));
+            return new MemoryPressureGuard(threshold, recovery, level);
+        } catch (IllegalArgumentException exception) {
+            /* This includes NumberFormatException */
+            System.err.println("WARNING: Memory pressure guard not installed: " + exception.getMessage());
+            return null;
+        }
+    }
+}
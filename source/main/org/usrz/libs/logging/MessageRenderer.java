@@ -0,0 +1,32 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+/**
+ * A simple interface rendering a (non-<b>null</b>) message {@link Object}
+ * into the {@link String} that will be handed over to SLF4J.
+ *
+ * @see MessageRenderers
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+public interface MessageRenderer {
+
+    /**
+     * Render the specified (never <b>null</b>) message as a {@link String}.
+     */
+    public String render(Object message);
+
+}
@@ -0,0 +1,204 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A registry of {@link MessageRenderer}s, keyed by {@link Class}.
+ *
+ * <p>Logging APIs like <i>Commons Logging</i> or <i>Log4j 1.2</i> accept any
+ * {@link Object} as a message: rather than casting (and catching whatever
+ * {@link ClassCastException} comes out of it) we look up the renderer for the
+ * message's {@link Class} once, and remember it.</p>
+ *
+ * <p>Resolved renderers are remembered in a {@link ClassValue}, so that we
+ * never pin message classes (and the class loaders of the applications that
+ * defined them) in memory.</p>
+ *
+ * <p>Renderers are resolved walking the class hierarchy (superclasses first,
+ * then interfaces) of the message, arrays are rendered like SLF4J would, and
+ * anything else is rendered calling {@link Object#toString()}.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+public final class MessageRenderers {
+
+    /* What we render when we get a null message */
+    private static final String NULL_MESSAGE = "Null message";
+    /* What we render when "toString()" fails (same as SLF4J) */
+    private static final String FAILED_MESSAGE = "[FAILED toString()]";
+
+    /* Renderers registered and resolved, replaced (never cleared) when registering */
+    private static volatile Registry registry;
+
+    /* ====================================================================== */
+
+    private static final MessageRenderer TO_STRING = new MessageRenderer() {
+        @Override public String render(Object message) { return message.toString(); }
+    };
+
+    private static final MessageRenderer OBJECT_ARRAY = new MessageRenderer() {
+        @Override public String render(Object message) { return Arrays.deepToString((Object[]) message); }
+    };
+
+    private static final MessageRenderer BOOLEAN_ARRAY = new MessageRenderer() {
+        @Override public String render(Object message) { return Arrays.toString((boolean[]) message); }
+    };
+
+    private static final MessageRenderer BYTE_ARRAY = new MessageRenderer() {
+        @Override public String render(Object message) { return Arrays.toString((byte[]) message); }
+    };
+
+    private static final MessageRenderer CHAR_ARRAY = new MessageRenderer() {
+        @Override public String render(Object message) { return Arrays.toString((char[]) message); }
+    };
+
+    private static final MessageRenderer SHORT_ARRAY = new MessageRenderer() {
+        @Override public String render(Object message) { return Arrays.toString((short[]) message); }
+    };
+
+    private static final MessageRenderer INT_ARRAY = new MessageRenderer() {
+        @Override public String render(Object message) { return Arrays.toString((int[]) message); }
+    };
+
+    private static final MessageRenderer LONG_ARRAY = new MessageRenderer() {
+        @Override public String render(Object message) { return Arrays.toString((long[]) message); }
+    };
+
+    private static final MessageRenderer FLOAT_ARRAY = new MessageRenderer() {
+        @Override public String render(Object message) { return Arrays.toString((float[]) message); }
+    };
+
+    private static final MessageRenderer DOUBLE_ARRAY = new MessageRenderer() {
+        @Override public String render(Object message) { return Arrays.toString((double[]) message); }
+    };
+
+    static {
+        final Map<Class<?>, MessageRenderer> registered = new HashMap<>();
+        registered.put(CharSequence.class, TO_STRING);
+        registered.put(Number.class,       TO_STRING);
+        registered.put(Boolean.class,      TO_STRING);
+        registered.put(Character.class,    TO_STRING);
+        registered.put(Enum.class,         TO_STRING);
+        registry = new Registry(registered);
+    }
+
+    /* ====================================================================== */
+
+    private MessageRenderers() {
+        throw new IllegalStateException("Do not construct");
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Register a {@link MessageRenderer} for the specified {@link Class}
+     * (and all its subclasses, unless a more specific one is registered).
+     */
+    public static void register(Class<?> type, MessageRenderer renderer) {
+        if (type == null) throw new NullPointerException("Null type");
+        if (renderer == null) throw new NullPointerException("Null renderer");
+        if (type.isArray() || type.isPrimitive())
+            throw new IllegalArgumentException("Can not register renderer for " + type.getName());
+
+        /* Start resolving from scratch: whoever resolves from the old one will not pollute us */
+        synchronized (MessageRenderers.class) {
+            final Map<Class<?>, MessageRenderer> registered = new HashMap<>(registry.registered);
+            registered.put(type, renderer);
+            registry = new Registry(registered);
+        }
+    }
+
+    /**
+     * Render the specified message {@link Object} as a {@link String}.
+     *
+     * <p>This <b>never</b> throws an exception: <b>null</b> messages or
+     * failures rendering the message will be reported as text.</p>
+     */
+    public static String render(Object message) {
+        if (message == null) return NULL_MESSAGE;
+        if (message instanceof String) return (String) message;
+
+        final MessageRenderer renderer = registry.get(message.getClass());
+
+        try {
+            final String rendered = renderer.render(message);
+            return rendered == null ? NULL_MESSAGE : rendered;
+        } catch (RuntimeException exception) {
+            return FAILED_MESSAGE;
+        }
+    }
+
+    /* ====================================================================== */
+
+    /* Renderers registered, and those resolved from them for each class we've seen */
+    private static final class Registry extends ClassValue<MessageRenderer> {
+
+        private final Map<Class<?>, MessageRenderer> registered;
+
+        private Registry(Map<Class<?>, MessageRenderer> registered) {
+            this.registered = registered;
+        }
+
+        @Override
+        protected MessageRenderer computeValue(Class<?> type) {
+            if (! type.isArray()) return lookup(type);
+
+            if (type == boolean[].class) return BOOLEAN_ARRAY;
+            if (type == byte[].class)    return BYTE_ARRAY;
+            if (type == char[].class)    return CHAR_ARRAY;
+            if (type == short[].class)   return SHORT_ARRAY;
+            if (type == int[].class)     return INT_ARRAY;
+            if (type == long[].class)    return LONG_ARRAY;
+            if (type == float[].class)   return FLOAT_ARRAY;
+            if (type == double[].class)  return DOUBLE_ARRAY;
+            return OBJECT_ARRAY;
+        }
+
+        private MessageRenderer lookup(Class<?> type) {
+
+            /* Superclasses first, most specific wins */
+            for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+                final MessageRenderer renderer = registered.get(current);
+                if (renderer != null) return renderer;
+            }
+
+            /* Then interfaces, walking up the hierarchy */
+            for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+                final MessageRenderer renderer = lookupInterfaces(current);
+                if (renderer != null) return renderer;
+            }
+
+            /* Nothing registered, just "toString()" */
+            return TO_STRING;
+        }
+
+        private MessageRenderer lookupInterfaces(Class<?> type) {
+            for (Class<?> implemented: type.getInterfaces()) {
+                final MessageRenderer renderer = registered.get(implemented);
+                if (renderer != null) return renderer;
+            }
+            for (Class<?> implemented: type.getInterfaces()) {
+                final MessageRenderer renderer = lookupInterfaces(implemented);
+                if (renderer != null) return renderer;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.spi.LocationAwareLogger;
+
+/**
+ * A stage collapsing identical consecutive events (same logger, level,
+ * message and throwable type) into a single
+ * <code>Last message repeated N times</code> summary.
+ *
+ * <p>For each logger we remember the last event dispatched, and its hash, in
+ * an immutable state swapped atomically (no locks): events with a different
+ * hash (by far the most common case) are compared against nothing else, and
+ * simply replace it, while duplicates are counted and held back.
+ * The summary is dispatched when a different event comes along, or when
+ * the specified time window (since the first event of the run) expires.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+final class RepeatCollapser {
+
+    /* The fully qualified class name of this class */
+    private static final String FQCN = RepeatCollapser.class.getName();
+
+    private final long window;
+    /* The last event of each logger */
+    private final ConcurrentHashMap<LocationAwareLogger, AtomicReference<Run>> runs = new ConcurrentHashMap<>();
+    /* Dispatching summaries of runs whose window expired */
+    private final ScheduledExecutorService flusher;
+
+    /* ====================================================================== */
+
+    /**
+     * Create a new {@link RepeatCollapser} collapsing duplicates within the
+     * specified time window, in milliseconds.
+     */
+    RepeatCollapser(long window) {
+        if (window < 1) throw new IllegalArgumentException("Invalid window " + window);
+        this.window = window;
+
+        flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "RepeatCollapser");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush(false);
+            }
+        }, window, window, TimeUnit.MILLISECONDS);
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the time window (in milliseconds) of this instance.
+     */
+    long getWindow() {
+        return window;
+    }
+
+    /**
+     * Check whether the specified event repeats the last one from its logger,
+     * returning <b>true</b> if it was held back, or <b>false</b> if it should
+     * be dispatched (after the summary of the previous run, if any).
+     */
+    boolean collapse(LocationAwareLogger logger, int level, String message, Throwable throwable) {
+        final Class<?> type = throwable == null ? null : throwable.getClass();
+        final int hash = (message.hashCode() * 31 + level) * 31 + (type == null ? 0 : type.hashCode());
+        final long now = System.currentTimeMillis();
+
+        AtomicReference<Run> last = runs.get(logger);
+        if (last == null) {
+            final AtomicReference<Run> created = new AtomicReference<>(Run.NONE);
+            last = runs.putIfAbsent(logger, created);
+            if (last == null) last = created;
+        }
+
+        while (true) {
+            final Run run = last.get();
+            if ((run.hash == hash) && (run.level == level) && (run.type == type) &&
+                (now - run.started < window) && message.equals(run.message)) {
+                if (run.repeat()) return true;
+                continue; /* Ended while we were looking, look again */
+            }
+
+            /* Not a repeat: start a new run, and summarize the previous one */
+            if (!last.compareAndSet(run, new Run(hash, level, message, type, now))) continue;
+            final int repeats = run == Run.NONE ? 0 : run.end();
+            if (repeats > 0) LogDispatcher.deliver(logger, null, FQCN, run.level, summary(repeats), null, null);
+            return false;
+        }
+    }
+
+    /**
+     * Dispatch the summaries of all held back duplicates (or only the ones
+     * whose window expired), and forget about them.
+     */
+    void flush(boolean all) {
+        final long now = System.currentTimeMillis();
+        for (Map.Entry<LocationAwareLogger, AtomicReference<Run>> entry: runs.entrySet()) {
+            final Run run = entry.getValue().get();
+            if ((run.repeats <= 0) || (!all && (now - run.started < window))) continue;
+
+            /* Forget the last event, so that the next one starts a new run */
+            if (!entry.getValue().compareAndSet(run, Run.NONE)) continue;
+            final int repeats = run.end();
+            if (repeats > 0) try {
+                LogDispatcher.deliver(entry.getKey(), null, FQCN, run.level, summary(repeats), null, null);
+            } catch (RuntimeException exception) {
+                System.err.println("Exception dispatching repeated events summary");
+                exception.printStackTrace(System.err);
+            }
+        }
+    }
+
+    /**
+     * Dispatch all pending summaries, and stop flushing them periodically.
+     */
+    void close() {
+        flusher.shutdown();
+        flush(true);
+    }
+
+    /* ====================================================================== */
+
+    private static String summary(int repeats) {
+        return "Last message repeated " + repeats + " times";
+    }
+
+    /* ====================================================================== */
+
+    /* A run of identical events, immutable but for its count of repeats */
+    private static final class Run {
+
+        /* No run at all, nothing repeats it */
+        private static final Run NONE = new Run(0, 0, null, null, 0);
+        /* Our count of repeats once the run ended */
+        private static final int ENDED = -1;
+        private static final AtomicIntegerFieldUpdater<Run> REPEATS = AtomicIntegerFieldUpdater.newUpdater(Run.class, "repeats");
+
+        private final int hash;
+        private final int level;
+        private final String message;
+        private final Class<?> type;
+        private final long started;
+        private volatile int repeats = 0;
+
+        private Run(int hash, int level, String message, Class<?> type, long started) {
+            this.hash = hash;
+            this.level = level;
+            this.message = message;
+            this.type = type;
+            this.started = started;
+        }
+
+        /* Count a repeat, unless this run already ended */
+        private boolean repeat() {
+            int repeats;
+            do {
+                repeats = this.repeats;
+                if (repeats == ENDED) return false;
+            } while (!REPEATS.compareAndSet(this, repeats, repeats + 1));
+            return true;
+        }
+
+        /* End this run, once replaced, returning how many repeats it had */
+        private int end() {
+            return REPEATS.getAndSet(this, ENDED);
+        }
+    }
+}
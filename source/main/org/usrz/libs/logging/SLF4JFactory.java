@@ -21,7 +21,6 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.slf4j.Marker;
 import org.slf4j.spi.LocationAwareLogger;
 
 /**
@@ -35,6 +34,7 @@ import org.slf4j.spi.LocationAwareLogger;
 public class SLF4JFactory {
 
     private static final ConcurrentHashMap<String, LocationAwareLogger> CACHE = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Class<?>, Boolean> LOCATION_AWARE = new ConcurrentHashMap<>();
 
     /**
      * Return the root {@link LocationAwareLogger}.
@@ -70,332 +70,18 @@ public class SLF4JFactory {
      * into a {@link LocationAwareLogger}.
      */
     protected static LocationAwareLogger asLocationAwareLogger(final Logger logger) {
+        final Class<?> type = logger.getClass();
 
-        /* Cast ? */
-        if (logger instanceof LocationAwareLogger) return (LocationAwareLogger) logger;
-
-        /* Wrap ! */
-        logger.warn("Logger {} is not a LocationAwareLogger", logger.getClass().getName());
-        return new LocationAwareLogger() {
-
-            @Override
-            public void log(Marker marker, String fqcn, int level, String message, Object[] argArray, Throwable t) {
-                if      (level <= TRACE_INT) { logger.trace(marker, message, argArray); logger.trace(null, t); }
-                else if (level <= DEBUG_INT) { logger.debug(marker, message, argArray); logger.debug(null, t); }
-                else if (level <= INFO_INT)  { logger.info (marker, message, argArray); logger.info (null, t); }
-                else if (level <= WARN_INT)  { logger.warn (marker, message, argArray); logger.warn (null, t); }
-                else                         { logger.error(marker, message, argArray); logger.error(null, t); }
-            }
-
-            /* ============================================================== */
-            /* From here onwards, it's just delegation calls                  */
-            /* ============================================================== */
-
-            @Override
-            public String getName() {
-                return logger.getName();
-            }
-
-            @Override
-            public boolean isTraceEnabled() {
-                return logger.isTraceEnabled();
-            }
-
-            @Override
-            public void trace(String msg) {
-                logger.trace(msg);
-            }
-
-            @Override
-            public void trace(String format, Object arg) {
-                logger.trace(format, arg);
-            }
-
-            @Override
-            public void trace(String format, Object arg1, Object arg2) {
-                logger.trace(format, arg1, arg2);
-            }
-
-            @Override
-            public void trace(String format, Object... arguments) {
-                logger.trace(format, arguments);
-            }
-
-            @Override
-            public void trace(String msg, Throwable t) {
-                logger.trace(msg, t);
-            }
-
-            @Override
-            public boolean isTraceEnabled(Marker marker) {
-                return logger.isTraceEnabled(marker);
-            }
-
-            @Override
-            public void trace(Marker marker, String msg) {
-                logger.trace(marker, msg);
-            }
-
-            @Override
-            public void trace(Marker marker, String format, Object arg) {
-                logger.trace(marker, format, arg);
-            }
-
-            @Override
-            public void trace(Marker marker, String format, Object arg1,
-                    Object arg2) {
-                logger.trace(marker, format, arg1, arg2);
-            }
-
-            @Override
-            public void trace(Marker marker, String format, Object... argArray) {
-                logger.trace(marker, format, argArray);
-            }
-
-            @Override
-            public void trace(Marker marker, String msg, Throwable t) {
-                logger.trace(marker, msg, t);
-            }
-
-            @Override
-            public boolean isDebugEnabled() {
-                return logger.isDebugEnabled();
-            }
-
-            @Override
-            public void debug(String msg) {
-                logger.debug(msg);
-            }
-
-            @Override
-            public void debug(String format, Object arg) {
-                logger.debug(format, arg);
-            }
-
-            @Override
-            public void debug(String format, Object arg1, Object arg2) {
-                logger.debug(format, arg1, arg2);
-            }
-
-            @Override
-            public void debug(String format, Object... arguments) {
-                logger.debug(format, arguments);
-            }
-
-            @Override
-            public void debug(String msg, Throwable t) {
-                logger.debug(msg, t);
-            }
-
-            @Override
-            public boolean isDebugEnabled(Marker marker) {
-                return logger.isDebugEnabled(marker);
-            }
-
-            @Override
-            public void debug(Marker marker, String msg) {
-                logger.debug(marker, msg);
-            }
-
-            @Override
-            public void debug(Marker marker, String format, Object arg) {
-                logger.debug(marker, format, arg);
-            }
-
-            @Override
-            public void debug(Marker marker, String format, Object arg1, Object arg2) {
-                logger.debug(marker, format, arg1, arg2);
-            }
-
-            @Override
-            public void debug(Marker marker, String format, Object... arguments) {
-                logger.debug(marker, format, arguments);
-            }
-
-            @Override
-            public void debug(Marker marker, String msg, Throwable t) {
-                logger.debug(marker, msg, t);
-            }
-
-            @Override
-            public boolean isInfoEnabled() {
-                return logger.isInfoEnabled();
-            }
-
-            @Override
-            public void info(String msg) {
-                logger.info(msg);
-            }
-
-            @Override
-            public void info(String format, Object arg) {
-                logger.info(format, arg);
-            }
-
-            @Override
-            public void info(String format, Object arg1, Object arg2) {
-                logger.info(format, arg1, arg2);
-            }
-
-            @Override
-            public void info(String format, Object... arguments) {
-                logger.info(format, arguments);
-            }
-
-            @Override
-            public void info(String msg, Throwable t) {
-                logger.info(msg, t);
-            }
-
-            @Override
-            public boolean isInfoEnabled(Marker marker) {
-                return logger.isInfoEnabled(marker);
-            }
-
-            @Override
-            public void info(Marker marker, String msg) {
-                logger.info(marker, msg);
-            }
-
-            @Override
-            public void info(Marker marker, String format, Object arg) {
-                logger.info(marker, format, arg);
-            }
-
-            @Override
-            public void info(Marker marker, String format, Object arg1, Object arg2) {
-                logger.info(marker, format, arg1, arg2);
-            }
-
-            @Override
-            public void info(Marker marker, String format, Object... arguments) {
-                logger.info(marker, format, arguments);
-            }
-
-            @Override
-            public void info(Marker marker, String msg, Throwable t) {
-                logger.info(marker, msg, t);
-            }
-
-            @Override
-            public boolean isWarnEnabled() {
-                return logger.isWarnEnabled();
-            }
-
-            @Override
-            public void warn(String msg) {
-                logger.warn(msg);
-            }
-
-            @Override
-            public void warn(String format, Object arg) {
-                logger.warn(format, arg);
-            }
-
-            @Override
-            public void warn(String format, Object... arguments) {
-                logger.warn(format, arguments);
-            }
-
-            @Override
-            public void warn(String format, Object arg1, Object arg2) {
-                logger.warn(format, arg1, arg2);
-            }
-
-            @Override
-            public void warn(String msg, Throwable t) {
-                logger.warn(msg, t);
-            }
-
-            @Override
-            public boolean isWarnEnabled(Marker marker) {
-                return logger.isWarnEnabled(marker);
-            }
-
-            @Override
-            public void warn(Marker marker, String msg) {
-                logger.warn(marker, msg);
+        /* Did we see this class before? */
+        Boolean locationAware = LOCATION_AWARE.get(type);
+        if (locationAware == null) {
+            locationAware = LocationAwareLogger.class.isAssignableFrom(type);
+            if ((LOCATION_AWARE.putIfAbsent(type, locationAware) == null) && (!locationAware)) {
+                logger.warn("Logger {} is not a LocationAwareLogger", type.getName());
             }
+        }
 
-            @Override
-            public void warn(Marker marker, String format, Object arg) {
-                logger.warn(marker, format, arg);
-            }
-
-            @Override
-            public void warn(Marker marker, String format, Object arg1, Object arg2) {
-                logger.warn(marker, format, arg1, arg2);
-            }
-
-            @Override
-            public void warn(Marker marker, String format, Object... arguments) {
-                logger.warn(marker, format, arguments);
-            }
-
-            @Override
-            public void warn(Marker marker, String msg, Throwable t) {
-                logger.warn(marker, msg, t);
-            }
-
-            @Override
-            public boolean isErrorEnabled() {
-                return logger.isErrorEnabled();
-            }
-
-            @Override
-            public void error(String msg) {
-                logger.error(msg);
-            }
-
-            @Override
-            public void error(String format, Object arg) {
-                logger.error(format, arg);
-            }
-
-            @Override
-            public void error(String format, Object arg1, Object arg2) {
-                logger.error(format, arg1, arg2);
-            }
-
-            @Override
-            public void error(String format, Object... arguments) {
-                logger.error(format, arguments);
-            }
-
-            @Override
-            public void error(String msg, Throwable t) {
-                logger.error(msg, t);
-            }
-
-            @Override
-            public boolean isErrorEnabled(Marker marker) {
-                return logger.isErrorEnabled(marker);
-            }
-
-            @Override
-            public void error(Marker marker, String msg) {
-                logger.error(marker, msg);
-            }
-
-            @Override
-            public void error(Marker marker, String format, Object arg) {
-                logger.error(marker, format, arg);
-            }
-
-            @Override
-            public void error(Marker marker, String format, Object arg1, Object arg2) {
-                logger.error(marker, format, arg1, arg2);
-            }
-
-            @Override
-            public void error(Marker marker, String format, Object... arguments) {
-                logger.error(marker, format, arguments);
-            }
-
-            @Override
-            public void error(Marker marker, String msg, Throwable t) {
-                logger.error(marker, msg, t);
-            }
-        };
+        /* Cast ? Or wrap ! */
+        return locationAware ? (LocationAwareLogger) logger : new LocationAwareLoggerAdapter(logger);
     }
 }
@@ -0,0 +1,330 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * A compressor for rolled log files, working on a single, low-priority,
+ * background thread.
+ *
+ * <p>Files handed over to {@link #compress(File)} are simply queued, so that
+ * whoever rolls them (for example a {@link FileSink}'s writer) never waits.
+ * Each file is compressed with a {@link Deflater} into a temporary file which
+ * then atomically replaces it, so a crash never leaves half a file behind.</p>
+ *
+ * <p>Without a preset dictionary files are written in <i>GZIP</i> format with
+ * a <code>.gz</code> extension (and can be read with <code>zcat</code>). Preset
+ * dictionaries (see {@link #train(int, File...)}) help a lot with the short,
+ * repetitive, lines found in logs, but can't be used with <i>GZIP</i>: files
+ * are then written in <i>ZLIB</i> format with a <code>.zz</code> extension,
+ * and can be read with {@link #decompress(File, byte[], OutputStream)}.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+public final class SegmentCompressor implements Closeable {
+
+    /* The extension of files compressed without a dictionary */
+    public static final String GZIP_EXTENSION = ".gz";
+    /* The extension of files compressed with a dictionary */
+    public static final String ZLIB_EXTENSION = ".zz";
+
+    /* Deflate can't look back further than this */
+    private static final int MAX_DICTIONARY_SIZE = 32768;
+    /* The size of our copy buffers */
+    private static final int BUFFER_SIZE = 65536;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final int level;
+    private final byte[] dictionary;
+    private final ExecutorService executor;
+
+    /* Our metrics */
+    private final AtomicLong filesCompressed = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong cpuTime = new AtomicLong();
+
+    /* ====================================================================== */
+
+    /**
+     * Create a new {@link SegmentCompressor} compressing at the specified
+     * level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}
+     * (or {@link Deflater#DEFAULT_COMPRESSION}).
+     */
+    public SegmentCompressor(int level) {
+        this(level, null);
+    }
+
+    /**
+     * Create a new {@link SegmentCompressor} compressing at the specified
+     * level with a preset dictionary (or <b>null</b>).
+     *
+     * <p>The <b>same</b> dictionary will be needed to decompress files.</p>
+     */
+    public SegmentCompressor(int level, byte[] dictionary) {
+        if ((level < Deflater.DEFAULT_COMPRESSION) || (level > Deflater.BEST_COMPRESSION))
+            throw new IllegalArgumentException("Invalid compression level " + level);
+        if ((dictionary != null) && (dictionary.length > MAX_DICTIONARY_SIZE))
+            throw new IllegalArgumentException("Dictionary too big (" + dictionary.length + " bytes)");
+
+        this.level = level;
+        this.dictionary = dictionary == null || dictionary.length == 0 ? null : dictionary.clone();
+
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "SegmentCompressor");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Queue the specified {@link File} for compression, and return
+     * immediately.
+     *
+     * <p>Once compressed, the original file will be deleted. Files queued
+     * after this instance is {@linkplain #close() closed} are left alone.</p>
+     */
+    public void compress(final File file) {
+        if (file == null) throw new NullPointerException("Null file");
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    compressNow(file);
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            /* Closed, leave the file uncompressed */
+        }
+    }
+
+    /**
+     * Compress all queued files and stop the background thread.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        boolean interrupted = false;
+        while (!executor.isTerminated()) try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            interrupted = true;
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the number of files compressed so far.
+     */
+    public long getFilesCompressed() {
+        return filesCompressed.get();
+    }
+
+    /**
+     * Return the number of (uncompressed) bytes read so far.
+     */
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    /**
+     * Return the number of (compressed) bytes written so far.
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * Return the number of bytes saved on disk by compression so far.
+     */
+    public long getBytesSaved() {
+        return bytesRead.get() - bytesWritten.get();
+    }
+
+    /**
+     * Return the CPU time (in nanoseconds) spent compressing so far, or
+     * <code>0</code> if the JVM does not support measuring it.
+     */
+    public long getCpuTime() {
+        return cpuTime.get();
+    }
+
+    /* ====================================================================== */
+
+    private void compressNow(File file) {
+        final boolean measure = THREADS.isCurrentThreadCpuTimeSupported();
+        final long started = measure ? THREADS.getCurrentThreadCpuTime() : 0;
+
+        final File target = new File(file.getPath() + (dictionary == null ? GZIP_EXTENSION : ZLIB_EXTENSION));
+        final File temporary = new File(target.getPath() + ".tmp");
+        try {
+            long read = 0;
+            try (InputStream input = new FileInputStream(file);
+                 OutputStream output = open(temporary)) {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                for (int count; (count = input.read(buffer)) >= 0; read += count) output.write(buffer, 0, count);
+            }
+
+            Files.move(temporary.toPath(), target.toPath(), ATOMIC_MOVE);
+            if (!file.delete()) System.err.println("Unable to delete " + file + " after compressing it");
+
+            filesCompressed.incrementAndGet();
+            bytesRead.addAndGet(read);
+            bytesWritten.addAndGet(target.length());
+        } catch (IOException exception) {
+            System.err.println("Exception compressing " + file);
+            exception.printStackTrace(System.err);
+            temporary.delete();
+        } finally {
+            if (measure) cpuTime.addAndGet(THREADS.getCurrentThreadCpuTime() - started);
+        }
+    }
+
+    private OutputStream open(File file)
+    throws IOException {
+        final FileOutputStream output = new FileOutputStream(file);
+        try {
+            if (dictionary == null) return new GZIPOutputStream(output, BUFFER_SIZE) {{ def.setLevel(level); }};
+
+            final Deflater deflater = new Deflater(level);
+            deflater.setDictionary(dictionary);
+            return new DeflaterOutputStream(output, deflater, BUFFER_SIZE) {
+                @Override
+                public void close()
+                throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        def.end();
+                    }
+                }
+            };
+        } catch (IOException | RuntimeException exception) {
+            output.close();
+            throw exception;
+        }
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Train a preset dictionary of (at most) the specified size from the
+     * most recent content of the specified files.
+     *
+     * <p>Deflate prefers matches closer to the end of the dictionary, so the
+     * files should be specified from the oldest to the newest: each will
+     * contribute its tail in equal part.</p>
+     */
+    public static byte[] train(int size, File... samples)
+    throws IOException {
+        if ((size < 1) || (size > MAX_DICTIONARY_SIZE)) throw new IllegalArgumentException("Invalid dictionary size " + size);
+        if (samples.length == 0) return new byte[0];
+
+        final byte[] dictionary = new byte[size];
+        final int share = size / samples.length;
+        int position = 0;
+        for (int index = 0; index < samples.length; index ++) {
+            try (RandomAccessFile file = new RandomAccessFile(samples[index], "r")) {
+                /* The last file gets whatever is left */
+                final int wanted = index == samples.length - 1 ? size - position : share;
+                final int length = (int) Math.min(wanted, file.length());
+                file.seek(file.length() - length);
+                file.readFully(dictionary, position, length);
+                position += length;
+            }
+        }
+
+        if (position == size) return dictionary;
+        final byte[] trimmed = new byte[position];
+        System.arraycopy(dictionary, 0, trimmed, 0, position);
+        return trimmed;
+    }
+
+    /**
+     * Decompress a file written by a {@link SegmentCompressor} to the
+     * specified {@link OutputStream}.
+     *
+     * @param dictionary The dictionary used to compress the file, or
+     *                   <b>null</b> for <code>.gz</code> files.
+     */
+    public static void decompress(File file, byte[] dictionary, OutputStream output)
+    throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+
+        if (file.getName().endsWith(GZIP_EXTENSION)) {
+            try (InputStream input = new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+                for (int count; (count = input.read(buffer)) >= 0; ) output.write(buffer, 0, count);
+            }
+            return;
+        }
+
+        final Inflater inflater = new Inflater();
+        try (InputStream input = new FileInputStream(file)) {
+            final byte[] inflated = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    final int count = input.read(buffer);
+                    if (count < 0) throw new IOException("Truncated file " + file);
+                    inflater.setInput(buffer, 0, count);
+                }
+                if (inflater.needsDictionary()) {
+                    if (dictionary == null) throw new IOException("File " + file + " needs a dictionary");
+                    inflater.setDictionary(dictionary);
+                }
+                final int count = inflater.inflate(inflated);
+                output.write(inflated, 0, count);
+            }
+        } catch (IllegalArgumentException | DataFormatException exception) {
+            throw new IOException("Unable to decompress " + file, exception);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Marker;
+import org.slf4j.spi.LocationAwareLogger;
+
+/**
+ * A stage deduplicating stack traces: throwables are fingerprinted by their
+ * class, stack frames and cause chain (but not their messages) and the full
+ * stack trace of each distinct fingerprint is logged only once per time
+ * window.
+ *
+ * <p>The first time a stack trace is seen its event is logged as usual, with
+ * a <code>[stack trace #1a2b3c4d]</code> reference appended to its message.
+ * Later occurrences within the window are logged <em>without</em> their
+ * throwable, and their message carries the throwable's class and message,
+ * the same reference and an occurrence count, like
+ * <code>[java.io.IOException: Connection refused, stack trace #1a2b3c4d, occurrence 17]</code>.</p>
+ *
+ * <p>At most {@value #MAX_TRACES} distinct stack traces are remembered: when
+ * more are seen, those whose window has expired and the least recently seen
+ * quarter of the others are forgotten.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+final class StackTraceDeduplicator {
+
+    /* How many distinct stack traces we remember */
+    static final int MAX_TRACES = 4096;
+    /* How deep we follow chains of causes */
+    private static final int MAX_CAUSES = 32;
+
+    private final long window;
+    /* The stack traces we've seen, by fingerprint */
+    private final ConcurrentHashMap<Long, Trace> traces = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new {@link StackTraceDeduplicator} logging each distinct
+     * stack trace at most once in the specified window, in milliseconds.
+     */
+    StackTraceDeduplicator(long window) {
+        if (window < 1) throw new IllegalArgumentException("Invalid window " + window);
+        this.window = window;
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the time window (in milliseconds) of this instance.
+     */
+    long getWindow() {
+        return window;
+    }
+
+    /**
+     * Deliver an event with a {@link Throwable}, either with its full stack
+     * trace, or with a reference to a stack trace already logged.
+     */
+    void deliver(LocationAwareLogger logger, Marker marker, String fqcn, int level, String message, Throwable throwable) {
+        final long fingerprint = fingerprint(throwable);
+
+        Trace trace = traces.get(fingerprint);
+        if (trace == null) {
+            /* Don't grow forever, forget what's old */
+            if (traces.size() >= MAX_TRACES) evict();
+            final Trace created = new Trace(fingerprint);
+            trace = traces.putIfAbsent(fingerprint, created);
+            if (trace == null) trace = created;
+        }
+        trace.seen = System.nanoTime();
+
+        /* First time in this window? Log the whole thing */
+        final long now = System.currentTimeMillis();
+        while (true) {
+            final Window current = trace.window.get();
+            if ((current == null) || (now - current.printed >= window)) {
+                /* A new window, counting this occurrence before anyone sees it */
+                if (!trace.window.compareAndSet(current, new Window(now))) continue;
+                LogDispatcher.deliver(logger, marker, fqcn, level,
+                                      message + " [stack trace " + trace.reference + "]", null, throwable);
+                return;
+            }
+
+            final long occurrence = current.occurrences.incrementAndGet();
+            LogDispatcher.deliver(logger, marker, fqcn, level,
+                                  message + " [" + throwable + ", stack trace " + trace.reference
+                                          + ", occurrence " + occurrence + "]", null, null);
+            return;
+        }
+    }
+
+    /**
+     * Forget stack traces whose window has expired, and the least recently
+     * seen quarter of the others, so that the ones repeating right now (the
+     * ones we're here for) keep being deduplicated.
+     */
+    private void evict() {
+        synchronized (traces) {
+            /* Someone else evicted while we were waiting? */
+            if (traces.size() < MAX_TRACES) return;
+
+            final long[] seen = new long[traces.size()];
+            int count = 0;
+            for (Trace trace: traces.values()) {
+                if (count == seen.length) break;
+                seen[count ++] = trace.seen;
+            }
+            Arrays.sort(seen, 0, count);
+            final long oldest = seen[count / 4];
+
+            final long now = System.currentTimeMillis();
+            for (Iterator<Trace> iterator = traces.values().iterator(); iterator.hasNext(); ) {
+                final Trace trace = iterator.next();
+                final Window current = trace.window.get();
+                if ((trace.seen - oldest <= 0) || ((current != null) && (now - current.printed >= window))) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Compute the fingerprint of a {@link Throwable}, from its class, its
+     * stack frames and (recursively) its causes.
+     */
+    static long fingerprint(Throwable throwable) {
+        final Map<Throwable, Boolean> seen = new IdentityHashMap<>();
+        long hash = 0xCBF29CE484222325L;
+
+        for (int depth = 0; (throwable != null) && (depth < MAX_CAUSES); depth ++) {
+            if (seen.put(throwable, Boolean.TRUE) != null) break;
+
+            hash = mix(hash, throwable.getClass().getName().hashCode());
+            final StackTraceElement[] frames = throwable.getStackTrace();
+            for (StackTraceElement frame: frames) hash = mix(hash, frame.hashCode());
+            hash = mix(hash, frames.length);
+
+            throwable = throwable.getCause();
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, int value) {
+        /* FNV-1a, one int at a time */
+        return (hash ^ (value & 0xFFFFFFFFL)) * 0x100000001B3L;
+    }
+
+    /* ====================================================================== */
+
+    /* A stack trace we've seen */
+    private static final class Trace {
+
+        private final String reference;
+        /* The current window, null if never logged */
+        private final AtomicReference<Window> window = new AtomicReference<>();
+        /* When we last saw it, in nanoseconds */
+        private volatile long seen;
+
+        private Trace(long fingerprint) {
+            final String hex = Long.toHexString((fingerprint >>> 32) ^ (fingerprint & 0xFFFFFFFFL));
+            reference = "#00000000".substring(0, 9 - hex.length()) + hex;
+        }
+    }
+
+    /* A window in which a stack trace was logged once */
+    private static final class Window {
+
+        /* When the full stack trace was logged */
+        private final long printed;
+        /* How many times we've seen it since, including that one */
+        private final AtomicLong occurrences = new AtomicLong(1);
+
+        private Window(long printed) {
+            this.printed = printed;
+        }
+    }
+}
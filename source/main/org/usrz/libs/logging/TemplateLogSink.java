@@ -0,0 +1,46 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+/**
+ * A {@link LogSink} which can take care of formatting (or storing as they
+ * are) the {@link String#format(String, Object...)} templates and arguments
+ * of events logged through our {@link Log}.
+ *
+ * <p>When such a sink is installed, {@link Log} will not format its messages
+ * at all, and simply pass its templates and arguments along.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+public interface TemplateLogSink extends LogSink {
+
+    /**
+     * Append an event with an unformatted message to this sink.
+     *
+     * @param timestamp The time (in milliseconds) the event was logged.
+     * @param threadName The name of the thread that logged the event.
+     * @param loggerName The name of the logger the event was logged to.
+     * @param level The level of the event, as in {@link LogSink#append}.
+     * @param format The (never <b>null</b>) format of the message, as in
+     *               {@link String#format(String, Object...)}.
+     * @param arguments The arguments of the format, or <b>null</b>.
+     * @param throwable The {@link Throwable} of the event, or <b>null</b>.
+     */
+    public void appendTemplate(long timestamp, String threadName, String loggerName,
+                               int level, String format, Object[] arguments,
+                               Throwable throwable);
+
+}
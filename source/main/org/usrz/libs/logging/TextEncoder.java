@@ -0,0 +1,176 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.slf4j.spi.LocationAwareLogger.DEBUG_INT;
+import static org.slf4j.spi.LocationAwareLogger.INFO_INT;
+import static org.slf4j.spi.LocationAwareLogger.TRACE_INT;
+import static org.slf4j.spi.LocationAwareLogger.WARN_INT;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.slf4j.helpers.MessageFormatter;
+
+/**
+ * An encoder rendering events as <i>UTF-8</i> text lines for our sinks,
+ * reusing its buffers across events.
+ *
+ * <p>Events are rendered like
+ * <code>2014-01-01 12:34:56.789 [thread] LEVEL logger - message</code>
+ * followed by the stack trace of the throwable, if any.</p>
+ *
+ * <p>Instances are <b>not</b> thread safe, keep one per thread.</p>
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+final class TextEncoder implements EventEncoder {
+
+    private final StringBuilder builder = new StringBuilder(256);
+    private final CharsetEncoder encoder = UTF_8.newEncoder()
+                                                .onMalformedInput(CodingErrorAction.REPLACE)
+                                                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+    private char[] chars = new char[256];
+    private CharBuffer charBuffer = CharBuffer.wrap(chars);
+    private ByteBuffer byteBuffer = ByteBuffer.allocate(1024);
+
+    /* The last second we formatted, and how we formatted it */
+    private long second = Long.MIN_VALUE;
+    private String formatted = null;
+
+    TextEncoder() {
+        /* Nothing to do */
+    }
+
+    /* ====================================================================== */
+
+    @Override
+    public ByteBuffer encode(long timestamp, String threadName, String loggerName,
+                             int level, String message, Object[] arguments,
+                             Throwable throwable) {
+        final String rendered = arguments == null ? message : MessageFormatter.arrayFormat(message, arguments).getMessage();
+        render(timestamp, threadName, loggerName, level, rendered, stackTrace(throwable));
+        return encodeRendered();
+    }
+
+    @Override
+    public ByteBuffer encodeTemplate(long timestamp, String threadName, String loggerName,
+                                     int level, String format, Object[] arguments,
+                                     Throwable throwable) {
+        final String rendered = String.format(format, arguments);
+        render(timestamp, threadName, loggerName, level, rendered, stackTrace(throwable));
+        return encodeRendered();
+    }
+
+    /**
+     * Render an event as text, returning a {@link CharSequence} valid only
+     * until the next call to this encoder.
+     *
+     * @param stackTrace The stack trace of the throwable, or <b>null</b>.
+     */
+    CharSequence render(long timestamp, String threadName, String loggerName,
+                        int level, String message, CharSequence stackTrace) {
+        builder.setLength(0);
+
+        /* Timestamp, formatting only once per second */
+        final long current = timestamp / 1000;
+        if (current != second) {
+            formatted = format.format(new Date(current * 1000));
+            second = current;
+        }
+        final int millis = (int) (timestamp % 1000);
+        builder.append(formatted).append('.')
+               .append((char) ('0' + millis / 100))
+               .append((char) ('0' + millis / 10 % 10))
+               .append((char) ('0' + millis % 10));
+
+        /* Thread, level, logger and message */
+        builder.append(" [").append(threadName).append("] ")
+               .append(levelName(level)).append(' ')
+               .append(loggerName).append(" - ")
+               .append(message)
+               .append('\n');
+
+        /* Stack trace, if we have one */
+        if (stackTrace != null) builder.append(stackTrace);
+        return builder;
+    }
+
+    /* ====================================================================== */
+
+    private ByteBuffer encodeRendered() {
+
+        /* Copy our rendered characters in a reused buffer */
+        final int length = builder.length();
+        if (length > chars.length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+            charBuffer = CharBuffer.wrap(chars);
+        }
+        builder.getChars(0, length, chars, 0);
+        charBuffer.clear().limit(length);
+
+        /* Encode, growing our byte buffer if we have to */
+        encoder.reset();
+        byteBuffer.clear();
+        while (true) {
+            final CoderResult result = encoder.encode(charBuffer, byteBuffer, true);
+            if (result.isOverflow()) {
+                final ByteBuffer grown = ByteBuffer.allocate(byteBuffer.capacity() * 2);
+                byteBuffer.flip();
+                byteBuffer = grown.put(byteBuffer);
+            } else {
+                encoder.flush(byteBuffer);
+                break;
+            }
+        }
+
+        byteBuffer.flip();
+        return byteBuffer;
+    }
+
+    /**
+     * Return the stack trace of a {@link Throwable} as text, or <b>null</b>.
+     */
+    static CharSequence stackTrace(Throwable throwable) {
+        if (throwable == null) return null;
+        final StringWriter writer = new StringWriter();
+        throwable.printStackTrace(new PrintWriter(writer));
+        return writer.getBuffer();
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return the (padded to five characters) name of a level.
+     */
+    static String levelName(int level) {
+        return level <= TRACE_INT ? "TRACE" :
+               level <= DEBUG_INT ? "DEBUG" :
+               level <= INFO_INT  ? "INFO " :
+               level <= WARN_INT  ? "WARN " :
+                                    "ERROR";
+    }
+}
@@ -0,0 +1,158 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free policy deciding which events from a {@link LogPoint} get
+ * logged, counting the ones it suppressed.
+ *
+ * @author <a href="mailto:pier@usrz.com">Pier Fumagalli</a>
+ */
+abstract class Throttle {
+
+    /* How many events we suppressed, and how many were already reported */
+    private final AtomicLong suppressed = new AtomicLong();
+    private long reported = 0;
+
+    private Throttle() {
+        /* Only our own subclasses */
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Create a {@link Throttle} allowing at most the specified number of
+     * events per second.
+     */
+    static Throttle limit(int events) {
+        return limit(events, TimeUnit.SECONDS.toMillis(1));
+    }
+
+    /**
+     * Create a {@link Throttle} allowing at most the specified number of
+     * events in each window of the specified number of milliseconds.
+     */
+    static Throttle limit(int events, long window) {
+        if (events < 1) throw new IllegalArgumentException("Invalid number of events " + events);
+        if (window < 1) throw new IllegalArgumentException("Invalid window " + window);
+        return new Limit(events, window);
+    }
+
+    /**
+     * Create a {@link Throttle} allowing one event in every <code>n</code>,
+     * starting with the first one.
+     */
+    static Throttle sample(int n) {
+        if (n < 1) throw new IllegalArgumentException("Invalid sampling rate " + n);
+        return new Sample(n);
+    }
+
+    /* ====================================================================== */
+
+    /**
+     * Return <b>true</b> if an event can be logged, <b>false</b> (counting
+     * it as suppressed) otherwise.
+     */
+    final boolean acquire() {
+        if (allow()) return true;
+        suppressed.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Return the total number of events suppressed so far.
+     */
+    final long getSuppressed() {
+        return suppressed.get();
+    }
+
+    /**
+     * Return the number of events suppressed since the last time this
+     * method was called.
+     */
+    final synchronized long drain() {
+        final long total = suppressed.get();
+        final long count = total - reported;
+        reported = total;
+        return count;
+    }
+
+    abstract boolean allow();
+
+    /* ====================================================================== */
+
+    /* At most N events in each time window */
+    private static final class Limit extends Throttle {
+
+        private final int events;
+        private final long window;
+        private final long origin = System.currentTimeMillis();
+
+        /* The current window (high 32 bits) and its events (low 32 bits) */
+        private final AtomicLong state = new AtomicLong();
+
+        private Limit(int events, long window) {
+            this.events = events;
+            this.window = window;
+        }
+
+        @Override
+        boolean allow() {
+            final long current = (System.currentTimeMillis() - origin) / window;
+            while (true) {
+                final long state = this.state.get();
+                if ((state >>> 32) != current) {
+                    /* A new window, we're the first in */
+                    if (this.state.compareAndSet(state, (current << 32) | 1)) return true;
+                } else if ((state & 0xFFFFFFFFL) >= events) {
+                    return false;
+                } else if (this.state.compareAndSet(state, state + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return window == 1000 ? "at most " + events + " per second" :
+                                    "at most " + events + " every " + window + " ms";
+        }
+    }
+
+    /* One event in every N */
+    private static final class Sample extends Throttle {
+
+        private final int n;
+        private final AtomicLong events = new AtomicLong();
+
+        private Sample(int n) {
+            this.n = n;
+        }
+
+        @Override
+        boolean allow() {
+            return events.getAndIncrement() % n == 0;
+        }
+
+        @Override
+        public String toString() {
+            return "sampled 1 in " + n;
+        }
+    }
+}
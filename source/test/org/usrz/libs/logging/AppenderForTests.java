@@ -20,6 +20,7 @@ import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 
 import ch.qos.logback.classic.Level;
@@ -59,15 +60,34 @@ extends AppenderBase<E> implements Appender<E> {
         private final String className;
         private final Level level;
         private final String message;
+        private final String rawMessage;
+        private final Object[] arguments;
         private final IThrowableProxy throwable;
         private final String caller;
+        private final String threadName;
+        private final long timeStamp;
+        private final Map<String, String> mdc;
 
         private LogEvent(ILoggingEvent event) {
             this.className = event.getLoggerName();
             this.level = event.getLevel();
             this.message = event.getFormattedMessage();
+            this.rawMessage = event.getMessage();
+            this.arguments = event.getArgumentArray();
             this.throwable = event.getThrowableProxy();
-            this.caller = event.getCallerData()[0].getClassName();
+            final StackTraceElement[] callerData = event.getCallerData();
+            this.caller = callerData.length == 0 ? null : callerData[0].getClassName();
+            this.threadName = event.getThreadName();
+            this.timeStamp = event.getTimeStamp();
+            this.mdc = event.getMDCPropertyMap();
+        }
+
+        public long getTimeStamp() {
+            return timeStamp;
+        }
+
+        public String getMessage() {
+            return message;
         }
 
         public LogEvent assertCaller(Object caller) {
@@ -94,6 +114,26 @@ extends AppenderBase<E> implements Appender<E> {
             return this;
         }
 
+        public LogEvent assertRawMessage(String rawMessage) {
+            assertEquals(this.rawMessage, rawMessage, "Wrong raw message");
+            return this;
+        }
+
+        public LogEvent assertArguments(Object... arguments) {
+            assertEquals(this.arguments, arguments, "Wrong arguments");
+            return this;
+        }
+
+        public LogEvent assertMDC(String key, String value) {
+            assertEquals(this.mdc.get(key), value, "Wrong MDC value for " + key);
+            return this;
+        }
+
+        public LogEvent assertThreadName(String threadName) {
+            assertEquals(this.threadName, threadName, "Wrong thread name");
+            return this;
+        }
+
         public LogEvent assertThrowable(Throwable throwable) {
             if (throwable == null) {
                 assertNull(this.throwable, "Throwable is not null");
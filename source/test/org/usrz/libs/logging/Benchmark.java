@@ -0,0 +1,111 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A trivial micro-benchmark runner for our tests.
+ *
+ * <p>The number of iterations can be tweaked with the
+ * <code>benchmark.iterations</code> system property: by default it's small
+ * enough not to slow down the normal test run, so for real numbers run the
+ * tests with something like <code>-Dbenchmark.iterations=10000000</code>.</p>
+ */
+public final class Benchmark {
+
+    public static final int ITERATIONS = Integer.getInteger("benchmark.iterations", 100000);
+
+    private Benchmark() {
+        throw new IllegalStateException("Do not construct");
+    }
+
+    /**
+     * Run the operation (warming it up first) and report nanos per operation.
+     */
+    public static double run(String name, Operation operation) {
+        return run(name, ITERATIONS, operation);
+    }
+
+    /**
+     * Run the operation (warming it up first) and report nanos per operation.
+     */
+    public static double run(String name, int iterations, Operation operation) {
+        for (int x = 0; x < iterations; x ++) operation.run(x);
+
+        final long started = System.nanoTime();
+        for (int x = 0; x < iterations; x ++) operation.run(x);
+        final long elapsed = System.nanoTime() - started;
+
+        final double result = ((double) elapsed) / iterations;
+        System.err.println(String.format("BENCHMARK %-50s %12.2f ns/op (%d iterations)", name, result, iterations));
+        return result;
+    }
+
+    /**
+     * Run the operation concurrently in the specified number of threads
+     * (splitting our iterations among them) and report operations per second.
+     *
+     * <p>The completion (if not <b>null</b>) will be run once all threads
+     * are done, before stopping the clock.</p>
+     */
+    public static double runConcurrently(String name, int threads, Operation operation, Runnable completion) {
+        runConcurrently(threads, ITERATIONS / threads, operation, completion);
+
+        final long started = System.nanoTime();
+        runConcurrently(threads, ITERATIONS / threads, operation, completion);
+        final long elapsed = System.nanoTime() - started;
+
+        final double result = ((double) (ITERATIONS / threads) * threads) * 1000000000.0 / elapsed;
+        System.err.println(String.format("BENCHMARK %-50s %12.0f op/sec (%d threads)", name, result, threads));
+        return result;
+    }
+
+    private static void runConcurrently(int threads, final int iterations, final Operation operation, Runnable completion) {
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] workers = new Thread[threads];
+        for (int x = 0; x < threads; x ++) {
+            workers[x] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException exception) {
+                        throw new IllegalStateException(exception);
+                    }
+                    for (int x = 0; x < iterations; x ++) operation.run(x);
+                }
+            }, "Benchmark-" + x);
+            workers[x].start();
+        }
+
+        start.countDown();
+        try {
+            for (Thread worker: workers) worker.join();
+        } catch (InterruptedException exception) {
+            throw new IllegalStateException(exception);
+        }
+        if (completion != null) completion.run();
+    }
+
+    /* ====================================================================== */
+
+    public interface Operation {
+
+        public void run(int iteration);
+
+    }
+}
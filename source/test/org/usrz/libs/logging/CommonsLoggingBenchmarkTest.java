@@ -0,0 +1,90 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static org.slf4j.spi.LocationAwareLogger.INFO_INT;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.slf4j.helpers.MessageFormatter;
+import org.slf4j.spi.LocationAwareLogger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class CommonsLoggingBenchmarkTest extends Assert {
+
+    static { Logging.init(true); }
+
+    private final Object[] messages = new Object[] {
+            "A plain string message",
+            new StringBuilder("A string builder message"),
+            Integer.valueOf(12345),
+            new Object[] { "an", "array", 1, 2, 3 },
+            "Another plain string message",
+            new int[] { 1, 2, 3 },
+            Thread.State.RUNNABLE,
+            new Object() { @Override public String toString() { return "A domain object"; } }
+    };
+
+    @Test
+    public void benchmarkMixedMessages() {
+        final Log log = LogFactory.getLog("benchmark.commons");
+        assertTrue(log instanceof CommonsLoggingAdapter, "Wrong log " + log.getClass().getName());
+
+        Benchmark.run("Commons Logging mixed messages (enabled)", new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                log.info(messages[iteration % messages.length]);
+            }
+        });
+    }
+
+    @Test
+    public void benchmarkMixedMessagesDisabled() {
+        final Log log = LogFactory.getLog("org.usrz.libs.logging.LevelErrorTest");
+        assertFalse(log.isInfoEnabled());
+
+        Benchmark.run("Commons Logging mixed messages (disabled)", new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                log.info(messages[iteration % messages.length]);
+            }
+        });
+    }
+
+    @Test
+    public void benchmarkMixedMessagesCastAndCatch() {
+        /* What we used to do: cast, catch the ClassCastException, and format "{}" */
+        final LocationAwareLogger logger = SLF4JFactory.getLogger("benchmark.commons");
+        final String fqcn = CommonsLoggingAdapter.class.getName();
+
+        Benchmark.run("Commons Logging mixed messages (cast and catch)", new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                final Object message = messages[iteration % messages.length];
+                if (logger.isInfoEnabled()) {
+                    String rendered;
+                    try {
+                        rendered = (String) message;
+                    } catch (ClassCastException exception) {
+                        rendered = MessageFormatter.arrayFormat("{}", new Object[] { message }).getMessage();
+                    }
+                    LogDispatcher.dispatch(logger, null, fqcn, INFO_INT, rendered, null, null);
+                }
+            }
+        });
+    }
+}
@@ -15,14 +15,27 @@
  * ========================================================================== */
 package org.usrz.libs.logging;
 
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
 import java.util.Random;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
 
 public class CommonsLoggingTest extends Assert {
 
@@ -193,4 +206,176 @@ public class CommonsLoggingTest extends Assert {
                                        .assertCaller(this);
     }
 
+    @Test
+    public void testCommonsLoggingObjectMessages() {
+        logger.info(new StringBuilder("Hello ").append("builder"));
+        AppenderForTests.hasLastEvent().assertClass(this.getClass())
+                                       .assertLevel(Level.INFO)
+                                       .assertMessage("Hello builder")
+                                       .assertCaller(this);
+
+        logger.info(new Object[] { "one", 2, new int[] { 3, 4 } });
+        AppenderForTests.hasLastEvent().assertMessage("[one, 2, [3, 4]]");
+
+        logger.info(new long[] { 1, 2, 3 });
+        AppenderForTests.hasLastEvent().assertMessage("[1, 2, 3]");
+
+        logger.info(Integer.valueOf(42));
+        AppenderForTests.hasLastEvent().assertMessage("42");
+
+        logger.info(null);
+        AppenderForTests.hasLastEvent().assertMessage("Null message");
+
+        logger.info(new Object() { @Override public String toString() { throw new IllegalStateException(); } });
+        AppenderForTests.hasLastEvent().assertMessage("[FAILED toString()]");
+    }
+
+    @Test
+    public void testCommonsLoggingRegisteredRenderer() {
+        MessageRenderers.register(RenderedMessage.class, new MessageRenderer() {
+            @Override
+            public String render(Object message) {
+                return "Rendered " + ((RenderedMessage) message).value;
+            }
+        });
+
+        logger.warn(new RenderedMessage("foo"));
+        AppenderForTests.hasLastEvent().assertLevel(Level.WARN)
+                                       .assertMessage("Rendered foo");
+
+        logger.warn(new RenderedMessage("bar") {});
+        AppenderForTests.hasLastEvent().assertLevel(Level.WARN)
+                                       .assertMessage("Rendered bar");
+    }
+
+    @Test
+    public void testCommonsLoggingRenderedClassesUnloaded()
+    throws Exception {
+        final WeakReference<ClassLoader> reference = logProxyMessage();
+
+        /* The renderer resolved for the proxy must not pin its class loader */
+        for (int x = 0; (reference.get() != null) && (x < 50); x ++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull(reference.get(), "Class loader of rendered message not collected");
+    }
+
+    private WeakReference<ClassLoader> logProxyMessage() {
+        final ClassLoader loader = new URLClassLoader(new URL[0], null);
+        final Object message = Proxy.newProxyInstance(loader, new Class<?>[] { Runnable.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return "toString".equals(method.getName()) ? "Proxied message" : null;
+            }
+        });
+
+        logger.info(message);
+        AppenderForTests.hasLastEvent().assertMessage("Proxied message");
+        return new WeakReference<>(loader);
+    }
+
+    @Test
+    public void testCommonsLoggingCachedInstances() {
+        final LogFactory factory = LogFactory.getFactory();
+        final Log log1 = factory.getInstance("fooBar");
+        final Log log2 = factory.getInstance("fooBar");
+        assertSame(log1, log2);
+        assertSame(factory.getInstance(this.getClass()), factory.getInstance(this.getClass().getName()));
+
+        factory.release();
+        assertNotSame(factory.getInstance("fooBar"), log1);
+    }
+
+    @Test
+    public void testCommonsLoggingAttributes() {
+        final LogFactory factory = LogFactory.getFactory();
+        final Object value = new Object();
+
+        factory.setAttribute("fooBar", value);
+        assertSame(factory.getAttribute("fooBar"), value);
+        assertTrue(Arrays.asList(factory.getAttributeNames()).contains("fooBar"));
+
+        factory.setAttribute("fooBar", null);
+        assertNull(factory.getAttribute("fooBar"));
+
+        factory.setAttribute("fooBar", value);
+        factory.removeAttribute("fooBar");
+        assertNull(factory.getAttribute("fooBar"));
+    }
+
+    @Test
+    public void testCommonsLoggingLevelChanges() {
+        final String name = this.getClass().getName() + ".levels";
+        final Log log = LogFactory.getLog(name);
+        final ch.qos.logback.classic.Logger logback = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(name);
+
+        try {
+            logback.setLevel(Level.WARN);
+            assertFalse(log.isInfoEnabled());
+            assertTrue(log.isWarnEnabled());
+
+            log.info("Not logged");
+            AppenderForTests.hasNoLastEvent("at Info level");
+
+            logback.setLevel(Level.DEBUG);
+            assertFalse(log.isTraceEnabled());
+            assertTrue(log.isDebugEnabled());
+
+            log.debug("Logged");
+            AppenderForTests.hasLastEvent("at Debug level").assertMessage("Logged");
+
+        } finally {
+            logback.setLevel(null);
+        }
+
+        assertTrue(log.isTraceEnabled());
+    }
+
+    @Test
+    public void testCommonsLoggingTurboFilters() {
+        final String name = this.getClass().getName() + ".turbo";
+        final Log log = LogFactory.getLog(name);
+        final LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+
+        /* Turbo filters decide event by event, here on the MDC */
+        final TurboFilter filter = new TurboFilter() {
+            @Override
+            public FilterReply decide(Marker marker, ch.qos.logback.classic.Logger logger, Level level,
+                                      String format, Object[] params, Throwable throwable) {
+                return "true".equals(MDC.get("deny")) ? FilterReply.DENY : FilterReply.NEUTRAL;
+            }
+        };
+        filter.start();
+        context.addTurboFilter(filter);
+        Logging.refreshLevels();
+
+        try {
+            assertTrue(log.isInfoEnabled());
+            log.info("Allowed");
+            AppenderForTests.hasLastEvent().assertMessage("Allowed");
+
+            MDC.put("deny", "true");
+            assertFalse(log.isInfoEnabled());
+            log.info("Denied");
+            AppenderForTests.hasNoLastEvent("Denied by turbo filter");
+        } finally {
+            MDC.remove("deny");
+            context.getTurboFilterList().remove(filter);
+            Logging.refreshLevels();
+        }
+
+        assertTrue(log.isInfoEnabled());
+    }
+
+    private static class RenderedMessage {
+
+        private final String value;
+
+        private RenderedMessage(String value) {
+            this.value = value;
+        }
+
+    }
+
 }
@@ -0,0 +1,285 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static org.slf4j.spi.LocationAwareLogger.INFO_INT;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.MDC;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import ch.qos.logback.classic.Level;
+
+public class DeferredDispatcherTest extends Assert {
+
+    static { Logging.init(true); }
+
+    private static final Log log = new Log();
+    private static final int THREADS = 4;
+    private static final int EVENTS = 5000;
+
+    private DeferredDispatcher deferred;
+
+    private DeferredDispatcher defer(int capacity) {
+        deferred = new DeferredDispatcher(capacity);
+        assertNull(LogDispatcher.setDeferred(deferred), "Already deferring");
+        return deferred;
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void after() {
+        LogDispatcher.setDeferred((DeferredDispatcher) null);
+    }
+
+    /* ====================================================================== */
+
+    @Test
+    public void testDeferred() {
+        defer(16);
+        final String threadName = Thread.currentThread().getName();
+
+        MDC.put("request", "12345");
+        try {
+            log.info("Hello %s number %d", "world", 1);
+        } finally {
+            MDC.remove("request");
+        }
+        deferred.flush();
+        AppenderForTests.hasLastEvent().assertClass(this.getClass())
+                                       .assertLevel(Level.INFO)
+                                       .assertMessage("Hello world number 1")
+                                       .assertThreadName(threadName)
+                                       .assertMDC("request", "12345");
+
+        final Exception exception = new Exception("Oops");
+        log.warn(exception, "Failed %s%%%n", "badly");
+        deferred.flush();
+        AppenderForTests.hasLastEvent().assertLevel(Level.WARN)
+                                       .assertMessage(String.format("Failed badly%%%n"))
+                                       .assertThrowable(exception);
+
+        /* Plain messages are deferred too */
+        log.info("Plain");
+        deferred.flush();
+        AppenderForTests.hasLastEvent().assertMessage("Plain")
+                                       .assertThreadName(threadName);
+    }
+
+    @Test
+    public void testSnapshots() {
+        defer(16);
+
+        /* Mutable arguments are rendered on the spot */
+        final StringBuilder builder = new StringBuilder("before");
+        log.info("Mutable %s", builder);
+        builder.setLength(0);
+        deferred.flush();
+        AppenderForTests.hasLastEvent().assertMessage("Mutable before");
+
+        /* Same output as String.format, arrays and all */
+        final int[] array = new int[] { 1, 2 };
+        log.info("Array %s", array);
+        deferred.flush();
+        AppenderForTests.hasLastEvent().assertMessage(String.format("Array %s", (Object) array));
+    }
+
+    @Test
+    public void testFormattedByCaller() {
+        defer(16);
+
+        /* Templates we can't format are formatted by the caller, still deferred */
+        log.info("Padded %5d and %.2f", 42, 1.5);
+        deferred.flush();
+        AppenderForTests.hasLastEvent().assertMessage(String.format("Padded %5d and %.2f", 42, 1.5));
+
+        /* Bad arguments still blow up in the caller's face */
+        try {
+            log.info("Number %d", "string");
+            fail("No exception thrown");
+        } catch (IllegalArgumentException exception) {
+            /* Good */
+        }
+        deferred.flush();
+        AppenderForTests.hasNoLastEvent("Event logged");
+    }
+
+    @Test
+    public void testThrowingArgument()
+    throws Exception {
+        final RecordingSink sink = new RecordingSink();
+        final LogSink previous = Logging.setSink(sink);
+        try {
+            defer(4);
+
+            /* Failing "toString()" blows up in the caller's face, as String.format would */
+            final Object failing = new Object() {
+                @Override
+                public String toString() {
+                    throw new IllegalStateException("Failing toString()");
+                }
+            };
+            try {
+                log.info("Failing %s", failing);
+                fail("No exception thrown");
+            } catch (IllegalStateException exception) {
+                /* Good */
+            }
+
+            /* The slot claimed for it was released, and the ring wraps around */
+            final Thread thread = new Thread("Producer") {
+                @Override
+                public void run() {
+                    for (int event = 0; event < 10; event ++) log.info("Event %d", event);
+                }
+            };
+            thread.start();
+            thread.join(10000);
+            assertFalse(thread.isAlive(), "Producer blocked");
+            deferred.flush();
+        } finally {
+            Logging.setSink(previous);
+        }
+
+        assertEquals(sink.events.size(), 10);
+        assertEquals(sink.events.get(9), "Producer Event 9");
+    }
+
+    @Test
+    public void testDisabled() {
+        assertFalse(Logging.isDeferred());
+        assertFalse(Logging.setDeferred(true));
+        assertTrue(Logging.isDeferred());
+
+        final Log disabled = new Log(LevelErrorTest.class);
+        disabled.info("Not %s", "logged");
+
+        log.info("Logged %s", "now");
+        assertTrue(Logging.setDeferred(false));
+        assertFalse(Logging.isDeferred());
+
+        /* Disabling deferred mode dispatches everything pending */
+        AppenderForTests.hasLastEvent().assertMessage("Logged now");
+    }
+
+    @Test
+    public void testOrdering()
+    throws Exception {
+        final RecordingSink sink = new RecordingSink();
+        final LogSink previous = Logging.setSink(sink);
+        try {
+            /* Small enough to wrap around, and to make producers wait */
+            defer(8);
+
+            final CountDownLatch latch = new CountDownLatch(THREADS);
+            for (int thread = 0; thread < THREADS; thread ++) {
+                new Thread("Producer-" + thread) {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int event = 0; event < EVENTS; event ++) {
+                                if ((event % 2) == 0) log.info("Event %d", event);
+                                else log.info("Event " + event);
+                            }
+                        } finally {
+                            latch.countDown();
+                        }
+                    }
+                }.start();
+            }
+
+            assertTrue(latch.await(60, TimeUnit.SECONDS), "Producers not finished");
+            deferred.flush();
+        } finally {
+            Logging.setSink(previous);
+        }
+
+        /* All events, in the order each thread logged them */
+        assertEquals(sink.events.size(), THREADS * EVENTS);
+        final int[] expected = new int[THREADS];
+        for (String event: sink.events) {
+            final int thread = Integer.parseInt(event.substring(event.indexOf('-') + 1, event.indexOf(' ')));
+            assertEquals(event.substring(event.indexOf(' ') + 1), "Event " + expected[thread] ++);
+        }
+    }
+
+    @Test
+    public void testCloseWhileLogging()
+    throws Exception {
+        final RecordingSink sink = new RecordingSink();
+        final LogSink previous = Logging.setSink(sink);
+        try {
+            defer(8);
+
+            final CountDownLatch started = new CountDownLatch(THREADS);
+            final CountDownLatch latch = new CountDownLatch(THREADS);
+            for (int thread = 0; thread < THREADS; thread ++) {
+                new Thread("Producer-" + thread) {
+                    @Override
+                    public void run() {
+                        try {
+                            started.countDown();
+                            for (int event = 0; event < EVENTS; event ++) log.info("Event %d", event);
+                        } finally {
+                            latch.countDown();
+                        }
+                    }
+                }.start();
+            }
+
+            /* Stop deferring while producers are at it */
+            started.await();
+            Thread.sleep(5);
+            LogDispatcher.setDeferred((DeferredDispatcher) null);
+            assertTrue(latch.await(60, TimeUnit.SECONDS), "Producers not finished");
+        } finally {
+            Logging.setSink(previous);
+        }
+
+        /* Deferred or not, no event went missing */
+        assertEquals(sink.events.size(), THREADS * EVENTS);
+    }
+
+    /* ====================================================================== */
+
+    private static class RecordingSink implements LogSink {
+
+        private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void append(long timestamp, String threadName, String loggerName, int level,
+                           String message, Object[] arguments, Throwable throwable) {
+            assertEquals(level, INFO_INT);
+            events.add(threadName + " " + message);
+        }
+
+        @Override
+        public void flush() {
+            /* Nothing to do */
+        }
+
+        @Override
+        public void close() {
+            /* Nothing to do */
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import ch.qos.logback.classic.Level;
+
+public class EarlyEventsTest extends Assert {
+
+    static { Logging.init(true); }
+
+    private static final Log log = new Log();
+
+    @AfterMethod(alwaysRun = true)
+    public void close() {
+        EarlyEvents.close();
+    }
+
+    @Test
+    public void testReplay()
+    throws Exception {
+        final Throwable throwable = new IllegalStateException("Early");
+
+        EarlyEvents.open();
+        final long before = System.currentTimeMillis();
+        log.warn(throwable, "Early %s", "bird");
+        final long after = System.currentTimeMillis();
+
+        Thread.sleep(50);
+        AppenderForTests.hasNoLastEvent("Event should be buffered");
+        EarlyEvents.close();
+
+        final AppenderForTests.LogEvent event = AppenderForTests.hasLastEvent()
+                .assertCaller(this)
+                .assertClass(this.getClass())
+                .assertLevel(Level.WARN)
+                .assertMessage("Early bird")
+                .assertThrowable(throwable)
+                .assertThreadName(Thread.currentThread().getName());
+
+        assertTrue(event.getTimeStamp() >= before, "Timestamp too early");
+        assertTrue(event.getTimeStamp() <= after, "Timestamp too late");
+    }
+
+    @Test
+    public void testReplayFromOtherThread()
+    throws Exception {
+        EarlyEvents.open();
+
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                log.info("From another thread");
+            }
+        }, "EarlyEventsTestThread");
+        thread.start();
+        thread.join();
+
+        AppenderForTests.hasNoLastEvent("Event should be buffered");
+        EarlyEvents.close();
+
+        AppenderForTests.hasLastEvent().assertLevel(Level.INFO)
+                                       .assertMessage("From another thread")
+                                       .assertThreadName("EarlyEventsTestThread");
+    }
+
+    @Test
+    public void testNotCapturingWhenClosed() {
+        log.info("Not buffered");
+        AppenderForTests.hasLastEvent().assertMessage("Not buffered")
+                                       .assertCaller(this);
+    }
+
+}
@@ -0,0 +1,197 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.slf4j.MDC;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.usrz.libs.logging.JournalSink.Encoding;
+
+import ch.qos.logback.classic.Level;
+
+public class EventBuilderTest extends Assert {
+
+    static { Logging.init(true); }
+
+    private static final Log log = new Log();
+
+    @AfterMethod
+    public void after() {
+        MDC.clear();
+    }
+
+    /* ====================================================================== */
+
+    @Test
+    public void testFields() {
+        final Exception exception = new Exception("Oops");
+        log.atWarn().message("Request served")
+                    .field("path", "/index.html")
+                    .field("status", 200)
+                    .field("millis", 12.5)
+                    .field("cached", true)
+                    .field("method", 'G')
+                    .field("size", (Object) new int[] { 1, 2 })
+                    .throwable(exception)
+                    .log();
+
+        AppenderForTests.hasLastEvent().assertCaller(this)
+                                       .assertClass(this.getClass())
+                                       .assertLevel(Level.WARN)
+                                       .assertMessage("Request served")
+                                       .assertThrowable(exception)
+                                       .assertMDC("path", "/index.html")
+                                       .assertMDC("status", "200")
+                                       .assertMDC("millis", "12.5")
+                                       .assertMDC("cached", "true")
+                                       .assertMDC("method", "G")
+                                       .assertMDC("size", "[1, 2]");
+
+        /* Fields are gone once logged */
+        assertNull(MDC.get("path"));
+        assertNull(MDC.get("status"));
+    }
+
+    @Test
+    public void testFormattedMessage() {
+        log.atInfo().message("Hello, %s number %d!", "world", 1).field("key", "value").log();
+        AppenderForTests.hasLastEvent().assertCaller(this)
+                                       .assertLevel(Level.INFO)
+                                       .assertMessage("Hello, world number 1!")
+                                       .assertMDC("key", "value");
+    }
+
+    @Test
+    public void testAllLevels() {
+        log.atTrace().message("trace").log();
+        AppenderForTests.hasLastEvent().assertCaller(this).assertLevel(Level.TRACE).assertMessage("trace");
+        log.atDebug().message("debug").log();
+        AppenderForTests.hasLastEvent().assertCaller(this).assertLevel(Level.DEBUG).assertMessage("debug");
+        log.atInfo().message("info").log();
+        AppenderForTests.hasLastEvent().assertCaller(this).assertLevel(Level.INFO).assertMessage("info");
+        log.atWarn().message("warn").log();
+        AppenderForTests.hasLastEvent().assertCaller(this).assertLevel(Level.WARN).assertMessage("warn");
+        log.atError().message("error").log();
+        AppenderForTests.hasLastEvent().assertCaller(this).assertLevel(Level.ERROR).assertMessage("error");
+    }
+
+    @Test
+    public void testMDCRestored() {
+        MDC.put("user", "someone");
+        log.atInfo().message("As someone else").field("user", "else").field("user", "again").log();
+        AppenderForTests.hasLastEvent().assertMDC("user", "again");
+        assertEquals(MDC.get("user"), "someone");
+    }
+
+    @Test
+    public void testDisabled() {
+        final Log disabled = new Log("org.usrz.libs.logging.LevelErrorTest");
+        final EventBuilder builder = disabled.atInfo();
+        assertSame(builder, EventBuilder.DISABLED);
+        assertSame(disabled.atWarn(), builder);
+
+        builder.message("Nothing").field("key", "value").field("number", 1).throwable(new Exception()).log();
+        AppenderForTests.hasNoLastEvent("Disabled event was logged");
+        assertNull(MDC.get("key"));
+
+        disabled.atError().message("Something").log();
+        AppenderForTests.hasLastEvent().assertLevel(Level.ERROR).assertMessage("Something");
+    }
+
+    @Test
+    public void testPooled() {
+        /* The same builder over and over again, growing as needed */
+        final EventBuilder builder = log.atInfo();
+        for (int x = 0; x < 100; x ++) builder.field("field" + x, x);
+        builder.message("Many fields").log();
+        AppenderForTests.hasLastEvent().assertMDC("field0", "0").assertMDC("field99", "99");
+
+        assertSame(log.atDebug(), builder);
+        builder.message("No fields").log();
+        AppenderForTests.hasLastEvent().assertMDC("field0", null);
+
+        /* Nested builders don't trample on each other */
+        final EventBuilder outer = log.atInfo().message("Outer").field("outer", 1);
+        final EventBuilder inner = log.atInfo().message("Inner").field("inner", 2);
+        assertNotSame(inner, outer);
+        inner.log();
+        AppenderForTests.hasLastEvent().assertMessage("Inner").assertMDC("inner", "2").assertMDC("outer", null);
+        outer.log();
+        AppenderForTests.hasLastEvent().assertMessage("Outer").assertMDC("outer", "1").assertMDC("inner", null);
+        /* The nested builder took the place of the outer one in the pool */
+        assertSame(log.atInfo(), inner);
+        inner.log();
+        AppenderForTests.hasLastEvent();
+    }
+
+    @Test
+    public void testAbandoned() {
+        final Object exploding = new Object() {
+            @Override
+            public String toString() {
+                throw new IllegalStateException("Boom");
+            }
+        };
+
+        /* Evaluating the field throws after the builder was acquired */
+        final EventBuilder abandoned = log.atInfo().message("Abandoned").field("stale", 1);
+        try {
+            abandoned.field("exploding", exploding.toString()).log();
+            fail("Exception not thrown");
+        } catch (IllegalStateException exception) {
+            /* Ignore, the builder was never logged */
+        }
+
+        /* A new builder replaces the abandoned one, and is pooled again */
+        final EventBuilder builder = log.atInfo();
+        assertNotSame(builder, abandoned);
+        builder.message("Fresh").log();
+        AppenderForTests.hasLastEvent().assertMessage("Fresh").assertMDC("stale", null);
+        assertSame(log.atInfo(), builder);
+        builder.log();
+        AppenderForTests.hasLastEvent();
+    }
+
+    @Test
+    public void testJsonSink()
+    throws IOException {
+        final File file = File.createTempFile("EventBuilderTest", ".log");
+        final FileSink sink = new FileSink(file, 0, 0, 1024, null, Encoding.JSON);
+        final LogSink previous = Logging.setSink(sink);
+        try {
+            log.atInfo().message("Request served").field("status", 200).log();
+        } finally {
+            Logging.setSink(previous);
+            sink.close();
+        }
+
+        try {
+            final List<String> lines = Files.readAllLines(file.toPath(), UTF_8);
+            assertEquals(lines.size(), 1);
+            assertTrue(lines.get(0).endsWith("\"message\":\"Request served\",\"mdc\":{\"status\":\"200\"}}"), lines.get(0));
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.logging.LogFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import ch.qos.logback.classic.Level;
+
+public class ExceptionLimiterTest extends Assert {
+
+    static { Logging.init(true); }
+
+    private static final Log log = new Log();
+
+    @AfterMethod(alwaysRun = true)
+    public void after() {
+        Logging.removeExceptionLimit();
+    }
+
+    private static Exception here() {
+        return new IOException("Here");
+    }
+
+    private static Exception there() {
+        return new IOException("There");
+    }
+
+    /* ====================================================================== */
+
+    @Test
+    public void testLimit() {
+        /* Two at once, and then one per hour */
+        assertFalse(Logging.setExceptionLimit(1.0 / 3600, 2, false));
+
+        for (int index = 0; index < 5; index ++) {
+            final Exception exception = new IOException("Failure " + index);
+            log.error(exception, "Failed %d", index);
+            if (index < 2) AppenderForTests.hasLastEvent().assertMessage("Failed " + index).assertThrowable(exception);
+            else AppenderForTests.hasNoLastEvent("Event " + index + " not suppressed");
+        }
+
+        /* Other exceptions have their own bucket */
+        final Exception other = new IllegalStateException("Other");
+        log.warn(other, "Different");
+        AppenderForTests.hasLastEvent().assertThrowable(other);
+
+        /* Events without throwables are not limited */
+        log.error("No throwable");
+        AppenderForTests.hasLastEvent().assertMessage("No throwable");
+
+        /* Bridges are limited too */
+        LogFactory.getLog(this.getClass()).error("Commons", new IOException("Bridged"));
+        AppenderForTests.hasNoLastEvent("Bridged event not suppressed");
+
+        /* When we stop, suppressed events are reported */
+        assertTrue(Logging.removeExceptionLimit());
+        AppenderForTests.hasLastEvent().assertLevel(Level.ERROR)
+                                       .assertClass(this.getClass())
+                                       .assertMessage("Suppressed 4 events with java.io.IOException");
+    }
+
+    @Test
+    public void testBySite() {
+        Logging.setExceptionLimit(1.0 / 3600, 1, true);
+
+        log.error(here(), "Here");
+        AppenderForTests.hasLastEvent().assertMessage("Here");
+        log.error(there(), "There");
+        AppenderForTests.hasLastEvent().assertMessage("There");
+
+        log.error(here(), "Here");
+        AppenderForTests.hasNoLastEvent("Event here not suppressed");
+        log.error(there(), "There");
+        AppenderForTests.hasNoLastEvent("Event there not suppressed");
+
+        /* One report for each site */
+        final RecordingSink sink = new RecordingSink();
+        final LogSink previous = Logging.setSink(sink);
+        try {
+            Logging.removeExceptionLimit();
+        } finally {
+            Logging.setSink(previous);
+        }
+        assertEquals(sink.messages.size(), 2);
+        for (String message: sink.messages) {
+            assertTrue(message.startsWith("Suppressed 1 events with java.io.IOException at " + this.getClass().getName() + "."),
+                       "Wrong message " + message);
+        }
+    }
+
+    @Test
+    public void testRefill()
+    throws InterruptedException {
+        /* One every 200 milliseconds */
+        Logging.setExceptionLimit(5, 1, false);
+
+        log.error(new IOException("First"), "First");
+        AppenderForTests.hasLastEvent().assertMessage("First");
+        log.error(new IOException("Second"), "Second");
+        AppenderForTests.hasNoLastEvent("Second event not suppressed");
+
+        Thread.sleep(400);
+        log.error(new IOException("Third"), "Third");
+        AppenderForTests.hasLastEvent().assertMessage("Third");
+
+        Logging.removeExceptionLimit();
+        AppenderForTests.hasLastEvent().assertMessage("Suppressed 1 events with java.io.IOException");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidRate() {
+        Logging.setExceptionLimit(0, 1, false);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidBurst() {
+        Logging.setExceptionLimit(1, 0, false);
+    }
+
+    @Test
+    public void testMalformedProperties() {
+        try {
+            System.setProperty(Logging.EXCEPTION_RATE_PROPERTY, "often");
+            assertNull(ExceptionLimiter.fromProperties());
+
+            System.setProperty(Logging.EXCEPTION_RATE_PROPERTY, "10");
+            System.setProperty(Logging.EXCEPTION_BURST_PROPERTY, "many");
+            assertNull(ExceptionLimiter.fromProperties());
+
+            System.setProperty(Logging.EXCEPTION_BURST_PROPERTY, "0");
+            assertNull(ExceptionLimiter.fromProperties());
+
+            System.setProperty(Logging.EXCEPTION_BURST_PROPERTY, "5");
+            final ExceptionLimiter limiter = ExceptionLimiter.fromProperties();
+            assertNotNull(limiter);
+            limiter.close();
+        } finally {
+            System.clearProperty(Logging.EXCEPTION_RATE_PROPERTY);
+            System.clearProperty(Logging.EXCEPTION_BURST_PROPERTY);
+        }
+    }
+
+    /* ====================================================================== */
+
+    private static class RecordingSink implements LogSink {
+
+        private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void append(long timestamp, String threadName, String loggerName, int level,
+                           String message, Object[] arguments, Throwable throwable) {
+            messages.add(message);
+        }
+
+        @Override
+        public void flush() {
+            /* Nothing to do */
+        }
+
+        @Override
+        public void close() {
+            /* Nothing to do */
+        }
+    }
+}
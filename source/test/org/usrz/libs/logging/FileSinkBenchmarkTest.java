@@ -0,0 +1,144 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.FileAppender;
+
+public class FileSinkBenchmarkTest extends Assert {
+
+    static { Logging.init(true); }
+
+    private File directory;
+    private FileAppender<ILoggingEvent> appender;
+
+    @BeforeClass
+    public void before()
+    throws IOException {
+        directory = Files.createTempDirectory("FileSinkBenchmarkTest").toFile();
+
+        /* A plain Logback file appender, with the same layout as our sink */
+        final LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        final PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{yyyy-MM-dd HH:mm:ss.SSS} [%thread] %-5level %logger - %msg%n");
+        encoder.start();
+
+        appender = new FileAppender<>();
+        appender.setContext(context);
+        appender.setFile(new File(directory, "logback.log").getPath());
+        appender.setEncoder(encoder);
+        appender.start();
+
+        final Logger logger = (Logger) LoggerFactory.getLogger("filebench.logback");
+        logger.setAdditive(false);
+        logger.addAppender(appender);
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void after() {
+        final Logger logger = (Logger) LoggerFactory.getLogger("filebench.logback");
+        logger.detachAppender(appender);
+        logger.setAdditive(true);
+        appender.stop();
+
+        for (File file: directory.listFiles()) file.delete();
+        directory.delete();
+    }
+
+    /* ====================================================================== */
+
+    private void benchmarkLogback(int threads) {
+        final Log log = Log.getLog("filebench.logback");
+        Benchmark.runConcurrently("Logback FileAppender", threads, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                log.info("Message number %d", iteration);
+            }
+        }, null);
+    }
+
+    private void benchmarkSink(int threads)
+    throws IOException {
+        final FileSink sink = new FileSink(new File(directory, "sink.log"));
+        final LogSink previous = Logging.setSink(sink);
+        try {
+            final Log log = Log.getLog("filebench.sink");
+            Benchmark.runConcurrently("FileSink", threads, new Benchmark.Operation() {
+                @Override
+                public void run(int iteration) {
+                    log.info("Message number %d", iteration);
+                }
+            }, new Runnable() {
+                @Override
+                public void run() {
+                    sink.flush();
+                }
+            });
+        } finally {
+            Logging.setSink(previous);
+            sink.close();
+        }
+    }
+
+    /* ====================================================================== */
+
+    @Test
+    public void benchmarkLogback1Thread() {
+        benchmarkLogback(1);
+    }
+
+    @Test
+    public void benchmarkLogback8Threads() {
+        benchmarkLogback(8);
+    }
+
+    @Test
+    public void benchmarkLogback64Threads() {
+        benchmarkLogback(64);
+    }
+
+    @Test
+    public void benchmarkSink1Thread()
+    throws IOException {
+        benchmarkSink(1);
+    }
+
+    @Test
+    public void benchmarkSink8Threads()
+    throws IOException {
+        benchmarkSink(8);
+    }
+
+    @Test
+    public void benchmarkSink64Threads()
+    throws IOException {
+        benchmarkSink(64);
+    }
+}
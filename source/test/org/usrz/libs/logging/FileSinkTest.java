@@ -0,0 +1,205 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.slf4j.spi.LocationAwareLogger.ERROR_INT;
+import static org.slf4j.spi.LocationAwareLogger.INFO_INT;
+import static org.slf4j.spi.LocationAwareLogger.WARN_INT;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.LogFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class FileSinkTest extends Assert {
+
+    static { Logging.init(true); }
+
+    private File directory;
+
+    @BeforeMethod
+    public void before()
+    throws IOException {
+        directory = Files.createTempDirectory("FileSinkTest").toFile();
+    }
+
+    @AfterMethod
+    public void after() {
+        for (File file: directory.listFiles()) file.delete();
+        directory.delete();
+    }
+
+    /* ====================================================================== */
+
+    private List<String> lines(String prefix)
+    throws IOException {
+        final List<String> lines = new ArrayList<>();
+        for (File file: files(prefix)) lines.addAll(Files.readAllLines(file.toPath(), UTF_8));
+        return lines;
+    }
+
+    private File[] files(final String prefix) {
+        return directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File directory, String name) {
+                return name.startsWith(prefix);
+            }
+        });
+    }
+
+    /* ====================================================================== */
+
+    @Test
+    public void testAppend()
+    throws IOException {
+        final FileSink sink = new FileSink(new File(directory, "test.log"));
+        sink.append(0, "main", "a.logger", INFO_INT, "A simple message", null, null);
+        sink.append(1234, "other", "b.logger", WARN_INT, "Hello, {}!", new Object[] { "world" }, null);
+        sink.append(5678, "main", "c.logger", ERROR_INT, "With a throwable \u2603", null, new Exception("Oops"));
+        sink.close();
+
+        final List<String> lines = lines("test.log");
+        assertTrue(lines.get(0).matches("\\d{4}-\\d\\d-\\d\\d \\d\\d:\\d\\d:\\d\\d\\.000 \\[main\\] INFO  a\\.logger - A simple message"), lines.get(0));
+        assertTrue(lines.get(1).matches(".*\\.234 \\[other\\] WARN  b\\.logger - Hello, world!"), lines.get(1));
+        assertTrue(lines.get(2).matches(".*\\.678 \\[main\\] ERROR c\\.logger - With a throwable \u2603"), lines.get(2));
+        assertEquals(lines.get(3), "java.lang.Exception: Oops");
+        assertTrue(lines.get(4).startsWith("\tat org.usrz.libs.logging.FileSinkTest.testAppend("), lines.get(4));
+
+        /* Closed sinks simply ignore events */
+        sink.append(0, "main", "a.logger", INFO_INT, "Ignored", null, null);
+        assertEquals(lines("test.log"), lines);
+    }
+
+    @Test
+    public void testConcurrentAppend()
+    throws Exception {
+        final FileSink sink = new FileSink(new File(directory, "test.log"), 0, 0, 16);
+        final Thread[] threads = new Thread[8];
+        for (int x = 0; x < threads.length; x ++) {
+            threads[x] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    final String name = Thread.currentThread().getName();
+                    for (int y = 0; y < 1000; y ++) {
+                        sink.append(System.currentTimeMillis(), name, "a.logger", INFO_INT, "Message {}", new Object[] { y }, null);
+                    }
+                }
+            }, "Thread-" + x);
+            threads[x].start();
+        }
+        for (Thread thread: threads) thread.join();
+        sink.flush();
+
+        final List<String> lines = lines("test.log");
+        assertEquals(lines.size(), 8000);
+
+        /* Each thread's messages are complete, and in order */
+        final int[] next = new int[threads.length];
+        for (String line: lines) {
+            assertTrue(line.matches(".* \\[Thread-\\d\\] INFO  a\\.logger - Message \\d+"), line);
+            final int thread = line.charAt(line.indexOf("[Thread-") + 8) - '0';
+            assertTrue(line.endsWith(" - Message " + next[thread] ++), line);
+        }
+
+        sink.close();
+    }
+
+    @Test
+    public void testRollBySize()
+    throws IOException {
+        final FileSink sink = new FileSink(new File(directory, "test.log"), 1024, 0);
+        for (int x = 0; x < 100; x ++) {
+            sink.append(System.currentTimeMillis(), "main", "a.logger", INFO_INT, "Message number " + x, null, null);
+            if (x % 10 == 9) sink.flush();
+        }
+        sink.close();
+
+        final File[] files = files("test.log");
+        assertTrue(files.length > 5, "Only " + files.length + " files");
+        for (File file: files) assertTrue(file.length() <= 1024, file + " is " + file.length() + " bytes");
+        assertEquals(lines("test.log").size(), 100);
+    }
+
+    @Test
+    public void testRollByAge()
+    throws Exception {
+        final FileSink sink = new FileSink(new File(directory, "test.log"), 0, 100);
+        sink.append(System.currentTimeMillis(), "main", "a.logger", INFO_INT, "First message", null, null);
+        sink.flush();
+        Thread.sleep(250);
+        sink.append(System.currentTimeMillis(), "main", "a.logger", INFO_INT, "Second message", null, null);
+        sink.close();
+
+        assertEquals(files("test.log").length, 2);
+        assertEquals(Files.readAllLines(sink.getFile().toPath(), UTF_8).size(), 1);
+        assertTrue(Files.readAllLines(sink.getFile().toPath(), UTF_8).get(0).endsWith(" - Second message"));
+        assertEquals(lines("test.log").size(), 2);
+    }
+
+    @Test
+    public void testRollByAgeFromFirstEvent()
+    throws Exception {
+        final FileSink sink = new FileSink(new File(directory, "test.log"), 0, 250);
+        sink.append(System.currentTimeMillis(), "main", "a.logger", INFO_INT, "First message", null, null);
+        sink.flush();
+
+        /* Rolled while idle, the new file stays empty for a while */
+        Thread.sleep(600);
+        assertEquals(files("test.log").length, 2);
+        assertEquals(sink.getFile().length(), 0);
+
+        /* Its age counts from its first event, not from when it was opened */
+        sink.append(System.currentTimeMillis(), "main", "a.logger", INFO_INT, "Second message", null, null);
+        sink.flush();
+        Thread.sleep(50);
+        sink.append(System.currentTimeMillis(), "main", "a.logger", INFO_INT, "Third message", null, null);
+        sink.close();
+
+        assertEquals(files("test.log").length, 2);
+        final List<String> lines = Files.readAllLines(sink.getFile().toPath(), UTF_8);
+        assertEquals(lines.size(), 2);
+        assertTrue(lines.get(0).endsWith(" - Second message"), lines.get(0));
+        assertTrue(lines.get(1).endsWith(" - Third message"), lines.get(1));
+    }
+
+    @Test
+    public void testInstalledSink()
+    throws IOException {
+        final FileSink sink = new FileSink(new File(directory, "test.log"));
+        final LogSink previous = Logging.setSink(sink);
+        try {
+            Log.getLog(FileSinkTest.class).info("Hello, %s!", "world");
+            LogFactory.getLog(FileSinkTest.class).warn("From commons logging");
+        } finally {
+            Logging.setSink(previous);
+            sink.close();
+        }
+
+        final List<String> lines = lines("test.log");
+        assertEquals(lines.size(), 2);
+        assertTrue(lines.get(0).endsWith(" INFO  org.usrz.libs.logging.FileSinkTest - Hello, world!"), lines.get(0));
+        assertTrue(lines.get(1).endsWith(" WARN  org.usrz.libs.logging.FileSinkTest - From commons logging"), lines.get(1));
+    }
+}
@@ -0,0 +1,65 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Run a class' <code>main(String[])</code> in a brand new JVM (with our
+ * same class path), for those tests which need a pristine environment.
+ */
+public final class ForkedJVM {
+
+    private ForkedJVM() {
+        throw new IllegalStateException("Do not construct");
+    }
+
+    /**
+     * Run the main class, assert it exited cleanly, and return its output.
+     */
+    public static String run(Class<?> main, String... arguments)
+    throws IOException, InterruptedException {
+        final List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(main.getName());
+        command.addAll(Arrays.asList(arguments));
+
+        final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        final String output = read(process.getInputStream());
+
+        assertEquals(process.waitFor(), 0, "Forked JVM failed:\n" + output);
+        return output;
+    }
+
+    private static String read(InputStream input)
+    throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = input.read(buffer)) >= 0) output.write(buffer, 0, read);
+        return new String(output.toByteArray(), "UTF-8");
+    }
+}
@@ -0,0 +1,221 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.slf4j.spi.LocationAwareLogger.DEBUG_INT;
+import static org.slf4j.spi.LocationAwareLogger.ERROR_INT;
+import static org.slf4j.spi.LocationAwareLogger.INFO_INT;
+import static org.slf4j.spi.LocationAwareLogger.WARN_INT;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.usrz.libs.logging.JournalSink.Encoding;
+
+public class JournalDecoderTest extends Assert {
+
+    static { Logging.init(true); }
+
+    private File directory;
+
+    @BeforeMethod
+    public void before()
+    throws IOException {
+        directory = Files.createTempDirectory("JournalDecoderTest").toFile();
+    }
+
+    @AfterMethod
+    public void after() {
+        for (File file: directory.listFiles()) file.delete();
+        directory.delete();
+    }
+
+    /* ====================================================================== */
+
+    private String decode(String name)
+    throws IOException {
+        final JournalDecoder decoder = new JournalDecoder(directory, name);
+        final StringBuilder builder = new StringBuilder();
+        for (File segment: JournalSink.segments(directory, name)) decoder.decode(segment, builder);
+        return builder.toString();
+    }
+
+    private static void appendEvents(TemplateLogSink sink, long now, Exception exception) {
+        final Object object = new Object() {
+            @Override public String toString() { return "A domain object"; }
+            @Override public int hashCode() { return 0xCAFE; }
+        };
+
+        sink.append(now, "main", "a.logger", INFO_INT, "A plain message ☃ 😀", null, null);
+        sink.append(now + 1, "main", "a.logger", DEBUG_INT, "Hello, {} and {}!", new Object[] { "world", new int[] { 1, 2 } }, null);
+        sink.append(now + 2, "other", "b.logger", ERROR_INT, "With a throwable", null, exception);
+
+        sink.appendTemplate(now + 3, "main", "a.logger", INFO_INT, "%d %x %x %o %s", new Object[] { 12345, (byte) -1, -1L, (short) 8, null }, null);
+        sink.appendTemplate(now + 4, "main", "a.logger", WARN_INT, "%08.3f %e %.1f %c %b", new Object[] { Math.PI, 1.5e10f, new BigDecimal("1.25"), 'x', true }, null);
+        sink.appendTemplate(now + 5, "other", "b.logger", INFO_INT, "%,d %s %tF %<tT", new Object[] { new BigInteger("123456789012345678901234567890"), object, new Date(now) }, null);
+        sink.appendTemplate(now + 6, "main", "a.logger", ERROR_INT, "Failed %s", new Object[] { "badly" }, exception);
+        sink.appendTemplate(now + 7, "main", "a.logger", INFO_INT, "No arguments at all", null, null);
+
+        /* Arguments we store as text, meeting something else than "%s" */
+        final Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("Asia/Tokyo"));
+        calendar.setTimeInMillis(now);
+        sink.appendTemplate(now + 8, "main", "a.logger", INFO_INT, "%tF and %tH %<tZ", new Object[] { LocalDate.of(2014, 5, 13), calendar }, null);
+        sink.appendTemplate(now + 9, "main", "a.logger", INFO_INT, "Hash %h", new Object[] { object }, null);
+        sink.appendTemplate(now + 10, "main", "a.logger", INFO_INT, "Calendar %s", new Object[] { calendar }, null);
+    }
+
+    /* ====================================================================== */
+
+    @Test
+    public void testDecodeLikeText()
+    throws IOException {
+        final JournalSink text = new JournalSink(directory, "text", 65536, 0, Encoding.TEXT);
+        final JournalSink binary = new JournalSink(directory, "binary", 65536, 0, Encoding.BINARY);
+        final long now = System.currentTimeMillis();
+        final Exception exception = new Exception("Oops");
+        appendEvents(text, now, exception);
+        appendEvents(binary, now, exception);
+        text.close();
+        binary.close();
+
+        final String expected = decode("text");
+        assertTrue(expected.contains(" INFO  a.logger - 12345 ff ffffffffffffffff 10 null\n"), expected);
+        assertEquals(decode("binary"), expected);
+
+        /* Binary segments encode the same stuff, in less space */
+        assertTrue(new JournalReader(JournalSink.segments(directory, "binary")[0]).getEncoding() == Encoding.BINARY);
+    }
+
+    @Test
+    public void testDictionary()
+    throws IOException {
+        final JournalSink sink = new JournalSink(directory, "test", 65536, 0, Encoding.BINARY);
+        for (int x = 0; x < 1000; x ++) {
+            sink.appendTemplate(System.currentTimeMillis(), "main", "a.logger", INFO_INT, "Message number %d", new Object[] { x }, null);
+        }
+        sink.close();
+
+        /* Thread, logger and format were written only once */
+        final JournalDictionary dictionary = JournalDictionary.read(JournalDictionary.file(directory, "test"));
+        assertEquals(dictionary.lookup(1), "main");
+        assertEquals(dictionary.lookup(2), "a.logger");
+        assertEquals(dictionary.lookup(3), "Message number %d");
+        assertNull(dictionary.lookup(4));
+
+        /* New sinks reuse (and append to) the same dictionary */
+        final JournalSink another = new JournalSink(directory, "test", 65536, 0, Encoding.BINARY);
+        another.appendTemplate(System.currentTimeMillis(), "other", "a.logger", INFO_INT, "Message number %d", new Object[] { 1000 }, null);
+        another.close();
+
+        final String decoded = decode("test");
+        assertTrue(decoded.contains(" [main] INFO  a.logger - Message number 999\n"), decoded);
+        assertTrue(decoded.endsWith(" [other] INFO  a.logger - Message number 1000\n"), decoded);
+    }
+
+    @Test
+    public void testDamagedDictionary()
+    throws IOException {
+        final JournalSink sink = new JournalSink(directory, "test", 65536, 0, Encoding.BINARY);
+        sink.appendTemplate(System.currentTimeMillis(), "main", "a.logger", INFO_INT, "Message number %d", new Object[] { 1 }, null);
+        sink.close();
+
+        /* Cut the dictionary in the middle of the format's entry */
+        final File file = JournalDictionary.file(directory, "test");
+        try (RandomAccessFile random = new RandomAccessFile(file, "rw")) {
+            random.setLength(random.length() - 3);
+        }
+
+        final String decoded = decode("test");
+        assertTrue(decoded.endsWith(" [main] INFO  a.logger - <unknown #3>\n"), decoded);
+
+        /* Reopening drops the damaged entry and defines it again */
+        final JournalSink another = new JournalSink(directory, "test", 65536, 0, Encoding.BINARY);
+        another.appendTemplate(System.currentTimeMillis(), "main", "a.logger", INFO_INT, "Message number %d", new Object[] { 2 }, null);
+        another.close();
+
+        assertTrue(decode("test").endsWith(" [main] INFO  a.logger - Message number 2\n"), decode("test"));
+    }
+
+    @Test
+    public void testLogTemplates()
+    throws IOException {
+        final JournalSink sink = new JournalSink(directory, "test", 65536, 0, Encoding.BINARY);
+        final LogSink previous = Logging.setSink(sink);
+        try {
+            final Log log = Log.getLog(JournalDecoderTest.class);
+            log.info("Hello, %s!", "world");
+            log.warn(new Exception("Oops"), "Number %d of %d", 1, 2);
+            log.error("Plain message");
+        } finally {
+            Logging.setSink(previous);
+            sink.close();
+        }
+
+        /* Our templates were passed along, not formatted */
+        final JournalDictionary dictionary = JournalDictionary.read(JournalDictionary.file(directory, "test"));
+        assertEquals(dictionary.lookup(3), "Hello, %s!");
+        assertEquals(dictionary.lookup(4), "Number %d of %d");
+
+        final String[] lines = decode("test").split("\n");
+        assertTrue(lines[0].endsWith(" INFO  org.usrz.libs.logging.JournalDecoderTest - Hello, world!"), lines[0]);
+        assertTrue(lines[1].endsWith(" WARN  org.usrz.libs.logging.JournalDecoderTest - Number 1 of 2"), lines[1]);
+        assertEquals(lines[2], "java.lang.Exception: Oops");
+        assertTrue(lines[lines.length - 1].endsWith(" ERROR org.usrz.libs.logging.JournalDecoderTest - Plain message"), lines[lines.length - 1]);
+    }
+
+    @Test
+    public void testCommandLine()
+    throws IOException {
+        final JournalSink sink = new JournalSink(directory, "test", 4096, 0, Encoding.BINARY);
+        for (int x = 0; x < 200; x ++) {
+            sink.appendTemplate(System.currentTimeMillis(), "main", "a.logger", INFO_INT, "Message number %d", new Object[] { x }, null);
+        }
+        sink.close();
+
+        final File[] segments = JournalSink.segments(directory, "test");
+        assertTrue(segments.length > 1, "Only " + segments.length + " segments");
+        final String[] args = new String[segments.length];
+        for (int x = 0; x < segments.length; x ++) args[x] = segments[x].getPath();
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final PrintStream out = System.out;
+        System.setOut(new PrintStream(output, true, "UTF-8"));
+        try {
+            JournalDecoder.main(args);
+        } finally {
+            System.setOut(out);
+        }
+
+        final String[] lines = new String(output.toByteArray(), UTF_8).split("\n");
+        assertEquals(lines.length, 200);
+        for (int x = 0; x < 200; x ++) assertTrue(lines[x].endsWith(" [main] INFO  a.logger - Message number " + x), lines[x]);
+    }
+}
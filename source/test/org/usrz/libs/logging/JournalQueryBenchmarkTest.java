@@ -0,0 +1,141 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static org.slf4j.spi.LocationAwareLogger.ERROR_INT;
+import static org.slf4j.spi.LocationAwareLogger.INFO_INT;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.slf4j.MDC;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.usrz.libs.logging.JournalSink.Encoding;
+
+/*
+ * The size of the generated journal defaults to 64 MB, for something closer
+ * to real life run with "-Djournal.dataset.size=10240" (that's 10 GB).
+ */
+public class JournalQueryBenchmarkTest extends Assert {
+
+    static { Logging.init(true); }
+
+    private static final long DATASET_SIZE = Long.getLong("journal.dataset.size", 64) * 1024 * 1024;
+    private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final long NOW = 1400000000000L;
+
+    private File directory;
+    private long events;
+
+    @BeforeClass
+    public void before()
+    throws IOException {
+        directory = Files.createTempDirectory("JournalQueryBenchmarkTest").toFile();
+
+        /* Ten events per millisecond, one in a thousand traced */
+        final JournalSink sink = new JournalSink(directory, "benchmark", SEGMENT_SIZE, 0, Encoding.BINARY);
+        final String[] loggers = { "org.example.web", "org.example.db", "org.example.cache", "com.other" };
+        final long started = System.nanoTime();
+        long written = 0;
+        for (events = 0; written < DATASET_SIZE; events ++) {
+            if (events % 1000 == 0) MDC.put("traceId", "trace-" + events);
+            try {
+                final int level = events % 100 == 1 ? ERROR_INT : INFO_INT;
+                sink.appendTemplate(NOW + events / 10, "main", loggers[(int) (events % 4)], level,
+                                    "Request %d took %d ms", new Object[] { events, events % 1000 }, null);
+            } finally {
+                MDC.remove("traceId");
+            }
+            written += 50; // approximately
+        }
+        sink.close();
+
+        long size = 0;
+        for (File file: directory.listFiles()) size += file.length();
+        System.err.println(String.format("BENCHMARK %-50s %12d bytes (%d events in %d ms)", "Journal dataset",
+                                         size, events, (System.nanoTime() - started) / 1000000));
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void after() {
+        for (File file: directory.listFiles()) file.delete();
+        directory.delete();
+    }
+
+    /* ====================================================================== */
+
+    private void benchmarkQuery(String name, JournalQuery query, boolean indexed)
+    throws IOException {
+        if (!indexed) for (File segment: JournalSink.segments(directory, "benchmark")) {
+            JournalIndex.file(segment).renameTo(new File(directory, segment.getName() + ".hidden"));
+        }
+
+        try {
+            final long started = System.nanoTime();
+            final long matched = query.run(directory, "benchmark", new StringBuilder());
+            final long time = System.nanoTime() - started;
+            System.err.println(String.format("BENCHMARK %-50s %12.2f ms (%d matched, %d scanned, %d segments skipped)",
+                                             name + (indexed ? " (indexed)" : " (full scan)"), time / 1000000.0,
+                                             matched, query.getEventsScanned(), query.getSegmentsSkipped()));
+            assertTrue(matched > 0, "Nothing matched");
+        } finally {
+            if (!indexed) for (File segment: JournalSink.segments(directory, "benchmark")) {
+                new File(directory, segment.getName() + ".hidden").renameTo(JournalIndex.file(segment));
+            }
+        }
+    }
+
+    private JournalQuery timeRange() {
+        final long middle = NOW + events / 20;
+        return new JournalQuery().from(middle).to(middle + 99);
+    }
+
+    private JournalQuery trace() {
+        return new JournalQuery().trace("trace-" + (events / 2000 * 1000));
+    }
+
+    private JournalQuery errors() {
+        final long middle = NOW + events / 20;
+        return new JournalQuery().from(middle).to(middle + 9999).level(ERROR_INT).logger("org.example.db");
+    }
+
+    /* ====================================================================== */
+
+    @Test
+    public void benchmarkTimeRange()
+    throws IOException {
+        benchmarkQuery("JournalQuery time range", timeRange(), false);
+        benchmarkQuery("JournalQuery time range", timeRange(), true);
+    }
+
+    @Test
+    public void benchmarkTrace()
+    throws IOException {
+        benchmarkQuery("JournalQuery trace", trace(), false);
+        benchmarkQuery("JournalQuery trace", trace(), true);
+    }
+
+    @Test
+    public void benchmarkErrors()
+    throws IOException {
+        benchmarkQuery("JournalQuery errors", errors(), false);
+        benchmarkQuery("JournalQuery errors", errors(), true);
+    }
+}
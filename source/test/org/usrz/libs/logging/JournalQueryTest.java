@@ -0,0 +1,182 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.slf4j.spi.LocationAwareLogger.DEBUG_INT;
+import static org.slf4j.spi.LocationAwareLogger.ERROR_INT;
+import static org.slf4j.spi.LocationAwareLogger.INFO_INT;
+import static org.slf4j.spi.LocationAwareLogger.WARN_INT;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+import org.slf4j.MDC;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.usrz.libs.logging.JournalSink.Encoding;
+
+public class JournalQueryTest extends Assert {
+
+    static { Logging.init(true); }
+
+    private static final String[] LOGGERS = { "a.logger", "a.logger.child", "a.loggers" };
+    private static final int[] LEVELS = { DEBUG_INT, INFO_INT, WARN_INT, ERROR_INT };
+    private static final int EVENTS = 50000;
+    private static final long NOW = 1400000000000L;
+
+    private File directory;
+
+    @BeforeMethod
+    public void before()
+    throws IOException {
+        directory = Files.createTempDirectory("JournalQueryTest").toFile();
+
+        /* One event per millisecond, some of them traced */
+        final JournalSink sink = new JournalSink(directory, "test", 256 * 1024, 0, Encoding.BINARY);
+        for (int x = 0; x < EVENTS; x ++) {
+            if (x % 10000 == 1234) MDC.put("traceId", "trace-" + x);
+            try {
+                sink.appendTemplate(NOW + x, "main", LOGGERS[x % 3], LEVELS[x % 4], "Message number %d", new Object[] { x }, null);
+            } finally {
+                MDC.remove("traceId");
+            }
+        }
+        sink.close();
+    }
+
+    @AfterMethod
+    public void after() {
+        for (File file: directory.listFiles()) file.delete();
+        directory.delete();
+    }
+
+    /* ====================================================================== */
+
+    private String[] run(JournalQuery query)
+    throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        final long matched = query.run(directory, "test", builder);
+        final String[] lines = builder.length() == 0 ? new String[0] : builder.toString().split("\n");
+        assertEquals(lines.length, matched);
+        assertEquals(query.getEventsMatched(), matched);
+        return lines;
+    }
+
+    /* ====================================================================== */
+
+    @Test
+    public void testIndexes()
+    throws IOException {
+        final File[] segments = JournalSink.segments(directory, "test");
+        assertTrue(segments.length > 4, "Only " + segments.length + " segments");
+        for (File segment: segments) {
+            final JournalIndex index = JournalIndex.read(JournalIndex.file(segment));
+            assertNotNull(index, "No index for " + segment);
+            assertTrue(index.complete);
+        }
+    }
+
+    @Test
+    public void testTimeRange()
+    throws IOException {
+        final JournalQuery query = new JournalQuery().from(NOW + 30000).to(NOW + 30099);
+        final String[] lines = run(query);
+
+        assertEquals(lines.length, 100);
+        for (int x = 0; x < 100; x ++) assertTrue(lines[x].endsWith(" - Message number " + (30000 + x)), lines[x]);
+
+        /* We only read what was needed */
+        assertTrue(query.getSegmentsSkipped() > 0, "No segments skipped");
+        assertTrue(query.getBlocksSkipped() > 0, "No blocks skipped");
+        assertTrue(query.getEventsScanned() < EVENTS / 10, "Scanned " + query.getEventsScanned() + " events");
+    }
+
+    @Test
+    public void testLevel()
+    throws IOException {
+        final String[] lines = run(new JournalQuery().from(NOW).to(NOW + 999).level(WARN_INT));
+        assertEquals(lines.length, 500);
+        for (String line: lines) assertTrue(line.contains(" WARN  ") || line.contains(" ERROR "), line);
+    }
+
+    @Test
+    public void testLogger()
+    throws IOException {
+        final String[] lines = run(new JournalQuery().to(NOW + 5999).logger("a.logger"));
+        assertEquals(lines.length, 4000);
+        for (String line: lines) assertFalse(line.contains(" a.loggers - "), line);
+
+        assertEquals(run(new JournalQuery().to(NOW + 5999).logger("a.logger.child")).length, 2000);
+        assertEquals(run(new JournalQuery().to(NOW + 5999).logger("a")).length, 6000);
+        assertEquals(run(new JournalQuery().logger("b")).length, 0);
+    }
+
+    @Test
+    public void testTrace()
+    throws IOException {
+        final JournalQuery query = new JournalQuery().trace("trace-21234");
+        final String[] lines = run(query);
+
+        assertEquals(lines.length, 1);
+        assertTrue(lines[0].endsWith(" - Message number 21234"), lines[0]);
+        assertTrue(query.getSegmentsSkipped() > 0, "No segments skipped");
+
+        assertEquals(run(new JournalQuery().trace("unknown")).length, 0);
+    }
+
+    @Test
+    public void testMissingIndexes()
+    throws IOException {
+        for (File segment: JournalSink.segments(directory, "test")) {
+            assertTrue(JournalIndex.file(segment).delete());
+        }
+
+        final JournalQuery query = new JournalQuery().from(NOW + 30000).to(NOW + 30099).level(ERROR_INT);
+        final String[] lines = run(query);
+        assertEquals(lines.length, 25);
+        assertTrue(lines[0].endsWith(" - Message number 30003"), lines[0]);
+
+        /* Without indexes we read everything */
+        assertEquals(query.getSegmentsSkipped(), 0);
+        assertEquals(query.getEventsScanned(), EVENTS);
+    }
+
+    @Test
+    public void testCommandLine()
+    throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final PrintStream out = System.out;
+        System.setOut(new PrintStream(output, true, "UTF-8"));
+        try {
+            JournalQuery.main("--from", Long.toString(NOW + 100), "--to", Long.toString(NOW + 199),
+                              "--level", "error", "--logger", "a.logger.child",
+                              directory.getPath(), "test");
+        } finally {
+            System.setOut(out);
+        }
+
+        /* Levels cycle every 4 events, loggers every 3: one match in 12 */
+        final String[] lines = new String(output.toByteArray(), UTF_8).split("\n");
+        assertEquals(lines.length, 9);
+        for (String line: lines) assertTrue(line.contains(" [main] ERROR a.logger.child - Message number "), line);
+    }
+}
@@ -0,0 +1,104 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.usrz.libs.logging.JournalSink.Encoding;
+
+public class JournalSinkBenchmarkTest extends Assert {
+
+    static { Logging.init(true); }
+
+    private File directory;
+
+    @BeforeMethod
+    public void before()
+    throws IOException {
+        directory = Files.createTempDirectory("JournalSinkBenchmarkTest").toFile();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void after() {
+        for (File file: directory.listFiles()) file.delete();
+        directory.delete();
+    }
+
+    /* ====================================================================== */
+
+    private void benchmarkJournal(int threads, Encoding encoding)
+    throws IOException {
+        final JournalSink sink = new JournalSink(directory, "benchmark", 64 * 1024 * 1024, 1000, encoding);
+        final LogSink previous = Logging.setSink(sink);
+        try {
+            final Log log = Log.getLog("filebench.journal");
+            Benchmark.runConcurrently("JournalSink (" + encoding.name().toLowerCase() + ")", threads, new Benchmark.Operation() {
+                @Override
+                public void run(int iteration) {
+                    log.info("Message number %d", iteration);
+                }
+            }, null);
+        } finally {
+            Logging.setSink(previous);
+            sink.close();
+        }
+        assertEquals(sink.getDroppedEvents(), 0);
+    }
+
+    /* ====================================================================== */
+
+    @Test
+    public void benchmarkJournal1Thread()
+    throws IOException {
+        benchmarkJournal(1, Encoding.TEXT);
+    }
+
+    @Test
+    public void benchmarkJournal8Threads()
+    throws IOException {
+        benchmarkJournal(8, Encoding.TEXT);
+    }
+
+    @Test
+    public void benchmarkJournal64Threads()
+    throws IOException {
+        benchmarkJournal(64, Encoding.TEXT);
+    }
+
+    @Test
+    public void benchmarkBinaryJournal1Thread()
+    throws IOException {
+        benchmarkJournal(1, Encoding.BINARY);
+    }
+
+    @Test
+    public void benchmarkBinaryJournal8Threads()
+    throws IOException {
+        benchmarkJournal(8, Encoding.BINARY);
+    }
+
+    @Test
+    public void benchmarkBinaryJournal64Threads()
+    throws IOException {
+        benchmarkJournal(64, Encoding.BINARY);
+    }
+}
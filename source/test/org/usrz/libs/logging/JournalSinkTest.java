@@ -0,0 +1,271 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.slf4j.spi.LocationAwareLogger.INFO_INT;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class JournalSinkTest extends Assert {
+
+    static { Logging.init(true); }
+
+    private File directory;
+
+    @BeforeMethod
+    public void before()
+    throws IOException {
+        directory = Files.createTempDirectory("JournalSinkTest").toFile();
+    }
+
+    @AfterMethod
+    public void after() {
+        for (File file: directory.listFiles()) file.delete();
+        directory.delete();
+    }
+
+    /* ====================================================================== */
+
+    private static List<String> read(JournalReader reader) {
+        final List<String> lines = new ArrayList<>();
+        ByteBuffer payload;
+        while ((payload = reader.next()) != null) lines.add(UTF_8.decode(payload).toString());
+        return lines;
+    }
+
+    private List<String> read(String name)
+    throws IOException {
+        final List<String> lines = new ArrayList<>();
+        for (File segment: JournalSink.segments(directory, name)) {
+            final JournalReader reader = new JournalReader(segment);
+            lines.addAll(read(reader));
+            assertFalse(reader.isCorrupted(), "Segment " + segment + " corrupted");
+        }
+        return lines;
+    }
+
+    private static void append(LogSink sink, String threadName, String message) {
+        sink.append(System.currentTimeMillis(), threadName, "a.logger", INFO_INT, message, null, null);
+    }
+
+    /* ====================================================================== */
+
+    @Test
+    public void testAppend()
+    throws IOException {
+        final JournalSink sink = new JournalSink(directory, "test", 65536);
+        append(sink, "main", "First message");
+        sink.append(0, "other", "b.logger", INFO_INT, "Hello, {}!", new Object[] { "world" }, null);
+        sink.close();
+
+        assertEquals(JournalSink.segments(directory, "test").length, 1);
+
+        final List<String> lines = read("test");
+        assertEquals(lines.size(), 2);
+        assertTrue(lines.get(0).matches(".* \\[main\\] INFO  a\\.logger - First message\n"), lines.get(0));
+        assertTrue(lines.get(1).matches(".* \\[other\\] INFO  b\\.logger - Hello, world!\n"), lines.get(1));
+    }
+
+    @Test
+    public void testRollOver()
+    throws IOException {
+        final JournalSink sink = new JournalSink(directory, "test", 4096, 10);
+        for (int x = 0; x < 500; x ++) append(sink, "main", "Message number " + x);
+        sink.close();
+
+        final File[] segments = JournalSink.segments(directory, "test");
+        assertTrue(segments.length > 5, "Only " + segments.length + " segments");
+        for (int x = 0; x < segments.length; x ++) {
+            assertEquals(new JournalReader(segments[x]).getSequence(), x + 1);
+        }
+
+        final List<String> lines = read("test");
+        assertEquals(lines.size(), 500);
+        for (int x = 0; x < 500; x ++) assertTrue(lines.get(x).endsWith(" - Message number " + x + "\n"), lines.get(x));
+
+        /* A new sink on the same directory never touches old segments */
+        final JournalSink another = new JournalSink(directory, "test", 4096);
+        append(another, "main", "Message number 500");
+        another.close();
+
+        assertEquals(JournalSink.segments(directory, "test").length, segments.length + 1);
+        assertEquals(read("test").size(), 501);
+    }
+
+    @Test
+    public void testConcurrentAppend()
+    throws Exception {
+        final JournalSink sink = new JournalSink(directory, "test", 16384);
+        final Thread[] threads = new Thread[8];
+        for (int x = 0; x < threads.length; x ++) {
+            threads[x] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    final String name = Thread.currentThread().getName();
+                    for (int y = 0; y < 2000; y ++) append(sink, name, "Message " + y);
+                }
+            }, "Thread-" + x);
+            threads[x].start();
+        }
+        for (Thread thread: threads) thread.join();
+        sink.close();
+
+        final List<String> lines = read("test");
+        assertEquals(lines.size(), 16000);
+
+        /* Each thread's messages are complete, and in order */
+        final int[] next = new int[threads.length];
+        for (String line: lines) {
+            final int thread = line.charAt(line.indexOf("[Thread-") + 8) - '0';
+            assertTrue(line.endsWith(" - Message " + next[thread] ++ + "\n"), line);
+        }
+    }
+
+    @Test
+    public void testRollOverFailure()
+    throws Exception {
+        final JournalSink sink = new JournalSink(directory, "test", 4096);
+
+        /* No directory, no new segments: events are dropped, nobody hangs */
+        for (File file: directory.listFiles()) assertTrue(file.delete(), "Unable to delete " + file);
+        assertTrue(directory.delete(), "Unable to delete " + directory);
+
+        final List<Thread> threads = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread ++) {
+            threads.add(new Thread("Writer-" + thread) {
+                @Override
+                public void run() {
+                    for (int event = 0; event < 100; event ++) {
+                        append(sink, getName(), "A message long enough to fill up a few segments " + event);
+                    }
+                }
+            });
+        }
+        for (Thread thread: threads) thread.start();
+        for (Thread thread: threads) thread.join(30000);
+        for (Thread thread: threads) assertFalse(thread.isAlive(), thread.getName() + " hung");
+        assertTrue(sink.getDroppedEvents() > 0, "No events dropped");
+
+        /* Once the directory is back, the next writer rolls over */
+        assertTrue(directory.mkdir(), "Unable to create " + directory);
+        final long dropped = sink.getDroppedEvents();
+        append(sink, "main", "Back");
+        assertEquals(sink.getDroppedEvents(), dropped);
+        sink.close();
+
+        final List<String> lines = read("test");
+        assertTrue(lines.get(lines.size() - 1).trim().endsWith("Back"), "Last event not written");
+    }
+
+    @Test
+    public void testTruncatedSegments()
+    throws IOException {
+        final JournalSink sink = new JournalSink(directory, "test", 65536);
+        for (int x = 0; x < 100; x ++) append(sink, "main", "Message number " + x);
+        sink.close();
+
+        /* Remember where each record ends */
+        final File segment = JournalSink.segments(directory, "test")[0];
+        final JournalReader reader = new JournalReader(segment);
+        final List<String> expected = new ArrayList<>();
+        final List<Integer> ends = new ArrayList<>();
+        ByteBuffer payload;
+        while ((payload = reader.next()) != null) {
+            expected.add(UTF_8.decode(payload).toString());
+            ends.add(reader.getPosition());
+        }
+        assertEquals(expected.size(), 100);
+
+        /* Truncate the segment everywhere, as if we crashed writing it */
+        final File truncated = new File(directory, "truncated");
+        final int last = ends.get(ends.size() - 1);
+        for (int length = JournalSink.HEADER_SIZE; length <= last; length += 7) {
+            Files.copy(segment.toPath(), truncated.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            try (RandomAccessFile file = new RandomAccessFile(truncated, "rw")) {
+                file.setLength(length);
+            }
+
+            int complete = 0;
+            while ((complete < ends.size()) && (ends.get(complete) <= length)) complete ++;
+
+            final JournalReader truncatedReader = new JournalReader(truncated);
+            assertEquals(read(truncatedReader), expected.subList(0, complete), "Truncated at " + length);
+        }
+    }
+
+    @Test
+    public void testTornRecords()
+    throws IOException {
+        final JournalSink sink = new JournalSink(directory, "test", 65536);
+        for (int x = 0; x < 10; x ++) append(sink, "main", "Message number " + x);
+        sink.close();
+
+        final File segment = JournalSink.segments(directory, "test")[0];
+        final JournalReader reader = new JournalReader(segment);
+        for (int x = 0; x < 5; x ++) reader.next();
+        final int position = reader.getPosition();
+
+        /* Crashed before the length of the sixth record was written */
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(position);
+            file.writeInt(0);
+        }
+        final JournalReader unwritten = new JournalReader(segment);
+        assertEquals(read(unwritten).size(), 5);
+        assertFalse(unwritten.isCorrupted());
+
+        /* Crashed before the whole payload of the sixth record was written */
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(position);
+            file.writeInt(40);
+            file.seek(position + JournalSink.RECORD_HEADER_SIZE + 20);
+            file.writeInt(0);
+        }
+        final JournalReader torn = new JournalReader(segment);
+        assertEquals(read(torn).size(), 5);
+        assertTrue(torn.isCorrupted());
+    }
+
+    @Test
+    public void testInstalledSink()
+    throws IOException {
+        final JournalSink sink = new JournalSink(directory, "test", 65536);
+        final LogSink previous = Logging.setSink(sink);
+        try {
+            Log.getLog(JournalSinkTest.class).info("Hello, %s!", "world");
+        } finally {
+            Logging.setSink(previous);
+            sink.close();
+        }
+
+        final List<String> lines = read("test");
+        assertEquals(lines.size(), 1);
+        assertTrue(lines.get(0).endsWith(" INFO  org.usrz.libs.logging.JournalSinkTest - Hello, world!\n"), lines.get(0));
+    }
+}
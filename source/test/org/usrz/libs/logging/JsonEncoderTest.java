@@ -0,0 +1,278 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.slf4j.spi.LocationAwareLogger.DEBUG_INT;
+import static org.slf4j.spi.LocationAwareLogger.ERROR_INT;
+import static org.slf4j.spi.LocationAwareLogger.INFO_INT;
+import static org.slf4j.spi.LocationAwareLogger.TRACE_INT;
+import static org.slf4j.spi.LocationAwareLogger.WARN_INT;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.slf4j.MDC;
+import org.slf4j.helpers.MessageFormatter;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.usrz.libs.logging.JournalSink.Encoding;
+
+public class JsonEncoderTest extends Assert {
+
+    static { Logging.init(true); }
+
+    private final JsonEncoder encoder = new JsonEncoder();
+
+    @AfterMethod
+    public void after() {
+        MDC.clear();
+    }
+
+    /* ====================================================================== */
+
+    private String encode(long timestamp, int level, String message, Object[] arguments, Throwable throwable) {
+        return UTF_8.decode(encoder.encode(timestamp, "main", "a.logger", level, message, arguments, throwable)).toString();
+    }
+
+    private String message(String message, Object... arguments) {
+        final String json = encode(0, INFO_INT, message, arguments, null);
+        final String prefix = "{\"timestamp\":\"1970-01-01T00:00:00.000Z\",\"level\":\"INFO\",\"logger\":\"a.logger\",\"thread\":\"main\",\"message\":\"";
+        assertTrue(json.startsWith(prefix), json);
+        assertTrue(json.endsWith("\"}\n"), json);
+        return json.substring(prefix.length(), json.length() - 3);
+    }
+
+    private String template(String format, Object... arguments) {
+        final String json = UTF_8.decode(encoder.encodeTemplate(0, "main", "a.logger", INFO_INT, format, arguments, null)).toString();
+        return json.substring(json.indexOf("\"message\":\"") + 11, json.length() - 3);
+    }
+
+    /* ====================================================================== */
+
+    @Test
+    public void testEncode() {
+        assertEquals(encode(1400000000123L, WARN_INT, "Hello, world!", null, null),
+                     "{\"timestamp\":\"2014-05-13T16:53:20.123Z\",\"level\":\"WARN\",\"logger\":\"a.logger\","
+                   + "\"thread\":\"main\",\"message\":\"Hello, world!\"}\n");
+
+        assertTrue(encode(0, TRACE_INT, "x", null, null).contains("\"level\":\"TRACE\""));
+        assertTrue(encode(0, DEBUG_INT, "x", null, null).contains("\"level\":\"DEBUG\""));
+        assertTrue(encode(0, INFO_INT, "x", null, null).contains("\"level\":\"INFO\""));
+        assertTrue(encode(0, ERROR_INT, "x", null, null).contains("\"level\":\"ERROR\""));
+    }
+
+    @Test
+    public void testEscape() {
+        assertEquals(message("Quotes \" and backslashes \\"), "Quotes \\\" and backslashes \\\\");
+        assertEquals(message("Lines\nand\ttabs\r\b\f"), "Lines\\nand\\ttabs\\r\\b\\f");
+        assertEquals(message("Control \u0001\u001f"), "Control \\u0001\\u001f");
+        assertEquals(message("Unicode \u00e8 \u2603 \ud83d\ude00 \u007f"), "Unicode \u00e8 \u2603 \ud83d\ude00 \u007f");
+        assertEquals(message("Unpaired \ud83d surrogate"), "Unpaired ? surrogate");
+
+        final StringBuilder builder = new StringBuilder();
+        for (int x = 0; x < 10000; x ++) builder.append("\"\u2603");
+        assertEquals(message(builder.toString()), builder.toString().replace("\"", "\\\""));
+    }
+
+    @Test
+    public void testTimestamps() {
+        final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        final long[] timestamps = { 0, -1, 951782400000L, 951868799999L, 253402300799999L, -12219292800000L };
+        for (long timestamp: timestamps) {
+            assertTrue(encode(timestamp, INFO_INT, "x", null, null).contains("\"timestamp\":\"" + format.format(timestamp) + "\""),
+                       format.format(timestamp));
+        }
+
+        final Random random = new Random();
+        for (int x = 0; x < 10000; x ++) {
+            final long timestamp = random.nextLong() % 253402300799999L;
+            final String expected = format.format(timestamp);
+            if (expected.startsWith("-") || timestamp < -12219292800000L) continue; // Julian calendar
+            assertTrue(encode(timestamp, INFO_INT, "x", null, null).contains("\"timestamp\":\"" + expected + "\""), expected);
+        }
+    }
+
+    @Test
+    public void testSLF4JMessages() {
+        final Object[][] tests = {
+            { "Hello, {}!", "world" },
+            { "{} {} {}", 1, 2L, (short) 3 },
+            { "Not enough {} {}", "arguments" },
+            { "Too many {}", "arguments", "here" },
+            { "Escaped \\{} and {}", "this" },
+            { "Double escaped \\\\{}", "this" },
+            { "Types {} {} {} {}", true, 'c', null, new int[] { 1, 2 } },
+            { "Min {} and max {}", Long.MIN_VALUE, Long.MAX_VALUE },
+            { "Objects {} and {}", new Object[] { "a", 1 }, 1.5 },
+            { "Unterminated {", "argument" },
+        };
+
+        for (Object[] test: tests) {
+            final String format = (String) test[0];
+            final Object[] arguments = new Object[test.length - 1];
+            System.arraycopy(test, 1, arguments, 0, arguments.length);
+
+            final String expected = MessageFormatter.arrayFormat(format, arguments).getMessage().replace("\\", "\\\\");
+            assertEquals(message(format, arguments), expected, format);
+        }
+    }
+
+    @Test
+    public void testTemplates() {
+        final Object[][] tests = {
+            { "Hello, %s!", "world" },
+            { "%d %d %d %d", 1, 2L, (short) 3, (byte) -4 },
+            { "%s %s %s", true, 'c', null },
+            { "Percent %% and newline%n", },
+            { "Formatted %5d and %.2f", 1, Math.PI },
+            { "Objects %s", new Object() { @Override public String toString() { return "object"; } } },
+        };
+
+        for (Object[] test: tests) {
+            final String format = (String) test[0];
+            final Object[] arguments = new Object[test.length - 1];
+            System.arraycopy(test, 1, arguments, 0, arguments.length);
+
+            final String expected = String.format(format, arguments).replace("\n", "\\n");
+            assertEquals(template(format, arguments), expected, format);
+        }
+    }
+
+    @Test
+    public void testMDC() {
+        assertFalse(encode(0, INFO_INT, "x", null, null).contains("\"mdc\""));
+
+        MDC.put("user", "pier");
+        assertTrue(encode(0, INFO_INT, "x", null, null).endsWith("\"message\":\"x\",\"mdc\":{\"user\":\"pier\"}}\n"));
+
+        MDC.put("request", "a \"quoted\" value");
+        final String json = encode(0, INFO_INT, "x", null, null);
+        assertTrue(json.contains("\"user\":\"pier\""), json);
+        assertTrue(json.contains("\"request\":\"a \\\"quoted\\\" value\""), json);
+
+        MDC.remove("user");
+        MDC.remove("request");
+        assertFalse(encode(0, INFO_INT, "x", null, null).contains("\"mdc\""));
+    }
+
+    @Test
+    public void testThrowable() {
+        final Exception exception = new Exception("Oops");
+        final String json = encode(0, ERROR_INT, "Failed", null, exception);
+        final String expected = TextEncoder.stackTrace(exception).toString().replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+        assertTrue(json.endsWith("\"message\":\"Failed\",\"throwable\":\"" + expected + "\"}\n"), json);
+        assertTrue(json.contains("\"throwable\":\"java.lang.Exception: Oops\\n\\tat "), json);
+    }
+
+    @Test
+    public void testWithoutLogback()
+    throws Exception {
+        /* Only our classes and SLF4J's API, without Logback or any binding */
+        final URL[] urls = new URL[] {
+                JsonEncoder.class.getProtectionDomain().getCodeSource().getLocation(),
+                MDC.class.getProtectionDomain().getCodeSource().getLocation() };
+
+        try (URLClassLoader loader = new URLClassLoader(urls, null)) {
+            final Class<?> type = loader.loadClass(JsonEncoder.class.getName());
+            final Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            final Method encode = type.getMethod("encode", long.class, String.class, String.class, int.class,
+                                                 String.class, Object[].class, Throwable.class);
+            encode.setAccessible(true);
+
+            final ByteBuffer buffer = (ByteBuffer) encode.invoke(constructor.newInstance(), 0L, "main", "a.logger",
+                                                                 INFO_INT, "No Logback", null, null);
+            assertTrue(UTF_8.decode(buffer).toString().endsWith(",\"message\":\"No Logback\"}\n"));
+        }
+    }
+
+    @Test
+    public void testNoAllocations() {
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+
+        /* Box everything beforehand, that's the caller's garbage */
+        final Object[] slf4j = { "world", 12345, Long.MAX_VALUE };
+        final Object[] template = { "world", 12345 };
+        MDC.put("user", "pier");
+        MDC.put("request", "\u2603 request");
+
+        /* The first pass warms up (and grows buffers), then we must not allocate */
+        final int iterations = 200000;
+        long minimum = Long.MAX_VALUE;
+        for (int pass = 0; (pass < 5) && (minimum >= 1024); pass ++) {
+            final long before = threads.getThreadAllocatedBytes(thread);
+            for (int x = 0; x < iterations; x ++) {
+                encoder.encode(1400000000000L + x, "main", "a.logger", INFO_INT, "Hello, \"{}\" {} {}!", slf4j, null);
+                encoder.encodeTemplate(1400000000000L + x, "main", "a.logger", INFO_INT, "Hello, %s number %d", template, null);
+            }
+            final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+            /*
+             * Deoptimizing and resolving constants might still allocate a few
+             * bytes once in a while, but allocating anything per event would
+             * show up as megabytes in every single pass.
+             */
+            if (pass > 0) minimum = Math.min(minimum, allocated);
+        }
+        assertTrue(minimum < 1024, "Allocated " + minimum + " bytes for " + (iterations * 2) + " events");
+    }
+
+    /* ====================================================================== */
+
+    @Test
+    public void testFileSink()
+    throws IOException {
+        final File file = File.createTempFile("JsonEncoderTest", ".log");
+        try {
+            final FileSink sink = new FileSink(file, 0, 0, 1024, null, Encoding.JSON);
+            MDC.put("user", "pier");
+            sink.append(0, "main", "a.logger", INFO_INT, "Hello, {}!", new Object[] { "world" }, null);
+            sink.appendTemplate(1, "main", "a.logger", WARN_INT, "Number %d", new Object[] { 1 }, null);
+            sink.close();
+
+            final List<String> lines = Files.readAllLines(file.toPath(), UTF_8);
+            assertEquals(lines.size(), 2);
+            assertEquals(lines.get(0), "{\"timestamp\":\"1970-01-01T00:00:00.000Z\",\"level\":\"INFO\",\"logger\":\"a.logger\","
+                                     + "\"thread\":\"main\",\"message\":\"Hello, world!\",\"mdc\":{\"user\":\"pier\"}}");
+            assertEquals(lines.get(1), "{\"timestamp\":\"1970-01-01T00:00:00.001Z\",\"level\":\"WARN\",\"logger\":\"a.logger\","
+                                     + "\"thread\":\"main\",\"message\":\"Number 1\",\"mdc\":{\"user\":\"pier\"}}");
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testFileSinkBinary()
+    throws IOException {
+        new FileSink(new File("never.log"), 0, 0, 1024, null, Encoding.BINARY);
+    }
+}
@@ -0,0 +1,227 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static org.slf4j.spi.LocationAwareLogger.DEBUG_INT;
+import static org.slf4j.spi.LocationAwareLogger.ERROR_INT;
+import static org.slf4j.spi.LocationAwareLogger.INFO_INT;
+import static org.slf4j.spi.LocationAwareLogger.TRACE_INT;
+import static org.slf4j.spi.LocationAwareLogger.WARN_INT;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+public class LoadShedderTest extends Assert {
+
+    static { Logging.init(true); }
+
+    private static final Log log = new Log();
+
+    @AfterMethod(alwaysRun = true)
+    public void after() {
+        Logging.setLoadShedder(null);
+    }
+
+    /* ====================================================================== */
+
+    @Test
+    public void testShedAndRecover()
+    throws InterruptedException {
+        /* Budget of 500 microseconds, timing all events, recovering after 100 ms */
+        final LoadShedder shedder = new LoadShedder(500, WARN_INT, 100, 1);
+        final RecordingSink sink = new RecordingSink();
+        final LogSink previous = Logging.setSink(sink);
+        try {
+            assertNull(Logging.setLoadShedder(shedder));
+            assertSame(Logging.getLoadShedder(), shedder);
+
+            /* Slow deliveries: a few are enough to exceed our budget */
+            sink.delay = 2;
+            for (int index = 0; (index < 100) && (!shedder.isShedding()); index ++) {
+                log.info("Slow %d", index);
+            }
+            assertTrue(shedder.isShedding(), "Not shedding load");
+            assertEquals(shedder.getShedCount(), 1);
+            assertTrue(shedder.getLatency() > 500000, "Latency " + shedder.getLatency());
+            assertEquals(LogDispatcher.getMinimumLevel(), WARN_INT);
+
+            final String shedding = sink.last(WARN_INT);
+            assertNotNull(shedding, "No transition reported");
+            assertTrue(shedding.startsWith("Logging latency of "), "Wrong message " + shedding);
+            assertTrue(shedding.endsWith(" exceeds the budget of 500 us: dropping events below WARN"), "Wrong message " + shedding);
+
+            /* Less important events are dropped, and counted */
+            sink.delay = 0;
+            final int count = sink.size();
+            log.info("Dropped");
+            log.debug("Dropped");
+            assertEquals(sink.size(), count);
+            assertEquals(shedder.getEventsShed(), 2);
+
+            /* More important events still go through */
+            log.warn("Kept");
+            assertEquals(sink.size(), count + 1);
+
+            /* Fast (or no) deliveries, we recover */
+            for (int index = 0; (index < 500) && (shedder.isShedding()); index ++) Thread.sleep(10);
+            assertFalse(shedder.isShedding(), "Still shedding load");
+            assertEquals(shedder.getRecoverCount(), 1);
+            assertEquals(LogDispatcher.getMinimumLevel(), TRACE_INT);
+
+            final String recovered = sink.last(WARN_INT);
+            assertTrue(recovered.endsWith(" back within the budget of 500 us: no longer dropping events below WARN"), "Wrong message " + recovered);
+
+            log.info("Kept again");
+            assertEquals(sink.last(INFO_INT), "Kept again");
+        } finally {
+            Logging.setLoadShedder(null);
+            Logging.setSink(previous);
+        }
+    }
+
+    @Test
+    public void testEffectiveLevels() {
+        final LoadShedder shedder = new LoadShedder(1, WARN_INT, 1000, 1);
+        final RecordingSink sink = new RecordingSink();
+        final LogSink previous = Logging.setSink(sink);
+        try {
+            Logging.setLoadShedder(shedder);
+
+            final org.apache.commons.logging.Log bridged = new CommonsLoggingAdapter(this.getClass().getName());
+            assertTrue(bridged.isInfoEnabled());
+
+            /* Any delivery exceeds a budget of one microsecond */
+            sink.delay = 2;
+            log.warn("Slow");
+            assertTrue(shedder.isShedding(), "Not shedding load");
+            sink.delay = 0;
+
+            /* Levels are refreshed asynchronously, don't wait */
+            EffectiveLevels.refresh();
+            assertFalse(bridged.isInfoEnabled());
+            assertTrue(bridged.isWarnEnabled());
+
+            /* Closing the shedder restores our levels */
+            Logging.setLoadShedder(null);
+            assertFalse(shedder.isShedding());
+            assertEquals(LogDispatcher.getMinimumLevel(), TRACE_INT);
+            EffectiveLevels.refresh();
+            assertTrue(bridged.isInfoEnabled());
+        } finally {
+            Logging.setLoadShedder(null);
+            Logging.setSink(previous);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidBudget() {
+        new LoadShedder(0, WARN_INT, 1000);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidLevel() {
+        new LoadShedder(100, TRACE_INT, 1000);
+    }
+
+    @Test
+    public void testMalformedProperties()
+    throws Exception {
+        try {
+            System.setProperty(Logging.SHEDDING_BUDGET_PROPERTY, "tight");
+            assertNull(LoadShedder.fromProperties());
+
+            System.setProperty(Logging.SHEDDING_BUDGET_PROPERTY, "100");
+            System.setProperty(Logging.SHEDDING_LEVEL_PROPERTY, "loud");
+            assertNull(LoadShedder.fromProperties());
+
+            System.setProperty(Logging.SHEDDING_LEVEL_PROPERTY, "info");
+            System.setProperty(Logging.SHEDDING_RECOVERY_PROPERTY, "-1");
+            assertNull(LoadShedder.fromProperties());
+
+            System.setProperty(Logging.SHEDDING_RECOVERY_PROPERTY, "1000");
+            final LoadShedder shedder = LoadShedder.fromProperties();
+            assertNotNull(shedder);
+            shedder.close();
+        } finally {
+            System.clearProperty(Logging.SHEDDING_BUDGET_PROPERTY);
+            System.clearProperty(Logging.SHEDDING_LEVEL_PROPERTY);
+            System.clearProperty(Logging.SHEDDING_RECOVERY_PROPERTY);
+        }
+    }
+
+    @Test
+    public void testParseLevel() {
+        final Locale locale = Locale.getDefault();
+        try {
+            /* In Turkish "info".toUpperCase() has a dotted capital I */
+            Locale.setDefault(new Locale("tr", "TR"));
+            assertEquals(LoadShedder.parseLevel("debug"), DEBUG_INT);
+            assertEquals(LoadShedder.parseLevel(" info "), INFO_INT);
+            assertEquals(LoadShedder.parseLevel("Warn"), WARN_INT);
+            assertEquals(LoadShedder.parseLevel("ERROR"), ERROR_INT);
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    /* ====================================================================== */
+
+    private static class RecordingSink implements LogSink {
+
+        private final List<Object[]> events = Collections.synchronizedList(new ArrayList<Object[]>());
+        private volatile long delay = 0;
+
+        @Override
+        public void append(long timestamp, String threadName, String loggerName, int level,
+                           String message, Object[] arguments, Throwable throwable) {
+            events.add(new Object[] { level, message });
+            if (delay > 0) try {
+                Thread.sleep(delay);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private int size() {
+            return events.size();
+        }
+
+        private String last(int level) {
+            synchronized (events) {
+                for (int index = events.size() - 1; index >= 0; index --) {
+                    if (events.get(index)[0].equals(level)) return (String) events.get(index)[1];
+                }
+                return null;
+            }
+        }
+
+        @Override
+        public void flush() {
+            /* Nothing to do */
+        }
+
+        @Override
+        public void close() {
+            /* Nothing to do */
+        }
+    }
+}
@@ -15,6 +15,9 @@
  * ========================================================================== */
 package org.usrz.libs.logging;
 
+import java.lang.reflect.Field;
+
+import org.slf4j.Logger;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -34,6 +37,29 @@ public class LogNamingTest extends Assert {
         assertEquals(new Log(String.class).getName(), "java.lang.String");
     }
 
+    @Test
+    public void testCanonicalLog() {
+        assertSame(Log.getLog("fooBar!"), Log.getLog("fooBar!"));
+        assertSame(Log.getLog(String.class), Log.getLog("java.lang.String"));
+        assertSame(Log.getLog(Logger.ROOT_LOGGER_NAME), Log.ROOT_LOG);
+        assertEquals(Log.getLog((String) null).getName(), this.getClass().getName());
+        assertEquals(Log.getLog((Class<?>) null).getName(), this.getClass().getName());
+    }
+
+    @Test
+    public void testLazyResolution()
+    throws Exception {
+        final Field field = Log.class.getDeclaredField("logger");
+        field.setAccessible(true);
+
+        final Log log = new Log("lazy.fooBar");
+        assertEquals(log.getName(), "lazy.fooBar");
+        assertNull(field.get(log), "Logger resolved at construction");
+
+        log.info("Hello, world!");
+        assertSame(field.get(log), SLF4JFactory.getLogger("lazy.fooBar"));
+    }
+
     @Test
     public void testClassLog() {
         assertEquals(log.getName(), this.getClass().getName());
@@ -0,0 +1,86 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class LogPointBenchmarkTest extends Assert {
+
+    static { Logging.init(true); }
+
+    private static final Log enabled = new Log("benchmark.points");
+    private static final Log disabled = new Log("org.usrz.libs.logging.LevelErrorTest");
+
+    private static final LogPoint ENABLED = enabled.infoPoint("Processed %d items in %d ms");
+    private static final LogPoint DISABLED = disabled.infoPoint("Processed %d items in %d ms");
+    private static final LogPoint LIMITED = enabled.warnPoint("Retrying %d after %d ms").limit(100);
+
+    /* ====================================================================== */
+
+    @Test
+    public void benchmarkLog() {
+        Benchmark.run("Log.info(format, ...) (enabled)", new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                enabled.info("Processed %d items in %d ms", iteration, 12);
+            }
+        });
+    }
+
+    @Test
+    public void benchmarkLogPoint() {
+        Benchmark.run("LogPoint.log(...) (enabled)", new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                ENABLED.log(iteration, 12);
+            }
+        });
+        assertTrue(ENABLED.getCount() > 0);
+    }
+
+    @Test
+    public void benchmarkLogDisabled() {
+        Benchmark.run("Log.info(format, ...) (disabled)", new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                disabled.info("Processed %d items in %d ms", iteration, 12);
+            }
+        });
+    }
+
+    @Test
+    public void benchmarkLogPointDisabled() {
+        Benchmark.run("LogPoint.log(...) (disabled)", new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                DISABLED.log(iteration, 12);
+            }
+        });
+        assertEquals(DISABLED.getCount(), 0);
+    }
+
+    @Test
+    public void benchmarkLogPointLimited() {
+        Benchmark.run("LogPoint.log(...) (100 per second)", new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                LIMITED.log(iteration, 12);
+            }
+        });
+        assertTrue(LIMITED.getSuppressed() > 0);
+    }
+}
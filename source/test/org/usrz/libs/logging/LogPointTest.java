@@ -0,0 +1,320 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static org.slf4j.spi.LocationAwareLogger.INFO_INT;
+
+import java.math.BigInteger;
+import java.util.Formattable;
+import java.util.Formatter;
+import java.util.IllegalFormatException;
+import java.util.Locale;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import ch.qos.logback.classic.Level;
+
+public class LogPointTest extends Assert {
+
+    static { Logging.init(true); }
+
+    private static final Log log = new Log();
+
+    private static final LogPoint TRACE = log.tracePoint("Trace %s");
+    private static final LogPoint DEBUG = log.debugPoint("Debug %d");
+    private static final LogPoint INFO = log.infoPoint("Processed %d items in %d ms");
+    private static final LogPoint WARN = log.warnPoint("Warn %s %s %s %s");
+    private static final LogPoint ERROR = log.errorPoint("Failed");
+
+    /* ====================================================================== */
+
+    @Test
+    public void testLog() {
+        TRACE.log("one");
+        AppenderForTests.hasLastEvent().assertCaller(this)
+                                       .assertClass(this.getClass())
+                                       .assertLevel(Level.TRACE)
+                                       .assertMessage("Trace one")
+                                       .assertThrowable(null);
+
+        DEBUG.log(1);
+        AppenderForTests.hasLastEvent().assertCaller(this).assertLevel(Level.DEBUG).assertMessage("Debug 1");
+
+        INFO.log(12, 34L);
+        AppenderForTests.hasLastEvent().assertCaller(this).assertLevel(Level.INFO).assertMessage("Processed 12 items in 34 ms");
+
+        WARN.log("a", "b", "c", "d");
+        AppenderForTests.hasLastEvent().assertCaller(this).assertLevel(Level.WARN).assertMessage("Warn a b c d");
+
+        ERROR.log();
+        AppenderForTests.hasLastEvent().assertCaller(this).assertLevel(Level.ERROR).assertMessage("Failed");
+    }
+
+    @Test
+    public void testLogThrowable() {
+        final Exception exception = new Exception("Oops");
+
+        ERROR.log(exception);
+        AppenderForTests.hasLastEvent().assertCaller(this).assertMessage("Failed").assertThrowable(exception);
+
+        TRACE.log(exception, "one");
+        AppenderForTests.hasLastEvent().assertCaller(this).assertMessage("Trace one").assertThrowable(exception);
+
+        INFO.log(exception, 1, 2);
+        AppenderForTests.hasLastEvent().assertCaller(this).assertMessage("Processed 1 items in 2 ms").assertThrowable(exception);
+
+        WARN.log(exception, "a", "b", "c", "d");
+        AppenderForTests.hasLastEvent().assertCaller(this).assertMessage("Warn a b c d").assertThrowable(exception);
+    }
+
+    @Test
+    public void testCount() {
+        final LogPoint point = log.infoPoint("Counted %d");
+        assertEquals(point.getCount(), 0);
+        for (int x = 0; x < 10; x ++) {
+            point.log(x);
+            AppenderForTests.hasLastEvent().assertMessage("Counted " + x);
+        }
+        assertEquals(point.getCount(), 10);
+    }
+
+    @Test
+    public void testLevelChanges() {
+        final String name = this.getClass().getName() + ".levels";
+        final LogPoint point = new Log(name).infoPoint("Info %s");
+        final ch.qos.logback.classic.Logger logback = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(name);
+
+        assertTrue(point.isEnabled());
+        try {
+            logback.setLevel(Level.WARN);
+            assertFalse(point.isEnabled());
+            point.log("not logged");
+            AppenderForTests.hasNoLastEvent("at Warn level");
+            assertEquals(point.getCount(), 0);
+
+            logback.setLevel(Level.INFO);
+            assertTrue(point.isEnabled());
+            point.log("logged");
+            AppenderForTests.hasLastEvent("at Info level").assertMessage("Info logged");
+            assertEquals(point.getCount(), 1);
+        } finally {
+            logback.setLevel(null);
+        }
+    }
+
+    @Test
+    public void testDisabled() {
+        final LogPoint point = new Log("org.usrz.libs.logging.LevelErrorTest").warnPoint("Nothing %s");
+        assertFalse(point.isEnabled());
+        point.log("here");
+        AppenderForTests.hasNoLastEvent("Disabled event was logged");
+        assertEquals(point.getCount(), 0);
+    }
+
+    @Test
+    public void testTemplateSink() {
+        final RecordingSink sink = new RecordingSink();
+        final LogSink previous = Logging.setSink(sink);
+        try {
+            INFO.log(1, 2);
+        } finally {
+            Logging.setSink(previous);
+        }
+        assertEquals(sink.format, "Processed %d items in %d ms");
+        assertEquals(sink.arguments, new Object[] { 1, 2 });
+        assertEquals(sink.level, INFO_INT);
+    }
+
+    @Test
+    public void testLimit() {
+        /* A window long enough not to roll while we test */
+        final LogPoint limited = log.warnPoint("Retrying %s").throttle(Throttle.limit(3, 60000));
+
+        for (int index = 0; index < 100; index ++) {
+            limited.log(index);
+            if (index < 3) AppenderForTests.hasLastEvent().assertLevel(Level.WARN).assertMessage("Retrying " + index);
+            else AppenderForTests.hasNoLastEvent("Event " + index + " not suppressed");
+        }
+
+        assertEquals(limited.getCount(), 3);
+        assertEquals(limited.getSuppressed(), 97);
+        limited.summarize();
+        AppenderForTests.hasLastEvent().assertMessage("Suppressed 97 events (at most 3 every 60000 ms): Retrying %s");
+
+        /* A new window lets events through again */
+        final LogPoint rolling = log.warnPoint("Rolling %s").throttle(Throttle.limit(1, 1));
+        for (int index = 0; index < 3; index ++) {
+            final long now = System.currentTimeMillis();
+            while (System.currentTimeMillis() == now) Thread.yield();
+            rolling.log(index);
+            AppenderForTests.hasLastEvent().assertMessage("Rolling " + index);
+        }
+    }
+
+    @Test
+    public void testSample() {
+        final LogPoint sampled = log.infoPoint("Sampled %d").sample(10);
+
+        for (int index = 0; index < 100; index ++) {
+            sampled.log(index);
+            if ((index % 10) == 0) AppenderForTests.hasLastEvent().assertMessage("Sampled " + index);
+            else AppenderForTests.hasNoLastEvent("Event " + index + " not sampled out");
+        }
+
+        assertEquals(sampled.getCount(), 10);
+        assertEquals(sampled.getSuppressed(), 90);
+        sampled.summarize();
+        AppenderForTests.hasLastEvent().assertLevel(Level.INFO).assertMessage("Suppressed 90 events (sampled 1 in 10): Sampled %d");
+    }
+
+    @Test
+    public void testSummary() {
+        final LogPoint limited = log.warnPoint("Summarized %s").throttle(Throttle.limit(1, 60000));
+
+        for (int index = 0; index < 10; index ++) limited.log(index);
+        AppenderForTests.hasLastEvent().assertMessage("Summarized 0");
+
+        limited.summarize();
+        AppenderForTests.hasLastEvent().assertLevel(Level.WARN)
+                                       .assertMessage("Suppressed 9 events (at most 1 every 60000 ms): Summarized %s");
+
+        /* Nothing suppressed since the last summary, nothing to say */
+        limited.summarize();
+        AppenderForTests.hasNoLastEvent("Empty summary logged");
+        assertEquals(limited.getSuppressed(), 9);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidLimit() {
+        INFO.limit(0);
+    }
+
+    /* ====================================================================== */
+
+    private static class RecordingSink implements TemplateLogSink {
+
+        private String format;
+        private Object[] arguments;
+        private int level;
+
+        @Override
+        public void append(long timestamp, String threadName, String loggerName, int level,
+                           String message, Object[] arguments, Throwable throwable) {
+            fail("Template not passed along");
+        }
+
+        @Override
+        public void appendTemplate(long timestamp, String threadName, String loggerName, int level,
+                                   String format, Object[] arguments, Throwable throwable) {
+            this.format = format;
+            this.arguments = arguments;
+            this.level = level;
+        }
+
+        @Override
+        public void flush() {
+            /* Nothing to do */
+        }
+
+        @Override
+        public void close() {
+            /* Nothing to do */
+        }
+    }
+
+    /* ====================================================================== */
+
+    @Test
+    public void testCompiledFormat() {
+        final Formattable formattable = new Formattable() {
+            @Override
+            public void formatTo(Formatter formatter, int flags, int width, int precision) {
+                formatter.format("formattable");
+            }
+        };
+
+        final Object[][] tests = {
+            { "No arguments" },
+            { "Percent %% and newline%n" },
+            { "%s %s %s", "a", null, 'c' },
+            { "%d %d %d %d %d", 1, -2L, (short) 3, (byte) 4, null },
+            { "%d", Long.MIN_VALUE },
+            { "%d", new BigInteger("123456789012345678901234567890") },
+            { "Too many %s", "a", "b" },
+            { "Formattable %s", formattable },
+            { "Array %s", new int[] { 1 } },
+            { "Width %5d and flags %-5s|", 1, "a" },
+            { "Others %x %.2f %c %b", 255, Math.PI, 'c', true },
+            { "Indexes %2$s %1$s", "a", "b" },
+        };
+
+        for (Object[] test: tests) {
+            final String pattern = (String) test[0];
+            final Object[] arguments = new Object[test.length - 1];
+            System.arraycopy(test, 1, arguments, 0, arguments.length);
+            assertEquals(CompiledFormat.compile(pattern).format(arguments), String.format(pattern, arguments), pattern);
+        }
+
+        assertEquals(CompiledFormat.compile("%s and %d").getArity(), 2);
+        assertEquals(CompiledFormat.compile("%5s").getArity(), -1);
+    }
+
+    @Test
+    public void testCompiledFormatFailures() {
+        final Object[][] tests = {
+            { "Not enough %s %s", "a" },
+            { "Not a number %d", "a" },
+            { "Double %d", 1.5 },
+            { "Unterminated %" },
+            { "Unknown %q", 1 },
+        };
+
+        for (Object[] test: tests) {
+            final String pattern = (String) test[0];
+            final Object[] arguments = new Object[test.length - 1];
+            System.arraycopy(test, 1, arguments, 0, arguments.length);
+
+            Class<?> expected = null;
+            try {
+                String.format(pattern, arguments);
+                fail("No exception from String.format for " + pattern);
+            } catch (IllegalFormatException exception) {
+                expected = exception.getClass();
+            }
+
+            try {
+                CompiledFormat.compile(pattern).format(arguments);
+                fail("No exception from CompiledFormat for " + pattern);
+            } catch (IllegalFormatException exception) {
+                assertEquals(exception.getClass(), expected, pattern);
+            }
+        }
+    }
+
+    @Test
+    public void testCompiledFormatLocalized() {
+        final Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        try {
+            Locale.setDefault(Locale.Category.FORMAT, Locale.forLanguageTag("th-TH-u-nu-thai"));
+            final CompiledFormat format = CompiledFormat.compile("Number %d");
+            assertEquals(format.format(123), String.format("Number %d", 123));
+        } finally {
+            Locale.setDefault(Locale.Category.FORMAT, locale);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import java.util.Locale;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class LoggingModeTest extends Assert {
+
+    @Test
+    public void testLazyMode()
+    throws Exception {
+        final String output = ForkedJVM.run(LazyMain.class);
+        assertTrue(output.contains("Commons Logging registered"), output);
+        assertTrue(output.contains("LAZY OK"), output);
+    }
+
+    @Test
+    public void testParallelMode()
+    throws Exception {
+        final String output = ForkedJVM.run(ParallelMain.class);
+        assertTrue(output.contains("Commons Logging initialized in "), output);
+        assertTrue(output.contains("classes loaded"), output);
+        assertTrue(output.contains("PARALLEL OK"), output);
+    }
+
+    @Test
+    public void testReports() {
+        Logging.init(true);
+        assertEquals(Logging.getReports().size(), 4);
+        for (Logging.Report report: Logging.getReports()) {
+            assertEquals(report.getOutcome(), "initialized", report.toString());
+            assertTrue(report.getNanos() > 0, report.toString());
+        }
+    }
+
+    @Test
+    public void testParseMode() {
+        final Locale locale = Locale.getDefault();
+        try {
+            /* Parsed the same whatever the default locale */
+            Locale.setDefault(new Locale("tr", "TR"));
+            assertEquals(Logging.parseMode(null), Logging.Mode.EAGER);
+            assertEquals(Logging.parseMode(" lazy "), Logging.Mode.LAZY);
+            assertEquals(Logging.parseMode("Parallel"), Logging.Mode.PARALLEL);
+
+            /* Typos don't fail initialization */
+            assertEquals(Logging.parseMode("lasy"), Logging.Mode.EAGER);
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    /* ====================================================================== */
+
+    public static class ParallelMain {
+
+        public static void main(String[] args) {
+            Logging.init(true, Logging.Mode.PARALLEL);
+
+            if (!(java.util.logging.LogManager.getLogManager() instanceof JavaLoggingBridge))
+                throw new IllegalStateException("Java Logging not bridged");
+            if (!(org.apache.log4j.LogManager.getLoggerRepository() instanceof Log4j1Bridge))
+                throw new IllegalStateException("Log4j v1 Logging not bridged");
+            if (!(org.apache.logging.log4j.LogManager.getContext() instanceof Log4j2Bridge))
+                throw new IllegalStateException("Log4j v2 Logging not bridged");
+            if (!(org.apache.commons.logging.LogFactory.getFactory() instanceof CommonsLoggingBridge))
+                throw new IllegalStateException("Commons Logging not bridged");
+            if (!(org.slf4j.LoggerFactory.getLogger("foo") instanceof ch.qos.logback.classic.Logger))
+                throw new IllegalStateException("SLF4J not bound to Logback");
+
+            System.out.println("PARALLEL OK");
+        }
+
+    }
+
+
+    public static class LazyMain {
+
+        public static void main(String[] args) {
+            Logging.init(true, Logging.Mode.LAZY);
+
+            /* Nothing should be bootstrapped yet, but bridges should be found */
+            if (!(java.util.logging.LogManager.getLogManager() instanceof JavaLoggingBridge))
+                throw new IllegalStateException("Java Logging not bridged");
+            if (!(org.apache.log4j.LogManager.getLoggerRepository() instanceof Log4j1Bridge))
+                throw new IllegalStateException("Log4j v1 Logging not bridged");
+            if (!(org.apache.logging.log4j.LogManager.getContext() instanceof Log4j2Bridge))
+                throw new IllegalStateException("Log4j v2 Logging not bridged");
+            if (!(org.apache.commons.logging.LogFactory.getFactory() instanceof CommonsLoggingBridge))
+                throw new IllegalStateException("Commons Logging not bridged");
+
+            /* Log4j v1 properties should be cleared after bootstrap */
+            if (System.getProperty("log4j.configuratorClass") != null)
+                throw new IllegalStateException("Log4j v1 properties not cleared");
+
+            System.out.println("LAZY OK");
+        }
+
+    }
+}
@@ -0,0 +1,54 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class LoggingStartupBenchmarkTest extends Assert {
+
+    private static final int RUNS = Integer.getInteger("benchmark.startup.runs", 3);
+
+    @Test
+    public void benchmarkStartup()
+    throws Exception {
+        for (Logging.Mode mode: Logging.Mode.values()) {
+            long total = 0;
+            for (int x = 0; x < RUNS; x ++) {
+                final String output = ForkedJVM.run(StartupMain.class, mode.name()).trim();
+                total += Long.parseLong(output.substring(output.lastIndexOf('\n') + 1).trim());
+            }
+            System.err.println(String.format("BENCHMARK %-50s %12.2f ms (%d runs)",
+                    "Logging.init() in " + mode + " mode", total / 1000000.0 / RUNS, RUNS));
+        }
+    }
+
+    /* ====================================================================== */
+
+    public static class StartupMain {
+
+        public static void main(String[] args) {
+            final Logging.Mode mode = Logging.Mode.valueOf(args[0]);
+
+            final long started = System.nanoTime();
+            Logging.init(false, mode);
+            final long elapsed = System.nanoTime() - started;
+
+            System.out.println(elapsed);
+        }
+
+    }
+}
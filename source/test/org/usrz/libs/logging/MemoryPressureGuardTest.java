@@ -0,0 +1,286 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static org.slf4j.spi.LocationAwareLogger.ERROR_INT;
+import static org.slf4j.spi.LocationAwareLogger.INFO_INT;
+import static org.slf4j.spi.LocationAwareLogger.TRACE_INT;
+import static org.slf4j.spi.LocationAwareLogger.WARN_INT;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+public class MemoryPressureGuardTest extends Assert {
+
+    static { Logging.init(true); }
+
+    private static final Log log = new Log();
+
+    private static final long MAX = 1000000;
+    private volatile long used = 0;
+    private long sequence = 0;
+
+    @AfterMethod(alwaysRun = true)
+    public void after() {
+        Logging.setMemoryGuard(null);
+    }
+
+    /* ====================================================================== */
+
+    /* A heap pool whose usage after collection we control */
+    private MemoryPoolMXBean pool() {
+        return (MemoryPoolMXBean) Proxy.newProxyInstance(this.getClass().getClassLoader(),
+                                                         new Class<?>[] { MemoryPoolMXBean.class },
+                                                         new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] arguments) {
+                switch (method.getName()) {
+                    case "getName": return "Fake Old Gen";
+                    case "getType": return MemoryType.HEAP;
+                    case "getCollectionUsage": return new MemoryUsage(0, used, MAX, MAX);
+                    default: throw new UnsupportedOperationException(method.getName());
+                }
+            }
+        });
+    }
+
+    /* Inject a notification, as if sent by the JVM after a collection */
+    private void collected(MemoryPressureGuard guard, long used) {
+        this.used = used;
+        guard.handleNotification(new Notification(MemoryPressureGuard.GC_NOTIFICATION, this, ++ sequence), null);
+    }
+
+    /* ====================================================================== */
+
+    @Test
+    public void testDegradeAndRecover() {
+        final MemoryPressureGuard guard = new MemoryPressureGuard(0.9, 0.7, WARN_INT, Arrays.asList(pool()),
+                                                                  Collections.<NotificationEmitter>emptyList());
+        final RecordingSink sink = new RecordingSink();
+        final LogSink previous = Logging.setSink(sink);
+        try {
+            assertNull(Logging.setMemoryGuard(guard));
+            assertSame(Logging.getMemoryGuard(), guard);
+
+            /* Below the threshold, nothing happens */
+            collected(guard, 850000);
+            assertFalse(guard.isUnderPressure());
+            assertEquals(sink.size(), 0);
+
+            /* Above the threshold, degrade */
+            collected(guard, 950000);
+            assertTrue(guard.isUnderPressure());
+            assertEquals(guard.getPressureCount(), 1);
+            assertEquals(LogDispatcher.getMinimumLevel(), WARN_INT);
+            assertTrue(LogDispatcher.isDegraded());
+            sink.assertLast(WARN_INT, "Memory pressure in Fake Old Gen: dropping events below WARN and stack traces below ERROR", null);
+
+            /* Less important events are dropped, and counted */
+            final int count = sink.size();
+            log.info("Dropped");
+            log.debug("Dropped %d", 1);
+            assertEquals(sink.size(), count);
+            assertEquals(guard.getEventsDropped(), 2);
+
+            /* No stack traces below ERROR */
+            final Exception exception = new IOException("Boom");
+            log.warn(exception, "Failed");
+            sink.assertLast(WARN_INT, "Failed [java.io.IOException: Boom]", null);
+            log.error(exception, "Failed");
+            sink.assertLast(ERROR_INT, "Failed", exception);
+
+            /* Templates are not formatted by us */
+            log.warn("Count %d", 42);
+            sink.assertLast(WARN_INT, "Count {}", null);
+            assertEquals(sink.last().arguments, new Object[] { 42 });
+
+            /* Between recovery and threshold, still under pressure */
+            collected(guard, 800000);
+            assertTrue(guard.isUnderPressure());
+
+            /* Below recovery, back to normal */
+            collected(guard, 500000);
+            assertFalse(guard.isUnderPressure());
+            assertEquals(guard.getRecoverCount(), 1);
+            assertEquals(LogDispatcher.getMinimumLevel(), TRACE_INT);
+            assertFalse(LogDispatcher.isDegraded());
+            sink.assertLast(WARN_INT, "Memory pressure relieved: no longer dropping events below WARN and stack traces below ERROR", null);
+
+            log.info("Kept");
+            sink.assertLast(INFO_INT, "Kept", null);
+            log.warn(exception, "Failed");
+            sink.assertLast(WARN_INT, "Failed", exception);
+        } finally {
+            Logging.setMemoryGuard(null);
+            Logging.setSink(previous);
+        }
+    }
+
+    @Test
+    public void testThresholdNotification() {
+        final MemoryPressureGuard guard = new MemoryPressureGuard(0.9, 0.7, ERROR_INT, Arrays.asList(pool()),
+                                                                  Collections.<NotificationEmitter>emptyList());
+        final RecordingSink sink = new RecordingSink();
+        final LogSink previous = Logging.setSink(sink);
+        try {
+            Logging.setMemoryGuard(guard);
+
+            guard.handleNotification(new Notification(MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED, this, 1), null);
+            assertTrue(guard.isUnderPressure());
+            assertEquals(LogDispatcher.getMinimumLevel(), ERROR_INT);
+            sink.assertLast(WARN_INT, "Memory pressure in heap: dropping events below ERROR and stack traces below ERROR", null);
+
+            /* Adapters see the minimum level */
+            final org.apache.commons.logging.Log bridged = new CommonsLoggingAdapter(this.getClass().getName());
+            assertFalse(bridged.isWarnEnabled());
+            assertTrue(bridged.isErrorEnabled());
+
+            /* Closing the guard goes back to normal */
+            Logging.setMemoryGuard(null);
+            assertFalse(guard.isUnderPressure());
+            assertEquals(LogDispatcher.getMinimumLevel(), TRACE_INT);
+            assertTrue(bridged.isWarnEnabled());
+            sink.assertLast(WARN_INT, "Memory pressure relieved: no longer dropping events below ERROR and stack traces below ERROR", null);
+        } finally {
+            Logging.setMemoryGuard(null);
+            Logging.setSink(previous);
+        }
+    }
+
+    @Test
+    public void testPlatformThresholds() {
+        final MemoryPressureGuard guard = new MemoryPressureGuard(0.99, 0.5, WARN_INT);
+        try {
+            assertFalse(guard.isUnderPressure());
+        } finally {
+            guard.close();
+        }
+
+        for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.isCollectionUsageThresholdSupported()) {
+                assertEquals(pool.getCollectionUsageThreshold(), 0, "Threshold not cleared for " + pool.getName());
+            }
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidThreshold() {
+        new MemoryPressureGuard(1.5, 0.5, WARN_INT, Collections.<MemoryPoolMXBean>emptyList(),
+                                Collections.<NotificationEmitter>emptyList());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidRecovery() {
+        new MemoryPressureGuard(0.8, 0.9, WARN_INT, Collections.<MemoryPoolMXBean>emptyList(),
+                                Collections.<NotificationEmitter>emptyList());
+    }
+
+    @Test
+    public void testMalformedProperties() {
+        try {
+            System.setProperty(Logging.PRESSURE_THRESHOLD_PROPERTY, "lots");
+            assertNull(MemoryPressureGuard.fromProperties());
+
+            System.setProperty(Logging.PRESSURE_THRESHOLD_PROPERTY, "0.9");
+            System.setProperty(Logging.PRESSURE_RECOVERY_PROPERTY, "less");
+            assertNull(MemoryPressureGuard.fromProperties());
+
+            System.setProperty(Logging.PRESSURE_RECOVERY_PROPERTY, "0.95");
+            assertNull(MemoryPressureGuard.fromProperties());
+
+            System.setProperty(Logging.PRESSURE_RECOVERY_PROPERTY, "0.5");
+            System.setProperty(Logging.PRESSURE_LEVEL_PROPERTY, "loud");
+            assertNull(MemoryPressureGuard.fromProperties());
+        } finally {
+            System.clearProperty(Logging.PRESSURE_THRESHOLD_PROPERTY);
+            System.clearProperty(Logging.PRESSURE_RECOVERY_PROPERTY);
+            System.clearProperty(Logging.PRESSURE_LEVEL_PROPERTY);
+        }
+    }
+
+    /* ====================================================================== */
+
+    private static class Event {
+        private final int level;
+        private final String message;
+        private final Object[] arguments;
+        private final Throwable throwable;
+
+        private Event(int level, String message, Object[] arguments, Throwable throwable) {
+            this.level = level;
+            this.message = message;
+            this.arguments = arguments;
+            this.throwable = throwable;
+        }
+    }
+
+    private static class RecordingSink implements LogSink {
+
+        private final List<Event> events = Collections.synchronizedList(new ArrayList<Event>());
+
+        @Override
+        public void append(long timestamp, String threadName, String loggerName, int level,
+                           String message, Object[] arguments, Throwable throwable) {
+            events.add(new Event(level, message, arguments, throwable));
+        }
+
+        private int size() {
+            return events.size();
+        }
+
+        private Event last() {
+            synchronized (events) {
+                assertFalse(events.isEmpty(), "No events recorded");
+                return events.get(events.size() - 1);
+            }
+        }
+
+        private void assertLast(int level, String message, Throwable throwable) {
+            final Event event = last();
+            assertEquals(event.level, level, "Wrong level");
+            assertEquals(event.message, message, "Wrong message");
+            assertSame(event.throwable, throwable, "Wrong throwable");
+        }
+
+        @Override
+        public void flush() {
+            /* Nothing to do */
+        }
+
+        @Override
+        public void close() {
+            /* Nothing to do */
+        }
+    }
+}
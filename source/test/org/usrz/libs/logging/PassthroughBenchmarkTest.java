@@ -0,0 +1,54 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/*
+ * Benchmarks go to a NOP appender, which never formats: this measures what
+ * the caller's thread pays when formatting is left to the backend.
+ */
+public class PassthroughBenchmarkTest extends Assert {
+
+    static { Logging.init(true); }
+
+    private static final Log log = new Log("benchmark.passthrough");
+
+    private void benchmark(boolean passthrough) {
+        final boolean previous = Logging.setPassthrough(passthrough);
+        try {
+            Benchmark.run("Log.info(format, ...) (" + (passthrough ? "passthrough" : "formatted") + ")", new Benchmark.Operation() {
+                @Override
+                public void run(int iteration) {
+                    log.info("Processed %d items in %d ms for %s", iteration, 12, "someone");
+                }
+            });
+        } finally {
+            Logging.setPassthrough(previous);
+        }
+    }
+
+    @Test
+    public void benchmarkFormatted() {
+        benchmark(false);
+    }
+
+    @Test
+    public void benchmarkPassthrough() {
+        benchmark(true);
+    }
+}
@@ -0,0 +1,140 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import java.util.IllegalFormatConversionException;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class PassthroughTest extends Assert {
+
+    static { Logging.init(true); }
+
+    private static final Log log = new Log();
+
+    private boolean passthrough;
+
+    @BeforeMethod
+    public void before() {
+        passthrough = Logging.setPassthrough(true);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void after() {
+        Logging.setPassthrough(passthrough);
+    }
+
+    /* ====================================================================== */
+
+    @Test
+    public void testPassthrough() {
+        log.info("Hello %s number %d", "world", 1);
+        AppenderForTests.hasLastEvent().assertCaller(this)
+                                       .assertClass(this.getClass())
+                                       .assertRawMessage("Hello {} number {}")
+                                       .assertArguments("world", 1)
+                                       .assertMessage("Hello world number 1");
+
+        final Exception exception = new Exception("Oops");
+        log.warn(exception, "Failed %s%%%n", "badly");
+        AppenderForTests.hasLastEvent().assertCaller(this)
+                                       .assertRawMessage("Failed {}%" + System.lineSeparator())
+                                       .assertArguments("badly")
+                                       .assertMessage(String.format("Failed badly%%%n"))
+                                       .assertThrowable(exception);
+    }
+
+    @Test
+    public void testSnapshots() {
+        /* Mutable arguments are rendered on the spot */
+        final StringBuilder builder = new StringBuilder("before");
+        log.info("Mutable %s", builder);
+        builder.setLength(0);
+        AppenderForTests.hasLastEvent().assertRawMessage("Mutable {}")
+                                       .assertArguments("before")
+                                       .assertMessage("Mutable before");
+
+        /* Same output as String.format, even when SLF4J would differ */
+        final int[] array = new int[] { 1, 2 };
+        final Exception exception = new Exception("Argument");
+        log.info("Array %s and exception %s", array, exception);
+        AppenderForTests.hasLastEvent().assertMessage(String.format("Array %s and exception %s", array, exception))
+                                       .assertThrowable(null);
+
+        /* Immutable arguments are passed as they are */
+        log.info("%s %s %s %s", 1.5, true, 'c', Thread.State.NEW);
+        AppenderForTests.hasLastEvent().assertRawMessage("{} {} {} {}")
+                                       .assertArguments(1.5, true, 'c', Thread.State.NEW)
+                                       .assertMessage("1.5 true c NEW");
+    }
+
+    @Test
+    public void testEscapes() {
+        log.info("Backslash \\%s and \\\\%s", "one", "two");
+        AppenderForTests.hasLastEvent().assertMessage("Backslash \\one and \\\\two");
+
+        log.info("Braces {%s} {{%s}}", "one", "two");
+        AppenderForTests.hasLastEvent().assertRawMessage("Braces {{}} {{{}}}")
+                                       .assertMessage("Braces {one} {{two}}");
+
+        /* Literal "{}" are not passed through */
+        log.info("Literal {} and %s", "one");
+        AppenderForTests.hasLastEvent().assertRawMessage("Literal {} and one")
+                                       .assertMessage("Literal {} and one");
+    }
+
+    @Test
+    public void testFallback() {
+        /* Anything but %s and %d gets formatted straight away */
+        log.info("Width %5d and %.2f", 1, Math.PI);
+        AppenderForTests.hasLastEvent().assertRawMessage(String.format("Width %5d and %.2f", 1, Math.PI))
+                                       .assertArguments((Object[]) null);
+
+        /* No arguments at all */
+        log.info("Nothing to format %%", new Object[0]);
+        AppenderForTests.hasLastEvent().assertRawMessage("Nothing to format %")
+                                       .assertArguments((Object[]) null);
+
+        /* Wrong arguments still fail like they did */
+        try {
+            log.info("Number %d", "not a number");
+            fail("No exception");
+        } catch (IllegalFormatConversionException exception) {
+            /* Good! */
+        }
+        AppenderForTests.hasNoLastEvent("Wrong arguments logged");
+    }
+
+    @Test
+    public void testLogPoint() {
+        final LogPoint point = log.infoPoint("Processed %d items in %d ms");
+        point.log(12, 34L);
+        AppenderForTests.hasLastEvent().assertCaller(this)
+                                       .assertRawMessage("Processed {} items in {} ms")
+                                       .assertArguments(12, 34L)
+                                       .assertMessage("Processed 12 items in 34 ms");
+    }
+
+    @Test
+    public void testDisabled() {
+        Logging.setPassthrough(false);
+        log.info("Hello %s", "world");
+        AppenderForTests.hasLastEvent().assertRawMessage("Hello world").assertArguments((Object[]) null);
+    }
+}
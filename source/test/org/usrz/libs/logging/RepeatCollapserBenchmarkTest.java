@@ -0,0 +1,90 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/*
+ * Measure what collapsing costs to events which are never repeated, and
+ * what repeated events cost when they're held back.
+ */
+public class RepeatCollapserBenchmarkTest extends Assert {
+
+    static { Logging.init(true); }
+
+    private static final Log log = new Log("benchmark.collapse");
+    private static final String[] MESSAGES = new String[1024];
+
+    static {
+        for (int index = 0; index < MESSAGES.length; index ++) MESSAGES[index] = "Message number " + index;
+    }
+
+    private void benchmark(String name, long window, final boolean repeated) {
+        final long previous = Logging.setCollapseWindow(window);
+        try {
+            Benchmark.run("Log.info(message) (" + name + ")", new Benchmark.Operation() {
+                @Override
+                public void run(int iteration) {
+                    log.info(repeated ? MESSAGES[0] : MESSAGES[iteration & 1023]);
+                }
+            });
+        } finally {
+            Logging.setCollapseWindow(previous);
+        }
+    }
+
+    @Test
+    public void benchmarkNotCollapsing() {
+        benchmark("not collapsing", 0, false);
+    }
+
+    @Test
+    public void benchmarkCollapsingDifferent() {
+        benchmark("collapsing, all different", 60000, false);
+    }
+
+    @Test
+    public void benchmarkCollapsingRepeated() {
+        benchmark("collapsing, all repeated", 60000, true);
+    }
+
+    /* -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  -  - */
+
+    private void benchmarkConcurrently(String name, long window) {
+        final long previous = Logging.setCollapseWindow(window);
+        try {
+            Benchmark.runConcurrently("Log.info(message) (" + name + ")", 4, new Benchmark.Operation() {
+                @Override
+                public void run(int iteration) {
+                    log.info(MESSAGES[iteration & 1023]);
+                }
+            }, null);
+        } finally {
+            Logging.setCollapseWindow(previous);
+        }
+    }
+
+    @Test
+    public void benchmarkNotCollapsingConcurrently() {
+        benchmarkConcurrently("not collapsing", 0);
+    }
+
+    @Test
+    public void benchmarkCollapsingDifferentConcurrently() {
+        benchmarkConcurrently("collapsing, all different", 60000);
+    }
+}
@@ -0,0 +1,170 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static org.slf4j.spi.LocationAwareLogger.INFO_INT;
+import static org.slf4j.spi.LocationAwareLogger.WARN_INT;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class RepeatCollapserTest extends Assert {
+
+    static { Logging.init(true); }
+
+    private static final Log log = new Log();
+    private static final Log other = new Log("org.usrz.libs.logging.RepeatCollapserTest.Other");
+
+    private RecordingSink sink;
+    private LogSink previous;
+
+    @BeforeMethod
+    public void before() {
+        sink = new RecordingSink();
+        previous = Logging.setSink(sink);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void after() {
+        Logging.setCollapseWindow(0);
+        Logging.setSink(previous);
+    }
+
+    /* ====================================================================== */
+
+    @Test
+    public void testCollapse() {
+        assertEquals(Logging.setCollapseWindow(60000), 0);
+        assertEquals(Logging.getCollapseWindow(), 60000);
+
+        for (int index = 0; index < 5; index ++) log.info("Same");
+        sink.assertEvents("INFO Same");
+
+        log.info("Other");
+        sink.assertEvents("INFO Same", "INFO Last message repeated 4 times", "INFO Other");
+
+        /* Nothing pending, nothing to say */
+        assertEquals(Logging.setCollapseWindow(0), 60000);
+        sink.assertEvents("INFO Same", "INFO Last message repeated 4 times", "INFO Other");
+    }
+
+    @Test
+    public void testDifferentEvents() {
+        Logging.setCollapseWindow(60000);
+
+        /* Different throwable types, and different levels */
+        log.warn(new IOException("One"), "Failed");
+        log.warn(new IOException("Two"), "Failed");
+        log.warn(new IllegalStateException("Three"), "Failed");
+        log.info("Failed");
+        log.info("Failed");
+        log.info("Done");
+        sink.assertEvents("WARN Failed (IOException)",
+                          "WARN Last message repeated 1 times",
+                          "WARN Failed (IllegalStateException)",
+                          "INFO Failed",
+                          "INFO Last message repeated 1 times",
+                          "INFO Done");
+    }
+
+    @Test
+    public void testLoggers() {
+        Logging.setCollapseWindow(60000);
+
+        /* Each logger has its own runs */
+        log.info("Mine");
+        other.info("Yours");
+        log.info("Mine");
+        other.info("Yours");
+        sink.assertEvents("INFO Mine", "INFO Yours");
+
+        /* Held back duplicates are summarized when we stop collapsing */
+        Logging.setCollapseWindow(0);
+        assertEquals(sink.events.size(), 4);
+        assertTrue(sink.events.contains("INFO Last message repeated 1 times"));
+    }
+
+    @Test
+    public void testWindow()
+    throws InterruptedException {
+        Logging.setCollapseWindow(250);
+
+        for (int index = 0; index < 3; index ++) log.info("Tick");
+        sink.assertEvents("INFO Tick");
+
+        /* The window expires, and we say something */
+        for (int wait = 0; (sink.events.size() < 2) && (wait < 100); wait ++) Thread.sleep(50);
+        sink.assertEvents("INFO Tick", "INFO Last message repeated 2 times");
+
+        /* And the next one starts a new run */
+        log.info("Tick");
+        sink.assertEvents("INFO Tick", "INFO Last message repeated 2 times", "INFO Tick");
+    }
+
+    @Test
+    public void testFormatted() {
+        Logging.setCollapseWindow(60000);
+
+        for (int index = 0; index < 3; index ++) log.warn("Retrying %s", "connection");
+        log.warn("Retrying %s", "something else");
+        sink.assertEvents("WARN Retrying connection",
+                          "WARN Last message repeated 2 times",
+                          "WARN Retrying something else");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidWindow() {
+        Logging.setCollapseWindow(-1);
+    }
+
+    /* ====================================================================== */
+
+    private static class RecordingSink implements LogSink {
+
+        private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void append(long timestamp, String threadName, String loggerName, int level,
+                           String message, Object[] arguments, Throwable throwable) {
+            /* Ignore whatever other tests' background threads might log */
+            if (!loggerName.startsWith(RepeatCollapserTest.class.getName())) return;
+            events.add((level == INFO_INT ? "INFO " : level == WARN_INT ? "WARN " : level + " ") + message
+                       + (throwable == null ? "" : " (" + throwable.getClass().getSimpleName() + ")"));
+        }
+
+        private void assertEvents(String... expected) {
+            assertEquals(events, Arrays.asList(expected));
+        }
+
+        @Override
+        public void flush() {
+            /* Nothing to do */
+        }
+
+        @Override
+        public void close() {
+            /* Nothing to do */
+        }
+    }
+}
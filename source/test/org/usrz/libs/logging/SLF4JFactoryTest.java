@@ -0,0 +1,90 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static org.slf4j.spi.LocationAwareLogger.DEBUG_INT;
+import static org.slf4j.spi.LocationAwareLogger.ERROR_INT;
+import static org.slf4j.spi.LocationAwareLogger.INFO_INT;
+import static org.slf4j.spi.LocationAwareLogger.TRACE_INT;
+import static org.slf4j.spi.LocationAwareLogger.WARN_INT;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.spi.LocationAwareLogger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class SLF4JFactoryTest extends Assert {
+
+    static { Logging.init(true); }
+
+    @Test
+    public void testLocationAwareLogger() {
+        final Logger logger = org.slf4j.LoggerFactory.getLogger(this.getClass());
+        assertSame(SLF4JFactory.asLocationAwareLogger(logger), logger);
+    }
+
+    @Test
+    public void testWrappedLoggerSingleCall() {
+        final List<String> calls = new ArrayList<>();
+        final LocationAwareLogger logger = SLF4JFactory.asLocationAwareLogger(recordingLogger(calls));
+        final Throwable throwable = new Throwable();
+
+        logger.log(null, "fqcn", TRACE_INT, "message", null, null);
+        logger.log(null, "fqcn", DEBUG_INT, "message", null, throwable);
+        logger.log(null, "fqcn", INFO_INT, "message {}", new Object[] { 1 }, null);
+        logger.log(null, "fqcn", WARN_INT, "message {}", new Object[] { 2 }, throwable);
+        logger.log(null, "fqcn", ERROR_INT, "message", null, null);
+
+        assertEquals(calls, Arrays.asList(
+                "trace(Marker,String)[null, message]",
+                "debug(Marker,String,Throwable)[null, message, " + throwable + "]",
+                "info(Marker,String,Object[])[null, message {}, [1]]",
+                "warn(Marker,String,Object[])[null, message {}, [2, " + throwable + "]]",
+                "error(Marker,String)[null, message]"));
+    }
+
+    /* ====================================================================== */
+
+    private static Logger recordingLogger(final List<String> calls) {
+        return (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class<?>[] { Logger.class }, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getName")) return "recording";
+                if (method.getName().startsWith("is")) return true;
+
+                final StringBuilder builder = new StringBuilder(method.getName()).append('(');
+                for (Class<?> type: method.getParameterTypes()) builder.append(type.getSimpleName()).append(',');
+                builder.setCharAt(builder.length() - 1, ')');
+
+                /* Ignore our "not a LocationAwareLogger" warning */
+                if (method.getName().equals("warn") && (args[0] instanceof String)) return null;
+
+                calls.add(builder.append(Arrays.deepToString(args)).toString());
+                return null;
+            }
+
+        });
+    }
+
+}
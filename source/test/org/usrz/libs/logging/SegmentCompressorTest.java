@@ -0,0 +1,199 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.slf4j.spi.LocationAwareLogger.INFO_INT;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SegmentCompressorTest extends Assert {
+
+    static { Logging.init(true); }
+
+    private File directory;
+
+    @BeforeMethod
+    public void before()
+    throws IOException {
+        directory = Files.createTempDirectory("SegmentCompressorTest").toFile();
+    }
+
+    @AfterMethod
+    public void after() {
+        for (File file: directory.listFiles()) file.delete();
+        directory.delete();
+    }
+
+    /* ====================================================================== */
+
+    private File write(String name, int first, int count)
+    throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        for (int x = first; x < first + count; x ++) {
+            builder.append("2014-05-13 10:00:00.").append(x % 1000).append(" [main] INFO  org.example.Service - Request number ")
+                   .append(x).append(" completed in ").append(x % 97).append(" ms\n");
+        }
+        final File file = new File(directory, name);
+        Files.write(file.toPath(), builder.toString().getBytes(UTF_8));
+        return file;
+    }
+
+    private static byte[] decompress(File file, byte[] dictionary)
+    throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        SegmentCompressor.decompress(file, dictionary, output);
+        return output.toByteArray();
+    }
+
+    /* ====================================================================== */
+
+    @Test
+    public void testGzip()
+    throws IOException {
+        final File file = write("test.log", 0, 10000);
+        final byte[] original = Files.readAllBytes(file.toPath());
+
+        final SegmentCompressor compressor = new SegmentCompressor(Deflater.BEST_COMPRESSION);
+        compressor.compress(file);
+        compressor.close();
+
+        final File compressed = new File(directory, "test.log.gz");
+        assertFalse(file.exists());
+        assertTrue(compressed.exists());
+        assertFalse(new File(directory, "test.log.gz.tmp").exists());
+
+        /* Standard GZIP, readable by anyone */
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (InputStream input = new GZIPInputStream(new FileInputStream(compressed))) {
+            final byte[] buffer = new byte[4096];
+            for (int count; (count = input.read(buffer)) >= 0; ) output.write(buffer, 0, count);
+        }
+        assertEquals(output.toByteArray(), original);
+        assertEquals(decompress(compressed, null), original);
+
+        assertEquals(compressor.getFilesCompressed(), 1);
+        assertEquals(compressor.getBytesRead(), original.length);
+        assertEquals(compressor.getBytesWritten(), compressed.length());
+        assertEquals(compressor.getBytesSaved(), original.length - compressed.length());
+        assertTrue(compressor.getBytesSaved() > original.length / 2, "Saved only " + compressor.getBytesSaved() + " bytes");
+    }
+
+    @Test
+    public void testDictionary()
+    throws IOException {
+        final byte[] dictionary = SegmentCompressor.train(4096, write("old.log", 0, 1000));
+
+        /* Small files benefit the most from a dictionary */
+        final File plain = write("plain.log", 5000, 20);
+        final File trained = write("trained.log", 5000, 20);
+        final byte[] original = Files.readAllBytes(trained.toPath());
+
+        final SegmentCompressor withoutDictionary = new SegmentCompressor(Deflater.DEFAULT_COMPRESSION);
+        final SegmentCompressor withDictionary = new SegmentCompressor(Deflater.DEFAULT_COMPRESSION, dictionary);
+        withoutDictionary.compress(plain);
+        withDictionary.compress(trained);
+        withoutDictionary.close();
+        withDictionary.close();
+
+        final File compressed = new File(directory, "trained.log.zz");
+        assertTrue(compressed.exists());
+        assertTrue(compressed.length() < new File(directory, "plain.log.gz").length(),
+                   compressed.length() + " bytes with a dictionary, "
+                 + new File(directory, "plain.log.gz").length() + " bytes without");
+
+        assertEquals(decompress(compressed, dictionary), original);
+
+        try {
+            decompress(compressed, null);
+            fail("No exception without a dictionary");
+        } catch (IOException exception) {
+            assertTrue(exception.getMessage().contains("needs a dictionary"), exception.getMessage());
+        }
+
+        try {
+            decompress(compressed, "Not the right one".getBytes(UTF_8));
+            fail("No exception with the wrong dictionary");
+        } catch (IOException exception) {
+            /* Good! */
+        }
+    }
+
+    @Test
+    public void testTrain()
+    throws IOException {
+        final File first = write("first.log", 0, 1000);
+        final File second = write("second.log", 1000, 1000);
+        final byte[] firstBytes = Files.readAllBytes(first.toPath());
+        final byte[] secondBytes = Files.readAllBytes(second.toPath());
+
+        /* Both tails, in equal part, oldest first */
+        final byte[] dictionary = SegmentCompressor.train(1000, first, second);
+        assertEquals(dictionary.length, 1000);
+        assertEquals(Arrays.copyOfRange(dictionary, 0, 500), Arrays.copyOfRange(firstBytes, firstBytes.length - 500, firstBytes.length));
+        assertEquals(Arrays.copyOfRange(dictionary, 500, 1000), Arrays.copyOfRange(secondBytes, secondBytes.length - 500, secondBytes.length));
+
+        /* Files smaller than what we want */
+        final File small = write("small.log", 0, 1);
+        assertEquals(SegmentCompressor.train(32768, small), Files.readAllBytes(small.toPath()));
+    }
+
+    @Test
+    public void testFileSink()
+    throws IOException {
+        final SegmentCompressor compressor = new SegmentCompressor(Deflater.BEST_SPEED);
+        final FileSink sink = new FileSink(new File(directory, "test.log"), 10000, 0, 1024, compressor);
+        for (int x = 0; x < 2000; x ++) sink.append(x, "main", "a.logger", INFO_INT, "Message number {}", new Object[] { x }, null);
+        sink.close();
+        compressor.close();
+
+        /* Everything rolled got compressed, and nothing got lost */
+        final StringBuilder builder = new StringBuilder();
+        final File[] files = directory.listFiles();
+        for (File file: files) {
+            if (file.getName().equals("test.log")) continue;
+            assertTrue(file.getName().endsWith(".gz"), file.getName());
+            builder.append(new String(decompress(file, null), UTF_8));
+        }
+        builder.append(new String(Files.readAllBytes(new File(directory, "test.log").toPath()), UTF_8));
+
+        assertEquals(compressor.getFilesCompressed(), files.length - 1);
+        final Set<String> messages = new HashSet<>();
+        for (String line: builder.toString().split("\n")) messages.add(line.substring(line.indexOf(" - ") + 3));
+        assertEquals(messages.size(), 2000);
+        for (int x = 0; x < 2000; x ++) assertTrue(messages.contains("Message number " + x), "Missing message " + x);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidLevel() {
+        new SegmentCompressor(10);
+    }
+}
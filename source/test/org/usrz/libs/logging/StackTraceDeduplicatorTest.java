@@ -0,0 +1,172 @@
+/* ========================================================================== *
+ * Copyright 2014 USRZ.com and Pier Paolo Fumagalli                           *
+ * -------------------------------------------------------------------------- *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *  http://www.apache.org/licenses/LICENSE-2.0                                *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ * ========================================================================== */
+package org.usrz.libs.logging;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import ch.qos.logback.classic.Level;
+
+public class StackTraceDeduplicatorTest extends Assert {
+
+    static { Logging.init(true); }
+
+    private static final Log log = new Log();
+    private static final Pattern REFERENCE = Pattern.compile(".* \\[stack trace (#[0-9a-f]{8})\\]$");
+
+    @AfterMethod(alwaysRun = true)
+    public void after() {
+        Logging.setDeduplicateWindow(0);
+    }
+
+    private static Exception failure(String message) {
+        return new IOException(message);
+    }
+
+    private static Exception failure(String message, Throwable cause) {
+        return new IOException(message, cause);
+    }
+
+    /* ====================================================================== */
+
+    @Test
+    public void testDeduplicate() {
+        assertEquals(Logging.setDeduplicateWindow(60000), 0);
+        assertEquals(Logging.getDeduplicateWindow(), 60000);
+
+        String reference = null;
+        for (int occurrence = 1; occurrence < 5; occurrence ++) {
+            final Exception exception = failure("Refused " + occurrence);
+            log.error(exception, "Failed %s", "again");
+            final AppenderForTests.LogEvent event = AppenderForTests.hasLastEvent();
+            event.assertCaller(this).assertLevel(Level.ERROR);
+
+            if (occurrence == 1) {
+                /* We get the full trace, and a reference to it */
+                event.assertThrowable(exception);
+                final Matcher matcher = REFERENCE.matcher(event.getMessage());
+                assertTrue(matcher.matches(), "No reference in " + event.getMessage());
+                reference = matcher.group(1);
+            } else {
+                /* Then only the reference */
+                event.assertThrowable(null)
+                     .assertMessage("Failed again [java.io.IOException: Refused " + occurrence
+                                    + ", stack trace " + reference
+                                    + ", occurrence " + occurrence + "]");
+            }
+        }
+
+        /* Events without throwables are left alone */
+        log.error("No throwable");
+        AppenderForTests.hasLastEvent().assertMessage("No throwable");
+
+        /* And when we stop, we get full traces */
+        assertEquals(Logging.setDeduplicateWindow(0), 60000);
+        final Exception last = failure("Refused");
+        log.error(last, "Failed");
+        AppenderForTests.hasLastEvent().assertMessage("Failed").assertThrowable(last);
+    }
+
+    @Test
+    public void testWindow()
+    throws InterruptedException {
+        Logging.setDeduplicateWindow(1);
+
+        for (int index = 0; index < 3; index ++) {
+            final Exception exception = failure("Refused " + index);
+            log.warn(exception, "Failed");
+            AppenderForTests.hasLastEvent().assertThrowable(exception);
+            Thread.sleep(5);
+        }
+    }
+
+    private static Exception storm(String message, int line) {
+        final Exception exception = new IOException(message);
+        exception.setStackTrace(new StackTraceElement[] {
+                new StackTraceElement("Storm", "method", "Storm.java", line) });
+        return exception;
+    }
+
+    @Test
+    public void testEviction() {
+        Logging.setDeduplicateWindow(60000);
+
+        final Exception hot = storm("Hot", -1);
+        log.error(hot, "Hot");
+        AppenderForTests.hasLastEvent().assertThrowable(hot);
+
+        /* A storm of distinct stack traces, while the hot one keeps repeating */
+        for (int index = 0; index < StackTraceDeduplicator.MAX_TRACES * 2; index ++) {
+            final Exception distinct = storm("Distinct", index);
+            log.error(distinct, "Distinct");
+            AppenderForTests.hasLastEvent().assertThrowable(distinct);
+
+            if (index % 100 == 0) {
+                log.error(storm("Hot", -1), "Hot");
+                AppenderForTests.hasLastEvent().assertThrowable(null);
+            }
+        }
+
+        /* The hot one was never forgotten, and never logged in full again */
+        log.error(storm("Hot", -1), "Hot");
+        AppenderForTests.hasLastEvent().assertThrowable(null);
+    }
+
+    @Test
+    public void testFingerprint() {
+        /* Same class and frames, different messages */
+        final Exception[] exceptions = new Exception[2];
+        for (int index = 0; index < exceptions.length; index ++) exceptions[index] = failure("Message " + index);
+        assertEquals(StackTraceDeduplicator.fingerprint(exceptions[0]),
+                     StackTraceDeduplicator.fingerprint(exceptions[1]));
+
+        /* Different frames */
+        assertNotEquals(StackTraceDeduplicator.fingerprint(failure("Message")),
+                        StackTraceDeduplicator.fingerprint(exceptions[0]));
+
+        /* Different classes */
+        final Exception[] others = new Exception[2];
+        for (int index = 0; index < others.length; index ++) {
+            others[index] = index == 0 ? new IOException() : new IllegalStateException();
+        }
+        assertNotEquals(StackTraceDeduplicator.fingerprint(others[0]),
+                        StackTraceDeduplicator.fingerprint(others[1]));
+
+        /* Different causes */
+        final Exception[] caused = new Exception[2];
+        for (int index = 0; index < caused.length; index ++) {
+            caused[index] = failure("Caused", index == 0 ? new IOException() : new IllegalStateException());
+        }
+        assertNotEquals(StackTraceDeduplicator.fingerprint(caused[0]),
+                        StackTraceDeduplicator.fingerprint(caused[1]));
+
+        /* Loops in causes don't loop forever */
+        final Exception one = new Exception("One");
+        final Exception two = new Exception("Two", one);
+        one.initCause(two);
+        StackTraceDeduplicator.fingerprint(one);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidWindow() {
+        Logging.setDeduplicateWindow(-1);
+    }
+}